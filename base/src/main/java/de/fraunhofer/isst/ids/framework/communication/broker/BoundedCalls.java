@@ -0,0 +1,188 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends the requests for a sequence of items asynchronously, with at most a given number of calls in flight.
+ * Requests are only built when a call slot is free, so a large (or lazy) sequence of items is never held in memory.
+ * Responses are buffered (broker responses are small) and handed to a result handler, which is called from the
+ * OkHttp threads.
+ */
+final class BoundedCalls {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BoundedCalls.class);
+
+    /**
+     * Builds the request of an item
+     *
+     * @param <T> type of the items
+     */
+    @FunctionalInterface
+    interface RequestFactory<T> {
+        /**
+         * @param item the item
+         * @return the request for the item
+         * @throws IOException if the request cannot be built (e.g. the item cannot be serialized)
+         */
+        Request create(T item) throws IOException;
+    }
+
+    /**
+     * Handles the outcome of the call of an item
+     *
+     * @param <T> type of the items
+     */
+    @FunctionalInterface
+    interface ResultHandler<T> {
+        /**
+         * @param item the item
+         * @param response the buffered response, null if the call failed
+         * @param error the error of the call or of building the request, null if there is a response
+         * @param duration the duration of the call
+         */
+        void onResult(T item, Response response, IOException error, Duration duration);
+    }
+
+    private BoundedCalls() {
+    }
+
+    /**
+     * Send the requests of all items
+     *
+     * @param client the client sending the requests
+     * @param items the items, only accessed from one thread at a time
+     * @param factory builds the request of an item
+     * @param maxConcurrency max number of calls in flight
+     * @param timeout timeout of every single call (null = timeouts of the client)
+     * @param handler handles the outcome of every item
+     * @param <T> type of the items
+     * @return future completed when the calls of all items are finished (errors of single items are passed to the
+     * handler), completed exceptionally with the error of the items if they cannot be iterated, after the calls in
+     * flight are finished
+     */
+    static <T> CompletableFuture<Void> run(OkHttpClient client, Iterator<T> items, RequestFactory<T> factory,
+                                           int maxConcurrency, Duration timeout, ResultHandler<T> handler) {
+        var done = new CompletableFuture<Void>();
+        var workers = new AtomicInteger(Math.max(1, maxConcurrency));
+        var failure = new AtomicReference<RuntimeException>();
+        for (int i = 0; i < Math.max(1, maxConcurrency); i++) {
+            next(client, items, factory, timeout, handler, workers, failure, done);
+        }
+        return done;
+    }
+
+    /**
+     * Send the request of the next item, when its call is finished the next item is taken; the worker ends when
+     * there are no more items
+     *
+     * @param client the client sending the requests
+     * @param items the items
+     * @param factory builds the request of an item
+     * @param timeout timeout of every single call (null = timeouts of the client)
+     * @param handler handles the outcome of every item
+     * @param workers number of running workers
+     * @param failure error of the items, no more items are taken once it is set
+     * @param done completed when the last worker ends
+     * @param <T> type of the items
+     */
+    private static <T> void next(OkHttpClient client, Iterator<T> items, RequestFactory<T> factory, Duration timeout,
+                                 ResultHandler<T> handler, AtomicInteger workers, AtomicReference<RuntimeException> failure,
+                                 CompletableFuture<Void> done) {
+        while (true) {
+            T item = null;
+            boolean hasItem = false;
+            synchronized (items) {
+                try {
+                    if (failure.get() == null && items.hasNext()) {
+                        item = items.next();
+                        hasItem = true;
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.warn(String.format("Could not take the next item: %s", e.getMessage()), e);
+                    failure.set(e);
+                }
+            }
+            if (!hasItem) {
+                if (workers.decrementAndGet() == 0) {
+                    if (failure.get() != null) {
+                        done.completeExceptionally(failure.get());
+                    } else {
+                        done.complete(null);
+                    }
+                }
+                return;
+            }
+            Request request;
+            try {
+                request = factory.create(item);
+            } catch (IOException | RuntimeException e) {
+                report(handler, item, null, e instanceof IOException ? (IOException) e : new IOException(e), Duration.ZERO);
+                continue;
+            }
+            final var callItem = item;
+            var start = System.nanoTime();
+            var call = client.newCall(request);
+            if (timeout != null) {
+                call.timeout().timeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    report(handler, callItem, null, e, Duration.ofNanos(System.nanoTime() - start));
+                    next(client, items, factory, timeout, handler, workers, failure, done);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    Response buffered = null;
+                    IOException error = null;
+                    try (response) {
+                        var body = response.body();
+                        var bytes = body == null ? new byte[0] : body.bytes();
+                        buffered = response.newBuilder()
+                                .body(ResponseBody.create(bytes, body == null ? null : body.contentType()))
+                                .build();
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                    report(handler, callItem, buffered, error, Duration.ofNanos(System.nanoTime() - start));
+                    next(client, items, factory, timeout, handler, workers, failure, done);
+                }
+            });
+            return;
+        }
+    }
+
+    /**
+     * Pass the outcome of an item to the handler, a failing handler does not stop the other calls
+     *
+     * @param handler the result handler
+     * @param item the item
+     * @param response the buffered response, null if the call failed
+     * @param error the error of the call, null if there is a response
+     * @param duration the duration of the call
+     * @param <T> type of the items
+     */
+    private static <T> void report(ResultHandler<T> handler, T item, Response response, IOException error, Duration duration) {
+        try {
+            handler.onResult(item, response, error, duration);
+        } catch (RuntimeException e) {
+            LOGGER.warn(String.format("Result handler failed for %s: %s", item, e.getMessage()), e);
+        }
+    }
+}
@@ -2,13 +2,23 @@ package de.fraunhofer.isst.ids.framework.communication.broker;
 
 import de.fraunhofer.iais.eis.*;
 import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+import de.fraunhofer.isst.ids.framework.configuration.SerializedSelfDescription;
 import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+import okhttp3.MediaType;
 import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
 
 /**
  * The MessageUtils class contains utility methods for building Infomodel Messages (used by the {@link IDSBrokerServiceImpl} class)
@@ -19,6 +29,16 @@ public class BrokerIDSMessageUtils {
 
     private static final Serializer SERIALIZER = new Serializer();
 
+    /**
+     * Templates are built again this long before their DAT expires
+     */
+    static final Duration TEMPLATE_EXPIRY_MARGIN = Duration.ofSeconds(30);
+
+    /**
+     * Max age of a template (and of the issued time of its messages), also used if the expiry of the DAT is unknown
+     */
+    static final Duration MAX_TEMPLATE_AGE = Duration.ofMinutes(5);
+
     /**
      * Create a ResourceUnavailableMessage used for unregistering the given resource at a broker
      *
@@ -63,6 +83,78 @@ public class BrokerIDSMessageUtils {
         return SERIALIZER.serialize(msg);
     }
 
+    /**
+     * Create a template of ResourceUpdateMessages, used for registering and updating many resources at a broker
+     *
+     * @param securityToken the DAT Token used for all messages of the template
+     * @param INFO_MODEL_VERSION the Infomodel Version of the connector
+     * @param connectorID the ID of the connector
+     * @return the template of the {@link ResourceUpdateMessage}s
+     * @throws IOException when the message cannot be serialized properly
+     */
+    static HeaderTemplate buildResourceUpdateMessageTemplate(DynamicAttributeToken securityToken, String INFO_MODEL_VERSION, URI connectorID) throws IOException {
+        var msg = new ResourceUpdateMessageBuilder(HeaderTemplate.MESSAGE_ID_PLACEHOLDER)
+                ._affectedResource_(HeaderTemplate.RESOURCE_PLACEHOLDER)
+                ._securityToken_(securityToken)
+                ._issued_(IDSUtils.getGregorianNow())
+                ._senderAgent_(connectorID)
+                ._issuerConnector_(connectorID)
+                ._modelVersion_(INFO_MODEL_VERSION)
+                .build();
+        return new HeaderTemplate(SERIALIZER.serialize(msg), "https://w3id.org/idsa/autogen/resourceUpdateMessage/",
+                templateExpiry(securityToken, Instant.now()));
+    }
+
+    /**
+     * Create a template of ResourceUnavailableMessages, used for unregistering many resources at a broker
+     *
+     * @param securityToken the DAT Token used for all messages of the template
+     * @param INFO_MODEL_VERSION the Infomodel Version of the connector
+     * @param connectorID the ID of the connector
+     * @return the template of the {@link ResourceUnavailableMessage}s
+     * @throws IOException when the message cannot be serialized properly
+     */
+    static HeaderTemplate buildResourceUnavailableMessageTemplate(DynamicAttributeToken securityToken, String INFO_MODEL_VERSION, URI connectorID) throws IOException {
+        var msg = new ResourceUnavailableMessageBuilder(HeaderTemplate.MESSAGE_ID_PLACEHOLDER)
+                ._affectedResource_(HeaderTemplate.RESOURCE_PLACEHOLDER)
+                ._securityToken_(securityToken)
+                ._issued_(IDSUtils.getGregorianNow())
+                ._senderAgent_(connectorID)
+                ._issuerConnector_(connectorID)
+                ._modelVersion_(INFO_MODEL_VERSION)
+                .build();
+        return new HeaderTemplate(SERIALIZER.serialize(msg), "https://w3id.org/idsa/autogen/resourceUnavailableMessage/",
+                templateExpiry(securityToken, Instant.now()));
+    }
+
+    /**
+     * Get the time a template built now with the given DAT expires: {@link #TEMPLATE_EXPIRY_MARGIN} before the DAT
+     * expires (read from the exp claim of the JWT, the signature is not checked), at the latest after
+     * {@link #MAX_TEMPLATE_AGE}
+     *
+     * @param securityToken the DAT of the template
+     * @param now the current time
+     * @return the expiry of the template
+     */
+    static Instant templateExpiry(DynamicAttributeToken securityToken, Instant now) {
+        var expiry = now.plus(MAX_TEMPLATE_AGE);
+        var tokenValue = securityToken == null ? null : securityToken.getTokenValue();
+        var parts = tokenValue == null ? new String[0] : tokenValue.split("\\.");
+        if (parts.length < 2) {
+            return expiry;
+        }
+        try {
+            var claims = new JSONObject(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+            if (claims.has("exp")) {
+                var tokenExpiry = Instant.ofEpochSecond(claims.getLong("exp")).minus(TEMPLATE_EXPIRY_MARGIN);
+                return tokenExpiry.isBefore(expiry) ? tokenExpiry : expiry;
+            }
+        } catch (IllegalArgumentException | JSONException e) {
+            LOGGER.debug(String.format("Could not read the expiry of the DAT: %s", e.getMessage()));
+        }
+        return expiry;
+    }
+
     /**
      * Create a ConnectorUnavailableMessage used for unregistering the connector at a broker
      *
@@ -147,4 +239,35 @@ public class BrokerIDSMessageUtils {
         return builder.build();
     }
 
+    /**
+     * Generates a two part multipart message. First part includes the message type (register, update, unavailable) and
+     * second part contains the pre-serialized connector self declaration, which is written without being copied.
+     *
+     * @param header          String representation of the header message
+     * @param selfDescription the serialized self description of the connector
+     * @return Two part multipart message containing the message header and self declaration as body
+     */
+    public static MultipartBody buildRequestBody(String header, SerializedSelfDescription selfDescription) {
+        var builder = new MultipartBody.Builder();
+        builder.setType(MultipartBody.FORM);
+        builder.addFormDataPart("header", header);
+        builder.addFormDataPart("payload", null, new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return null;
+            }
+
+            @Override
+            public long contentLength() {
+                return selfDescription.getLength();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                sink.write(selfDescription.getBytes());
+            }
+        });
+        return builder.build();
+    }
+
 }
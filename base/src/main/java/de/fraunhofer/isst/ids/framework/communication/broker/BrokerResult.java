@@ -0,0 +1,72 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Outcome of a message sent to one broker by a fan-out of the {@link IDSBrokerService}: either the (buffered) response
+ * of the broker or the error why the message could not be sent
+ */
+public final class BrokerResult {
+
+    private final String brokerUri;
+    private final Response response;
+    private final IOException error;
+    private final Duration duration;
+
+    /**
+     * @param brokerUri URI of the broker
+     * @param response the buffered response of the broker, null if the message could not be sent
+     * @param error the error, null if the broker responded
+     * @param duration time until the broker responded or the call failed
+     */
+    BrokerResult(String brokerUri, Response response, IOException error, Duration duration) {
+        this.brokerUri = brokerUri;
+        this.response = response;
+        this.error = error;
+        this.duration = duration;
+    }
+
+    /**
+     * @return URI of the broker
+     */
+    public String getBrokerUri() {
+        return brokerUri;
+    }
+
+    /**
+     * @return true if the broker responded with a successful response code
+     */
+    public boolean isSuccess() {
+        return response != null && response.isSuccessful();
+    }
+
+    /**
+     * @return the response of the broker (its body is buffered, closing it is not necessary), null if the message could not be sent
+     */
+    public Response getResponse() {
+        return response;
+    }
+
+    /**
+     * @return the error why the message could not be sent (connection problem, timeout), null if the broker responded
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * @return time until the broker responded or the call failed
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BrokerResult[broker=%s, %s, duration=%s]", brokerUri,
+                response != null ? "code=" + response.code() : "error=" + error, duration);
+    }
+}
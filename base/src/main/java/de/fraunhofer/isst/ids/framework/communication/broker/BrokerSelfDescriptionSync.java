@@ -0,0 +1,385 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import de.fraunhofer.iais.eis.Connector;
+import de.fraunhofer.iais.eis.Resource;
+import de.fraunhofer.iais.eis.ResourceBuilder;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the self-description of the connector in sync with brokers, sending only what changed since the last
+ * successful sync to a broker:
+ * <ul>
+ *     <li>nothing, if the content hash of the self-description is unchanged</li>
+ *     <li>a ConnectorUpdateMessage with the complete self-description on the first sync, or if the connector
+ *     metadata (everything but the offered resources) changed</li>
+ *     <li>ResourceUpdateMessages for added and changed resources and ResourceUnavailableMessages for removed resources
+ *     otherwise</li>
+ * </ul>
+ * The sync state (content hashes per broker and resource) is persisted as JSON to the file configured with
+ * broker.sync.state-file, so restarts do not trigger full updates. Without the property the state is kept in memory.
+ */
+@Service
+public class BrokerSelfDescriptionSync {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrokerSelfDescriptionSync.class);
+
+    private static final String RESOURCE_CATALOG = "ids:resourceCatalog";
+    private static final String OFFERED_RESOURCE = "ids:offeredResource";
+    private static final int MAX_CONCURRENCY = 8;
+
+    private static final String CONTENT_KEY = "contentHash";
+    private static final String METADATA_KEY = "metadataHash";
+    private static final String RESOURCES_KEY = "resourceHashes";
+
+    private final IDSBrokerService brokerService;
+    private final ConfigurationContainer container;
+    private final Path stateFile;
+    private final Map<String, SyncState> states = new ConcurrentHashMap<>();
+
+    /**
+     * @param brokerService the {@link IDSBrokerService} sending the messages
+     * @param container the {@link ConfigurationContainer} providing the self-description
+     * @param stateFile file the sync state is persisted to (empty = state is kept in memory)
+     */
+    public BrokerSelfDescriptionSync(IDSBrokerService brokerService, ConfigurationContainer container,
+                                     @Value("${broker.sync.state-file:}") String stateFile) {
+        this.brokerService = brokerService;
+        this.container = container;
+        this.stateFile = stateFile == null || stateFile.isBlank() ? null : Paths.get(stateFile);
+        loadState();
+    }
+
+    /**
+     * Send the changes of the self-description since the last successful sync to the broker. Resources the broker
+     * did not accept are sent again by the next sync.
+     *
+     * @param brokerURI URI of the broker
+     * @return the outcome of the sync
+     * @throws IOException if the self-description cannot be serialized or the messages cannot be built
+     */
+    public synchronized BrokerSyncResult sync(String brokerURI) throws IOException {
+        //resources and hashes are taken from the same self-description, even if the configuration is replaced meanwhile
+        var selfDescription = container.getSelfDescription();
+        var resources = offeredResources(selfDescription.getConnector());
+        var state = states.get(brokerURI);
+        if (state != null && selfDescription.getContentHash().equals(state.contentHash)) {
+            LOGGER.debug(String.format("Self-description at %s is up to date", brokerURI));
+            return new BrokerSyncResult(brokerURI, BrokerSyncResult.Type.UNCHANGED, 0, 0, 0);
+        }
+        var snapshot = Snapshot.parse(selfDescription.getJson());
+        if (state == null || !snapshot.metadataHash.equals(state.metadataHash)) {
+            return fullSync(brokerURI, selfDescription.getContentHash(), snapshot);
+        }
+
+        var updated = new ArrayList<Resource>();
+        var complete = true;
+        for (var entry : snapshot.resourceHashes.entrySet()) {
+            if (!entry.getValue().equals(state.resourceHashes.get(entry.getKey()))) {
+                var resource = resources.get(entry.getKey());
+                if (resource != null) {
+                    updated.add(resource);
+                } else {
+                    //resource is in the JsonLD but not in the connector (e.g. no id), the next sync tries again
+                    complete = false;
+                }
+            }
+        }
+        var removed = new ArrayList<Resource>();
+        for (var id : state.resourceHashes.keySet()) {
+            if (!snapshot.resourceHashes.containsKey(id)) {
+                removed.add(new ResourceBuilder(URI.create(id)).build());
+            }
+        }
+        LOGGER.info(String.format("Syncing %d changed and %d removed resources to %s", updated.size(), removed.size(), brokerURI));
+
+        var resourceHashes = new HashMap<>(state.resourceHashes);
+        var failed = 0;
+        if (!updated.isEmpty()) {
+            var result = brokerService.updateResourcesAtBroker(brokerURI, updated.stream(), MAX_CONCURRENCY, null).join();
+            for (var resource : updated) {
+                if (!result.getFailures().containsKey(resource.getId())) {
+                    var id = resource.getId().toString();
+                    resourceHashes.put(id, snapshot.resourceHashes.get(id));
+                }
+            }
+            failed += result.getFailures().size();
+        }
+        if (!removed.isEmpty()) {
+            var result = brokerService.removeResourcesFromBroker(brokerURI, removed.stream(), MAX_CONCURRENCY, null).join();
+            for (var resource : removed) {
+                if (!result.getFailures().containsKey(resource.getId())) {
+                    resourceHashes.remove(resource.getId().toString());
+                }
+            }
+            failed += result.getFailures().size();
+        }
+        //without the content hash the next sync diffs the resources again
+        var contentHash = failed == 0 && complete ? selfDescription.getContentHash() : null;
+        states.put(brokerURI, new SyncState(contentHash, snapshot.metadataHash, resourceHashes));
+        saveState();
+        var syncResult = new BrokerSyncResult(brokerURI, BrokerSyncResult.Type.INCREMENTAL, updated.size(), removed.size(), failed);
+        LOGGER.info(String.format("Synced self-description to %s: %s", brokerURI, syncResult));
+        return syncResult;
+    }
+
+    /**
+     * Forget the sync state of a broker (e.g. after unregistering at the broker), the next sync sends the complete
+     * self-description
+     *
+     * @param brokerURI URI of the broker
+     */
+    public synchronized void reset(String brokerURI) {
+        if (states.remove(brokerURI) != null) {
+            saveState();
+        }
+    }
+
+    /**
+     * Send the complete self-description to the broker
+     *
+     * @param brokerURI URI of the broker
+     * @param contentHash content hash of the self-description
+     * @param snapshot hashes of the self-description
+     * @return the outcome of the sync
+     * @throws IOException if the message cannot be built
+     */
+    private BrokerSyncResult fullSync(String brokerURI, String contentHash, Snapshot snapshot) throws IOException {
+        LOGGER.info(String.format("Sending complete self-description to %s", brokerURI));
+        var success = false;
+        try (var response = brokerService.updateSelfDescriptionAtBroker(brokerURI)) {
+            success = response.isSuccessful();
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Connection to Broker %s failed: %s", brokerURI, e.getMessage()));
+        }
+        if (success) {
+            states.put(brokerURI, new SyncState(contentHash, snapshot.metadataHash, snapshot.resourceHashes));
+            saveState();
+        }
+        return new BrokerSyncResult(brokerURI, BrokerSyncResult.Type.FULL, snapshot.resourceHashes.size(), 0, success ? 0 : 1);
+    }
+
+    /**
+     * @param connector the connector of the self-description
+     * @return the offered resources of the connector by id
+     */
+    private static Map<String, Resource> offeredResources(Connector connector) {
+        var resources = new HashMap<String, Resource>();
+        var catalogs = connector == null ? null : connector.getResourceCatalog();
+        if (catalogs == null) {
+            return resources;
+        }
+        for (var catalog : catalogs) {
+            if (catalog.getOfferedResource() != null) {
+                for (var resource : catalog.getOfferedResource()) {
+                    if (resource.getId() == null) {
+                        continue;
+                    }
+                    resources.put(resource.getId().toString(), resource);
+                }
+            }
+        }
+        return resources;
+    }
+
+    /**
+     * Load the persisted sync state, a missing or unreadable file results in an empty state
+     */
+    private void loadState() {
+        if (stateFile == null || !Files.exists(stateFile)) {
+            return;
+        }
+        try {
+            var brokers = new JSONObject(Files.readString(stateFile, StandardCharsets.UTF_8));
+            for (var broker : brokers.keySet()) {
+                var state = brokers.getJSONObject(broker);
+                var resourceHashes = new HashMap<String, String>();
+                var resources = state.optJSONObject(RESOURCES_KEY);
+                if (resources != null) {
+                    for (var resource : resources.keySet()) {
+                        resourceHashes.put(resource, resources.getString(resource));
+                    }
+                }
+                states.put(broker, new SyncState(state.optString(CONTENT_KEY, null), state.getString(METADATA_KEY), resourceHashes));
+            }
+        } catch (IOException | JSONException e) {
+            LOGGER.warn(String.format("Could not read broker sync state from %s, brokers are fully synced: %s", stateFile, e.getMessage()));
+            states.clear();
+            return;
+        }
+        LOGGER.info(String.format("Loaded broker sync state of %d brokers from %s", states.size(), stateFile));
+    }
+
+    /**
+     * Persist the sync state, the file is replaced atomically
+     */
+    private void saveState() {
+        if (stateFile == null) {
+            return;
+        }
+        var brokers = new JSONObject();
+        for (var entry : states.entrySet()) {
+            var state = entry.getValue();
+            var json = new JSONObject();
+            if (state.contentHash != null) {
+                json.put(CONTENT_KEY, state.contentHash);
+            }
+            json.put(METADATA_KEY, state.metadataHash);
+            json.put(RESOURCES_KEY, new JSONObject(state.resourceHashes));
+            brokers.put(entry.getKey(), json);
+        }
+        try {
+            var parent = stateFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            var tmp = Files.createTempFile(parent, stateFile.getFileName().toString(), ".tmp");
+            Files.writeString(tmp, brokers.toString(), StandardCharsets.UTF_8);
+            Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Could not persist broker sync state to %s: %s", stateFile, e.getMessage()));
+        }
+    }
+
+    /**
+     * Sync state of a broker: hashes of the last successfully synced self-description
+     */
+    private static final class SyncState {
+        private final String contentHash;
+        private final String metadataHash;
+        private final Map<String, String> resourceHashes;
+
+        /**
+         * @param contentHash content hash of the self-description, null if resources are missing at the broker
+         * @param metadataHash hash of the self-description without the offered resources
+         * @param resourceHashes hashes of the resources known by the broker
+         */
+        SyncState(String contentHash, String metadataHash, Map<String, String> resourceHashes) {
+            this.contentHash = contentHash;
+            this.metadataHash = metadataHash;
+            this.resourceHashes = Map.copyOf(resourceHashes);
+        }
+    }
+
+    /**
+     * Hashes of a self-description: one hash of the connector metadata (everything but the offered resources) and
+     * one hash per offered resource. Hashes are computed over a canonical form of the JsonLD (sorted keys), so they
+     * do not depend on the order of properties.
+     */
+    private static final class Snapshot {
+        private final String metadataHash;
+        private final Map<String, String> resourceHashes;
+
+        private Snapshot(String metadataHash, Map<String, String> resourceHashes) {
+            this.metadataHash = metadataHash;
+            this.resourceHashes = resourceHashes;
+        }
+
+        /**
+         * @param json the JsonLD self-description
+         * @return the hashes of the self-description
+         * @throws IOException if the self-description is no valid JSON
+         */
+        static Snapshot parse(String json) throws IOException {
+            JSONObject connector;
+            try {
+                connector = new JSONObject(json);
+            } catch (JSONException e) {
+                throw new IOException("Self-description is no valid JSON", e);
+            }
+            var resourceHashes = new HashMap<String, String>();
+            for (var catalog : asList(connector.opt(RESOURCE_CATALOG))) {
+                if (catalog instanceof JSONObject) {
+                    for (var resource : asList(((JSONObject) catalog).remove(OFFERED_RESOURCE))) {
+                        var id = resource instanceof JSONObject ? ((JSONObject) resource).optString("@id", null) : String.valueOf(resource);
+                        if (id != null) {
+                            resourceHashes.put(id, hash(resource));
+                        }
+                    }
+                }
+            }
+            //offered resources were removed from the catalogs, the rest is the connector metadata
+            return new Snapshot(hash(connector), resourceHashes);
+        }
+
+        /**
+         * @param value a JSON value, an array or null
+         * @return the elements of the array, the value itself or an empty list
+         */
+        private static List<Object> asList(Object value) {
+            var list = new ArrayList<>();
+            if (value instanceof JSONArray) {
+                ((JSONArray) value).forEach(list::add);
+            } else if (value != null) {
+                list.add(value);
+            }
+            return list;
+        }
+
+        /**
+         * @param value a JSON value
+         * @return Base64 encoded SHA-256 hash of the canonical form of the value
+         */
+        private static String hash(Object value) {
+            var canonical = new StringBuilder();
+            canonicalize(value, canonical);
+            return IDSUtils.sha256(canonical.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Write the canonical form of a JSON value: objects with sorted keys, no whitespace
+         *
+         * @param value a JSON value
+         * @param out the canonical form is appended here
+         */
+        private static void canonicalize(Object value, StringBuilder out) {
+            if (value instanceof JSONObject) {
+                var object = (JSONObject) value;
+                out.append('{');
+                var first = true;
+                for (var key : new TreeSet<>(object.keySet())) {
+                    if (!first) {
+                        out.append(',');
+                    }
+                    first = false;
+                    out.append(JSONObject.quote(key)).append(':');
+                    canonicalize(object.get(key), out);
+                }
+                out.append('}');
+            } else if (value instanceof JSONArray) {
+                out.append('[');
+                var array = (JSONArray) value;
+                for (int i = 0; i < array.length(); i++) {
+                    if (i > 0) {
+                        out.append(',');
+                    }
+                    canonicalize(array.get(i), out);
+                }
+                out.append(']');
+            } else if (value instanceof String) {
+                out.append(JSONObject.quote((String) value));
+            } else {
+                out.append(value);
+            }
+        }
+    }
+}
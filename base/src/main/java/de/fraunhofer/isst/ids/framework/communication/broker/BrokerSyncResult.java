@@ -0,0 +1,93 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+/**
+ * Outcome of a self-description sync to a broker, see {@link BrokerSelfDescriptionSync}
+ */
+public final class BrokerSyncResult {
+
+    /**
+     * What the sync sent to the broker
+     */
+    public enum Type {
+        /**
+         * the self-description did not change since the last successful sync, nothing was sent
+         */
+        UNCHANGED,
+        /**
+         * the complete self-description was sent (first sync or the connector metadata changed)
+         */
+        FULL,
+        /**
+         * only messages for added, changed and removed resources were sent
+         */
+        INCREMENTAL
+    }
+
+    private final String brokerUri;
+    private final Type type;
+    private final int updated;
+    private final int removed;
+    private final int failed;
+
+    /**
+     * @param brokerUri URI of the broker
+     * @param type what the sync sent to the broker
+     * @param updated number of resources sent with ResourceUpdateMessages (or the number of resources of a full update)
+     * @param removed number of resources sent with ResourceUnavailableMessages
+     * @param failed number of messages the broker did not accept
+     */
+    BrokerSyncResult(String brokerUri, Type type, int updated, int removed, int failed) {
+        this.brokerUri = brokerUri;
+        this.type = type;
+        this.updated = updated;
+        this.removed = removed;
+        this.failed = failed;
+    }
+
+    /**
+     * @return URI of the broker
+     */
+    public String getBrokerUri() {
+        return brokerUri;
+    }
+
+    /**
+     * @return what the sync sent to the broker
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return number of resources sent with ResourceUpdateMessages (or the number of resources of a full update)
+     */
+    public int getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return number of resources sent with ResourceUnavailableMessages
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return number of messages the broker did not accept (they are sent again by the next sync)
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return true if the broker accepted all messages
+     */
+    public boolean isSuccess() {
+        return failed == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BrokerSyncResult[broker=%s, type=%s, updated=%d, removed=%d, failed=%d]", brokerUri, type, updated, removed, failed);
+    }
+}
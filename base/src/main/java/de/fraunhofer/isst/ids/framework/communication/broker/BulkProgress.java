@@ -0,0 +1,73 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Progress of a bulk operation of the {@link IDSBrokerService}, reported after every processed resource
+ */
+public final class BulkProgress {
+
+    private final URI resourceId;
+    private final BrokerResult result;
+    private final long completed;
+    private final long failed;
+    private final Duration elapsed;
+
+    /**
+     * @param resourceId id of the processed resource
+     * @param result outcome of the message for the resource
+     * @param completed number of processed resources (including failed ones)
+     * @param failed number of failed resources
+     * @param elapsed time since the operation started
+     */
+    BulkProgress(URI resourceId, BrokerResult result, long completed, long failed, Duration elapsed) {
+        this.resourceId = resourceId;
+        this.result = result;
+        this.completed = completed;
+        this.failed = failed;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return id of the processed resource
+     */
+    public URI getResourceId() {
+        return resourceId;
+    }
+
+    /**
+     * @return outcome of the message for the resource
+     */
+    public BrokerResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return number of processed resources (including failed ones)
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return number of failed resources
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return time since the operation started
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return processed resources per second
+     */
+    public double getThroughput() {
+        return BulkResult.throughput(completed, elapsed);
+    }
+}
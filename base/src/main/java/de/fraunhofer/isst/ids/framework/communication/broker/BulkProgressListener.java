@@ -0,0 +1,14 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+/**
+ * Listener for the progress of bulk operations of the {@link IDSBrokerService}. Called from the threads of the
+ * HTTP client after every processed resource, so implementations should return quickly.
+ */
+@FunctionalInterface
+public interface BulkProgressListener {
+
+    /**
+     * @param progress the progress after processing a resource
+     */
+    void onProgress(BulkProgress progress);
+}
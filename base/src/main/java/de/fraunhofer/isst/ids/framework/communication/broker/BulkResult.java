@@ -0,0 +1,76 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Summary of a finished bulk operation of the {@link IDSBrokerService}
+ */
+public final class BulkResult {
+
+    private final long completed;
+    private final Map<URI, BrokerResult> failures;
+    private final Duration elapsed;
+
+    /**
+     * @param completed number of processed resources (including failed ones)
+     * @param failures outcome of every failed resource by resource id
+     * @param elapsed duration of the operation
+     */
+    BulkResult(long completed, Map<URI, BrokerResult> failures, Duration elapsed) {
+        this.completed = completed;
+        this.failures = Map.copyOf(failures);
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return number of processed resources (including failed ones)
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return number of resources the broker accepted
+     */
+    public long getSucceeded() {
+        return completed - failures.size();
+    }
+
+    /**
+     * @return outcome of every failed resource (connection problems, timeouts, unsuccessful responses) by resource id
+     */
+    public Map<URI, BrokerResult> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return duration of the operation
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return processed resources per second
+     */
+    public double getThroughput() {
+        return throughput(completed, elapsed);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BulkResult[completed=%d, failed=%d, elapsed=%s, throughput=%.1f/s]", completed, failures.size(), elapsed, getThroughput());
+    }
+
+    /**
+     * @param completed number of processed resources
+     * @param elapsed time since the operation started
+     * @return processed resources per second
+     */
+    static double throughput(long completed, Duration elapsed) {
+        var seconds = elapsed.toNanos() / 1e9;
+        return seconds > 0 ? completed / seconds : 0;
+    }
+}
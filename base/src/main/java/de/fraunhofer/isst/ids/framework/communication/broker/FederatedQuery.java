@@ -0,0 +1,261 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import de.fraunhofer.isst.ids.framework.communication.http.UnexpectedResponseCodeException;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A query sent to several brokers at once. Responses are read with a {@link QueryResultReader} while they arrive,
+ * results are deduplicated by the value of their first column (the resource or connector URI) and passed to the
+ * listener. The query has one deadline, counted from its start: calls still running then are cancelled and their
+ * brokers are listed as failed. Results a broker returned before it failed were already passed to the listener,
+ * only its remaining results are lost.
+ */
+final class FederatedQuery {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FederatedQuery.class);
+
+    private final OkHttpClient client;
+    private final List<String> brokerUris;
+    private final RequestBody body;
+    private final Duration deadline;
+    private final QueryResultListener listener;
+
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final Set<String> finished = ConcurrentHashMap.newKeySet();
+    private final Set<Call> calls = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> resultsPerBroker = new ConcurrentHashMap<>();
+    private final Map<String, IOException> failures = new ConcurrentHashMap<>();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicInteger pending;
+    private final CompletableFuture<FederatedQueryResult> result = new CompletableFuture<>();
+    private volatile List<String> variables;
+    private long start;
+
+    /**
+     * @param client the client sending the queries
+     * @param brokerUris URIs of the queried brokers
+     * @param body the QueryMessage, sent to every broker
+     * @param deadline max duration of the query
+     * @param listener receives the distinct results (may be null)
+     */
+    FederatedQuery(OkHttpClient client, List<String> brokerUris, RequestBody body, Duration deadline, QueryResultListener listener) {
+        this.client = client;
+        this.brokerUris = brokerUris;
+        this.body = body;
+        this.deadline = deadline;
+        this.listener = listener;
+        this.pending = new AtomicInteger(brokerUris.size());
+    }
+
+    /**
+     * Send the query to all brokers
+     *
+     * @return future of the summary, completed when all brokers answered or failed (at the latest at the deadline)
+     */
+    CompletableFuture<FederatedQueryResult> start() {
+        start = System.nanoTime();
+        if (brokerUris.isEmpty()) {
+            complete();
+            return result;
+        }
+        CompletableFuture.delayedExecutor(deadline.toNanos(), TimeUnit.NANOSECONDS).execute(this::expire);
+        for (var brokerUri : brokerUris) {
+            Call call;
+            try {
+                call = client.newCall(new Request.Builder().url(brokerUri).post(body).build());
+            } catch (IllegalArgumentException e) {
+                failed(brokerUri, new IOException(String.format("Invalid broker URI %s", brokerUri), e));
+                continue;
+            }
+            calls.add(call);
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    calls.remove(call);
+                    failed(brokerUri, e);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    try {
+                        read(brokerUri, response);
+                    } finally {
+                        calls.remove(call);
+                    }
+                }
+            });
+        }
+        //the deadline may have passed while the calls were created
+        if (result.isDone()) {
+            calls.forEach(Call::cancel);
+        }
+        return result;
+    }
+
+    /**
+     * Read the results of a broker and pass the new ones to the listener
+     *
+     * @param brokerUri URI of the broker
+     * @param response the response of the broker
+     */
+    private void read(String brokerUri, Response response) {
+        var count = 0L;
+        try (response) {
+            if (!response.isSuccessful()) {
+                throw new UnexpectedResponseCodeException(response.code(), String.format("Broker answered with response code %d", response.code()));
+            }
+            try (var reader = QueryResultReader.open(response)) {
+                if (variables == null) {
+                    variables = reader.getVariables();
+                }
+                List<String> row;
+                while ((row = reader.nextRow()) != null) {
+                    if (!emit(brokerUri, row)) {
+                        throw new InterruptedIOException("Deadline of the query expired");
+                    }
+                    count++;
+                }
+            }
+            LOGGER.debug(String.format("Read %d results from %s", count, brokerUri));
+        } catch (IOException e) {
+            failed(brokerUri, count, e);
+            return;
+        } catch (RuntimeException e) {
+            //e.g. a malformed response the reader cannot handle
+            failed(brokerUri, count, new IOException(String.format("Could not read the response of %s", brokerUri), e));
+            return;
+        }
+        succeeded(brokerUri, count);
+    }
+
+    /**
+     * Pass a result to the listener, unless another broker returned it before
+     *
+     * @param brokerUri URI of the broker
+     * @param row the result
+     * @return false if the query is already completed and the result was not passed on
+     */
+    private synchronized boolean emit(String brokerUri, List<String> row) {
+        if (result.isDone()) {
+            return false;
+        }
+        if (!seen.add(QueryResultReader.valueOf(row.get(0)))) {
+            duplicates.incrementAndGet();
+            return true;
+        }
+        if (listener != null) {
+            try {
+                listener.onResult(brokerUri, row);
+            } catch (RuntimeException e) {
+                LOGGER.warn(String.format("Query result listener failed for a result of %s: %s", brokerUri, e.getMessage()), e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param brokerUri URI of a broker which could not be queried
+     * @param error the error
+     */
+    private void failed(String brokerUri, IOException error) {
+        failed(brokerUri, 0, error);
+    }
+
+    /**
+     * @param brokerUri URI of a broker which answered completely
+     * @param count number of results read from the broker
+     */
+    private synchronized void succeeded(String brokerUri, long count) {
+        if (result.isDone()) {
+            //the broker was already listed as failed when the deadline expired
+            return;
+        }
+        resultsPerBroker.put(brokerUri, count);
+        done(brokerUri);
+    }
+
+    /**
+     * @param brokerUri URI of a broker which failed or missed the deadline
+     * @param count number of results read from the broker before it failed (already passed to the listener)
+     * @param error the error
+     */
+    private synchronized void failed(String brokerUri, long count, IOException error) {
+        if (result.isDone()) {
+            //the broker was already listed as failed when the deadline expired
+            return;
+        }
+        if (error instanceof InterruptedIOException) {
+            LOGGER.warn(String.format("Broker %s missed the deadline of the query after %d results", brokerUri, count));
+        } else {
+            LOGGER.warn(String.format("Query to Broker %s failed after %d results: %s", brokerUri, count, error.getMessage()));
+        }
+        if (count > 0) {
+            resultsPerBroker.put(brokerUri, count);
+        }
+        failures.put(brokerUri, error);
+        done(brokerUri);
+    }
+
+    /**
+     * Complete the query after the last broker answered or failed
+     *
+     * @param brokerUri URI of the broker which answered or failed
+     */
+    private void done(String brokerUri) {
+        finished.add(brokerUri);
+        if (pending.decrementAndGet() == 0) {
+            complete();
+        }
+    }
+
+    /**
+     * Cancel the calls still running at the deadline and complete the query, listing their brokers as failed
+     */
+    private void expire() {
+        synchronized (this) {
+            if (result.isDone()) {
+                return;
+            }
+            for (var brokerUri : brokerUris) {
+                if (!finished.contains(brokerUri)) {
+                    LOGGER.warn(String.format("Broker %s missed the deadline of the query", brokerUri));
+                    failures.put(brokerUri, new InterruptedIOException(String.format("Broker missed the deadline of %s", deadline)));
+                }
+            }
+            complete();
+        }
+        calls.forEach(Call::cancel);
+    }
+
+    /**
+     * Complete the future with the summary
+     */
+    private synchronized void complete() {
+        if (result.isDone()) {
+            return;
+        }
+        var summary = new FederatedQueryResult(variables == null ? List.of() : variables, seen.size(), duplicates.get(),
+                resultsPerBroker, failures, Duration.ofNanos(System.nanoTime() - start));
+        LOGGER.info(String.format("Federated query finished: %s", summary));
+        result.complete(summary);
+    }
+}
@@ -0,0 +1,96 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary of a federated query of the {@link IDSBrokerService}, the results themselves are passed to the
+ * {@link QueryResultListener} while they arrive
+ */
+public final class FederatedQueryResult {
+
+    private final List<String> variables;
+    private final long resultCount;
+    private final long duplicateCount;
+    private final Map<String, Long> resultsPerBroker;
+    private final Map<String, IOException> failures;
+    private final Duration elapsed;
+
+    /**
+     * @param variables variables of the results (of the first broker that answered)
+     * @param resultCount number of distinct results
+     * @param duplicateCount number of results dropped as duplicates
+     * @param resultsPerBroker number of results read from every broker (including duplicates and the results of
+     * brokers which failed later)
+     * @param failures errors of brokers which failed or missed the deadline
+     * @param elapsed duration of the query
+     */
+    FederatedQueryResult(List<String> variables, long resultCount, long duplicateCount, Map<String, Long> resultsPerBroker,
+                         Map<String, IOException> failures, Duration elapsed) {
+        this.variables = variables;
+        this.resultCount = resultCount;
+        this.duplicateCount = duplicateCount;
+        this.resultsPerBroker = Map.copyOf(resultsPerBroker);
+        this.failures = Map.copyOf(failures);
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return variables of the results (of the first broker that answered), empty if no broker answered
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return number of distinct results passed to the listener
+     */
+    public long getResultCount() {
+        return resultCount;
+    }
+
+    /**
+     * @return number of results dropped because another broker returned them first
+     */
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * @return number of results read from every broker (including duplicates), also listing the brokers which
+     * returned results before they failed
+     */
+    public Map<String, Long> getResultsPerBroker() {
+        return resultsPerBroker;
+    }
+
+    /**
+     * @return errors of the brokers which could not be queried, answered unsuccessfully or missed the deadline
+     * (results read from a broker before it failed are still passed to the listener)
+     */
+    public Map<String, IOException> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return duration of the query
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FederatedQueryResult[results=%d, duplicates=%d, brokers=%d, failed=%d, elapsed=%s]",
+                resultCount, duplicateCount, brokerCount(), failures.size(), elapsed);
+    }
+
+    /**
+     * @return number of brokers which answered or failed
+     */
+    private long brokerCount() {
+        return resultsPerBroker.keySet().stream().filter(broker -> !failures.containsKey(broker)).count() + failures.size();
+    }
+}
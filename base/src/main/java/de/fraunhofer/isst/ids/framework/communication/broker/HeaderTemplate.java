@@ -0,0 +1,81 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * Pre-serialized message header with placeholders for the message id and the affected resource. Rendering a header
+ * for a resource only concatenates the template parts, the message itself is serialized once and only serialized
+ * again (with a new DAT and issued time) when the template expires.
+ */
+final class HeaderTemplate {
+
+    static final URI MESSAGE_ID_PLACEHOLDER = URI.create("urn:ids-framework:placeholder:message-id");
+    static final URI RESOURCE_PLACEHOLDER = URI.create("urn:ids-framework:placeholder:affected-resource");
+
+    private final String[] parts;
+    private final boolean[] isMessageId;
+    private final String messageIdPrefix;
+    private final Instant expiresAt;
+
+    /**
+     * @param serialized the serialized header, containing the placeholders
+     * @param messageIdPrefix prefix of the generated message ids (followed by a random UUID)
+     * @param expiresAt time from which the template must not be rendered anymore (e.g. shortly before its DAT expires)
+     */
+    HeaderTemplate(String serialized, String messageIdPrefix, Instant expiresAt) {
+        this.messageIdPrefix = messageIdPrefix;
+        this.expiresAt = expiresAt;
+        var messageId = MESSAGE_ID_PLACEHOLDER.toString();
+        var resource = RESOURCE_PLACEHOLDER.toString();
+        var partList = new ArrayList<String>();
+        var markers = new ArrayList<Boolean>();
+        var index = 0;
+        while (true) {
+            var nextId = serialized.indexOf(messageId, index);
+            var nextResource = serialized.indexOf(resource, index);
+            if (nextId < 0 && nextResource < 0) {
+                break;
+            }
+            var idFirst = nextResource < 0 || (nextId >= 0 && nextId < nextResource);
+            var next = idFirst ? nextId : nextResource;
+            partList.add(serialized.substring(index, next));
+            markers.add(idFirst);
+            index = next + (idFirst ? messageId.length() : resource.length());
+        }
+        partList.add(serialized.substring(index));
+        this.parts = partList.toArray(new String[0]);
+        this.isMessageId = new boolean[markers.size()];
+        for (int i = 0; i < markers.size(); i++) {
+            isMessageId[i] = markers.get(i);
+        }
+    }
+
+    /**
+     * @param now the current time
+     * @return true if the template must be built again before rendering the next header
+     */
+    boolean isExpired(Instant now) {
+        return !now.isBefore(expiresAt);
+    }
+
+    /**
+     * Render the header for a resource
+     *
+     * @param resourceId the id of the affected resource
+     * @return the serialized header with a new message id and the given affected resource
+     */
+    String render(URI resourceId) {
+        var messageId = messageIdPrefix + UUID.randomUUID();
+        var resource = resourceId.toString();
+        var builder = new StringBuilder(parts[0].length() * 2 + 128);
+        builder.append(parts[0]);
+        for (int i = 0; i < isMessageId.length; i++) {
+            builder.append(isMessageId[i] ? messageId : resource);
+            builder.append(parts[i + 1]);
+        }
+        return builder.toString();
+    }
+}
@@ -7,10 +7,16 @@ import de.fraunhofer.iais.eis.Resource;
 import okhttp3.Response;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * Interface for Communication with IDS Brokers, implemented by {@link IDSBrokerServiceImpl}
+ * Interface for Communication with IDS Brokers, implemented by {@link IDSBrokerServiceImpl}. Methods added in 4.0.8
+ * have default implementations for existing implementations and decorators: the self-description is sent to the
+ * brokers one after another, bulk operations and federated queries are not supported and the query cache is disabled.
  */
 public interface IDSBrokerService {
 
@@ -36,6 +42,43 @@ public interface IDSBrokerService {
      */
     Response updateResourceAtBroker(String brokerURI, Resource resource) throws IOException;
 
+    /**
+     * Sends a {@link de.fraunhofer.iais.eis.ResourceUpdateMessage} for every resource of the stream to the broker.
+     * The messages share a DAT and a pre-serialized header, which is serialized again with a new DAT shortly before
+     * the DAT expires (or at the latest after five minutes); at most maxConcurrency messages are in flight, and
+     * resources are taken from the stream only when a message slot is free. The stream is closed when all
+     * messages are sent.
+     *
+     * @param brokerURI URI of the broker the resources will be registered or updated at
+     * @param resources the resources that will be registered or updated at the broker
+     * @param maxConcurrency max number of messages sent to the broker at the same time
+     * @param listener notified after every processed resource (may be null)
+     * @return future of the summary of the operation, failures of single resources are listed in the {@link BulkResult};
+     * completed exceptionally if the stream of resources fails
+     * @throws IOException if the message header could not be built
+     * @throws UnsupportedOperationException by default
+     */
+    default CompletableFuture<BulkResult> updateResourcesAtBroker(String brokerURI, Stream<? extends Resource> resources, int maxConcurrency, BulkProgressListener listener) throws IOException {
+        throw new UnsupportedOperationException("Bulk operations are not supported by this IDSBrokerService!");
+    }
+
+    /**
+     * Sends a {@link de.fraunhofer.iais.eis.ResourceUnavailableMessage} for every resource of the stream to the broker.
+     * Messages are sent like in {@link #updateResourcesAtBroker(String, Stream, int, BulkProgressListener)}.
+     *
+     * @param brokerURI URI of the broker the resources will be unregistered at
+     * @param resources the resources that will be unregistered at the broker
+     * @param maxConcurrency max number of messages sent to the broker at the same time
+     * @param listener notified after every processed resource (may be null)
+     * @return future of the summary of the operation, failures of single resources are listed in the {@link BulkResult};
+     * completed exceptionally if the stream of resources fails
+     * @throws IOException if the message header could not be built
+     * @throws UnsupportedOperationException by default
+     */
+    default CompletableFuture<BulkResult> removeResourcesFromBroker(String brokerURI, Stream<? extends Resource> resources, int maxConcurrency, BulkProgressListener listener) throws IOException {
+        throw new UnsupportedOperationException("Bulk operations are not supported by this IDSBrokerService!");
+    }
+
     /**
      * Builds and sends a {@link de.fraunhofer.iais.eis.ConnectorUnavailableMessage} to the broker.
      * The Connector will be unregistered from the broker.
@@ -58,16 +101,44 @@ public interface IDSBrokerService {
     Response updateSelfDescriptionAtBroker(String brokerURI) throws IOException;
 
     /**
-     * Builds and sends a {@link de.fraunhofer.iais.eis.ConnectorUpdateMessage} to a list of brokers
+     * Builds and sends a {@link de.fraunhofer.iais.eis.ConnectorUpdateMessage} to a list of brokers, waits for all
+     * brokers to respond
      *
      * @param brokerUris URIs of the brokers the connector will try to update its information at
-     * @return a List of Responses from the Broker
+     * @return a List of Responses from the Broker (brokers which could not be reached are missing)
      * @throws IOException if the built message could not be serialized
+     * @deprecated use {@link #updateSelfDescriptionAtBrokers(List, int, Duration)}, which reports the outcome for every broker
      */
+    @Deprecated
     List<Response> updateSelfDescriptionAtBrokers(List<String> brokerUris) throws IOException;
 
     /**
-     * Builds and sends a {@link de.fraunhofer.iais.eis.QueryMessage} to the broker.
+     * Builds a {@link de.fraunhofer.iais.eis.ConnectorUpdateMessage} once (one DAT, one body) and sends it to a list
+     * of brokers concurrently. The default implementation calls {@link #updateSelfDescriptionAtBroker(String)} for one
+     * broker after another on the common ForkJoinPool, without applying maxConcurrency and timeout.
+     *
+     * @param brokerUris URIs of the brokers the connector will try to update its information at
+     * @param maxConcurrency max number of brokers the message is sent to at the same time
+     * @param timeout timeout for the call to every single broker (null = timeouts of the client)
+     * @return future of the outcome for every broker (in the order of the given URIs), failures of single brokers are reported in their {@link BrokerResult}
+     * @throws IOException if the built message could not be serialized
+     */
+    default CompletableFuture<List<BrokerResult>> updateSelfDescriptionAtBrokers(List<String> brokerUris, int maxConcurrency, Duration timeout) throws IOException {
+        return CompletableFuture.supplyAsync(() -> brokerUris.stream().map(uri -> {
+            var start = System.nanoTime();
+            try (var response = updateSelfDescriptionAtBroker(uri)) {
+                var buffered = response.newBuilder().body(response.peekBody(Long.MAX_VALUE)).build();
+                return new BrokerResult(uri, buffered, null, Duration.ofNanos(System.nanoTime() - start));
+            } catch (IOException e) {
+                return new BrokerResult(uri, null, e, Duration.ofNanos(System.nanoTime() - start));
+            }
+        }).collect(Collectors.toList()));
+    }
+
+    /**
+     * Builds and sends a {@link de.fraunhofer.iais.eis.QueryMessage} to the broker. If the {@link QueryCache} is enabled,
+     * successful responses are cached and repeated queries are answered from the cache. Use {@link QueryResultReader}
+     * to read large results without loading them into memory.
      *
      * @param brokerURI     the URI of the broker the message is sent to
      * @param query         the query as payload for the QueryMessage
@@ -78,4 +149,46 @@ public interface IDSBrokerService {
      * @throws IOException if the built message could not be serialized
      */
     Response queryBroker(String brokerURI, String query, QueryLanguage queryLanguage, QueryScope queryScope, QueryTarget queryTarget) throws IOException;
+
+    /**
+     * Builds a {@link de.fraunhofer.iais.eis.QueryMessage} once (one DAT, one body) and sends it to a list of brokers
+     * concurrently. The results are read from the responses while they arrive, deduplicated by the value of their
+     * first column (the resource or connector URI) and passed to the listener. The deadline counts from the call of
+     * this method: calls still running then are cancelled and their brokers are listed as failed (results a broker
+     * returned before it failed were already passed to the listener).
+     *
+     * @param brokerUris URIs of the brokers the query is sent to
+     * @param query         the query as payload for the QueryMessage
+     * @param queryLanguage the Language of the Query (e.g. SPARQL, SQL, XQUERY). See {@link QueryLanguage}
+     * @param queryScope the Scope of the Query (ALL connectors, ACTIVE connectors, INACTIVE connectors). See {@link QueryScope}
+     * @param queryTarget the type of IDS Components that are queried. See {@link QueryTarget}
+     * @param deadline max duration of the query
+     * @param listener receives the distinct results while they arrive
+     * @return future of the summary of the query, completed at the latest at the deadline
+     * @throws IOException if the built message could not be serialized
+     * @throws UnsupportedOperationException by default
+     */
+    default CompletableFuture<FederatedQueryResult> queryBrokers(List<String> brokerUris, String query, QueryLanguage queryLanguage, QueryScope queryScope,
+                                                                 QueryTarget queryTarget, Duration deadline, QueryResultListener listener) throws IOException {
+        throw new UnsupportedOperationException("Federated queries are not supported by this IDSBrokerService!");
+    }
+
+    /**
+     * Set the cache of query responses, the cache is disabled by default
+     *
+     * @param queryCache the cache, {@link QueryCache#disabled()} to disable caching
+     * @throws UnsupportedOperationException by default, if the cache is enabled
+     */
+    default void setQueryCache(QueryCache queryCache) {
+        if (queryCache != null && queryCache.isEnabled()) {
+            throw new UnsupportedOperationException("Query caching is not supported by this IDSBrokerService!");
+        }
+    }
+
+    /**
+     * @return the cache of query responses (disabled by default)
+     */
+    default QueryCache getQueryCache() {
+        return QueryCache.disabled();
+    }
 }
@@ -1,5 +1,6 @@
 package de.fraunhofer.isst.ids.framework.communication.broker;
 
+import de.fraunhofer.iais.eis.DynamicAttributeToken;
 import de.fraunhofer.iais.eis.QueryLanguage;
 import de.fraunhofer.iais.eis.QueryScope;
 import de.fraunhofer.iais.eis.QueryTarget;
@@ -8,15 +9,24 @@ import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
 import de.fraunhofer.isst.ids.framework.daps.DapsTokenProvider;
 import de.fraunhofer.isst.ids.framework.util.ClientProvider;
-import de.fraunhofer.isst.ids.framework.util.IDSUtils;
 import okhttp3.*;
-import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Broker Communication Controller. Generates appropriate ids multipart messages and send them to the broker
@@ -28,10 +38,28 @@ public class IDSBrokerServiceImpl implements IDSBrokerService {
 
     private static final String INFO_MODEL_VERSION = "4.0.0";
     private static final Serializer ser = new Serializer();
+    /**
+     * Max number of concurrent calls of the deprecated fan-out {@link #updateSelfDescriptionAtBrokers(List)}
+     */
+    private static final int DEFAULT_FAN_OUT_CONCURRENCY = 8;
 
     private ConfigurationContainer container;
     private ClientProvider clientProvider;
     private DapsTokenProvider tokenProvider;
+    private volatile QueryCache queryCache = QueryCache.disabled();
+
+    /**
+     * Builds the header template of a bulk operation
+     */
+    @FunctionalInterface
+    private interface TemplateFactory {
+        /**
+         * @param securityToken the DAT used by the messages of the template
+         * @return the template
+         * @throws IOException if the template cannot be built
+         */
+        HeaderTemplate create(DynamicAttributeToken securityToken) throws IOException;
+    }
 
     /**
      * Creates the IDSBrokerCommunication controller.
@@ -56,7 +84,7 @@ public class IDSBrokerServiceImpl implements IDSBrokerService {
         var payload = ser.serialize(resource);
         var body = BrokerIDSMessageUtils.buildRequestBody(header, payload);
         LOGGER.debug(String.format("Sending message to %s", brokerURI));
-        return sendBrokerMessage(brokerURI, body);
+        return sendChange(brokerURI, body);
     }
 
     /** {@inheritDoc} */
@@ -69,7 +97,25 @@ public class IDSBrokerServiceImpl implements IDSBrokerService {
         var payload = ser.serialize(resource);
         var body = BrokerIDSMessageUtils.buildRequestBody(header, payload);
         LOGGER.debug(String.format("Sending message to %s", brokerURI));
-        return sendBrokerMessage(brokerURI, body);
+        return sendChange(brokerURI, body);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<BulkResult> updateResourcesAtBroker(String brokerURI, Stream<? extends Resource> resources, int maxConcurrency, BulkProgressListener listener) throws IOException {
+        var connectorID = container.getConnector().getId();
+        return sendBulk(brokerURI, resources,
+                securityToken -> BrokerIDSMessageUtils.buildResourceUpdateMessageTemplate(securityToken, INFO_MODEL_VERSION, connectorID),
+                maxConcurrency, listener);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<BulkResult> removeResourcesFromBroker(String brokerURI, Stream<? extends Resource> resources, int maxConcurrency, BulkProgressListener listener) throws IOException {
+        var connectorID = container.getConnector().getId();
+        return sendBulk(brokerURI, resources,
+                securityToken -> BrokerIDSMessageUtils.buildResourceUnavailableMessageTemplate(securityToken, INFO_MODEL_VERSION, connectorID),
+                maxConcurrency, listener);
     }
 
     /** {@inheritDoc} */
@@ -79,10 +125,9 @@ public class IDSBrokerServiceImpl implements IDSBrokerService {
         LOGGER.debug("Building message header");
         var connectorID = container.getConnector().getId();
         var header = BrokerIDSMessageUtils.buildUnavailableMessage(securityToken, INFO_MODEL_VERSION, connectorID);
-        var payload = IDSUtils.buildSelfDeclaration(container.getConnector());
-        var body = BrokerIDSMessageUtils.buildRequestBody(header, payload);
+        var body = BrokerIDSMessageUtils.buildRequestBody(header, container.getSelfDescription());
         LOGGER.debug(String.format("Sending message to %s", brokerURI));
-        return sendBrokerMessage(brokerURI, body);
+        return sendChange(brokerURI, body);
     }
 
     /** {@inheritDoc} */
@@ -92,52 +137,191 @@ public class IDSBrokerServiceImpl implements IDSBrokerService {
         LOGGER.debug("Building message header");
         var connectorID = container.getConnector().getId();
         var header = BrokerIDSMessageUtils.buildUpdateMessage(securityToken, INFO_MODEL_VERSION, connectorID);
-        var payload = IDSUtils.buildSelfDeclaration(container.getConnector());
-        var body = BrokerIDSMessageUtils.buildRequestBody(header, payload);
+        var body = BrokerIDSMessageUtils.buildRequestBody(header, container.getSelfDescription());
         LOGGER.debug(String.format("Sending message to %s", brokerURI));
-        return sendBrokerMessage(brokerURI, body);
+        return sendChange(brokerURI, body);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Deprecated
+    public List<Response> updateSelfDescriptionAtBrokers(List<String> brokerUris) throws IOException {
+        return updateSelfDescriptionAtBrokers(brokerUris, DEFAULT_FAN_OUT_CONCURRENCY, null).join().stream()
+                .map(BrokerResult::getResponse)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     /** {@inheritDoc} */
     @Override
-    public java.util.List<Response> updateSelfDescriptionAtBrokers(java.util.List<String> brokerUris) throws IOException {
+    public CompletableFuture<List<BrokerResult>> updateSelfDescriptionAtBrokers(List<String> brokerUris, int maxConcurrency, Duration timeout) throws IOException {
+        //one DAT and one body (with the pre-serialized self-description) for all brokers
         var securityToken = tokenProvider.getDAT();
-        var result = new ArrayList<Response>();
         var connectorID = container.getConnector().getId();
         var header = BrokerIDSMessageUtils.buildUpdateMessage(securityToken, INFO_MODEL_VERSION, connectorID);
-        var payload = IDSUtils.buildSelfDeclaration(container.getConnector());
-        var body = BrokerIDSMessageUtils.buildRequestBody(header, payload);
-        for(String uri : brokerUris){
-            LOGGER.debug(String.format("Sending message to %s", uri));
-            clientProvider.getClient().newCall(new Request.Builder().url(uri).post(body).build()).enqueue(
-                    new Callback() {
-                        @Override
-                        public void onFailure(@NotNull Call call, @NotNull IOException e) {
-                            LOGGER.warn(String.format("Connection to Broker %s failed!", uri));
-                            LOGGER.warn(e.getMessage(), e);
-                        }
-
-                        @Override
-                        public void onResponse(@NotNull Call call, @NotNull Response response) {
-                            LOGGER.info(String.format("Received response from %s", uri));
-                            result.add(response);
-                        }
+        var body = BrokerIDSMessageUtils.buildRequestBody(header, container.getSelfDescription());
+        var results = new BrokerResult[brokerUris.size()];
+        return BoundedCalls.run(clientProvider.getClient(), IntStream.range(0, brokerUris.size()).iterator(),
+                index -> {
+                    LOGGER.debug(String.format("Sending message to %s", brokerUris.get(index)));
+                    return new Request.Builder().url(brokerUris.get(index)).post(body).build();
+                },
+                maxConcurrency, timeout,
+                (index, response, error, duration) -> {
+                    var uri = brokerUris.get(index);
+                    if (error != null) {
+                        LOGGER.warn(String.format("Connection to Broker %s failed: %s", uri, error.getMessage()));
+                    } else {
+                        LOGGER.info(String.format("Received response from %s", uri));
                     }
-            );
-        }
-        return result;
+                    //after the update was processed, queries answered meanwhile must not be served from the cache
+                    queryCache.invalidate(uri);
+                    results[index] = new BrokerResult(uri, response, error, duration);
+                }
+        ).thenApply(v -> {
+            var resultList = List.of(results);
+            var failed = resultList.stream().filter(result -> !result.isSuccess()).count();
+            if (failed > 0) {
+                LOGGER.warn(String.format("Self-description update failed at %d of %d brokers", failed, resultList.size()));
+            }
+            return resultList;
+        });
     }
 
     /** {@inheritDoc} */
     @Override
     public Response queryBroker(String brokerURI, String query, QueryLanguage queryLanguage, QueryScope queryScope, QueryTarget queryTarget) throws IOException {
+        var cache = queryCache;
+        var key = new QueryCache.Key(brokerURI, query, queryLanguage, queryScope, queryTarget);
+        var cached = cache.get(key);
+        if (cached != null) {
+            LOGGER.debug(String.format("Answering query to %s from cache", brokerURI));
+            return cached;
+        }
         var securityToken = tokenProvider.getDAT();
         LOGGER.debug("Building message header");
         var connectorID = container.getConnector().getId();
         var header = BrokerIDSMessageUtils.buildQueryMessage(securityToken, INFO_MODEL_VERSION, connectorID, queryLanguage, queryScope, queryTarget);
         var body = BrokerIDSMessageUtils.buildRequestBody(header, query);
         LOGGER.debug(String.format("Sending message to %s", brokerURI));
-        return sendBrokerMessage(brokerURI, body);
+        return cache.put(key, sendBrokerMessage(brokerURI, body));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<FederatedQueryResult> queryBrokers(List<String> brokerUris, String query, QueryLanguage queryLanguage, QueryScope queryScope,
+                                                                QueryTarget queryTarget, Duration deadline, QueryResultListener listener) throws IOException {
+        //one DAT and one body for all brokers
+        var securityToken = tokenProvider.getDAT();
+        var connectorID = container.getConnector().getId();
+        var header = BrokerIDSMessageUtils.buildQueryMessage(securityToken, INFO_MODEL_VERSION, connectorID, queryLanguage, queryScope, queryTarget);
+        var body = BrokerIDSMessageUtils.buildRequestBody(header, query);
+        LOGGER.debug(String.format("Sending query to %d brokers", brokerUris.size()));
+        return new FederatedQuery(clientProvider.getClient(), brokerUris, body, deadline, listener).start();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache == null ? QueryCache.disabled() : queryCache;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Send a message for every resource of the stream to the broker, rendering the headers from a template which is
+     * built again with a new DAT when it expires
+     *
+     * @param brokerURI URI of the Broker the Messages are sent to
+     * @param resources the resources, closed when all messages are sent
+     * @param templateFactory builds the template of the message headers with a DAT
+     * @param maxConcurrency max number of messages in flight
+     * @param listener notified after every processed resource (may be null)
+     * @return future of the summary of the operation
+     * @throws IOException if the first template could not be built
+     */
+    private CompletableFuture<BulkResult> sendBulk(String brokerURI, Stream<? extends Resource> resources, TemplateFactory templateFactory,
+                                                   int maxConcurrency, BulkProgressListener listener) throws IOException {
+        var template = new AtomicReference<>(templateFactory.create(tokenProvider.getDAT()));
+        var start = System.nanoTime();
+        var completed = new AtomicLong();
+        var failures = new ConcurrentHashMap<URI, BrokerResult>();
+        LOGGER.info(String.format("Sending resources to %s with up to %d concurrent messages", brokerURI, maxConcurrency));
+        return BoundedCalls.<Resource>run(clientProvider.getClient(), resources.map(Resource.class::cast).iterator(),
+                resource -> {
+                    var header = currentTemplate(template, templateFactory).render(resource.getId());
+                    var body = BrokerIDSMessageUtils.buildRequestBody(header, ser.serialize(resource));
+                    return new Request.Builder().url(brokerURI).post(body).build();
+                },
+                maxConcurrency, null,
+                (resource, response, error, duration) -> {
+                    var result = new BrokerResult(brokerURI, response, error, duration);
+                    var done = completed.incrementAndGet();
+                    if (!result.isSuccess()) {
+                        failures.put(resource.getId(), result);
+                        LOGGER.warn(String.format("Sending resource %s to %s failed: %s", resource.getId(), brokerURI,
+                                error != null ? error.getMessage() : "response code " + response.code()));
+                    }
+                    if (listener != null) {
+                        listener.onProgress(new BulkProgress(resource.getId(), result, done, failures.size(),
+                                Duration.ofNanos(System.nanoTime() - start)));
+                    }
+                }
+        ).whenComplete((v, e) -> {
+            resources.close();
+            //after all updates were processed, queries answered meanwhile must not be served from the cache
+            queryCache.invalidate(brokerURI);
+        }).thenApply(v -> {
+            var result = new BulkResult(completed.get(), failures, Duration.ofNanos(System.nanoTime() - start));
+            LOGGER.info(String.format("Sent resources to %s: %s", brokerURI, result));
+            return result;
+        });
+    }
+
+    /**
+     * Get the template of a bulk operation, building it again with a new DAT if it is expired
+     *
+     * @param template the current template of the operation
+     * @param templateFactory builds the template with a DAT
+     * @return a template that is not expired
+     * @throws IOException if the template could not be built
+     */
+    private HeaderTemplate currentTemplate(AtomicReference<HeaderTemplate> template, TemplateFactory templateFactory) throws IOException {
+        var current = template.get();
+        if (!current.isExpired(Instant.now())) {
+            return current;
+        }
+        synchronized (template) {
+            current = template.get();
+            if (current.isExpired(Instant.now())) {
+                LOGGER.debug("Header template expired, building it with a new DAT");
+                current = templateFactory.create(tokenProvider.getDAT());
+                template.set(current);
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Send a message changing the entries of the connector at the broker, the cached query responses of the broker
+     * are invalidated after the broker answered (or the message failed), so queries answered while the change was
+     * processed are not served from the cache
+     *
+     * @param brokerURI URI of the Broker the Message is sent to
+     * @param requestBody requestBody that is sent
+     * @return Response from the broker
+     * @throws IOException if requestBody cannot be sent
+     */
+    private Response sendChange(String brokerURI, RequestBody requestBody) throws IOException {
+        try {
+            return sendBrokerMessage(brokerURI, requestBody);
+        } finally {
+            queryCache.invalidate(brokerURI);
+        }
     }
 
     /**
@@ -0,0 +1,291 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import de.fraunhofer.iais.eis.QueryLanguage;
+import de.fraunhofer.iais.eis.QueryScope;
+import de.fraunhofer.iais.eis.QueryTarget;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Thread-safe cache of successful broker query responses, used by the {@link IDSBrokerService}. Entries are keyed by
+ * broker, query text, language, scope and target, expire after a TTL and are evicted least recently used first when
+ * the cached bodies exceed the memory bound. A single response may use at most a quarter of the memory bound, larger
+ * responses are passed through unbuffered. Every hit returns a new response with its own copy of the body stream.
+ */
+public class QueryCache {
+
+    /**
+     * Estimated memory used by an entry in addition to body and query text
+     */
+    private static final long ENTRY_OVERHEAD = 512;
+    private static final QueryCache DISABLED = new QueryCache(Duration.ZERO, 0);
+
+    private final long ttlNanos;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Create a QueryCache
+     *
+     * @param ttl time a response is cached
+     * @param maxBytes max estimated memory of all cached responses
+     */
+    public QueryCache(Duration ttl, long maxBytes) {
+        if (ttl.isNegative() || maxBytes < 0) {
+            throw new IllegalArgumentException("TTL and memory bound of the query cache must not be negative");
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxBytes / 4;
+    }
+
+    /**
+     * @return a cache that never stores responses
+     */
+    public static QueryCache disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @return true if responses are cached
+     */
+    public boolean isEnabled() {
+        return ttlNanos > 0 && maxEntryBytes > 0;
+    }
+
+    /**
+     * Get a cached response
+     *
+     * @param key the key of the query
+     * @return a copy of the cached response, null if there is no unexpired response
+     */
+    Response get(Key key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.created > ttlNanos) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return entry.response.newBuilder().body(ResponseBody.create(entry.body, entry.contentType)).build();
+    }
+
+    /**
+     * Cache the response of a query, if it is successful and small enough
+     *
+     * @param key the key of the query
+     * @param response the response of the broker
+     * @return the response for the caller (a buffered copy if the response was cached, else the response itself)
+     * @throws IOException if the body of the response cannot be read
+     */
+    Response put(Key key, Response response) throws IOException {
+        var body = response.body();
+        if (!isEnabled() || !response.isSuccessful() || body == null || body.contentLength() > maxEntryBytes) {
+            return response;
+        }
+        //peeking does not consume the body, so large bodies of unknown length can still be streamed by the caller
+        if (response.peekBody(maxEntryBytes + 1).contentLength() > maxEntryBytes) {
+            return response;
+        }
+        byte[] content;
+        try (response) {
+            content = body.bytes();
+        }
+        var entry = new Entry(response.newBuilder().body(null).build(), content, body.contentType(), System.nanoTime(),
+                content.length + key.query.length() * 2L + ENTRY_OVERHEAD);
+        synchronized (this) {
+            remove(key);
+            entries.put(key, entry);
+            bytes += entry.weight;
+            evict();
+        }
+        return response.newBuilder().body(ResponseBody.create(content, entry.contentType)).build();
+    }
+
+    /**
+     * Remove the cached responses of a broker (e.g. after its index was changed by the connector)
+     *
+     * @param brokerUri URI of the broker
+     */
+    public synchronized void invalidate(String brokerUri) {
+        entries.entrySet().removeIf(entry -> {
+            if (entry.getKey().brokerUri.equals(brokerUri)) {
+                bytes -= entry.getValue().weight;
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Remove all cached responses
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return number of cached responses (including expired ones not evicted yet)
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return estimated memory of the cached responses in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return number of queries answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of queries not found in the cache
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of responses evicted because of the memory bound
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return time a response is cached
+     */
+    public Duration getTtl() {
+        return Duration.ofNanos(ttlNanos);
+    }
+
+    /**
+     * @return max estimated memory of all cached responses
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param key key of an entry to remove
+     */
+    private void remove(Key key) {
+        var removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.weight;
+        }
+    }
+
+    /**
+     * Remove expired entries, then least recently used entries until the memory bound is kept
+     */
+    private void evict() {
+        var now = System.nanoTime();
+        entries.values().removeIf(entry -> {
+            if (now - entry.created > ttlNanos) {
+                bytes -= entry.weight;
+                return true;
+            }
+            return false;
+        });
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().weight;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Key of a query: broker, query text, language, scope and target
+     */
+    static final class Key {
+        private final String brokerUri;
+        private final String query;
+        private final QueryLanguage language;
+        private final QueryScope scope;
+        private final QueryTarget target;
+
+        /**
+         * @param brokerUri URI of the broker
+         * @param query the query
+         * @param language language of the query
+         * @param scope scope of the query
+         * @param target target of the query
+         */
+        Key(String brokerUri, String query, QueryLanguage language, QueryScope scope, QueryTarget target) {
+            this.brokerUri = brokerUri;
+            this.query = query;
+            this.language = language;
+            this.scope = scope;
+            this.target = target;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            var key = (Key) o;
+            return brokerUri.equals(key.brokerUri) && query.equals(key.query) && language == key.language
+                    && scope == key.scope && target == key.target;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(brokerUri, query, language, scope, target);
+        }
+    }
+
+    /**
+     * A cached response, the body is kept separately from the (bodiless) response
+     */
+    private static final class Entry {
+        private final Response response;
+        private final byte[] body;
+        private final MediaType contentType;
+        private final long created;
+        private final long weight;
+
+        private Entry(Response response, byte[] body, MediaType contentType, long created, long weight) {
+            this.response = response;
+            this.body = body;
+            this.contentType = contentType;
+            this.created = created;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.util.List;
+
+/**
+ * Listener for the merged results of a federated query of the {@link IDSBrokerService}. Called for every new result
+ * as soon as it is read from the response of a broker; calls are never concurrent, but come from the threads of the
+ * HTTP client, so implementations should return quickly.
+ */
+@FunctionalInterface
+public interface QueryResultListener {
+
+    /**
+     * @param brokerUri URI of the broker which returned the result first
+     * @param row the RDF terms of the result (see {@link QueryResultReader#nextRow()})
+     */
+    void onResult(String brokerUri, List<String> row);
+}
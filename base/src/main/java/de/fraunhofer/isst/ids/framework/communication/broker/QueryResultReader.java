@@ -0,0 +1,275 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import de.fraunhofer.isst.ids.framework.util.MultipartParser;
+import okhttp3.Response;
+import okio.BufferedSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming reader for the results of a broker query. Walks the multipart response line by line, skips the message
+ * header and reads the payload as SPARQL TSV results (a line of variables, then one tab separated line of RDF terms
+ * per result), so result sets are never held in memory as a whole. A payload whose first line is no variable line
+ * is read as one single-column row per line.
+ * <p>
+ * The reader consumes the body of the response, close it to release the connection.
+ */
+public final class QueryResultReader implements Closeable {
+
+    private static final List<String> UNNAMED = List.of("?result");
+
+    private final Response response;
+    private final BufferedSource source;
+    private final String delimiter;
+    private List<String> variables;
+    private String pending;
+    private boolean done;
+
+    /**
+     * @param response the response, its body is consumed by the reader
+     * @param delimiter delimiter line of the multipart body, null if the body is the payload itself
+     */
+    private QueryResultReader(Response response, String delimiter) {
+        this.response = response;
+        this.source = response.body().source();
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Open a reader on the response of a broker query (as returned by {@link IDSBrokerService#queryBroker})
+     *
+     * @param response the response of the broker
+     * @return a reader positioned at the first result
+     * @throws IOException if the response has no body or the payload cannot be found
+     */
+    public static QueryResultReader open(Response response) throws IOException {
+        var body = response.body();
+        if (body == null) {
+            throw new IOException("Response of the broker has no body");
+        }
+        String boundary = null;
+        if (body.contentType() != null) {
+            boundary = MultipartParser.parseParameters(body.contentType().toString()).get("boundary");
+        }
+        if (boundary == null) {
+            //boundary can be taken from the first line of the body (peeking does not consume it)
+            var firstLine = body.source().peek().readUtf8Line();
+            if (firstLine != null && firstLine.startsWith("--")) {
+                boundary = firstLine.trim().substring(2);
+            }
+        }
+        var reader = new QueryResultReader(response, boundary == null ? null : "--" + boundary);
+        try {
+            reader.seekPayload();
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /**
+     * @return the variables of the results (with leading ?), in the order of the columns
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Read the next result
+     *
+     * @return the RDF terms of the result (IRIs in angle brackets, literals in quotes) in the order of the variables,
+     * null if there are no more results
+     * @throws IOException if the body cannot be read
+     */
+    public List<String> nextRow() throws IOException {
+        if (pending != null) {
+            var row = pending;
+            pending = null;
+            return split(row);
+        }
+        while (!done) {
+            var line = source.readUtf8Line();
+            if (line == null || isDelimiter(line)) {
+                done = true;
+            } else if (!line.isEmpty()) {
+                return split(line);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stream the remaining results, read errors are thrown as {@link UncheckedIOException}
+     *
+     * @return a sequential stream of the results (see {@link #nextRow()}), closing it closes the reader
+     */
+    public Stream<List<String>> rows() {
+        var spliterator = new Spliterators.AbstractSpliterator<List<String>>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super List<String>> action) {
+                try {
+                    var row = nextRow();
+                    if (row == null) {
+                        return false;
+                    }
+                    action.accept(row);
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    /**
+     * Get the value of an RDF term of a result
+     *
+     * @param term an RDF term (e.g. &lt;https://example.com&gt; or "title"@en)
+     * @return the IRI without angle brackets, the lexical form of a literal (without quotes, language tag and datatype)
+     * or the term itself
+     */
+    public static String valueOf(String term) {
+        if (term.length() >= 2 && term.charAt(0) == '<' && term.charAt(term.length() - 1) == '>') {
+            return term.substring(1, term.length() - 1);
+        }
+        if (term.length() >= 2 && term.charAt(0) == '"') {
+            var end = term.lastIndexOf('"');
+            if (end > 0) {
+                return unescape(term, 1, end);
+            }
+        }
+        return term;
+    }
+
+    /**
+     * Unescape the lexical form of a literal in a single pass, so an escaped backslash is never combined with the
+     * following character ({@code \\n} in the literal is a backslash and n, not a line feed)
+     *
+     * @param term the RDF term
+     * @param start index of the first character of the lexical form
+     * @param end index after the last character of the lexical form
+     * @return the unescaped lexical form
+     */
+    private static String unescape(String term, int start, int end) {
+        if (term.indexOf('\\', start) < 0) {
+            return term.substring(start, end);
+        }
+        var out = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            var c = term.charAt(i);
+            if (c != '\\' || i + 1 == end) {
+                out.append(c);
+                continue;
+            }
+            var next = term.charAt(++i);
+            switch (next) {
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case 'b':
+                    out.append('\b');
+                    break;
+                case 'f':
+                    out.append('\f');
+                    break;
+                case '"':
+                case '\'':
+                case '\\':
+                    out.append(next);
+                    break;
+                default:
+                    //unknown escape, keep it as it is
+                    out.append(c).append(next);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Close the reader and the response
+     */
+    @Override
+    public void close() {
+        done = true;
+        response.close();
+    }
+
+    /**
+     * Skip to the content of the payload part and read the variable line
+     *
+     * @throws IOException if the body cannot be read or has no payload part
+     */
+    private void seekPayload() throws IOException {
+        if (delimiter != null) {
+            String line;
+            var inPayload = false;
+            while (!inPayload && (line = source.readUtf8Line()) != null) {
+                if (isDelimiter(line)) {
+                    inPayload = "payload".equals(readPartName());
+                }
+            }
+            if (!inPayload) {
+                throw new IOException("Response of the broker has no payload");
+            }
+        }
+        var first = nextRow();
+        if (first != null && first.get(0).startsWith("?")) {
+            variables = List.copyOf(first);
+        } else {
+            variables = UNNAMED;
+            pending = first == null ? null : String.join("\t", first);
+        }
+    }
+
+    /**
+     * Read the headers of a part
+     *
+     * @return the name of the part (from its Content-Disposition header), null if it has none
+     * @throws IOException if the body cannot be read
+     */
+    private String readPartName() throws IOException {
+        String name = null;
+        String line;
+        while ((line = source.readUtf8Line()) != null && !line.isEmpty()) {
+            var colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Disposition")) {
+                name = MultipartParser.parseParameters(line.substring(colon + 1)).get("name");
+            }
+        }
+        return name;
+    }
+
+    /**
+     * @param line a line of the body
+     * @return true if the line is a delimiter line (which ends the current part)
+     */
+    private boolean isDelimiter(String line) {
+        return delimiter != null && line.startsWith(delimiter)
+                && (line.length() == delimiter.length() || line.substring(delimiter.length()).trim().matches("(--)?"));
+    }
+
+    /**
+     * @param line a result line
+     * @return the tab separated terms of the line
+     */
+    private static List<String> split(String line) {
+        return Arrays.asList(line.split("\t", -1));
+    }
+}
@@ -0,0 +1,202 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import de.fraunhofer.isst.ids.framework.util.RequestTimeouts;
+
+import java.time.Duration;
+
+/**
+ * Immutable policy deriving the connect and read timeouts of requests to a host from the observed latencies of the host
+ * (see {@link LatencyHistogram}): a high percentile of the latencies, multiplied with a headroom factor and bounded by
+ * a floor and a ceiling. Used by the {@link HttpService} for requests without explicitly set timeouts, if the policy is
+ * set with {@link HttpService#setAdaptiveTimeoutPolicy(AdaptiveTimeoutPolicy)} (disabled by default).
+ * No call timeout is derived: the latencies are measured until the response headers arrive, the time for reading
+ * the body is unknown.
+ */
+public final class AdaptiveTimeoutPolicy {
+
+    private static final AdaptiveTimeoutPolicy DISABLED = builder().withEnabled(false).build();
+
+    private final boolean enabled;
+    private final double percentile;
+    private final double headroom;
+    private final long minSamples;
+    private final Duration floor;
+    private final Duration ceiling;
+
+    /**
+     * Create an AdaptiveTimeoutPolicy, use {@link #builder()} to build one
+     *
+     * @param builder the builder holding the settings of the policy
+     */
+    private AdaptiveTimeoutPolicy(final Builder builder) {
+        this.enabled = builder.enabled;
+        this.percentile = builder.percentile;
+        this.headroom = builder.headroom;
+        this.minSamples = builder.minSamples;
+        this.floor = builder.floor;
+        this.ceiling = builder.ceiling;
+    }
+
+    /**
+     * @return a policy that never sets timeouts (the timeouts of the client are used)
+     */
+    public static AdaptiveTimeoutPolicy disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Static method returning a builder.
+     *
+     * @return a builder instance for this class
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Derive the timeouts for a request from the latencies of its target host. Connect and read timeout are the
+     * percentile times the headroom, bounded by floor and ceiling; the call timeout of the client is kept.
+     *
+     * @param histogram the latencies of the target host
+     * @return the timeouts, null if the policy is disabled or there are not enough samples
+     */
+    public RequestTimeouts timeouts(final LatencyHistogram histogram) {
+        if (!enabled || histogram.getCount() < minSamples) {
+            return null;
+        }
+        var latency = histogram.getPercentile(percentile);
+        if (latency == null) {
+            return null;
+        }
+        var base = (long) Math.min(Long.MAX_VALUE, latency.toNanos() * headroom);
+        var timeout = clamp(base, floor, ceiling);
+        return new RequestTimeouts(timeout, timeout);
+    }
+
+    /**
+     * @return true if adaptive timeouts are enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the latency percentile the timeouts are derived from
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * @return factor the latency percentile is multiplied with
+     */
+    public double getHeadroom() {
+        return headroom;
+    }
+
+    /**
+     * @return the lower bound of the timeouts
+     */
+    public Duration getFloor() {
+        return floor;
+    }
+
+    /**
+     * @return the upper bound of the timeouts
+     */
+    public Duration getCeiling() {
+        return ceiling;
+    }
+
+    /**
+     * @param nanos a timeout in nanoseconds
+     * @param min the lower bound
+     * @param max the upper bound
+     * @return the bounded timeout
+     */
+    private static Duration clamp(final long nanos, final Duration min, final Duration max) {
+        return Duration.ofNanos(Math.max(min.toNanos(), Math.min(max.toNanos(), nanos)));
+    }
+
+    /**
+     * Builder class for AdaptiveTimeoutPolicies
+     */
+    public static class Builder {
+        private boolean enabled = true;
+        private double percentile = 0.99;
+        private double headroom = 3;
+        private long minSamples = 20;
+        private Duration floor = Duration.ofSeconds(2);
+        private Duration ceiling = Duration.ofSeconds(30);
+
+        /**
+         * @param enabled false to disable adaptive timeouts
+         * @return builder with set enabled flag
+         */
+        public Builder withEnabled(final boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        /**
+         * @param percentile latency percentile of the target host the timeouts are derived from (e.g. 0.99)
+         * @return builder with set percentile
+         */
+        public Builder withPercentile(final double percentile) {
+            if (percentile <= 0 || percentile >= 1) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 1");
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * @param headroom factor the latency percentile is multiplied with (at least 1)
+         * @return builder with set headroom
+         */
+        public Builder withHeadroom(final double headroom) {
+            if (headroom < 1) {
+                throw new IllegalArgumentException("Headroom must be at least 1");
+            }
+            this.headroom = headroom;
+            return this;
+        }
+
+        /**
+         * @param minSamples number of latency samples of the target host needed before adaptive timeouts are used
+         * @return builder with set min samples
+         */
+        public Builder withMinSamples(final long minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * @param floor the lower bound of the timeouts
+         * @return builder with set floor
+         */
+        public Builder withFloor(final Duration floor) {
+            this.floor = floor;
+            return this;
+        }
+
+        /**
+         * @param ceiling the upper bound of the timeouts
+         * @return builder with set ceiling
+         */
+        public Builder withCeiling(final Duration ceiling) {
+            this.ceiling = ceiling;
+            return this;
+        }
+
+        /**
+         * @return the built AdaptiveTimeoutPolicy
+         */
+        public AdaptiveTimeoutPolicy build() {
+            if (floor.compareTo(ceiling) > 0) {
+                throw new IllegalArgumentException("Floor of the timeouts must not be greater than the ceiling");
+            }
+            return new AdaptiveTimeoutPolicy(this);
+        }
+    }
+}
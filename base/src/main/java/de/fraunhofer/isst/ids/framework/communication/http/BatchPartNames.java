@@ -0,0 +1,90 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Naming scheme for the parts of batched multipart messages. Every message of a batch is carried by a
+ * <code>header-n</code> and an optional <code>payload-n</code> part, where n is the index of the message in the batch.
+ * Responses to a batch use the same index as the message they belong to.
+ */
+public final class BatchPartNames {
+
+    public static final String HEADER = "header";
+    public static final String PAYLOAD = "payload";
+
+    private static final char SEPARATOR = '-';
+
+    private BatchPartNames() { }
+
+    /**
+     * @param index index of a message in the batch
+     * @return the name of the header part for the message at the given index
+     */
+    public static String header(int index) {
+        return HEADER + SEPARATOR + index;
+    }
+
+    /**
+     * @param index index of a message in the batch
+     * @return the name of the payload part for the message at the given index
+     */
+    public static String payload(int index) {
+        return PAYLOAD + SEPARATOR + index;
+    }
+
+    /**
+     * Get the message index from the name of a batch part
+     *
+     * @param partName name of a multipart part
+     * @return the index of the message the part belongs to, -1 if the part is no batch part
+     */
+    public static int indexOf(String partName) {
+        var separator = partName.lastIndexOf(SEPARATOR);
+        if (separator < 0) {
+            return -1;
+        }
+        var prefix = partName.substring(0, separator);
+        if (!HEADER.equals(prefix) && !PAYLOAD.equals(prefix)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(partName.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Check if the given part is a header part of a batch
+     *
+     * @param partName name of a multipart part
+     * @return true if the part is a header part of a batch message
+     */
+    public static boolean isHeader(String partName) {
+        return partName.startsWith(HEADER + SEPARATOR) && indexOf(partName) >= 0;
+    }
+
+    /**
+     * Split the parts of a batched multipart message into one map (with "header" and "payload" key) per message,
+     * ordered by the index of the messages
+     *
+     * @param parts Map of all parts of the batch (partname to content)
+     * @return a List of Multipart Maps, one per message in the batch
+     */
+    public static List<Map<String, String>> split(Map<String, String> parts) {
+        var messages = new TreeMap<Integer, Map<String, String>>();
+        for (var entry : parts.entrySet()) {
+            var index = indexOf(entry.getKey());
+            if (index < 0) {
+                continue;
+            }
+            var name = isHeader(entry.getKey()) ? HEADER : PAYLOAD;
+            messages.computeIfAbsent(index, i -> new HashMap<>()).put(name, entry.getValue());
+        }
+        return new ArrayList<>(messages.values());
+    }
+}
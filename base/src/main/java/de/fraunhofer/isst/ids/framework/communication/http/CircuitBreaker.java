@@ -0,0 +1,272 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker for the calls to one target (host and port). The outcomes (failed, slow) of the last calls are kept
+ * in a ring buffer; when the error rate or the slow-call rate exceeds its threshold, the breaker opens and calls fail fast
+ * with a {@link CircuitBreakerOpenException}. After the open duration, the breaker is half-open and permits a few
+ * probe calls, which decide if it closes again or stays open for another open duration. Probe permits whose outcome
+ * is not reported within the open duration expire, so a lost probe cannot keep the breaker half-open.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    /**
+     * States of a CircuitBreaker
+     */
+    public enum State {
+        /**
+         * calls are permitted, outcomes are recorded
+         */
+        CLOSED,
+        /**
+         * calls are rejected
+         */
+        OPEN,
+        /**
+         * a limited number of probe calls is permitted
+         */
+        HALF_OPEN
+    }
+
+    private final String host;
+    private final CircuitBreakerConfig config;
+    private final byte[] outcomes;
+    private State state = State.CLOSED;
+    private int index;
+    private int calls;
+    private int failedCalls;
+    private int slowCalls;
+    private int probesPermitted;
+    private long openedAt;
+    private long halfOpenedAt;
+    private long notPermittedCalls;
+
+    /**
+     * Create a closed CircuitBreaker
+     *
+     * @param host the target of the calls (host:port)
+     * @param config the settings of the breaker
+     */
+    public CircuitBreaker(String host, CircuitBreakerConfig config) {
+        this.host = host;
+        this.config = config;
+        this.outcomes = new byte[config.getWindowSize()];
+    }
+
+    /**
+     * Check if a call may be sent, calls that are permitted have to report their outcome with {@link #onResult(long, boolean)}
+     *
+     * @throws CircuitBreakerOpenException if the breaker is open or all probe calls of the half-open breaker are in progress
+     */
+    public void acquirePermission() throws CircuitBreakerOpenException {
+        if (!tryAcquirePermission()) {
+            throw new CircuitBreakerOpenException(host);
+        }
+    }
+
+    /**
+     * Check if a call may be sent, calls that are permitted have to report their outcome with {@link #onResult(long, boolean)}
+     *
+     * @return true if the call is permitted
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (!config.isEnabled() || state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < config.getOpenDuration().toNanos()) {
+                notPermittedCalls++;
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (probesPermitted >= config.getHalfOpenProbes()
+                && System.nanoTime() - halfOpenedAt >= config.getOpenDuration().toNanos()) {
+            //the outcome of a probe was never reported, let new probes through
+            LOGGER.debug(String.format("Probe calls of circuit breaker for %s expired", host));
+            transition(State.HALF_OPEN);
+        }
+        if (probesPermitted < config.getHalfOpenProbes()) {
+            probesPermitted++;
+            return true;
+        }
+        notPermittedCalls++;
+        return false;
+    }
+
+    /**
+     * Record the outcome of a permitted call
+     *
+     * @param durationNanos the duration of the call in nanoseconds
+     * @param failed true if the call failed (connection problem, timeout or server error)
+     */
+    public synchronized void onResult(long durationNanos, boolean failed) {
+        if (!config.isEnabled() || state == State.OPEN) {
+            //outcomes of calls started before the breaker opened are ignored
+            return;
+        }
+        var slowCallDuration = config.getSlowCallDuration();
+        var slow = slowCallDuration != null && durationNanos > slowCallDuration.toNanos();
+        var outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+        if (calls == outcomes.length) {
+            var old = outcomes[index];
+            failedCalls -= old & FAILED;
+            slowCalls -= (old & SLOW) >> 1;
+        } else {
+            calls++;
+        }
+        outcomes[index] = outcome;
+        index = (index + 1) % outcomes.length;
+        failedCalls += outcome & FAILED;
+        slowCalls += (outcome & SLOW) >> 1;
+
+        if (state == State.HALF_OPEN) {
+            if (calls >= config.getHalfOpenProbes()) {
+                transition(thresholdExceeded() ? State.OPEN : State.CLOSED);
+            }
+        } else if (calls >= config.getMinimumCalls() && thresholdExceeded()) {
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * @return the current state of the breaker (an open breaker whose open duration is over is reported as open until the next call)
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return a snapshot of the state and the rates of the breaker
+     */
+    public synchronized Snapshot getSnapshot() {
+        return new Snapshot(host, state, calls, failureRate(), slowCallRate(), notPermittedCalls);
+    }
+
+    /**
+     * @return true if the error rate or the slow-call rate exceeds its threshold
+     */
+    private boolean thresholdExceeded() {
+        return failureRate() >= config.getFailureRateThreshold() || slowCallRate() >= config.getSlowCallRateThreshold();
+    }
+
+    /**
+     * @return the error rate of the recorded calls
+     */
+    private double failureRate() {
+        return calls == 0 ? 0 : (double) failedCalls / calls;
+    }
+
+    /**
+     * @return the slow-call rate of the recorded calls
+     */
+    private double slowCallRate() {
+        return calls == 0 ? 0 : (double) slowCalls / calls;
+    }
+
+    /**
+     * Change the state of the breaker, the recorded outcomes are reset
+     *
+     * @param newState the new state
+     */
+    private void transition(State newState) {
+        LOGGER.info(String.format("Circuit breaker for %s changed from %s to %s (failure rate %.2f, slow-call rate %.2f)",
+                host, state, newState, failureRate(), slowCallRate()));
+        state = newState;
+        index = 0;
+        calls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+        probesPermitted = 0;
+        if (newState == State.OPEN) {
+            openedAt = System.nanoTime();
+        } else if (newState == State.HALF_OPEN) {
+            halfOpenedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Immutable snapshot of a CircuitBreaker, for monitoring
+     */
+    public static final class Snapshot {
+
+        private final String host;
+        private final State state;
+        private final int calls;
+        private final double failureRate;
+        private final double slowCallRate;
+        private final long notPermittedCalls;
+
+        /**
+         * @param host the target of the breaker (host:port)
+         * @param state the state of the breaker
+         * @param calls number of recorded calls in the current state
+         * @param failureRate error rate of the recorded calls
+         * @param slowCallRate slow-call rate of the recorded calls
+         * @param notPermittedCalls number of rejected calls since the breaker was created
+         */
+        Snapshot(String host, State state, int calls, double failureRate, double slowCallRate, long notPermittedCalls) {
+            this.host = host;
+            this.state = state;
+            this.calls = calls;
+            this.failureRate = failureRate;
+            this.slowCallRate = slowCallRate;
+            this.notPermittedCalls = notPermittedCalls;
+        }
+
+        /**
+         * @return the target of the breaker (host:port)
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return the state of the breaker
+         */
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return number of recorded calls in the current state (at most the window size)
+         */
+        public int getCalls() {
+            return calls;
+        }
+
+        /**
+         * @return error rate of the recorded calls (0 to 1)
+         */
+        public double getFailureRate() {
+            return failureRate;
+        }
+
+        /**
+         * @return slow-call rate of the recorded calls (0 to 1)
+         */
+        public double getSlowCallRate() {
+            return slowCallRate;
+        }
+
+        /**
+         * @return number of rejected calls since the breaker was created
+         */
+        public long getNotPermittedCalls() {
+            return notPermittedCalls;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("CircuitBreaker[host=%s, state=%s, calls=%d, failureRate=%.2f, slowCallRate=%.2f, notPermitted=%d]",
+                    host, state, calls, failureRate, slowCallRate, notPermittedCalls);
+        }
+    }
+}
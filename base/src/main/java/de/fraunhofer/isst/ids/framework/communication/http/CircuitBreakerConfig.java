@@ -0,0 +1,208 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import java.time.Duration;
+
+/**
+ * Immutable settings of the per-target (host and port) {@link CircuitBreaker}s of the {@link HttpService}: a breaker
+ * opens when the error rate or the slow-call rate of the last calls to a target exceeds its threshold, rejects calls
+ * while it is open, and lets a few probe calls through after the open duration to check if the target recovered.
+ * The slow-call rule is only applied if a slow-call duration is set.
+ */
+public final class CircuitBreakerConfig {
+
+    private static final CircuitBreakerConfig DISABLED = builder().withEnabled(false).build();
+
+    private final boolean enabled;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final Duration slowCallDuration;
+    private final Duration openDuration;
+    private final int halfOpenProbes;
+
+    /**
+     * Create a CircuitBreakerConfig, use {@link #builder()} to build one
+     *
+     * @param builder the builder holding the settings
+     */
+    private CircuitBreakerConfig(final Builder builder) {
+        this.enabled = builder.enabled;
+        this.windowSize = builder.windowSize;
+        this.minimumCalls = Math.min(builder.minimumCalls, builder.windowSize);
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDuration = builder.slowCallDuration;
+        this.openDuration = builder.openDuration;
+        this.halfOpenProbes = Math.min(builder.halfOpenProbes, builder.windowSize);
+    }
+
+    /**
+     * @return settings with disabled circuit breakers (every call is permitted)
+     */
+    public static CircuitBreakerConfig disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Static method returning a builder.
+     *
+     * @return a builder instance for this class
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return true if the circuit breakers are enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return number of the last calls the rates are calculated from
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @return number of calls needed before the breaker can open
+     */
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * @return error rate (0 to 1) at which the breaker opens
+     */
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * @return slow-call rate (0 to 1) at which the breaker opens
+     */
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * @return calls taking longer are counted as slow (null = no slow-call rule)
+     */
+    public Duration getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    /**
+     * @return time the breaker stays open before probe calls are permitted
+     */
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * @return number of probe calls permitted in half-open state
+     */
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    /**
+     * Builder class for CircuitBreakerConfigs
+     */
+    public static class Builder {
+        private boolean enabled = true;
+        private int windowSize = 50;
+        private int minimumCalls = 10;
+        private double failureRateThreshold = 0.5;
+        private double slowCallRateThreshold = 0.8;
+        private Duration slowCallDuration;
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int halfOpenProbes = 3;
+
+        /**
+         * @param enabled false to disable the circuit breakers
+         * @return builder with set enabled flag
+         */
+        public Builder withEnabled(final boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        /**
+         * @param windowSize number of the last calls the rates are calculated from
+         * @return builder with set window size
+         */
+        public Builder withWindowSize(final int windowSize) {
+            if (windowSize < 1) {
+                throw new IllegalArgumentException("Window size must be positive");
+            }
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * @param minimumCalls number of calls needed before the breaker can open
+         * @return builder with set minimum calls
+         */
+        public Builder withMinimumCalls(final int minimumCalls) {
+            this.minimumCalls = Math.max(1, minimumCalls);
+            return this;
+        }
+
+        /**
+         * @param failureRateThreshold error rate (0 to 1) at which the breaker opens
+         * @return builder with set failure rate threshold
+         */
+        public Builder withFailureRateThreshold(final double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * @param slowCallRateThreshold slow-call rate (0 to 1) at which the breaker opens
+         * @return builder with set slow-call rate threshold
+         */
+        public Builder withSlowCallRateThreshold(final double slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        /**
+         * @param slowCallDuration calls taking longer are counted as slow (null = no slow-call rule, the default;
+         *                         set it well above the normal latency of the slowest target)
+         * @return builder with set slow-call duration
+         */
+        public Builder withSlowCallDuration(final Duration slowCallDuration) {
+            this.slowCallDuration = slowCallDuration;
+            return this;
+        }
+
+        /**
+         * @param openDuration time the breaker stays open before probe calls are permitted
+         * @return builder with set open duration
+         */
+        public Builder withOpenDuration(final Duration openDuration) {
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        /**
+         * @param halfOpenProbes number of probe calls permitted in half-open state
+         * @return builder with set number of probes
+         */
+        public Builder withHalfOpenProbes(final int halfOpenProbes) {
+            this.halfOpenProbes = Math.max(1, halfOpenProbes);
+            return this;
+        }
+
+        /**
+         * @return the built CircuitBreakerConfig
+         */
+        public CircuitBreakerConfig build() {
+            return new CircuitBreakerConfig(this);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import java.io.IOException;
+
+/**
+ * Exception which is thrown, when a request is not sent because the {@link CircuitBreaker} of the target host is open
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    private final String host;
+
+    /**
+     * For Throwing a CircuitBreakerOpenException with the target (host:port)
+     *
+     * @param host the target (host:port) whose circuit breaker is open
+     */
+    public CircuitBreakerOpenException(String host) {
+        super(String.format("Circuit breaker for %s is open, request was not sent", host));
+        this.host = host;
+    }
+
+    /**
+     * @return the target (host:port) whose circuit breaker is open
+     */
+    public String getHost() {
+        return host;
+    }
+}
@@ -0,0 +1,86 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Holds the {@link CircuitBreaker} of every target (host and port) of the {@link HttpService}, breakers are created on
+ * first use while the breakers are enabled. The breakers of the least recently used targets are dropped.
+ */
+public class CircuitBreakerRegistry {
+
+    /**
+     * Maximum number of targets with a breaker
+     */
+    static final int MAX_TARGETS = 256;
+
+    private final Map<String, CircuitBreaker> breakers = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CircuitBreaker> eldest) {
+            return size() > MAX_TARGETS;
+        }
+    };
+    private volatile CircuitBreakerConfig config;
+    private final CircuitBreaker disabledBreaker = new CircuitBreaker("*", CircuitBreakerConfig.disabled());
+
+    /**
+     * Create a registry
+     *
+     * @param config settings of the created breakers
+     */
+    public CircuitBreakerRegistry(CircuitBreakerConfig config) {
+        setConfig(config);
+    }
+
+    /**
+     * Get the breaker of a target, different ports of a host (e.g. connectors and brokers on one machine) have
+     * separate breakers. While the breakers are disabled, all targets share one breaker that permits every call.
+     *
+     * @param host the target host
+     * @param port the target port
+     * @return the breaker of the target
+     */
+    public CircuitBreaker get(String host, int port) {
+        if (!config.isEnabled()) {
+            return disabledBreaker;
+        }
+        synchronized (breakers) {
+            //the breakers may have been disabled in the meantime
+            if (!config.isEnabled()) {
+                return disabledBreaker;
+            }
+            return breakers.computeIfAbsent(host + ":" + port, target -> new CircuitBreaker(target, config));
+        }
+    }
+
+    /**
+     * Change the settings of the breakers, all existing breakers are replaced by closed ones
+     *
+     * @param config the new settings
+     */
+    public void setConfig(CircuitBreakerConfig config) {
+        synchronized (breakers) {
+            this.config = config == null ? CircuitBreakerConfig.disabled() : config;
+            breakers.clear();
+        }
+    }
+
+    /**
+     * @return the settings of the breakers
+     */
+    public CircuitBreakerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return snapshots of all breakers by target (host:port, sorted)
+     */
+    public Map<String, CircuitBreaker.Snapshot> getSnapshots() {
+        var snapshots = new TreeMap<String, CircuitBreaker.Snapshot>();
+        synchronized (breakers) {
+            breakers.forEach((host, breaker) -> snapshots.put(host, breaker.getSnapshot()));
+        }
+        return snapshots;
+    }
+}
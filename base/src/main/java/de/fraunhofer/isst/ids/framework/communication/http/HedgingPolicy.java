@@ -0,0 +1,165 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import de.fraunhofer.iais.eis.DescriptionRequestMessage;
+import de.fraunhofer.iais.eis.Message;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Immutable hedging policy for the {@link IDSHttpService}: if the response to an idempotent message takes longer
+ * than a latency percentile of the target host, a second request is sent and the first response is used.
+ */
+public final class HedgingPolicy {
+
+    private static final HedgingPolicy DISABLED = builder().withEnabled(false).build();
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minSamples;
+    private final Duration minDelay;
+    private final Set<Class<? extends Message>> hedgeableTypes;
+
+    /**
+     * Create a HedgingPolicy, use {@link #builder()} to build one
+     *
+     * @param builder the builder holding the settings of the policy
+     */
+    private HedgingPolicy(final Builder builder) {
+        this.enabled = builder.enabled;
+        this.percentile = builder.percentile;
+        this.minSamples = builder.minSamples;
+        this.minDelay = builder.minDelay;
+        this.hedgeableTypes = Set.copyOf(builder.hedgeableTypes);
+    }
+
+    /**
+     * @return a policy that never hedges
+     */
+    public static HedgingPolicy disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Static method returning a builder.
+     *
+     * @return a builder instance for this class
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Check if a message may be hedged (sent twice)
+     *
+     * @param header the header of the message
+     * @return true if hedging is enabled and the message is of an idempotent type
+     */
+    public boolean isHedgeable(final Message header) {
+        return enabled && header != null && hedgeableTypes.stream().anyMatch(type -> type.isInstance(header));
+    }
+
+    /**
+     * Get the delay after which the hedged request is sent
+     *
+     * @param histogram the latencies of the target host
+     * @return the delay, null if there are not enough samples to hedge
+     */
+    public Duration hedgeDelay(final LatencyHistogram histogram) {
+        if (histogram.getCount() < minSamples) {
+            return null;
+        }
+        var threshold = histogram.getPercentile(percentile);
+        if (threshold == null) {
+            return null;
+        }
+        return threshold.compareTo(minDelay) < 0 ? minDelay : threshold;
+    }
+
+    /**
+     * @return true if hedging is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the latency percentile after which the hedged request is sent
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * @return the message types that may be hedged
+     */
+    public Set<Class<? extends Message>> getHedgeableTypes() {
+        return hedgeableTypes;
+    }
+
+    /**
+     * Builder class for HedgingPolicies
+     */
+    public static class Builder {
+        private boolean enabled = true;
+        private double percentile = 0.95;
+        private long minSamples = 20;
+        private Duration minDelay = Duration.ofMillis(10);
+        private Set<Class<? extends Message>> hedgeableTypes = Set.of(DescriptionRequestMessage.class);
+
+        /**
+         * @param enabled false to disable hedging
+         * @return builder with set enabled flag
+         */
+        public Builder withEnabled(final boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        /**
+         * @param percentile latency percentile of the target host after which the hedged request is sent (e.g. 0.95)
+         * @return builder with set percentile
+         */
+        public Builder withPercentile(final double percentile) {
+            if (percentile <= 0 || percentile >= 1) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 1");
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * @param minSamples number of latency samples of the target host needed before requests are hedged
+         * @return builder with set min samples
+         */
+        public Builder withMinSamples(final long minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * @param minDelay lower bound of the delay before the hedged request is sent
+         * @return builder with set min delay
+         */
+        public Builder withMinDelay(final Duration minDelay) {
+            this.minDelay = minDelay;
+            return this;
+        }
+
+        /**
+         * @param hedgeableTypes message types that may be sent twice (only idempotent messages!)
+         * @return builder with set message types
+         */
+        public Builder withHedgeableTypes(final Set<Class<? extends Message>> hedgeableTypes) {
+            this.hedgeableTypes = hedgeableTypes;
+            return this;
+        }
+
+        /**
+         * @return the built HedgingPolicy
+         */
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+    }
+}
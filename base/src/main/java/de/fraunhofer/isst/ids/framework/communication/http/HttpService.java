@@ -1,5 +1,7 @@
 package de.fraunhofer.isst.ids.framework.communication.http;
 
+import de.fraunhofer.isst.ids.framework.util.ClientProfile;
+import de.fraunhofer.isst.ids.framework.util.RequestTimeouts;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 
@@ -7,9 +9,13 @@ import java.io.IOException;
 import java.net.URI;
 import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
- * Interface for Http Communication
+ * Interface for Http Communication. Methods added in 4.0.8 have default implementations for existing implementations
+ * and decorators: they delegate to the methods without client profile or run the synchronous methods asynchronously,
+ * features an implementation does not provide (latency tracking, adaptive timeouts, circuit breakers) are disabled.
  */
 public interface HttpService {
 
@@ -20,14 +26,75 @@ public interface HttpService {
      * @param readTimeout max timeout for waiting for the target response (null = default values are used)
      * @param writeTimeout max timeout for sending the response to the target (null = default values are used)
      * @param callTimeout max timeout for the whole http request (null = default values are used)
+     * @deprecated the timeouts are shared by all callers of the service, use the methods with a {@link ClientProfile} parameter instead
      */
+    @Deprecated
     void setTimeouts(Duration connectTimeout, Duration readTimeout, Duration writeTimeout, Duration callTimeout);
 
     /**
      * Reset client timeouts to OkHttp default values
+     *
+     * @deprecated the timeouts are shared by all callers of the service, use the methods with a {@link ClientProfile} parameter instead
      */
+    @Deprecated
     void removeTimeouts();
 
+    /**
+     * Getter for the latencies of the requests to a host (time until the response headers arrive; requests that
+     * timed out are recorded with their read timeout). Latencies of a host are recorded while adaptive timeouts are
+     * enabled or after its histogram was requested once; the histograms of the least recently used hosts are dropped.
+     *
+     * @param host the target host
+     * @return the {@link LatencyHistogram} of the requests to the host (empty by default)
+     */
+    default LatencyHistogram getLatencyHistogram(String host) {
+        return new LatencyHistogram(Duration.ofMinutes(5));
+    }
+
+    /**
+     * Set the policy for adaptive timeouts (default: disabled): requests without explicitly set timeouts (see
+     * {@link #setTimeouts} and the methods with {@link ClientProfile}) get connect and read timeouts derived from the
+     * observed latencies of their target host.
+     *
+     * @param adaptiveTimeoutPolicy the {@link AdaptiveTimeoutPolicy} (null = timeouts of the client are used)
+     * @throws UnsupportedOperationException by default, if the policy is enabled
+     */
+    default void setAdaptiveTimeoutPolicy(AdaptiveTimeoutPolicy adaptiveTimeoutPolicy) {
+        if (adaptiveTimeoutPolicy != null && adaptiveTimeoutPolicy.isEnabled()) {
+            throw new UnsupportedOperationException("Adaptive timeouts are not supported by this HttpService!");
+        }
+    }
+
+    /**
+     * Getter for the adaptive timeout policy
+     *
+     * @return the current {@link AdaptiveTimeoutPolicy} of the service (disabled by default)
+     */
+    default AdaptiveTimeoutPolicy getAdaptiveTimeoutPolicy() {
+        return AdaptiveTimeoutPolicy.disabled();
+    }
+
+    /**
+     * Get the timeouts requests to a host without explicitly set timeouts are currently sent with
+     *
+     * @param host the target host
+     * @return the adaptive timeouts of the host, null if the timeouts of the client are used (policy disabled or not enough samples)
+     */
+    default RequestTimeouts getAdaptiveTimeouts(String host) {
+        return null;
+    }
+
+    /**
+     * Getter for the per-target (host and port) circuit breakers, disabled by default (see
+     * {@link CircuitBreakerRegistry#setConfig(CircuitBreakerConfig)}): while the breaker of a target is open, requests
+     * to the target fail fast with a {@link CircuitBreakerOpenException}. The registry exposes the state of the breakers and their settings.
+     *
+     * @return the {@link CircuitBreakerRegistry} of the service (by default a disabled registry, whose settings have no effect)
+     */
+    default CircuitBreakerRegistry getCircuitBreakers() {
+        return new CircuitBreakerRegistry(CircuitBreakerConfig.disabled());
+    }
+
     /**
      * Sends plaintext message as http(s) request to the defined target.
      *
@@ -48,6 +115,23 @@ public interface HttpService {
      */
     Response send(RequestBody requestBody, URI target) throws IOException;
 
+    /**
+     * Sends a given requestBody as http(s) request to the defined in address, using the client settings of the given profile.
+     *
+     * @param requestBody {@link RequestBody} object to be sent
+     * @param target the target host of the request
+     * @param profile the {@link ClientProfile} (timeouts, pool, protocols, retry policy) used for this call
+     * @return the HttpResponse that comes back for the sent Message
+     * @throws IOException if the request could not be executed due to cancellation, a connectivity problem or timeout.
+     * @throws UnsupportedOperationException by default, if a profile is given
+     */
+    default Response send(RequestBody requestBody, URI target, ClientProfile profile) throws IOException {
+        if (profile != null) {
+            throw new UnsupportedOperationException("Client profiles are not supported by this HttpService!");
+        }
+        return send(requestBody, target);
+    }
+
     /**
      * Sends a given requestBody as http(s) request to the defined in address,
      * extra fields for the header can be provided in headers map.
@@ -60,6 +144,25 @@ public interface HttpService {
      */
     Response sendWithHeaders(RequestBody requestBody, URI target, Map<String, String> headers) throws IOException;
 
+    /**
+     * Sends a given requestBody as http(s) request to the defined in address, using the client settings of the given profile,
+     * extra fields for the header can be provided in headers map.
+     *
+     * @param requestBody {@link RequestBody} object to be sent
+     * @param target the target host of the request
+     * @param headers a Map of http headers for the header of the built request
+     * @param profile the {@link ClientProfile} (timeouts, pool, protocols, retry policy) used for this call
+     * @return the HttpResponse that comes back for the sent Message
+     * @throws IOException if the request could not be executed due to cancellation, a connectivity problem or timeout.
+     * @throws UnsupportedOperationException by default, if a profile is given
+     */
+    default Response sendWithHeaders(RequestBody requestBody, URI target, Map<String, String> headers, ClientProfile profile) throws IOException {
+        if (profile != null) {
+            throw new UnsupportedOperationException("Client profiles are not supported by this HttpService!");
+        }
+        return sendWithHeaders(requestBody, target, headers);
+    }
+
     /**
      * Sends a http GET request to the target.
      *
@@ -69,6 +172,22 @@ public interface HttpService {
      */
     Response get(URI target) throws IOException;
 
+    /**
+     * Sends a http GET request to the target, using the client settings of the given profile.
+     *
+     * @param target the target host of the request
+     * @param profile the {@link ClientProfile} (timeouts, pool, protocols, retry policy) used for this call
+     * @return the HttpResponse from the get request
+     * @throws IOException if the request could not be executed due to cancellation, a connectivity problem or timeout.
+     * @throws UnsupportedOperationException by default, if a profile is given
+     */
+    default Response get(URI target, ClientProfile profile) throws IOException {
+        if (profile != null) {
+            throw new UnsupportedOperationException("Client profiles are not supported by this HttpService!");
+        }
+        return get(target);
+    }
+
     /**
      * Sends a http GET request to the target,
      * extra fields for the header can be provided in headers map.
@@ -80,4 +199,103 @@ public interface HttpService {
      */
     Response getWithHeaders(URI target, Map<String, String> headers) throws IOException;
 
+    /**
+     * Sends a http GET request to the target, using the client settings of the given profile,
+     * extra fields for the header can be provided in headers map.
+     *
+     * @param target the target host of the request
+     * @param headers a Map of http headers for the header of the built request
+     * @param profile the {@link ClientProfile} (timeouts, pool, protocols, retry policy) used for this call
+     * @return the HttpResponse from the get request
+     * @throws IOException if the request could not be executed due to cancellation, a connectivity problem or timeout.
+     * @throws UnsupportedOperationException by default, if a profile is given
+     */
+    default Response getWithHeaders(URI target, Map<String, String> headers, ClientProfile profile) throws IOException {
+        if (profile != null) {
+            throw new UnsupportedOperationException("Client profiles are not supported by this HttpService!");
+        }
+        return getWithHeaders(target, headers);
+    }
+
+    /**
+     * Sends a given requestBody asynchronously as http(s) request to the defined in address.
+     * The returned future is completed on an OkHttp dispatcher thread, cancelling it cancels the call.
+     * The default implementation runs {@link #send(RequestBody, URI)} on the common ForkJoinPool.
+     *
+     * @param requestBody {@link RequestBody} object to be sent
+     * @param target the target host of the request
+     * @return a future of the HttpResponse that comes back for the sent Message, completed exceptionally with an IOException
+     * if the request could not be executed or the response code is not successful
+     */
+    default CompletableFuture<Response> sendAsync(RequestBody requestBody, URI target) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(requestBody, target);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Sends a given requestBody asynchronously as http(s) request to the defined in address, using the client settings
+     * and retry policy of the given profile. The returned future is completed on an OkHttp dispatcher thread,
+     * cancelling it cancels the call and stops its retries.
+     * The default implementation runs {@link #send(RequestBody, URI, ClientProfile)} on the common ForkJoinPool.
+     *
+     * @param requestBody {@link RequestBody} object to be sent
+     * @param target the target host of the request
+     * @param profile the {@link ClientProfile} (timeouts, pool, protocols, retry policy) used for this call
+     * @return a future of the HttpResponse that comes back for the sent Message, completed exceptionally with an IOException
+     * if the request could not be executed or the response code is not successful
+     */
+    default CompletableFuture<Response> sendAsync(RequestBody requestBody, URI target, ClientProfile profile) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(requestBody, target, profile);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Sends a given requestBody asynchronously as http(s) request to the defined in address,
+     * extra fields for the header can be provided in headers map.
+     * The default implementation runs {@link #sendWithHeaders(RequestBody, URI, Map)} on the common ForkJoinPool.
+     *
+     * @param requestBody {@link RequestBody} object to be sent
+     * @param target the target host of the request
+     * @param headers a Map of http headers for the header of the built request
+     * @return a future of the HttpResponse that comes back for the sent Message, completed exceptionally with an IOException
+     * if the request could not be executed or the response code is not successful
+     */
+    default CompletableFuture<Response> sendWithHeadersAsync(RequestBody requestBody, URI target, Map<String, String> headers) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return sendWithHeaders(requestBody, target, headers);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Sends a http GET request asynchronously to the target.
+     * The default implementation runs {@link #get(URI)} on the common ForkJoinPool.
+     *
+     * @param target the target host of the request
+     * @return a future of the HttpResponse from the get request, completed exceptionally with an IOException
+     * if the request could not be executed or the response code is not successful
+     */
+    default CompletableFuture<Response> getAsync(URI target) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return get(target);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
 }
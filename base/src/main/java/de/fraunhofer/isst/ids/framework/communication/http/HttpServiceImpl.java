@@ -1,17 +1,22 @@
 package de.fraunhofer.isst.ids.framework.communication.http;
 
+import de.fraunhofer.isst.ids.framework.util.ClientProfile;
 import de.fraunhofer.isst.ids.framework.util.ClientProvider;
-import lombok.AllArgsConstructor;
-import lombok.Data;
+import de.fraunhofer.isst.ids.framework.util.RequestTimeouts;
 import okhttp3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for sending Http Requests using configuration settings
@@ -20,8 +25,26 @@ import java.util.Map;
 public class HttpServiceImpl implements HttpService {
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpServiceImpl.class);
 
+    /**
+     * Latencies are kept for one to two windows
+     */
+    private static final Duration LATENCY_WINDOW = Duration.ofMinutes(5);
+
+    /**
+     * Maximum number of hosts with a LatencyHistogram, the least recently used one is dropped
+     */
+    static final int MAX_LATENCY_HOSTS = 256;
+
     private ClientProvider provider;
-    private TimeoutSettings timeoutSettings;
+    private volatile ClientProfile timeoutSettings;
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LatencyHistogram> eldest) {
+            return size() > MAX_LATENCY_HOSTS;
+        }
+    };
+    private volatile AdaptiveTimeoutPolicy adaptiveTimeoutPolicy = AdaptiveTimeoutPolicy.disabled();
+    private final CircuitBreakerRegistry circuitBreakers = new CircuitBreakerRegistry(CircuitBreakerConfig.disabled());
 
     /**
      * @param provider the {@link ClientProvider} used to generate HttpClients with the current connector configuration
@@ -32,16 +55,80 @@ public class HttpServiceImpl implements HttpService {
 
     /** {@inheritDoc} */
     @Override
+    @Deprecated
     public void setTimeouts(Duration connectTimeout, Duration readTimeout, Duration writeTimeout, Duration callTimeout){
-            this.timeoutSettings = new TimeoutSettings(connectTimeout, readTimeout, writeTimeout, callTimeout);
+            this.timeoutSettings = ClientProfile.withTimeouts("timeouts", connectTimeout, readTimeout, writeTimeout, callTimeout);
     }
 
     /** {@inheritDoc} */
     @Override
+    @Deprecated
     public void removeTimeouts(){
         this.timeoutSettings = null;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public LatencyHistogram getLatencyHistogram(String host) {
+        synchronized (latencies) {
+            return latencies.computeIfAbsent(host, h -> new LatencyHistogram(LATENCY_WINDOW));
+        }
+    }
+
+    /**
+     * Record a latency sample of a host, samples are only recorded while adaptive timeouts are enabled or the
+     * histogram of the host was requested with {@link #getLatencyHistogram(String)} (e.g. for hedged requests)
+     *
+     * @param host the target host
+     * @param nanos the latency in nanoseconds
+     */
+    private void recordLatency(String host, long nanos) {
+        LatencyHistogram histogram;
+        synchronized (latencies) {
+            histogram = latencies.get(host);
+        }
+        if (histogram == null && adaptiveTimeoutPolicy.isEnabled()) {
+            histogram = getLatencyHistogram(host);
+        }
+        if (histogram != null) {
+            histogram.recordNanos(nanos);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setAdaptiveTimeoutPolicy(AdaptiveTimeoutPolicy adaptiveTimeoutPolicy) {
+        this.adaptiveTimeoutPolicy = adaptiveTimeoutPolicy == null ? AdaptiveTimeoutPolicy.disabled() : adaptiveTimeoutPolicy;
+        if (!this.adaptiveTimeoutPolicy.isEnabled()) {
+            //histograms still requested by their readers are created again on their next read
+            synchronized (latencies) {
+                latencies.clear();
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AdaptiveTimeoutPolicy getAdaptiveTimeoutPolicy() {
+        return adaptiveTimeoutPolicy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RequestTimeouts getAdaptiveTimeouts(String host) {
+        var policy = adaptiveTimeoutPolicy;
+        if (!policy.isEnabled()) {
+            return null;
+        }
+        return policy.timeouts(getLatencyHistogram(host));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CircuitBreakerRegistry getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
     /** {@inheritDoc} */
     @Override
     public Response send(String message, URI target) throws IOException{
@@ -53,38 +140,152 @@ public class HttpServiceImpl implements HttpService {
     /** {@inheritDoc} */
     @Override
     public Response send(RequestBody requestBody, URI target) throws IOException {
-        LOGGER.debug(String.format("building request to %s", target.toString()));
-        Request request = buildRequest(requestBody, target);
-        LOGGER.debug(String.format("sending request to %s", target.toString()));
-        return sendRequest(request, getClientWithSettings());
+        return send(requestBody, target, getClientWithSettings(), RetryPolicy.none());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Response send(RequestBody requestBody, URI target, ClientProfile profile) throws IOException {
+        return send(requestBody, target, provider.getClient(profile), profile.getRetryPolicy());
     }
 
     /** {@inheritDoc} */
     @Override
     public Response sendWithHeaders(RequestBody requestBody, URI target, Map<String, String> headers) throws IOException {
-        LOGGER.debug(String.format("building request to %s", target.toString()));
-        Request request = buildWithHeaders(requestBody, target, headers);
-        LOGGER.debug(String.format("sending request to %s", target.toString()));
-        return sendRequest(request, getClientWithSettings());
+        return sendWithHeaders(requestBody, target, headers, getClientWithSettings(), RetryPolicy.none());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Response sendWithHeaders(RequestBody requestBody, URI target, Map<String, String> headers, ClientProfile profile) throws IOException {
+        return sendWithHeaders(requestBody, target, headers, provider.getClient(profile), profile.getRetryPolicy());
     }
 
     /** {@inheritDoc} */
     @Override
     public Response get(URI target) throws IOException {
-        Request request = new Request.Builder().url(target.toString()).get().build();
-        return sendRequest(request, getClientWithSettings());
+        return get(target, getClientWithSettings(), RetryPolicy.none());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Response get(URI target, ClientProfile profile) throws IOException {
+        return get(target, provider.getClient(profile), profile.getRetryPolicy());
     }
 
     /** {@inheritDoc} */
     @Override
     public Response getWithHeaders(URI target, Map<String, String> headers) throws IOException {
+        return getWithHeaders(target, headers, getClientWithSettings(), RetryPolicy.none());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Response getWithHeaders(URI target, Map<String, String> headers, ClientProfile profile) throws IOException {
+        return getWithHeaders(target, headers, provider.getClient(profile), profile.getRetryPolicy());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Response> sendAsync(RequestBody requestBody, URI target) {
+        LOGGER.debug(String.format("building request to %s", target.toString()));
+        Request request = buildRequest(requestBody, target);
+        LOGGER.debug(String.format("sending async request to %s", target.toString()));
+        return sendAsyncRequest(request, getClientWithSettings(), RetryPolicy.none());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Response> sendAsync(RequestBody requestBody, URI target, ClientProfile profile) {
+        LOGGER.debug(String.format("building request to %s", target.toString()));
+        Request request = buildRequest(requestBody, target);
+        LOGGER.debug(String.format("sending async request to %s", target.toString()));
+        return sendAsyncRequest(request, provider.getClient(profile), profile.getRetryPolicy());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Response> sendWithHeadersAsync(RequestBody requestBody, URI target, Map<String, String> headers) {
+        LOGGER.debug(String.format("building request to %s", target.toString()));
+        Request request = buildWithHeaders(requestBody, target, headers);
+        LOGGER.debug(String.format("sending async request to %s", target.toString()));
+        return sendAsyncRequest(request, getClientWithSettings(), RetryPolicy.none());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Response> getAsync(URI target) {
+        Request request = new Request.Builder().url(target.toString()).get().build();
+        return sendAsyncRequest(request, getClientWithSettings(), RetryPolicy.none());
+    }
+
+    /**
+     * Sends a given requestBody as http(s) request to the defined in address, using the given client
+     *
+     * @param requestBody {@link RequestBody} object to be sent
+     * @param target the target host of the request
+     * @param client {@link OkHttpClient} for sending Request
+     * @param policy the retry policy of the request
+     * @return the HttpResponse that comes back for the sent Message
+     * @throws IOException if the request could not be executed due to cancellation, a connectivity problem or timeout.
+     */
+    private Response send(RequestBody requestBody, URI target, OkHttpClient client, RetryPolicy policy) throws IOException {
+        LOGGER.debug(String.format("building request to %s", target.toString()));
+        Request request = buildRequest(requestBody, target);
+        LOGGER.debug(String.format("sending request to %s", target.toString()));
+        return sendRequest(request, client, policy);
+    }
+
+    /**
+     * Sends a given requestBody with extra header fields as http(s) request to the defined in address, using the given client
+     *
+     * @param requestBody {@link RequestBody} object to be sent
+     * @param target the target host of the request
+     * @param headers a Map of http headers for the header of the built request
+     * @param client {@link OkHttpClient} for sending Request
+     * @param policy the retry policy of the request
+     * @return the HttpResponse that comes back for the sent Message
+     * @throws IOException if the request could not be executed due to cancellation, a connectivity problem or timeout.
+     */
+    private Response sendWithHeaders(RequestBody requestBody, URI target, Map<String, String> headers, OkHttpClient client, RetryPolicy policy) throws IOException {
+        LOGGER.debug(String.format("building request to %s", target.toString()));
+        Request request = buildWithHeaders(requestBody, target, headers);
+        LOGGER.debug(String.format("sending request to %s", target.toString()));
+        return sendRequest(request, client, policy);
+    }
+
+    /**
+     * Sends a http GET request to the target, using the given client
+     *
+     * @param target the target host of the request
+     * @param client {@link OkHttpClient} for sending Request
+     * @param policy the retry policy of the request
+     * @return the HttpResponse from the get request
+     * @throws IOException if the request could not be executed due to cancellation, a connectivity problem or timeout.
+     */
+    private Response get(URI target, OkHttpClient client, RetryPolicy policy) throws IOException {
+        Request request = new Request.Builder().url(target.toString()).get().build();
+        return sendRequest(request, client, policy);
+    }
+
+    /**
+     * Sends a http GET request with extra header fields to the target, using the given client
+     *
+     * @param target the target host of the request
+     * @param headers a Map of http headers for the header of the built request
+     * @param client {@link OkHttpClient} for sending Request
+     * @param policy the retry policy of the request
+     * @return the HttpResponse from the get request
+     * @throws IOException if the request could not be executed due to cancellation, a connectivity problem or timeout.
+     */
+    private Response getWithHeaders(URI target, Map<String, String> headers, OkHttpClient client, RetryPolicy policy) throws IOException {
         var builder = new Request.Builder().url(target.toString()).get();
         headers.keySet().forEach(key -> {
             LOGGER.debug(String.format("adding header part (%s,%s)", key, headers.get(key)));
             builder.addHeader(key, headers.get(key));
         });
         var request = builder.build();
-        return sendRequest(request, getClientWithSettings());
+        return sendRequest(request, client, policy);
     }
 
     /**
@@ -129,34 +330,231 @@ public class HttpServiceImpl implements HttpService {
     }
 
     /**
-     * Sends a generated request http message to the defined address.
+     * Sends a generated request http message to the defined address, failed attempts are retried as defined by the {@link RetryPolicy}.
      *
      * @param request POST Request with the message as body
      * @param client {@link OkHttpClient} for sending Request
+     * @param policy the retry policy of the request
      * @return Response object containing the return message from the broker
      * @throws IOException if the request could not be executed due to cancellation, a connectivity problem or timeout.
      */
-    private Response sendRequest(Request request, OkHttpClient client) throws IOException{
-        LOGGER.info("Request is HTTPS: " + request.isHttps());
-        Response response = client.newCall(request).execute();
+    private Response sendRequest(Request request, OkHttpClient client, RetryPolicy policy) throws IOException{
+        LOGGER.debug("Request is HTTPS: " + request.isHttps());
+        policy.getBudget().onRequest();
+        for (int attempt = 1; ; attempt++) {
+            var call = newCall(request, client);
+            try {
+                return executeRequest(call, client);
+            } catch (IOException e) {
+                //calls cancelled by the caller are not retried
+                if (call.isCanceled() || !policy.shouldRetry(e, attempt) || !policy.getBudget().tryAcquire()) {
+                    throw e;
+                }
+                var backoff = policy.backoff(attempt);
+                LOGGER.debug(String.format("Attempt %d to %s failed (%s), retrying in %s", attempt, request.url(), e.getMessage(), backoff));
+                try {
+                    Thread.sleep(backoff.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for retry");
+                }
+            }
+        }
+    }
+
+    /**
+     * Execute a single attempt of a request if the circuit breaker of the target permits it,
+     * record its outcome and latency
+     *
+     * @param call the call of the attempt
+     * @param client {@link OkHttpClient} the call was created with
+     * @return the successful Response
+     * @throws IOException if the request fails or the response code is not successful
+     * @throws CircuitBreakerOpenException if the circuit breaker of the target is open
+     */
+    private Response executeRequest(Call call, OkHttpClient client) throws IOException {
+        var request = call.request();
+        var breaker = circuitBreakers.get(request.url().host(), request.url().port());
+        breaker.acquirePermission();
+        var start = System.nanoTime();
+        Response response;
+        //every permitted call reports its outcome, also if it fails with an unchecked exception
+        var failed = true;
+        try {
+            response = call.execute();
+            failed = isFailure(response.code());
+        } catch (IOException e) {
+            //calls cancelled by the caller do not count as failure
+            failed = !call.isCanceled();
+            recordTimeout(call, client, e);
+            throw e;
+        } finally {
+            breaker.onResult(System.nanoTime() - start, failed);
+        }
         if (!response.isSuccessful()){
             LOGGER.error("Error while sending the request!");
-            throw new IOException("Unexpected code " + response + " With Body: "+response.body().string());
+            throw unexpectedCode(response);
         }
+        recordLatency(request.url().host(), System.nanoTime() - start);
         return response;
     }
 
     /**
-     * Sends asynchronously a generated request http message to the defined address.
+     * Sends asynchronously a generated request http message to the defined address,
+     * failed attempts are retried as defined by the {@link RetryPolicy}.
      *
      * @param request POST Request with the message as body
      * @param client {@link OkHttpClient} for sending Request
-     * @param callback {@link Callback} for response handling
+     * @param policy the retry policy of the request
+     * @return future of the Response, completed exceptionally if the call fails or the response is not successful
+     */
+    private CompletableFuture<Response> sendAsyncRequest(Request request, OkHttpClient client, RetryPolicy policy) {
+        LOGGER.debug("Request is HTTPS: " + request.isHttps());
+        policy.getBudget().onRequest();
+        var result = new CompletableFuture<Response>();
+        sendAsyncAttempt(request, client, policy, 1, result);
+        LOGGER.debug("Callback for async request has been enqueued.");
+        return result;
+    }
+
+    /**
+     * Enqueue a single attempt of an async request, schedule the next attempt if it fails and can be retried
+     *
+     * @param request the request to execute
+     * @param client {@link OkHttpClient} for sending Request
+     * @param policy the retry policy of the request
+     * @param attempt the number of this attempt (starting with 1)
+     * @param result future of the Response, completed by the last attempt
+     */
+    private void sendAsyncAttempt(Request request, OkHttpClient client, RetryPolicy policy, int attempt, CompletableFuture<Response> result) {
+        if (result.isDone()) {
+            return;
+        }
+        var breaker = circuitBreakers.get(request.url().host(), request.url().port());
+        try {
+            breaker.acquirePermission();
+        } catch (CircuitBreakerOpenException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        var start = System.nanoTime();
+        Call call;
+        try {
+            call = newCall(request, client);
+        } catch (RuntimeException e) {
+            breaker.onResult(System.nanoTime() - start, true);
+            result.completeExceptionally(e);
+            return;
+        }
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                //calls cancelled by the caller do not count as failure and are not retried
+                breaker.onResult(System.nanoTime() - start, !call.isCanceled());
+                recordTimeout(call, client, e);
+                if (call.isCanceled()) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                retryOrFail(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                breaker.onResult(System.nanoTime() - start, isFailure(response.code()));
+                if (!response.isSuccessful()) {
+                    LOGGER.error("Error while sending the request!");
+                    try (response) {
+                        retryOrFail(unexpectedCode(response));
+                    } catch (IOException e) {
+                        retryOrFail(e);
+                    }
+                    return;
+                }
+                recordLatency(request.url().host(), System.nanoTime() - start);
+                //close the response if the future was cancelled in the meantime
+                if (!result.complete(response)) {
+                    response.close();
+                }
+            }
+
+            private void retryOrFail(IOException e) {
+                if (result.isDone() || !policy.shouldRetry(e, attempt) || !policy.getBudget().tryAcquire()) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                var backoff = policy.backoff(attempt);
+                LOGGER.debug(String.format("Attempt %d to %s failed (%s), retrying in %s", attempt, request.url(), e.getMessage(), backoff));
+                CompletableFuture.delayedExecutor(backoff.toNanos(), TimeUnit.NANOSECONDS)
+                        .execute(() -> sendAsyncAttempt(request, client, policy, attempt + 1, result));
+            }
+        });
+        //cancel the call when the future is cancelled
+        result.whenComplete((response, throwable) -> {
+            if (result.isCancelled()) {
+                call.cancel();
+            }
+        });
+    }
+
+    /**
+     * Create a call of the request, requests without explicitly set timeouts get the adaptive timeouts of their target host
+     *
+     * @param request the request
+     * @param client {@link OkHttpClient} for sending Request
+     * @return the call of the request
+     */
+    private Call newCall(Request request, OkHttpClient client) {
+        //only the default client has no explicitly set timeouts (timeout settings and profiles use derived clients)
+        if (client == provider.getClient()) {
+            var timeouts = getAdaptiveTimeouts(request.url().host());
+            if (timeouts != null) {
+                LOGGER.debug(String.format("Using adaptive timeouts for %s: %s", request.url().host(), timeouts));
+                return timeouts.newCall(client, request);
+            }
+        }
+        return client.newCall(request);
+    }
+
+    /**
+     * Record a call that timed out as latency sample at its read timeout, otherwise only the calls that were fast
+     * enough would be recorded and the latencies (and the adaptive timeouts derived from them) would be too low
+     *
+     * @param call the failed call
+     * @param client {@link OkHttpClient} the call was created with
+     * @param e the exception of the call
      */
-    private void sendAsyncRequest(Request request, OkHttpClient client, Callback callback) {
-        LOGGER.info("Request is HTTPS: " + request.isHttps());
-        client.newCall(request).enqueue(callback);
-        LOGGER.info("Callback for async request has been enqueued.");
+    private void recordTimeout(Call call, OkHttpClient client, IOException e) {
+        if (!(e instanceof SocketTimeoutException)) {
+            return;
+        }
+        var request = call.request();
+        var timeouts = request.tag(RequestTimeouts.class);
+        var timeoutMillis = timeouts != null ? timeouts.getReadTimeout().toMillis() : client.readTimeoutMillis();
+        if (timeoutMillis > 0) {
+            recordLatency(request.url().host(), Duration.ofMillis(timeoutMillis).toNanos());
+        }
+    }
+
+    /**
+     * Check if a response counts as failure for the circuit breaker (client errors are answers of a healthy host)
+     *
+     * @param code the response code
+     * @return true for server errors and timeouts
+     */
+    private static boolean isFailure(int code) {
+        return code >= 500 || code == 408 || code == 429;
+    }
+
+    /**
+     * Create the exception for a non successful response (reads the body of the response)
+     *
+     * @param response the non successful response
+     * @return exception with the code and body of the response
+     * @throws IOException if the body of the response cannot be read
+     */
+    private static UnexpectedResponseCodeException unexpectedCode(Response response) throws IOException {
+        return new UnexpectedResponseCodeException(response.code(), "Unexpected code " + response + " With Body: " + response.body().string());
     }
 
     /**
@@ -165,29 +563,13 @@ public class HttpServiceImpl implements HttpService {
      * @return client with set timeouts
      */
     private OkHttpClient getClientWithSettings(){
-        if(timeoutSettings != null){
-            LOGGER.debug("Generating a Client with specified timeout settings.");
-            return provider.getClientWithTimeouts(
-                    timeoutSettings.getConnectTimeout(),
-                    timeoutSettings.getReadTimeout(),
-                    timeoutSettings.getWriteTimeout(),
-                    timeoutSettings.getCallTimeout()
-            );
+        var settings = timeoutSettings;
+        if(settings != null){
+            LOGGER.debug("Using the Client with specified timeout settings.");
+            return provider.getClient(settings);
         }
         LOGGER.debug("No timeout settings specified, using default client.");
         return provider.getClient();
     }
 
-    /**
-     * Inner class, managing timeout settings for custom HttpClients
-     */
-    @AllArgsConstructor
-    @Data
-    private class TimeoutSettings{
-        private Duration connectTimeout;
-        private Duration readTimeout;
-        private Duration writeTimeout;
-        private Duration callTimeout;
-    }
-
 }
@@ -1,36 +1,189 @@
 package de.fraunhofer.isst.ids.framework.communication.http;
 
+import de.fraunhofer.iais.eis.Message;
 import de.fraunhofer.isst.ids.framework.daps.ClaimsException;
 import okhttp3.RequestBody;
 import org.apache.commons.fileupload.FileUploadException;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
- * Interface for IDS Http Communication
+ * Interface for IDS Http Communication. Methods added in 4.0.8 have default implementations for existing
+ * implementations and decorators, which are based on {@link #sendAndCheckDat(RequestBody, URI)} and
+ * {@link #sendWithHeadersAndCheckDat(RequestBody, URI, Map)} (no hedging, buffered payloads).
  */
 public interface IDSHttpService {
 
     /**
      * @param body requestBody to be sent
      * @param target targetURI of the request
-     * @return Multipart Map with header and payload part of response
+     * @return Multipart Map with header and payload part of response, with deserialized header
      * @throws IOException if request cannot be sent
      * @throws FileUploadException if response cannot be parsed to multipart map
      * @throws ClaimsException if DAT of response is invalid or cannot be parsed
      */
-    Map<String, String> sendAndCheckDat(RequestBody body, URI target) throws IOException, FileUploadException, ClaimsException;
+    MultipartResponse sendAndCheckDat(RequestBody body, URI target) throws IOException, FileUploadException, ClaimsException;
+
+    /**
+     * Build and send a message with String payload and check the DAT of the response. If the message is of an
+     * idempotent type (see {@link HedgingPolicy}) and the response takes longer than usual for the target host,
+     * a second (hedged) request is sent and the first response is used.
+     *
+     * @param header the header of the message
+     * @param payload the payload of the message (can be null)
+     * @param target targetURI of the request
+     * @return Multipart Map with header and payload part of response, with deserialized header
+     * @throws IOException if the message cannot be serialized or the request cannot be sent
+     * @throws FileUploadException if response cannot be parsed to multipart map
+     * @throws ClaimsException if DAT of response is invalid or cannot be parsed
+     */
+    default MultipartResponse sendAndCheckDat(Message header, String payload, URI target) throws IOException, FileUploadException, ClaimsException {
+        return sendAndCheckDat(InfomodelMessageBuilder.messageWithString(header, payload), target);
+    }
 
     /**
      * @param body requestBody to be sent
      * @param target targetURI of the request
      * @param headers additional headers for the Http header
-     * @return Multipart Map with header and payload part of response
+     * @return Multipart Map with header and payload part of response, with deserialized header
+     * @throws IOException if request cannot be sent
+     * @throws FileUploadException if response cannot be parsed to multipart map
+     * @throws ClaimsException if DAT of response is invalid or cannot be parsed
+     */
+    MultipartResponse sendWithHeadersAndCheckDat(RequestBody body, URI target, Map<String, String> headers) throws IOException, FileUploadException, ClaimsException;
+
+    /**
+     * Send a batch of messages (see {@link InfomodelMessageBuilder#messageBatch(List, List)}) to the batch endpoint
+     * of a connector and check the DATs of all responses.
+     *
+     * @param body the batched requestBody to be sent
+     * @param target targetURI of the batch endpoint
+     * @return one Multipart Map with header and payload part (and deserialized header) per response, in the order of the sent messages
      * @throws IOException if request cannot be sent
      * @throws FileUploadException if response cannot be parsed to multipart map
+     * @throws ClaimsException if the DAT of any response is invalid or cannot be parsed
+     * @throws UnsupportedOperationException by default
+     */
+    default List<MultipartResponse> sendBatchAndCheckDat(RequestBody body, URI target) throws IOException, FileUploadException, ClaimsException {
+        throw new UnsupportedOperationException("Batches are not supported by this IDSHttpService!");
+    }
+
+    /**
+     * Send a message asynchronously, the response body is read on the OkHttp callback thread, then parsed and its DAT
+     * checked on the response executor of the service if one is set
+     * (see {@link IDSHttpServiceImpl#setResponseExecutor(java.util.concurrent.Executor)}).
+     * The default implementation runs {@link #sendAndCheckDat(RequestBody, URI)} on the common ForkJoinPool.
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @return future of the Multipart Map with header and payload part of response, completed exceptionally with an
+     * IOException, FileUploadException or ClaimsException (wrapped in a CompletionException) like {@link #sendAndCheckDat(RequestBody, URI)}
+     */
+    default CompletableFuture<MultipartResponse> sendAndCheckDatAsync(RequestBody body, URI target) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return sendAndCheckDat(body, target);
+            } catch (IOException | FileUploadException | ClaimsException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Send a message with additional http headers asynchronously, the response is read and checked like in
+     * {@link #sendAndCheckDatAsync(RequestBody, URI)}. The default implementation runs
+     * {@link #sendWithHeadersAndCheckDat(RequestBody, URI, Map)} on the common ForkJoinPool.
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @param headers additional headers for the Http header
+     * @return future of the Multipart Map with header and payload part of response, completed exceptionally like
+     * {@link #sendAndCheckDatAsync(RequestBody, URI)}
+     */
+    default CompletableFuture<MultipartResponse> sendWithHeadersAndCheckDatAsync(RequestBody body, URI target, Map<String, String> headers) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return sendWithHeadersAndCheckDat(body, target, headers);
+            } catch (IOException | FileUploadException | ClaimsException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Send a message and stream the payload part of the response to the given stream, without holding the response in memory.
+     * The header part of the response has to precede the payload part, it is deserialized and its DAT is checked before
+     * any byte of the payload is written. The default implementation holds the response of
+     * {@link #sendAndCheckDat(RequestBody, URI)} in memory and writes its payload (UTF-8 encoded).
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @param sink stream the payload part is written to (not closed)
+     * @return the deserialized header of the response
+     * @throws IOException if request cannot be sent, the header part of the response is larger than 1 MiB or the payload cannot be written
+     * @throws FileUploadException if response is no multipart response with header before payload
+     * @throws ClaimsException if DAT of response is invalid or cannot be parsed
+     */
+    default Message sendAndStreamPayload(RequestBody body, URI target, OutputStream sink) throws IOException, FileUploadException, ClaimsException {
+        var response = sendAndCheckDat(body, target);
+        if (response.getPayloadString() != null) {
+            sink.write(response.getPayloadString().getBytes(StandardCharsets.UTF_8));
+        }
+        return response.getHeader();
+    }
+
+    /**
+     * Send a message and stream the payload part of the response to the given channel
+     * (see {@link #sendAndStreamPayload(RequestBody, URI, OutputStream)})
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @param sink channel the payload part is written to (not closed)
+     * @return the deserialized header of the response
+     * @throws IOException if request cannot be sent, the header part of the response is larger than 1 MiB or the payload cannot be written
+     * @throws FileUploadException if response is no multipart response with header before payload
+     * @throws ClaimsException if DAT of response is invalid or cannot be parsed
+     */
+    default Message sendAndStreamPayload(RequestBody body, URI target, WritableByteChannel sink) throws IOException, FileUploadException, ClaimsException {
+        return sendAndStreamPayload(body, target, Channels.newOutputStream(sink));
+    }
+
+    /**
+     * Send a message and stream the payload part of the response to the given file
+     * (see {@link #sendAndStreamPayload(RequestBody, URI, OutputStream)}), the file is only created if the DAT of the response is valid.
+     * The payload is streamed to a temporary file in the same directory, which atomically replaces the file after the
+     * complete payload was received, and is deleted if the payload cannot be received completely.
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @param file file the payload part is written to (replaced if it exists, unchanged if the payload cannot be received)
+     * @return the deserialized header of the response
+     * @throws IOException if request cannot be sent, the header part of the response is larger than 1 MiB or the payload cannot be written
+     * @throws FileUploadException if response is no multipart response with header before payload
      * @throws ClaimsException if DAT of response is invalid or cannot be parsed
      */
-    Map<String, String> sendWithHeadersAndCheckDat(RequestBody body, URI target, Map<String, String> headers) throws IOException, FileUploadException, ClaimsException;
+    default Message sendAndStreamPayload(RequestBody body, URI target, Path file) throws IOException, FileUploadException, ClaimsException {
+        var response = sendAndCheckDat(body, target);
+        var payload = response.getPayloadString() == null ? new byte[0] : response.getPayloadString().getBytes(StandardCharsets.UTF_8);
+        var temp = Files.createTempFile(file.toAbsolutePath().getParent(), "." + file.getFileName(), ".part");
+        try {
+            Files.write(temp, payload);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return response.getHeader();
+    }
 }
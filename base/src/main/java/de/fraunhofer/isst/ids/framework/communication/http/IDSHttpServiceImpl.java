@@ -1,10 +1,17 @@
 package de.fraunhofer.isst.ids.framework.communication.http;
 
 import de.fraunhofer.iais.eis.ConnectorDeployMode;
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
 import de.fraunhofer.isst.ids.framework.daps.ClaimsException;
 import de.fraunhofer.isst.ids.framework.daps.DapsValidator;
+import de.fraunhofer.isst.ids.framework.util.MultipartParseException;
+import de.fraunhofer.isst.ids.framework.util.MultipartParser;
+import de.fraunhofer.isst.ids.framework.util.MultipartStreamReader;
 import de.fraunhofer.isst.ids.framework.util.MultipartStringParser;
+import okio.BufferedSink;
+import okio.Okio;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import org.apache.commons.fileupload.FileUploadException;
@@ -13,8 +20,27 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  * Implementation Class of IDSHttpService
@@ -23,10 +49,18 @@ import java.util.Map;
 public class IDSHttpServiceImpl implements IDSHttpService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(IDSHttpServiceImpl.class);
+    private static final Serializer SERIALIZER = new Serializer();
+
+    /**
+     * Max size of the header part of a streamed response (the header is held in memory to check its DAT)
+     */
+    static final long MAX_HEADER_PART_SIZE = 1024 * 1024;
 
     private HttpService httpService;
     private DapsValidator dapsValidator;
     private ConfigurationContainer configurationContainer;
+    private volatile Executor responseExecutor;
+    private volatile HedgingPolicy hedgingPolicy = HedgingPolicy.disabled();
 
     public IDSHttpServiceImpl(HttpService httpService, DapsValidator dapsValidator, ConfigurationContainer configurationContainer){
         this.httpService = httpService;
@@ -34,9 +68,20 @@ public class IDSHttpServiceImpl implements IDSHttpService {
         this.configurationContainer = configurationContainer;
     }
 
+    /**
+     * Set the Executor used for parsing responses and checking their DATs in the async methods.
+     * The response body is always read on the OkHttp callback thread, only the parsing and the DAT check are handed
+     * to this executor (default: null, the response is parsed on the callback thread as well)
+     *
+     * @param responseExecutor the executor the bodies of async responses are parsed with (null = the callback thread)
+     */
+    public void setResponseExecutor(Executor responseExecutor) {
+        this.responseExecutor = responseExecutor;
+    }
+
     /** {@inheritDoc} */
     @Override
-    public Map<String, String> sendAndCheckDat(RequestBody body, URI target) throws IOException, FileUploadException, ClaimsException {
+    public MultipartResponse sendAndCheckDat(RequestBody body, URI target) throws IOException, FileUploadException, ClaimsException {
         Response response;
         try {
             response = httpService.send(body, target);
@@ -47,9 +92,42 @@ public class IDSHttpServiceImpl implements IDSHttpService {
         return checkDatFromResponse(response);
     }
 
+    /**
+     * Set the policy for hedged requests (default: no hedging)
+     *
+     * @param hedgingPolicy the {@link HedgingPolicy} for {@link #sendAndCheckDat(Message, String, URI)} (null = no hedging)
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy == null ? HedgingPolicy.disabled() : hedgingPolicy;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public MultipartResponse sendAndCheckDat(Message header, String payload, URI target) throws IOException, FileUploadException, ClaimsException {
+        var body = InfomodelMessageBuilder.messageWithString(header, payload);
+        var policy = hedgingPolicy;
+        //no hedged requests while the breaker of the target is probing, they would use up its probe calls
+        var hedge = policy.isHedgeable(header)
+                && httpService.getCircuitBreakers().get(target.getHost(), port(target)).getState() == CircuitBreaker.State.CLOSED;
+        var delay = hedge ? policy.hedgeDelay(httpService.getLatencyHistogram(target.getHost())) : null;
+        if (delay == null) {
+            return sendAndCheckDat(body, target);
+        }
+        Response response;
+        try {
+            response = sendHedged(body, target, delay);
+        } catch (IOException e) {
+            LOGGER.warn("Message could not be sent!");
+            throw e;
+        }
+        try (response) {
+            return checkDatFromResponse(response);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
-    public Map<String, String> sendWithHeadersAndCheckDat(RequestBody body, URI target, Map<String, String> headers) throws IOException, FileUploadException, ClaimsException {
+    public MultipartResponse sendWithHeadersAndCheckDat(RequestBody body, URI target, Map<String, String> headers) throws IOException, FileUploadException, ClaimsException {
         Response response;
         try {
             response = httpService.sendWithHeaders(body, target, headers);
@@ -60,27 +138,357 @@ public class IDSHttpServiceImpl implements IDSHttpService {
         return checkDatFromResponse(response);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public List<MultipartResponse> sendBatchAndCheckDat(RequestBody body, URI target) throws IOException, FileUploadException, ClaimsException {
+        Response response;
+        try {
+            response = httpService.send(body, target);
+        } catch (IOException e) {
+            LOGGER.warn("Batch could not be sent!");
+            throw e;
+        }
+        List<Map<String, String>> messages;
+        try {
+            messages = BatchPartNames.split(readParts(response));
+        } catch (FileUploadException e) {
+            LOGGER.warn("Could not parse incoming batch response to multipart map!");
+            throw e;
+        }
+        var responses = new ArrayList<MultipartResponse>(messages.size());
+        for (var message : messages) {
+            if (message.get(BatchPartNames.HEADER) == null) {
+                //a payload part without header part, the responses could not be correlated to the messages anymore
+                LOGGER.warn("Incoming batch response contains a payload without header!");
+                throw new MultipartParseException("Batch response contains a payload part without header part!");
+            }
+            responses.add(checkDat(message));
+        }
+        return responses;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<MultipartResponse> sendAndCheckDatAsync(RequestBody body, URI target) {
+        return checkDatAsync(httpService.sendAsync(body, target));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<MultipartResponse> sendWithHeadersAndCheckDatAsync(RequestBody body, URI target, Map<String, String> headers) {
+        return checkDatAsync(httpService.sendWithHeadersAsync(body, target, headers));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Message sendAndStreamPayload(RequestBody body, URI target, OutputStream sink) throws IOException, FileUploadException, ClaimsException {
+        return sendAndStreamPayload(body, target, new PayloadSink() {
+            @Override
+            public OutputStream open() {
+                return sink;
+            }
+
+            @Override
+            public void close() {
+                //the stream of the caller is not closed
+            }
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Message sendAndStreamPayload(RequestBody body, URI target, WritableByteChannel sink) throws IOException, FileUploadException, ClaimsException {
+        return sendAndStreamPayload(body, target, Channels.newOutputStream(sink));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Message sendAndStreamPayload(RequestBody body, URI target, Path file) throws IOException, FileUploadException, ClaimsException {
+        var destination = file.toAbsolutePath();
+        return sendAndStreamPayload(body, target, new PayloadSink() {
+            private Path temp;
+            private OutputStream out;
+            private boolean committed;
+
+            @Override
+            public OutputStream open() throws IOException {
+                temp = Files.createTempFile(destination.getParent(), "." + destination.getFileName(), ".part");
+                out = Files.newOutputStream(temp);
+                return out;
+            }
+
+            @Override
+            public void commit() throws IOException {
+                out.close();
+                try {
+                    Files.move(temp, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    LOGGER.debug(String.format("Atomic move is not supported for %s, replacing it non-atomically", destination));
+                    Files.move(temp, destination, StandardCopyOption.REPLACE_EXISTING);
+                }
+                committed = true;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (temp == null || committed) {
+                    return;
+                }
+                try {
+                    out.close();
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        });
+    }
+
     /**
+     * Send a message, check the DAT of the header part of the response and stream the payload part to the sink
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @param payloadSink the target of the payload, only opened after the DAT was checked
+     * @return the deserialized header of the response
+     * @throws IOException if request cannot be sent, the header part of the response is larger than 1 MiB or the payload cannot be written
+     * @throws FileUploadException if response is no multipart response with header before payload
+     * @throws ClaimsException if DAT of response is invalid or cannot be parsed
+     */
+    private Message sendAndStreamPayload(RequestBody body, URI target, PayloadSink payloadSink) throws IOException, FileUploadException, ClaimsException {
+        Response response;
+        try {
+            response = httpService.send(body, target);
+        } catch (IOException e) {
+            LOGGER.warn("Message could not be sent!");
+            throw e;
+        }
+        try (response; payloadSink) {
+            var responseBody = response.body();
+            var contentType = responseBody.contentType();
+            var boundary = contentType == null ? null : MultipartParser.parseParameters(contentType.toString()).get("boundary");
+            if (boundary == null) {
+                boundary = MultipartStreamReader.sniffBoundary(responseBody.source());
+            }
+            var reader = new MultipartStreamReader(responseBody.source(), boundary);
+            Map<String, String> headerPart = null;
+            MultipartStreamReader.Part part;
+            while ((part = reader.nextPart()) != null) {
+                if (BatchPartNames.HEADER.equals(part.getName())) {
+                    headerPart = Map.of(BatchPartNames.HEADER, part.readString(MAX_HEADER_PART_SIZE));
+                } else if (BatchPartNames.PAYLOAD.equals(part.getName())) {
+                    if (headerPart == null) {
+                        LOGGER.warn("Payload part of the response precedes the header part!");
+                        throw new MultipartParseException("Header part must precede the payload part to stream the payload!");
+                    }
+                    var header = checkDat(headerPart).getHeader();
+                    BufferedSink sink = Okio.buffer(Okio.sink(payloadSink.open()));
+                    var written = sink.writeAll(part.getBody());
+                    sink.flush();
+                    payloadSink.commit();
+                    LOGGER.debug(String.format("Streamed %d bytes of payload", written));
+                    return header;
+                }
+            }
+            if (headerPart == null) {
+                throw new MultipartParseException("Response has no header part!");
+            }
+            //response without payload
+            return checkDat(headerPart).getHeader();
+        }
+    }
+
+    /**
+     * Target of a streamed payload, opened after the header was checked
+     */
+    private interface PayloadSink extends AutoCloseable {
+        /**
+         * @return the stream the payload is written to
+         * @throws IOException if the stream cannot be opened
+         */
+        OutputStream open() throws IOException;
+
+        /**
+         * Called after the complete payload was written, a sink which is closed without commit must discard the payload
+         *
+         * @throws IOException if the payload cannot be stored
+         */
+        default void commit() throws IOException {
+            //the payload is written directly to the target
+        }
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * Send a request, if there is no response after the given delay send a second request and use the first
+     * successful response (the other request is cancelled)
+     *
+     * @param body requestBody to be sent (sent twice, so it must be replayable)
+     * @param target targetURI of the request
+     * @param delay the delay before the hedged request is sent
+     * @return the first successful response
+     * @throws IOException if both requests fail (the exception of the last failed request is thrown)
+     */
+    private Response sendHedged(RequestBody body, URI target, Duration delay) throws IOException {
+        var first = httpService.sendAsync(body, target);
+        try {
+            return first.get(delay.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.debug(String.format("No response from %s after %s, sending hedged request", target, delay));
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            first.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response");
+        }
+
+        var second = httpService.sendAsync(body, target);
+        var winner = new CompletableFuture<Response>();
+        var failures = new AtomicInteger();
+        BiConsumer<Response, Throwable> handler = (response, throwable) -> {
+            if (throwable == null) {
+                //close the response of the slower request
+                if (!winner.complete(response)) {
+                    response.close();
+                }
+            } else if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(throwable);
+            }
+        };
+        first.whenComplete(handler);
+        second.whenComplete(handler);
+        try {
+            return winner.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response");
+        } finally {
+            first.cancel(true);
+            second.cancel(true);
+        }
+    }
+
+    /**
+     * @param target the target of a request
+     * @return the port of the target, the default port of its scheme if none is set
+     */
+    private static int port(URI target) {
+        if (target.getPort() != -1) {
+            return target.getPort();
+        }
+        return "http".equalsIgnoreCase(target.getScheme()) ? 80 : 443;
+    }
+
+    /**
+     * Get the IOException of a failed request
+     *
+     * @param e the exception of the future of the request
+     * @return the IOException that caused the failure
+     */
+    private static IOException unwrap(ExecutionException e) {
+        var cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+
+    /**
+     * Read and parse the body of the response of an async request on the thread completing the response future (the
+     * OkHttp callback thread), then check its DAT on the response executor if one is set
+     *
+     * @param responseFuture future of the {@link Response} from an IDS Http request
+     * @return future of the Multipart Map with header and payload part of response
+     */
+    private CompletableFuture<MultipartResponse> checkDatAsync(CompletableFuture<Response> responseFuture) {
+        //the body must not be read with a blocking call on a shared pool, read it where OkHttp delivers the response
+        var partsFuture = responseFuture.thenApply(response -> {
+            try (response) {
+                return readParts(response);
+            } catch (IOException | FileUploadException e) {
+                throw new CompletionException(e);
+            }
+        });
+        var executor = responseExecutor;
+        if (executor == null) {
+            return partsFuture.thenApply(this::checkDatUnchecked);
+        }
+        return partsFuture.thenApplyAsync(this::checkDatUnchecked, executor);
+    }
+
+    /**
+     * {@link #checkDat(Map)} for the continuations of response futures
+     *
+     * @param parts the parsed multipart map of a response
+     * @return Multipart Map with header and payload part of response, with deserialized header
+     * @throws CompletionException if the DAT is not valid
+     */
+    private MultipartResponse checkDatUnchecked(Map<String, String> parts) {
+        try {
+            return checkDat(parts);
+        } catch (ClaimsException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Parse the response once, deserialize its header and check the DAT of the header
+     *
      * @param response {@link Response} from an IDS Http request
-     * @return Multipart Map with header and payload part of response
+     * @return Multipart Map with header and payload part of response, with deserialized header
      * @throws IOException if request cannot be sent
      * @throws FileUploadException if response cannot be parsed to multipart map
      * @throws ClaimsException if DAT of response is invalid or cannot be parsed
      */
-    private Map<String, String> checkDatFromResponse(Response response) throws IOException, ClaimsException, FileUploadException {
-        //if connector is set to test deployment: ignore DAT Tokens
-        var ignoreDAT = configurationContainer.getConfigModel().getConnectorDeployMode() == ConnectorDeployMode.TEST_DEPLOYMENT;
-        var responseString = response.body().string();
-        var valid = ignoreDAT || dapsValidator.checkDat(responseString);
-        if(!valid){
-            LOGGER.warn("DAT of incoming response is not valid!");
-            throw new ClaimsException("DAT of incoming response is not valid!");
-        }
+    private MultipartResponse checkDatFromResponse(Response response) throws IOException, ClaimsException, FileUploadException {
+        return checkDat(readParts(response));
+    }
+
+    /**
+     * Read the body of a response as bytes and parse it to a multipart map (the body is not decoded to a String
+     * first, each part is decoded with its own charset)
+     *
+     * @param response {@link Response} from an IDS Http request
+     * @return the parsed multipart map of the response
+     * @throws IOException if the body cannot be read
+     * @throws FileUploadException if the body cannot be parsed to multipart map
+     */
+    private static Map<String, String> readParts(Response response) throws IOException, FileUploadException {
+        var body = response.body();
+        var contentType = body.contentType();
+        var boundary = contentType == null ? null : MultipartParser.parseParameters(contentType.toString()).get("boundary");
         try {
-            return MultipartStringParser.stringToMultipart(responseString);
+            return MultipartStringParser.bytesToMultipart(body.bytes(), boundary);
         } catch (FileUploadException e) {
             LOGGER.warn("Could not parse incoming response to multipart map!");
             throw e;
         }
     }
+
+    /**
+     * Deserialize the header of a parsed response and check its DAT
+     *
+     * @param parts the parsed multipart map of a response
+     * @return Multipart Map with header and payload part of response, with deserialized header
+     * @throws ClaimsException if DAT of response is invalid or the header cannot be deserialized
+     */
+    private MultipartResponse checkDat(Map<String, String> parts) throws ClaimsException {
+        //if connector is set to test deployment: ignore DAT Tokens
+        var ignoreDAT = configurationContainer.getConfigModel().getConnectorDeployMode() == ConnectorDeployMode.TEST_DEPLOYMENT;
+        Message header = null;
+        try {
+            var headerString = parts.get(BatchPartNames.HEADER);
+            if (headerString != null) {
+                header = SERIALIZER.deserialize(headerString, Message.class);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Response header cannot be deserialized to IDS Message!");
+        }
+        if (!ignoreDAT && (header == null || !dapsValidator.checkDat(header))) {
+            LOGGER.warn("DAT of incoming response is not valid!");
+            throw new ClaimsException("DAT of incoming response is not valid!");
+        }
+        return new MultipartResponse(parts, header);
+    }
 }
@@ -8,6 +8,7 @@ import okhttp3.RequestBody;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * This Builder is a utility class for building OkHTTP
@@ -48,6 +49,30 @@ public class InfomodelMessageBuilder {
         return imb.getRequestBody();
     }
 
+    /**
+     * Build a batched MultipartMessage, carrying many messages with {@link Message} header and String payload.
+     * The parts of the message at index n are named as defined by {@link BatchPartNames}.
+     *
+     * @param headers the header Parts of the messages (implementations of {@link Message})
+     * @param payloads the (String) payloads of the messages, in the same order as the headers (a payload can be null)
+     * @return the built batch as OkHttp MultipartBody
+     * @throws IOException if one of the given headers cannot be serialized by the given serializer
+     */
+    public static MultipartBody messageBatch(List<? extends Message> headers, List<String> payloads) throws IOException {
+        if (headers.size() != payloads.size()) {
+            throw new IllegalArgumentException("Every header of a batch needs a payload entry (which may be null)!");
+        }
+        var builder = new MultipartBody.Builder();
+        builder.setType(MultipartBody.FORM);
+        for (int i = 0; i < headers.size(); i++) {
+            builder.addFormDataPart(BatchPartNames.header(i), serializer.serialize(headers.get(i)));
+            if (payloads.get(i) != null) {
+                builder.addFormDataPart(BatchPartNames.payload(i), payloads.get(i));
+            }
+        }
+        return builder.build();
+    }
+
     /**
      * Internal builder used by the static methods
      *
@@ -0,0 +1,134 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe latency histogram with logarithmic buckets (100µs to about 5 minutes, ~15% resolution).
+ * Samples are kept in two rotating time windows, so percentiles follow changes of the latency of a peer.
+ */
+public class LatencyHistogram {
+
+    private static final long MIN_NANOS = 100_000L;
+    private static final long MAX_NANOS = 300_000_000_000L;
+    private static final double GROWTH = 1.15;
+    private static final long[] UPPER_BOUNDS;
+
+    static {
+        var bounds = new long[256];
+        var count = 0;
+        double bound = MIN_NANOS;
+        while (bound < MAX_NANOS) {
+            bounds[count++] = (long) bound;
+            bound *= GROWTH;
+        }
+        bounds[count++] = Long.MAX_VALUE;
+        UPPER_BOUNDS = Arrays.copyOf(bounds, count);
+    }
+
+    private final long windowNanos;
+    private volatile Window current = new Window();
+    private volatile Window previous = new Window();
+
+    /**
+     * Create a LatencyHistogram
+     *
+     * @param window samples are kept for one to two windows
+     */
+    public LatencyHistogram(Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    /**
+     * Record the latency of a call
+     *
+     * @param latency the latency of the call
+     */
+    public void record(Duration latency) {
+        recordNanos(latency.toNanos());
+    }
+
+    /**
+     * Record the latency of a call
+     *
+     * @param nanos the latency of the call in nanoseconds
+     */
+    public void recordNanos(long nanos) {
+        var index = Arrays.binarySearch(UPPER_BOUNDS, Math.max(0, nanos));
+        current().add(index < 0 ? -index - 1 : index);
+    }
+
+    /**
+     * @return number of samples in the current and previous window
+     */
+    public long getCount() {
+        var window = current();
+        return window.total.get() + previous.total.get();
+    }
+
+    /**
+     * Get a percentile of the recorded latencies (of the current and previous window)
+     *
+     * @param percentile the percentile (between 0 and 1, e.g. 0.99)
+     * @return upper bound of the bucket containing the percentile, null if there are no samples
+     */
+    public Duration getPercentile(double percentile) {
+        var currentWindow = current();
+        var previousWindow = previous;
+        var counts = new long[UPPER_BOUNDS.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = currentWindow.counts.get(i) + previousWindow.counts.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return null;
+        }
+        var rank = (long) Math.ceil(Math.min(1, Math.max(0, percentile)) * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return Duration.ofNanos(Math.min(UPPER_BOUNDS[i], MAX_NANOS));
+            }
+        }
+        return Duration.ofNanos(MAX_NANOS);
+    }
+
+    /**
+     * Get the current window, rotate the windows if the current one is expired
+     *
+     * @return the window new samples are recorded in
+     */
+    private Window current() {
+        var window = current;
+        if (System.nanoTime() - window.start > windowNanos) {
+            synchronized (this) {
+                window = current;
+                if (System.nanoTime() - window.start > windowNanos) {
+                    //samples older than two windows are dropped
+                    previous = System.nanoTime() - window.start > 2 * windowNanos ? new Window() : window;
+                    window = new Window();
+                    current = window;
+                }
+            }
+        }
+        return window;
+    }
+
+    /**
+     * Bucket counts of one time window
+     */
+    private static final class Window {
+        private final long start = System.nanoTime();
+        private final AtomicLongArray counts = new AtomicLongArray(UPPER_BOUNDS.length);
+        private final AtomicLong total = new AtomicLong();
+
+        void add(int bucket) {
+            counts.incrementAndGet(bucket);
+            total.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import de.fraunhofer.iais.eis.Message;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Multipart response of an IDS message, parsed once by the {@link IDSHttpService}. Can still be used as
+ * Multipart Map (partname to content), and additionally exposes the deserialized header {@link Message}.
+ */
+public class MultipartResponse extends AbstractMap<String, String> {
+
+    private final Map<String, String> parts;
+    private final Message header;
+
+    /**
+     * Create a MultipartResponse from the parsed parts and the deserialized header
+     *
+     * @param parts the parsed multipart map (partname to content)
+     * @param header the deserialized header part (can be null if it was not deserialized)
+     */
+    MultipartResponse(Map<String, String> parts, Message header) {
+        this.parts = Collections.unmodifiableMap(parts);
+        this.header = header;
+    }
+
+    /**
+     * Getter for the deserialized header part
+     *
+     * @return the header of the response, null if the header was not deserialized (connector in TEST_DEPLOYMENT and header is no valid IDS message)
+     */
+    public Message getHeader() {
+        return header;
+    }
+
+    /**
+     * Getter for the raw header part
+     *
+     * @return the header part of the response as string
+     */
+    public String getHeaderString() {
+        return parts.get(BatchPartNames.HEADER);
+    }
+
+    /**
+     * Getter for the raw payload part
+     *
+     * @return the payload part of the response as string, null if the response has no payload
+     */
+    public String getPayloadString() {
+        return parts.get(BatchPartNames.PAYLOAD);
+    }
+
+    @Override
+    public String get(Object key) {
+        return parts.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return parts.containsKey(key);
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return parts.entrySet();
+    }
+}
@@ -0,0 +1,67 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+/**
+ * Token bucket limiting the retries of a {@link RetryPolicy} relative to the number of requests: every request deposits
+ * a fraction of a token, every retry needs a whole token. When a peer is down, retries are limited to the given ratio
+ * of the requests, so retries cannot multiply the load on the peer.
+ */
+public class RetryBudget {
+
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+
+    /**
+     * Create a RetryBudget
+     *
+     * @param ratio fraction of a token deposited by every request (e.g. 0.1 allows one retry per 10 requests)
+     * @param maxTokens max number of tokens in the bucket (retries which are possible in a burst), the bucket starts full
+     */
+    public RetryBudget(double ratio, int maxTokens) {
+        if (ratio < 0 || maxTokens < 0) {
+            throw new IllegalArgumentException("Ratio and max tokens of a RetryBudget must not be negative");
+        }
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * @return a budget without limit
+     */
+    public static RetryBudget unlimited() {
+        return new RetryBudget(0, Integer.MAX_VALUE) {
+            @Override
+            public boolean tryAcquire() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Deposit the share of a request
+     */
+    public synchronized void onRequest() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    /**
+     * Try to take a token for a retry
+     *
+     * @return true if the retry is within the budget
+     */
+    public synchronized boolean tryAcquire() {
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of currently available tokens
+     */
+    public synchronized double getTokens() {
+        return tokens;
+    }
+}
@@ -0,0 +1,200 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable retry policy for the requests of the {@link HttpService}: failed requests (IOExceptions and configured
+ * response codes) are retried with jittered exponential backoff, as long as the {@link RetryBudget} allows it.
+ * Retries resend the request, so only use a policy for requests that can be repeated safely. A policy is set per call
+ * with the {@link de.fraunhofer.isst.ids.framework.util.ClientProfile} of the call.
+ */
+public final class RetryPolicy {
+
+    private static final RetryPolicy NONE = builder().withMaxAttempts(1).build();
+
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final double multiplier;
+    private final double jitter;
+    private final Set<Integer> retryableCodes;
+    private final RetryBudget budget;
+
+    /**
+     * Create a RetryPolicy, use {@link #builder()} to build one
+     *
+     * @param builder the builder holding the settings of the policy
+     */
+    private RetryPolicy(final Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+        this.retryableCodes = Set.copyOf(builder.retryableCodes);
+        this.budget = builder.budget;
+    }
+
+    /**
+     * @return a policy that never retries
+     */
+    public static RetryPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Static method returning a builder.
+     *
+     * @return a builder instance for this class
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Check if a failed attempt should be retried (the budget is not checked, calls cancelled by the caller are never
+     * retried, the caller checks this with {@code Call.isCanceled()})
+     *
+     * @param e the exception of the failed attempt
+     * @param attempt the number of the failed attempt (starting with 1)
+     * @return true if the attempt can be retried
+     */
+    public boolean shouldRetry(final IOException e, final int attempt) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+        if (e instanceof CircuitBreakerOpenException) {
+            return false;
+        }
+        if (e instanceof UnexpectedResponseCodeException) {
+            return retryableCodes.contains(((UnexpectedResponseCodeException) e).getCode());
+        }
+        return true;
+    }
+
+    /**
+     * Get the (jittered) delay before the next attempt
+     *
+     * @param attempt the number of the failed attempt (starting with 1)
+     * @return the delay before the next attempt
+     */
+    public Duration backoff(final int attempt) {
+        var exponential = initialBackoff.toNanos() * Math.pow(multiplier, attempt - 1);
+        var capped = Math.min(exponential, maxBackoff.toNanos());
+        var jittered = capped * (1 - jitter * ThreadLocalRandom.current().nextDouble());
+        return Duration.ofNanos((long) jittered);
+    }
+
+    /**
+     * @return the max number of attempts (including the first one)
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return the budget limiting the retries of this policy
+     */
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the response codes which are retried
+     */
+    public Set<Integer> getRetryableCodes() {
+        return retryableCodes;
+    }
+
+    /**
+     * Builder class for RetryPolicies
+     */
+    public static class Builder {
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofMillis(100);
+        private Duration maxBackoff = Duration.ofSeconds(5);
+        private double multiplier = 2;
+        private double jitter = 1;
+        private Set<Integer> retryableCodes = Set.of(408, 429, 502, 503, 504);
+        private RetryBudget budget = new RetryBudget(0.1, 10);
+
+        /**
+         * @param maxAttempts max number of attempts including the first one (1 = no retries)
+         * @return builder with set max attempts
+         */
+        public Builder withMaxAttempts(final int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("At least one attempt is needed");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param initialBackoff the delay before the first retry (before jitter)
+         * @return builder with set initial backoff
+         */
+        public Builder withInitialBackoff(final Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        /**
+         * @param maxBackoff the max delay between two attempts (before jitter)
+         * @return builder with set max backoff
+         */
+        public Builder withMaxBackoff(final Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * @param multiplier factor the delay grows with every attempt
+         * @return builder with set multiplier
+         */
+        public Builder withMultiplier(final double multiplier) {
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * @param jitter fraction of the delay that is randomized (0 = no jitter, 1 = full jitter)
+         * @return builder with set jitter
+         */
+        public Builder withJitter(final double jitter) {
+            if (jitter < 0 || jitter > 1) {
+                throw new IllegalArgumentException("Jitter must be between 0 and 1");
+            }
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * @param retryableCodes response codes which are retried (IOExceptions are always retried)
+         * @return builder with set response codes
+         */
+        public Builder withRetryableCodes(final Set<Integer> retryableCodes) {
+            this.retryableCodes = retryableCodes;
+            return this;
+        }
+
+        /**
+         * @param budget the budget limiting the retries (shared by all requests using the policy)
+         * @return builder with set budget
+         */
+        public Builder withBudget(final RetryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * @return the built RetryPolicy
+         */
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
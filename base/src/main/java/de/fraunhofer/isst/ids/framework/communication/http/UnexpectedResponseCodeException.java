@@ -0,0 +1,31 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import java.io.IOException;
+
+/**
+ * Exception which is thrown by the {@link HttpService}, when a request was answered with a non successful response code
+ */
+public class UnexpectedResponseCodeException extends IOException {
+
+    private final int code;
+
+    /**
+     * For Throwing an UnexpectedResponseCodeException with a custom error message
+     *
+     * @param code the http response code
+     * @param message the error message to be included with the exception
+     */
+    public UnexpectedResponseCodeException(int code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    /**
+     * Getter for the response code
+     *
+     * @return the http response code of the request
+     */
+    public int getCode() {
+        return code;
+    }
+}
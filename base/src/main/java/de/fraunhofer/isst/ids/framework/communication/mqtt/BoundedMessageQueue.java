@@ -0,0 +1,244 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free multi-producer multi-consumer queue backed by a ring buffer. Every slot carries a sequence
+ * number, producers and consumers claim slots with a CAS on the tail or head counter, so neither side takes a lock.
+ * Messages offered to a full queue are handled according to the {@link OverflowPolicy}. The queue counts enqueued,
+ * dequeued and dropped messages and records the highest depth it reached.
+ *
+ * @param <E> type of the queued messages
+ */
+public class BoundedMessageQueue<E> {
+
+    private static final long MAX_PARK_NANOS = 1_000_000L;
+    private static final int SPINS = 64;
+
+    private final int capacity;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dequeued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong highWatermark = new AtomicLong();
+
+    /**
+     * Create a BoundedMessageQueue
+     *
+     * @param capacity max number of queued messages (rounded up to the next power of two)
+     * @param overflowPolicy what happens with messages offered while the queue is full
+     */
+    public BoundedMessageQueue(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.buffer = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add a message, applying the overflow policy if the queue is full
+     *
+     * @param message the message
+     * @return true if the message was queued, false if it was dropped (DROP_NEWEST, or BLOCK and the producer was interrupted)
+     */
+    public boolean offer(E message) {
+        if (message == null) {
+            throw new NullPointerException("Queued message must not be null");
+        }
+        if (tryOffer(message)) {
+            return true;
+        }
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!tryOffer(message)) {
+                    if (tryPoll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                return true;
+            case BLOCK:
+                var idle = 0;
+                while (!tryOffer(message)) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        dropped.incrementAndGet();
+                        return false;
+                    }
+                    if (++idle > SPINS) {
+                        LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(10, idle - SPINS)));
+                    } else {
+                        Thread.onSpinWait();
+                    }
+                }
+                return true;
+            default:
+                dropped.incrementAndGet();
+                return false;
+        }
+    }
+
+    /**
+     * Remove the oldest message
+     *
+     * @return the oldest message, null if the queue is empty
+     */
+    public E poll() {
+        var message = tryPoll();
+        if (message != null) {
+            dequeued.incrementAndGet();
+        }
+        return message;
+    }
+
+    /**
+     * Remove up to maxMessages messages (oldest first) and add them to the target collection
+     *
+     * @param target collection the messages are added to
+     * @param maxMessages max number of messages to remove
+     * @return number of removed messages
+     */
+    public int drainTo(Collection<? super E> target, int maxMessages) {
+        var count = 0;
+        E message;
+        while (count < maxMessages && (message = tryPoll()) != null) {
+            target.add(message);
+            count++;
+        }
+        dequeued.addAndGet(count);
+        return count;
+    }
+
+    /**
+     * @return the number of queued messages
+     */
+    public int size() {
+        //read head first, so the difference is never negative
+        var consumed = head.get();
+        return (int) Math.max(0, Math.min(capacity, tail.get() - consumed));
+    }
+
+    /**
+     * @return true if no messages are queued
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return max number of queued messages
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return what happens with messages offered while the queue is full
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return number of messages added to the queue
+     */
+    public long getEnqueuedCount() {
+        return enqueued.get();
+    }
+
+    /**
+     * @return number of messages removed by consumers
+     */
+    public long getDequeuedCount() {
+        return dequeued.get();
+    }
+
+    /**
+     * @return number of messages dropped by the overflow policy
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the highest number of queued messages so far
+     */
+    public long getHighWatermark() {
+        return highWatermark.get();
+    }
+
+    /**
+     * Add a message if there is a free slot
+     *
+     * @param message the message
+     * @return true if the message was added
+     */
+    private boolean tryOffer(E message) {
+        var position = tail.get();
+        while (true) {
+            var index = (int) (position & mask);
+            var difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, message);
+                    //publishes the message to consumers
+                    sequences.set(index, position + 1);
+                    enqueued.incrementAndGet();
+                    var depth = size();
+                    if (depth > highWatermark.get()) {
+                        highWatermark.accumulateAndGet(depth, Math::max);
+                    }
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                //the slot still holds a message of the previous round, the queue is full
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove the oldest message without counting it
+     *
+     * @return the oldest message, null if the queue is empty
+     */
+    private E tryPoll() {
+        var position = head.get();
+        while (true) {
+            var index = (int) (position & mask);
+            var difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    var message = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    //frees the slot for the producers of the next round
+                    sequences.set(index, position + capacity);
+                    return message;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                //the slot was not filled yet, the queue is empty
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+}
@@ -6,49 +6,110 @@ import org.eclipse.paho.client.mqttv3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Collection;
 
 /**
  * This class implements IDSCommunication for the MQTT Protocol.
  */
 public class IDSMQTTCommunication {
     private static final Logger LOGGER = LoggerFactory.getLogger(IDSMQTTCommunication.class);
-    private Queue<String> messageQueue;
+    /**
+     * Default capacity of the queue of received messages
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+    @Getter
+    private final BoundedMessageQueue<MqttReceivedMessage> messageQueue;
+    @Getter
+    private final MqttClientPool clientPool;
+    /**
+     * The pooled client used by the last connect, send or subscribe
+     */
     @Getter @Setter
     private MqttClient client = null;
-    @Getter
+    /**
+     * Not used for connecting anymore, every pooled client has its own options built from its {@link ProtocolMqtt}
+     */
+    @Getter @Deprecated
     private final MqttConnectOptions opt;
 
     public IDSMQTTCommunication() {
+        this(DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Create an IDSMQTTCommunication with a custom queue for received messages
+     *
+     * @param queueCapacity max number of queued received messages
+     * @param overflowPolicy what happens with messages received while the queue is full
+     */
+    public IDSMQTTCommunication(int queueCapacity, OverflowPolicy overflowPolicy) {
+        this(queueCapacity, overflowPolicy, new MqttClientPool());
+    }
+
+    /**
+     * Create an IDSMQTTCommunication with a custom queue for received messages and a (possibly shared) client pool
+     *
+     * @param queueCapacity max number of queued received messages
+     * @param overflowPolicy what happens with messages received while the queue is full
+     * @param clientPool pool of the clients used for connecting, sending and subscribing
+     */
+    public IDSMQTTCommunication(int queueCapacity, OverflowPolicy overflowPolicy, MqttClientPool clientPool) {
         super();
-        messageQueue = new LinkedList<>();
+        messageQueue = new BoundedMessageQueue<>(queueCapacity, overflowPolicy);
+        this.clientPool = clientPool;
         opt = new MqttConnectOptions();
     }
 
     /**
-     * Establishes connection between client and broker.
+     * Establishes connection between client and broker. The connected client is taken from the {@link MqttClientPool},
+     * connections to other brokers or with other credentials are kept open.
      *
      * @param mqtt Configuration for MQTT
      * @throws MqttException if mqtt client creation or connection establishing fail
      */
     public void connectClient(ProtocolMqtt mqtt) throws MqttException {
-        opt.setCleanSession(true);
-        opt.setUserName(mqtt.getBasicAuthentication().getAuthUsername());
-        opt.setPassword(mqtt.getBasicAuthentication().getAuthPassword().toCharArray());
+        client = clientPool.acquire(mqtt);
+    }
+
+    /**
+     * Create an asynchronous, pipelined publisher with its own client connected to the broker of the configuration.
+     *
+     * @param mqtt Configuration for MQTT
+     * @param maxInFlight max number of unacknowledged messages
+     * @return the connected publisher, close it when it is no longer used
+     * @throws MqttException if mqtt client creation or connection establishing fail
+     */
+    public MqttAsyncPublisher createAsyncPublisher(ProtocolMqtt mqtt, int maxInFlight) throws MqttException {
+        return MqttAsyncPublisher.connect(mqtt, maxInFlight);
+    }
+
+    /**
+     * Apply the settings of the MQTT configuration to connect options.
+     *
+     * @param options the connect options
+     * @param mqtt Configuration for MQTT
+     */
+    static void applyConnectOptions(MqttConnectOptions options, ProtocolMqtt mqtt) {
+        options.setCleanSession(true);
+        if (mqtt.getBasicAuthentication() != null) {
+            options.setUserName(mqtt.getBasicAuthentication().getAuthUsername());
+            options.setPassword(mqtt.getBasicAuthentication().getAuthPassword().toCharArray());
+        }
 
         if (mqtt.getLastWillMessage() != null && mqtt.getLastWillTopic() != null && !mqtt.getLastWillTopic().isEmpty()) {
-            opt.setWill(mqtt.getLastWillTopic(), mqtt.getLastWillMessage().getBytes(), mqtt.getQos(), true);
+            options.setWill(mqtt.getLastWillTopic(), mqtt.getLastWillMessage().getBytes(), mqtt.getQos(), true);
         }
         if (mqtt.getSslProperties() != null) {
-            opt.setSSLProperties(mqtt.getSslProperties());
+            options.setSSLProperties(mqtt.getSslProperties());
         }
+    }
 
-        String serverURI = mqtt.getUri().toString();
-        client = new MqttClient(serverURI, mqtt.getClientId() != null ? mqtt.getClientId() : MqttClient.generateClientId());
-
-        client.connect(opt);
+    /**
+     * Closes all clients of the client pool.
+     */
+    public void close() {
+        clientPool.close();
     }
 
     /**
@@ -59,15 +120,25 @@ public class IDSMQTTCommunication {
      * @return true if the payload was successfully sent, else false.
      */
     public boolean send(String payload, ProtocolMqtt mqtt) {
+        return send(payload.getBytes(), mqtt);
+    }
+
+    /**
+     * Sends a binary message (e.g. an encoded {@link MqttEnvelope}) to the MQTT Broker.
+     *
+     * @param payload         raw payload to be sent
+     * @param mqtt            Configuration for MQTT
+     * @return true if the payload was successfully sent, else false.
+     */
+    public boolean send(byte[] payload, ProtocolMqtt mqtt) {
         try {
-            if (client == null || !client.isConnected()) {
-                connectClient(mqtt);
-            }
+            var pooledClient = clientPool.acquire(mqtt);
+            client = pooledClient;
 
-            MqttMessage message = new MqttMessage(payload.getBytes());
+            MqttMessage message = new MqttMessage(payload);
             message.setQos(mqtt.getQos());
 
-            client.publish(mqtt.getTopic(), message);
+            pooledClient.publish(mqtt.getTopic(), message);
             return true;
 
         } catch (MqttException e) {
@@ -88,8 +159,12 @@ public class IDSMQTTCommunication {
      * @return true if the payload was successfully sent, else false.
      */
     public boolean subscribe(ProtocolMqtt mqtt) {
-        return subscribe(mqtt, (topic, mqttMessage) ->
-                messageQueue.add(String.format("Topic: %s. Payload: %s.", topic, new String(mqttMessage.getPayload(), StandardCharsets.UTF_8))));
+        return subscribe(mqtt, (topic, mqttMessage) -> {
+            var received = new MqttReceivedMessage(topic, mqttMessage.getPayload(), mqttMessage.getQos(), mqttMessage.isRetained(), System.currentTimeMillis());
+            if (!messageQueue.offer(received)) {
+                LOGGER.debug(String.format("Message queue is full, dropped message on topic %s", topic));
+            }
+        });
     }
 
     /**
@@ -101,11 +176,8 @@ public class IDSMQTTCommunication {
      */
     public boolean subscribe(ProtocolMqtt mqtt, IMqttMessageListener messageListener) {
         try {
-            if (client == null || !client.isConnected()) {
-                connectClient(mqtt);
-            }
-
-            client.subscribe(mqtt.getTopic(), messageListener);
+            clientPool.subscribe(mqtt, messageListener);
+            client = clientPool.acquire(mqtt);
 
             return true;
         } catch (MqttException e) {
@@ -123,8 +195,31 @@ public class IDSMQTTCommunication {
      * Gets message from message queue.
      *
      * @return received message or null if queue is empty.
+     * @deprecated use {@link #pollMessage()}, which returns the raw payload
      */
+    @Deprecated
     public String getMessageFromQueue() {
+        var message = messageQueue.poll();
+        return message == null ? null : message.toString();
+    }
+
+    /**
+     * Gets the oldest received message from the message queue.
+     *
+     * @return received message or null if queue is empty.
+     */
+    public MqttReceivedMessage pollMessage() {
         return messageQueue.poll();
     }
+
+    /**
+     * Moves up to maxMessages received messages (oldest first) from the message queue to the target collection.
+     *
+     * @param target collection the messages are added to
+     * @param maxMessages max number of messages to move
+     * @return number of moved messages
+     */
+    public int drainTo(Collection<? super MqttReceivedMessage> target, int maxMessages) {
+        return messageQueue.drainTo(target, maxMessages);
+    }
 }
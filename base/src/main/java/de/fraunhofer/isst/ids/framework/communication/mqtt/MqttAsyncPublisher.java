@@ -0,0 +1,264 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import org.eclipse.paho.client.mqttv3.DisconnectedBufferOptions;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipelined MQTT publisher built on a {@link MqttAsyncClient}. Up to maxInFlight messages are sent without waiting
+ * for the acknowledgement of the broker, so the throughput at QoS 1 and 2 is no longer bound by the round trip to the
+ * broker. Callers publishing while the window is full wait for a free slot (backpressure), at most for the publish
+ * timeout. Every publish returns a future completed when the broker acknowledged the message (QoS 1/2) or the message
+ * was written (QoS 0).
+ * <p>
+ * The client reconnects automatically in the background, messages published while it is disconnected are buffered
+ * and sent after the reconnect. Buffered messages occupy a slot of the window until they are delivered, so once the
+ * window is full, publishing while disconnected fails immediately instead of waiting. In-flight messages are kept in
+ * memory only.
+ */
+public class MqttAsyncPublisher implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MqttAsyncPublisher.class);
+
+    /**
+     * Default max number of unacknowledged messages
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    /**
+     * Default max time a publish waits for a free slot of the in-flight window
+     */
+    public static final Duration DEFAULT_PUBLISH_TIMEOUT = Duration.ofSeconds(30);
+    /**
+     * Max number of messages buffered while the client is disconnected
+     */
+    private static final int DISCONNECTED_BUFFER_SIZE = 10_000;
+
+    private final MqttAsyncClient client;
+    private final int maxInFlight;
+    private final long publishTimeoutNanos;
+    private final Semaphore window;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Create a publisher on an (already connected) client, the client must allow at least maxInFlight in-flight
+     * messages (see {@link MqttConnectOptions#setMaxInflight(int)})
+     *
+     * @param client the client sending the messages
+     * @param maxInFlight max number of unacknowledged messages
+     */
+    public MqttAsyncPublisher(MqttAsyncClient client, int maxInFlight) {
+        this(client, maxInFlight, DEFAULT_PUBLISH_TIMEOUT);
+    }
+
+    /**
+     * Create a publisher on an (already connected) client, the client must allow at least maxInFlight in-flight
+     * messages (see {@link MqttConnectOptions#setMaxInflight(int)})
+     *
+     * @param client the client sending the messages
+     * @param maxInFlight max number of unacknowledged messages
+     * @param publishTimeout max time a publish waits for a free slot of the in-flight window
+     */
+    public MqttAsyncPublisher(MqttAsyncClient client, int maxInFlight, Duration publishTimeout) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Max number of in-flight messages must be at least 1");
+        }
+        if (publishTimeout.isNegative()) {
+            throw new IllegalArgumentException("Publish timeout must not be negative");
+        }
+        this.client = client;
+        this.maxInFlight = maxInFlight;
+        this.publishTimeoutNanos = publishTimeout.toNanos();
+        this.window = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Connect a new client to the broker of the configuration and create a publisher on it
+     *
+     * @param mqtt Configuration for MQTT (URI, client id, credentials, last will, SSL)
+     * @param maxInFlight max number of unacknowledged messages
+     * @return the publisher on the connected client
+     * @throws MqttException if the client cannot be created or connected
+     */
+    public static MqttAsyncPublisher connect(ProtocolMqtt mqtt, int maxInFlight) throws MqttException {
+        return connect(mqtt, maxInFlight, DEFAULT_PUBLISH_TIMEOUT);
+    }
+
+    /**
+     * Connect a new client to the broker of the configuration and create a publisher on it
+     *
+     * @param mqtt Configuration for MQTT (URI, client id, credentials, last will, SSL)
+     * @param maxInFlight max number of unacknowledged messages
+     * @param publishTimeout max time a publish waits for a free slot of the in-flight window
+     * @return the publisher on the connected client
+     * @throws MqttException if the client cannot be created or connected
+     */
+    public static MqttAsyncPublisher connect(ProtocolMqtt mqtt, int maxInFlight, Duration publishTimeout) throws MqttException {
+        var options = new MqttConnectOptions();
+        IDSMQTTCommunication.applyConnectOptions(options, mqtt);
+        options.setMaxInflight(maxInFlight);
+        options.setAutomaticReconnect(true);
+        var client = new MqttAsyncClient(mqtt.getUri().toString(),
+                mqtt.getClientId() != null ? mqtt.getClientId() : MqttAsyncClient.generateClientId(), new MemoryPersistence());
+        var bufferOptions = new DisconnectedBufferOptions();
+        bufferOptions.setBufferEnabled(true);
+        bufferOptions.setBufferSize(DISCONNECTED_BUFFER_SIZE);
+        bufferOptions.setPersistBuffer(false);
+        bufferOptions.setDeleteOldestMessages(false);
+        client.setBufferOpts(bufferOptions);
+        try {
+            client.connect(options).waitForCompletion();
+        } catch (MqttException e) {
+            client.close();
+            throw e;
+        }
+        return new MqttAsyncPublisher(client, maxInFlight, publishTimeout);
+    }
+
+    /**
+     * Publish a message, waiting for a free slot of the in-flight window at most for the publish timeout (not at all
+     * while the client is disconnected)
+     *
+     * @param topic topic the message is published on
+     * @param payload payload of the message
+     * @param qos QoS of the message
+     * @param retained true if the broker should retain the message
+     * @return future completed when the message was delivered, completed exceptionally with the {@link MqttException}
+     * if the message could not be delivered (with reason code {@link MqttException#REASON_CODE_MAX_INFLIGHT} if no slot
+     * of the window became free in time, or with an InterruptedException if the caller was interrupted while waiting)
+     */
+    public CompletableFuture<Void> publish(String topic, byte[] payload, int qos, boolean retained) {
+        var result = new CompletableFuture<Void>();
+        try {
+            //while disconnected no acknowledgements arrive that could free a slot
+            var acquired = client.isConnected()
+                    ? window.tryAcquire(publishTimeoutNanos, TimeUnit.NANOSECONDS)
+                    : window.tryAcquire();
+            if (!acquired) {
+                failed.incrementAndGet();
+                LOGGER.warn(String.format("Publishing on topic %s failed: %d messages in flight%s", topic, maxInFlight,
+                        client.isConnected() ? "" : " while disconnected"));
+                result.completeExceptionally(new MqttException(MqttException.REASON_CODE_MAX_INFLIGHT));
+                return result;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return result;
+        }
+        try {
+            client.publish(topic, payload, qos, retained, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    window.release();
+                    published.incrementAndGet();
+                    result.complete(null);
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    window.release();
+                    failed.incrementAndGet();
+                    LOGGER.warn(String.format("Publishing on topic %s failed: %s", topic, exception.getMessage()));
+                    result.completeExceptionally(exception);
+                }
+            });
+        } catch (MqttException | RuntimeException e) {
+            window.release();
+            failed.incrementAndGet();
+            LOGGER.warn(String.format("Publishing on topic %s failed: %s", topic, e.getMessage()));
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Publish a message with the topic and QoS of the configuration
+     *
+     * @param payload payload of the message
+     * @param mqtt Configuration for MQTT
+     * @return future completed when the message was delivered
+     */
+    public CompletableFuture<Void> publish(byte[] payload, ProtocolMqtt mqtt) {
+        return publish(mqtt.getTopic(), payload, mqtt.getQos(), false);
+    }
+
+    /**
+     * Publish a batch of messages on one topic (e.g. telemetry), pipelined through the in-flight window in the
+     * order of the collection
+     *
+     * @param topic topic the messages are published on
+     * @param payloads payloads of the messages
+     * @param qos QoS of the messages
+     * @return future completed when all messages were delivered, completed exceptionally if one message could not be delivered
+     */
+    public CompletableFuture<Void> publishAll(String topic, Collection<byte[]> payloads, int qos) {
+        var futures = new CompletableFuture<?>[payloads.size()];
+        var i = 0;
+        for (var payload : payloads) {
+            futures[i++] = publish(topic, payload, qos, false);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * @return number of sent messages which are not acknowledged yet
+     */
+    public int getInFlight() {
+        return maxInFlight - window.availablePermits();
+    }
+
+    /**
+     * @return max number of unacknowledged messages
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return number of delivered messages
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * @return number of messages which could not be delivered
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return the underlying client
+     */
+    public MqttAsyncClient getClient() {
+        return client;
+    }
+
+    /**
+     * Disconnect and close the client, in-flight messages are given the quiesce time of the client to complete
+     *
+     * @throws MqttException if the client cannot be closed
+     */
+    @Override
+    public void close() throws MqttException {
+        if (client.isConnected()) {
+            client.disconnect().waitForCompletion();
+        }
+        client.close();
+    }
+}
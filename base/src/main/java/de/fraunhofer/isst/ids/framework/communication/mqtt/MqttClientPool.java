@@ -0,0 +1,457 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of connected MQTT clients, keyed by broker URI and client id of the {@link ProtocolMqtt} configuration.
+ * Every key gets its own client with its own connect options, so sending to several brokers (or with different
+ * credentials) never tears down another connection. A configuration with the client id of a pooled client but other
+ * credentials is rejected, since both clients would disconnect each other at the broker.
+ * <ul>
+ *     <li>clients reconnect automatically after a connection loss (with exponential backoff up to the max reconnect
+ *     delay) and restore their subscriptions</li>
+ *     <li>failed connects are retried no earlier than after a backoff delay, callers fail fast in between</li>
+ *     <li>clients without subscriptions are closed after being idle for the idle timeout</li>
+ * </ul>
+ * Without a client id in the configuration, one generated client id is used per pool, broker URI and credentials.
+ * <p>
+ * All pools share one daemon thread for closing idle clients, a pool is scheduled on it once it acquires its first client.
+ */
+public class MqttClientPool implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MqttClientPool.class);
+
+    /**
+     * Default time after which unused clients without subscriptions are closed
+     */
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+    /**
+     * Default upper bound of the delay between reconnect attempts
+     */
+    public static final Duration DEFAULT_MAX_RECONNECT_DELAY = Duration.ofMinutes(1);
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+    private final Map<Key, PooledClient> clients = new ConcurrentHashMap<>();
+    private final Map<String, String> generatedClientIds = new ConcurrentHashMap<>();
+    private final Duration idleTimeout;
+    private final Duration maxReconnectDelay;
+    private ScheduledFuture<?> eviction;
+
+    /**
+     * Create a pool with the default idle timeout and max reconnect delay
+     */
+    public MqttClientPool() {
+        this(DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_RECONNECT_DELAY);
+    }
+
+    /**
+     * Create a pool
+     *
+     * @param idleTimeout time after which unused clients without subscriptions are closed
+     * @param maxReconnectDelay upper bound of the delay between reconnect attempts
+     */
+    public MqttClientPool(Duration idleTimeout, Duration maxReconnectDelay) {
+        this.idleTimeout = idleTimeout;
+        this.maxReconnectDelay = maxReconnectDelay;
+    }
+
+    /**
+     * Get the connected client for the configuration, connecting a new one if there is none
+     *
+     * @param mqtt Configuration for MQTT
+     * @return the connected client (shared with other callers of the same configuration, do not disconnect or close it)
+     * @throws MqttException if the client cannot be connected, a previous connect failed and its backoff is not over, or
+     * the pool has a client with the same client id at the broker but other credentials (REASON_CODE_INVALID_CLIENT_ID)
+     */
+    public MqttClient acquire(ProtocolMqtt mqtt) throws MqttException {
+        var key = keyOf(mqtt);
+        scheduleEviction();
+        while (true) {
+            var pooled = clients.computeIfAbsent(key, PooledClient::new);
+            if (!pooled.key.hasCredentialsOf(key)) {
+                //both clients would take over the session of the other on every (automatic) reconnect
+                LOGGER.warn(String.format("MQTT client id %s is already used for %s with other credentials", key.clientId, key.uri));
+                throw new MqttException(MqttException.REASON_CODE_INVALID_CLIENT_ID);
+            }
+            synchronized (pooled) {
+                if (!pooled.evicted) {
+                    return acquire(key, pooled, mqtt);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the connected client of a pool entry, connecting a new one if there is none (called while holding the lock of the entry)
+     *
+     * @param key the key of the client
+     * @param pooled the pool entry
+     * @param mqtt Configuration for MQTT
+     * @return the connected client
+     * @throws MqttException if the client cannot be connected, or a previous connect failed and its backoff is not over
+     */
+    private MqttClient acquire(Key key, PooledClient pooled, ProtocolMqtt mqtt) throws MqttException {
+        pooled.lastUsed = System.nanoTime();
+        if (pooled.client != null && pooled.client.isConnected()) {
+            return pooled.client;
+        }
+        if (pooled.client != null && !pooled.reconnecting) {
+            //the connection was closed without automatic reconnect (e.g. by the broker on connect), start over
+            closeQuietly(pooled.client);
+            pooled.client = null;
+        }
+        if (pooled.client != null) {
+            //automatic reconnect is running in the background
+            throw new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+        }
+        if (System.nanoTime() < pooled.nextConnectAttempt) {
+            throw new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+        }
+        connect(key, pooled, mqtt);
+        return pooled.client;
+    }
+
+    /**
+     * Subscribe to the topic of the configuration with the pooled client; the subscription is restored after
+     * reconnects and keeps the client from being closed when idle
+     *
+     * @param mqtt Configuration for MQTT
+     * @param listener listener with callback for message arriving
+     * @throws MqttException if the client cannot be connected or the subscription fails
+     */
+    public void subscribe(ProtocolMqtt mqtt, IMqttMessageListener listener) throws MqttException {
+        var client = acquire(mqtt);
+        var pooled = clients.get(keyOf(mqtt));
+        client.subscribe(mqtt.getTopic(), mqtt.getQos(), listener);
+        if (pooled != null) {
+            pooled.subscriptions.put(mqtt.getTopic(), new Subscription(mqtt.getQos(), listener));
+        }
+    }
+
+    /**
+     * Remove the subscription of the topic of the configuration
+     *
+     * @param mqtt Configuration for MQTT
+     * @throws MqttException if the subscription cannot be removed
+     */
+    public void unsubscribe(ProtocolMqtt mqtt) throws MqttException {
+        var key = keyOf(mqtt);
+        var pooled = clients.get(key);
+        if (pooled == null || !pooled.key.hasCredentialsOf(key) || pooled.subscriptions.remove(mqtt.getTopic()) == null) {
+            return;
+        }
+        var client = pooled.client;
+        if (client != null && client.isConnected()) {
+            client.unsubscribe(mqtt.getTopic());
+        }
+    }
+
+    /**
+     * @return number of clients in the pool
+     */
+    public int getSize() {
+        return clients.size();
+    }
+
+    /**
+     * Close all clients of the pool
+     */
+    @Override
+    public void close() {
+        cancelEviction();
+        for (var entry : clients.entrySet()) {
+            synchronized (entry.getValue()) {
+                if (entry.getValue().client != null) {
+                    closeQuietly(entry.getValue().client);
+                    entry.getValue().client = null;
+                }
+            }
+        }
+        clients.clear();
+    }
+
+    /**
+     * @param mqtt Configuration for MQTT
+     * @return the key of the client for the configuration, with the generated client id of this pool if the
+     * configuration has none
+     */
+    private Key keyOf(ProtocolMqtt mqtt) {
+        var uri = mqtt.getUri().toString();
+        var auth = mqtt.getBasicAuthentication();
+        var username = auth == null ? null : auth.getAuthUsername();
+        var passwordHash = auth == null || auth.getAuthPassword() == null ? null : IDSUtils.sha256(auth.getAuthPassword().getBytes(StandardCharsets.UTF_8));
+        var clientId = mqtt.getClientId();
+        if (clientId == null) {
+            clientId = generatedClientIds.computeIfAbsent(uri + "|" + username + "|" + passwordHash,
+                    k -> MqttClient.generateClientId());
+        }
+        return new Key(uri, clientId, username, passwordHash);
+    }
+
+    /**
+     * Schedule the periodic eviction of idle clients on the shared evictor thread, if it is not scheduled yet.
+     * The task only holds a weak reference to the pool, so a pool which is dropped without being closed is not kept alive.
+     */
+    private synchronized void scheduleEviction() {
+        if (eviction != null) {
+            return;
+        }
+        var period = Math.max(1000, idleTimeout.toMillis() / 2);
+        var pool = new WeakReference<>(this);
+        var task = new ScheduledFuture<?>[1];
+        task[0] = Evictor.SCHEDULER.scheduleWithFixedDelay(() -> {
+            var current = pool.get();
+            if (current == null) {
+                task[0].cancel(false);
+            } else {
+                current.evictIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        eviction = task[0];
+    }
+
+    /**
+     * Stop the periodic eviction of idle clients of this pool
+     */
+    private synchronized void cancelEviction() {
+        if (eviction != null) {
+            eviction.cancel(false);
+            eviction = null;
+        }
+    }
+
+    /**
+     * Connect a new client for the key, on failure the next attempt is delayed with exponential backoff
+     *
+     * @param key the key of the client
+     * @param pooled the pool entry
+     * @param mqtt Configuration for MQTT
+     * @throws MqttException if the client cannot be connected
+     */
+    private void connect(Key key, PooledClient pooled, ProtocolMqtt mqtt) throws MqttException {
+        var options = new MqttConnectOptions();
+        IDSMQTTCommunication.applyConnectOptions(options, mqtt);
+        options.setAutomaticReconnect(true);
+        options.setMaxReconnectDelay((int) Math.min(Integer.MAX_VALUE, maxReconnectDelay.toMillis()));
+        var client = new MqttClient(key.uri, key.clientId, new MemoryPersistence());
+        client.setCallback(new ReconnectCallback(key, pooled, client));
+        try {
+            client.connect(options);
+        } catch (MqttException e) {
+            closeQuietly(client);
+            pooled.failedConnects++;
+            var backoff = Math.min(maxReconnectDelay.toMillis(), INITIAL_BACKOFF_MILLIS << Math.min(20, pooled.failedConnects - 1));
+            pooled.nextConnectAttempt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+            LOGGER.warn(String.format("Connecting to MQTT broker %s failed, next attempt in %d ms: %s", key.uri, backoff, e.getMessage()));
+            throw e;
+        }
+        pooled.client = client;
+        pooled.failedConnects = 0;
+        pooled.nextConnectAttempt = 0;
+        LOGGER.debug(String.format("Connected pooled MQTT client %s to %s", key.clientId, key.uri));
+    }
+
+    /**
+     * Close the clients which were not used for the idle timeout and have no subscriptions
+     */
+    private void evictIdle() {
+        var now = System.nanoTime();
+        for (var entry : clients.entrySet()) {
+            var pooled = entry.getValue();
+            synchronized (pooled) {
+                if (pooled.subscriptions.isEmpty() && now - pooled.lastUsed > idleTimeout.toNanos()) {
+                    if (pooled.client != null) {
+                        LOGGER.debug(String.format("Closing idle MQTT client %s of %s", entry.getKey().clientId, entry.getKey().uri));
+                        closeQuietly(pooled.client);
+                        pooled.client = null;
+                    }
+                    pooled.evicted = true;
+                    clients.remove(entry.getKey(), pooled);
+                }
+            }
+        }
+    }
+
+    /**
+     * Disconnect and close a client, errors are only logged
+     *
+     * @param client the client
+     */
+    private static void closeQuietly(MqttClient client) {
+        try {
+            if (client.isConnected()) {
+                client.disconnect();
+            }
+        } catch (MqttException e) {
+            LOGGER.debug(String.format("Disconnecting MQTT client failed: %s", e.getMessage()));
+        }
+        try {
+            client.close();
+        } catch (MqttException e) {
+            LOGGER.debug(String.format("Closing MQTT client failed: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * The daemon thread closing idle clients of all pools, started with the first pool that acquires a client
+     */
+    private static final class Evictor {
+        private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+        /**
+         * @return the scheduler, cancelled tasks of closed pools are removed immediately
+         */
+        private static ScheduledThreadPoolExecutor createScheduler() {
+            var scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                var thread = new Thread(runnable, "mqtt-client-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+    /**
+     * Tracks the connection state of a pooled client and restores its subscriptions after reconnects
+     * (sessions are clean, so the broker forgets them)
+     */
+    private static final class ReconnectCallback implements MqttCallbackExtended {
+        private final Key key;
+        private final PooledClient pooled;
+        private final MqttClient client;
+
+        private ReconnectCallback(Key key, PooledClient pooled, MqttClient client) {
+            this.key = key;
+            this.pooled = pooled;
+            this.client = client;
+        }
+
+        @Override
+        public void connectComplete(boolean reconnect, String serverURI) {
+            pooled.reconnecting = false;
+            if (!reconnect) {
+                return;
+            }
+            LOGGER.info(String.format("Reconnected MQTT client %s to %s", key.clientId, serverURI));
+            pooled.subscriptions.forEach((topic, subscription) -> {
+                try {
+                    client.subscribe(topic, subscription.qos, subscription.listener);
+                } catch (MqttException e) {
+                    LOGGER.warn(String.format("Restoring subscription of %s at %s failed: %s", topic, serverURI, e.getMessage()));
+                }
+            });
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            pooled.reconnecting = true;
+            LOGGER.warn(String.format("Connection of MQTT client %s to %s lost, reconnecting: %s", key.clientId, key.uri,
+                    cause == null ? "unknown cause" : cause.getMessage()));
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) {
+            //messages are delivered to the listeners of the subscriptions
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token) {
+            //publishing is synchronous
+        }
+    }
+
+    /**
+     * A pooled client with its state
+     */
+    private static final class PooledClient {
+        private final Key key;
+        private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+        private MqttClient client;
+        private volatile boolean reconnecting;
+        private volatile long lastUsed = System.nanoTime();
+        private int failedConnects;
+        private long nextConnectAttempt;
+        private boolean evicted;
+
+        private PooledClient(Key key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A subscription of a pooled client
+     */
+    private static final class Subscription {
+        private final int qos;
+        private final IMqttMessageListener listener;
+
+        private Subscription(int qos, IMqttMessageListener listener) {
+            this.qos = qos;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Key of a pooled client: broker URI and client id (a broker only keeps one session per client id). The credentials
+     * (the password only as hash) are not part of the identity, see {@link #hasCredentialsOf(Key)}.
+     */
+    private static final class Key {
+        private final String uri;
+        private final String clientId;
+        private final String username;
+        private final String passwordHash;
+
+        private Key(String uri, String clientId, String username, String passwordHash) {
+            this.uri = uri;
+            this.clientId = clientId;
+            this.username = username;
+            this.passwordHash = passwordHash;
+        }
+
+        /**
+         * @param other key of the same broker URI and client id
+         * @return true if the other key has the same credentials
+         */
+        boolean hasCredentialsOf(Key other) {
+            return Objects.equals(username, other.username) && Objects.equals(passwordHash, other.passwordHash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            var key = (Key) o;
+            return uri.equals(key.uri) && clientId.equals(key.clientId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(uri, clientId);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An IDS message carried over MQTT: the JSON-LD header, an optional payload and an optional reply topic the response
+ * should be published to. Encoded and decoded by the {@link MqttEnvelopeCodec}.
+ */
+public final class MqttEnvelope {
+
+    private final String header;
+    private final byte[] payload;
+    private final String replyTopic;
+
+    /**
+     * Create an MqttEnvelope
+     *
+     * @param header the JSON-LD serialized IDS message header
+     * @param payload the raw payload (not copied), null if the message has no payload
+     * @param replyTopic topic the response should be published to, null if no response is expected on a specific topic
+     */
+    public MqttEnvelope(String header, byte[] payload, String replyTopic) {
+        if (header == null) {
+            throw new IllegalArgumentException("Header of an MQTT envelope must not be null");
+        }
+        this.header = header;
+        this.payload = payload;
+        this.replyTopic = replyTopic;
+    }
+
+    /**
+     * @return the JSON-LD serialized IDS message header
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * @return true if the envelope carries a payload
+     */
+    public boolean hasPayload() {
+        return payload != null;
+    }
+
+    /**
+     * @return a read-only view on the raw payload, null if the envelope carries no payload
+     */
+    public ByteBuffer getPayload() {
+        return payload == null ? null : ByteBuffer.wrap(payload).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a stream over the payload (as expected by the MessageDispatcher), null if the envelope carries no payload
+     */
+    public InputStream openPayload() {
+        return payload == null ? null : new ByteArrayInputStream(payload);
+    }
+
+    /**
+     * @return the raw payload (not copied, must not be modified), null if the envelope carries no payload
+     */
+    byte[] getPayloadBytes() {
+        return payload;
+    }
+
+    /**
+     * @return topic the response should be published to, null if not set
+     */
+    public String getReplyTopic() {
+        return replyTopic;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MqttEnvelope[header=%d chars, payload=%s, replyTopic=%s]",
+                header.length(), payload == null ? "none" : payload.length + " bytes", replyTopic);
+    }
+}
@@ -0,0 +1,193 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of {@link MqttEnvelope}s, used as payload of MQTT messages carrying IDS messages. Layout:
+ * <pre>
+ * magic (1 byte, 0x1D) | version (1 byte) | flags (1 byte)
+ * [reply topic length (varint) | reply topic (UTF-8)]   if flag 0x02 is set
+ * header length (varint) | header (UTF-8 JSON-LD)
+ * [payload length (varint) | payload (raw bytes)]       if flag 0x01 is set
+ * </pre>
+ * Lengths are unsigned LEB128 varints (one byte for lengths below 128), so the framing adds only a few bytes to
+ * header and payload, which are copied as they are (no multipart boundaries, no text encoding of the payload).
+ */
+public final class MqttEnvelopeCodec {
+
+    /**
+     * First byte of every encoded envelope
+     */
+    public static final byte MAGIC = 0x1D;
+    /**
+     * Version of the encoding
+     */
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_PAYLOAD = 0x01;
+    private static final int FLAG_REPLY_TOPIC = 0x02;
+    private static final int PREAMBLE_LENGTH = 3;
+
+    private MqttEnvelopeCodec() {
+    }
+
+    /**
+     * Encode an envelope
+     *
+     * @param envelope the envelope
+     * @return the encoded envelope
+     */
+    public static byte[] encode(MqttEnvelope envelope) {
+        var header = envelope.getHeader().getBytes(StandardCharsets.UTF_8);
+        var replyTopic = envelope.getReplyTopic() == null ? null : envelope.getReplyTopic().getBytes(StandardCharsets.UTF_8);
+        var payload = envelope.getPayloadBytes();
+
+        var length = PREAMBLE_LENGTH + varintLength(header.length) + header.length;
+        var flags = 0;
+        if (replyTopic != null) {
+            flags |= FLAG_REPLY_TOPIC;
+            length += varintLength(replyTopic.length) + replyTopic.length;
+        }
+        if (payload != null) {
+            flags |= FLAG_PAYLOAD;
+            length += varintLength(payload.length) + payload.length;
+        }
+
+        var out = new byte[length];
+        out[0] = MAGIC;
+        out[1] = VERSION;
+        out[2] = (byte) flags;
+        var pos = PREAMBLE_LENGTH;
+        if (replyTopic != null) {
+            pos = writeBlock(out, pos, replyTopic);
+        }
+        pos = writeBlock(out, pos, header);
+        if (payload != null) {
+            writeBlock(out, pos, payload);
+        }
+        return out;
+    }
+
+    /**
+     * Decode an envelope
+     *
+     * @param bytes the encoded envelope (the payload of the decoded envelope is copied, the array can be reused)
+     * @return the decoded envelope
+     * @throws MqttEnvelopeException if the bytes are no valid envelope of a supported version
+     */
+    public static MqttEnvelope decode(byte[] bytes) throws MqttEnvelopeException {
+        if (bytes == null || bytes.length < PREAMBLE_LENGTH || bytes[0] != MAGIC) {
+            throw new MqttEnvelopeException("Message is no IDS MQTT envelope");
+        }
+        if (bytes[1] != VERSION) {
+            throw new MqttEnvelopeException(String.format("Unsupported IDS MQTT envelope version: %d", bytes[1]));
+        }
+        var flags = bytes[2];
+        if ((flags & ~(FLAG_PAYLOAD | FLAG_REPLY_TOPIC)) != 0) {
+            throw new MqttEnvelopeException(String.format("Unknown flags in IDS MQTT envelope: 0x%02X", flags));
+        }
+        var reader = new Reader(bytes, PREAMBLE_LENGTH);
+        String replyTopic = null;
+        if ((flags & FLAG_REPLY_TOPIC) != 0) {
+            replyTopic = reader.readString();
+        }
+        var header = reader.readString();
+        byte[] payload = null;
+        if ((flags & FLAG_PAYLOAD) != 0) {
+            payload = reader.readBytes();
+        }
+        if (reader.pos != bytes.length) {
+            throw new MqttEnvelopeException(String.format("%d trailing bytes after IDS MQTT envelope", bytes.length - reader.pos));
+        }
+        return new MqttEnvelope(header, payload, replyTopic);
+    }
+
+    /**
+     * @param value a non-negative length
+     * @return number of bytes of the varint encoding of the length
+     */
+    private static int varintLength(int value) {
+        var length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Write a length prefixed block
+     *
+     * @param out the target array
+     * @param pos position the block is written to
+     * @param block the bytes of the block
+     * @return the position after the block
+     */
+    private static int writeBlock(byte[] out, int pos, byte[] block) {
+        var value = block.length;
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        System.arraycopy(block, 0, out, pos, block.length);
+        return pos + block.length;
+    }
+
+    /**
+     * Reads length prefixed blocks of an encoded envelope, checking every length against the remaining bytes
+     */
+    private static final class Reader {
+        private final byte[] bytes;
+        private int pos;
+
+        Reader(byte[] bytes, int pos) {
+            this.bytes = bytes;
+            this.pos = pos;
+        }
+
+        /**
+         * @return the next block decoded as UTF-8
+         * @throws MqttEnvelopeException if the envelope is truncated
+         */
+        String readString() throws MqttEnvelopeException {
+            var length = readLength();
+            var value = new String(bytes, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        /**
+         * @return a copy of the next block
+         * @throws MqttEnvelopeException if the envelope is truncated
+         */
+        byte[] readBytes() throws MqttEnvelopeException {
+            var length = readLength();
+            var value = new byte[length];
+            System.arraycopy(bytes, pos, value, 0, length);
+            pos += length;
+            return value;
+        }
+
+        /**
+         * @return the length of the next block, which is guaranteed to fit into the remaining bytes
+         * @throws MqttEnvelopeException if the length is malformed or exceeds the remaining bytes
+         */
+        private int readLength() throws MqttEnvelopeException {
+            long value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (pos >= bytes.length) {
+                    throw new MqttEnvelopeException("IDS MQTT envelope is truncated");
+                }
+                var b = bytes[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value > bytes.length - pos) {
+                        throw new MqttEnvelopeException("IDS MQTT envelope is truncated");
+                    }
+                    return (int) value;
+                }
+            }
+            throw new MqttEnvelopeException("Malformed length in IDS MQTT envelope");
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import java.io.IOException;
+
+/**
+ * Exception which is thrown, when the payload of an MQTT message cannot be decoded by the {@link MqttEnvelopeCodec}
+ * (extends IOException, so it is handled like other messages that cannot be parsed)
+ */
+public class MqttEnvelopeException extends IOException {
+    /**
+     * For Throwing a MqttEnvelopeException with a custom error message
+     *
+     * @param message the error message to be included with the exception
+     */
+    public MqttEnvelopeException(String message) {
+        super(message);
+    }
+}
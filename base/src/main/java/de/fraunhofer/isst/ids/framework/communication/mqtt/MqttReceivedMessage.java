@@ -0,0 +1,85 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A message received from an MQTT broker, queued by {@link IDSMQTTCommunication} with its raw payload
+ */
+public final class MqttReceivedMessage {
+
+    private final String topic;
+    private final byte[] payload;
+    private final int qos;
+    private final boolean retained;
+    private final long receivedAt;
+
+    /**
+     * @param topic topic the message was received on
+     * @param payload the raw payload (not copied)
+     * @param qos QoS the message was delivered with
+     * @param retained true if the message was retained by the broker
+     * @param receivedAt time the message was received (milliseconds since the epoch)
+     */
+    MqttReceivedMessage(String topic, byte[] payload, int qos, boolean retained, long receivedAt) {
+        this.topic = topic;
+        this.payload = payload;
+        this.qos = qos;
+        this.retained = retained;
+        this.receivedAt = receivedAt;
+    }
+
+    /**
+     * @return topic the message was received on
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @return a read-only view on the raw payload
+     */
+    public ByteBuffer getPayload() {
+        return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the number of bytes of the payload
+     */
+    public int getPayloadLength() {
+        return payload.length;
+    }
+
+    /**
+     * @return the payload decoded as UTF-8
+     */
+    public String getPayloadAsString() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return QoS the message was delivered with
+     */
+    public int getQos() {
+        return qos;
+    }
+
+    /**
+     * @return true if the message was retained by the broker
+     */
+    public boolean isRetained() {
+        return retained;
+    }
+
+    /**
+     * @return time the message was received (milliseconds since the epoch)
+     */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Topic: %s. Payload: %s.", topic, getPayloadAsString());
+    }
+}
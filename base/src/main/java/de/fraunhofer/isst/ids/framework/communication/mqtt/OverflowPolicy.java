@@ -0,0 +1,19 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+/**
+ * What a {@link BoundedMessageQueue} does with a message offered while the queue is full
+ */
+public enum OverflowPolicy {
+    /**
+     * wait until a consumer frees a slot (backpressure on the producer, e.g. the MQTT callback thread)
+     */
+    BLOCK,
+    /**
+     * remove the oldest message from the queue to make room for the new one
+     */
+    DROP_OLDEST,
+    /**
+     * reject the new message
+     */
+    DROP_NEWEST
+}
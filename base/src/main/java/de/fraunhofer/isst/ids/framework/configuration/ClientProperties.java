@@ -0,0 +1,54 @@
+package de.fraunhofer.isst.ids.framework.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set of Properties to configure the dispatcher, connection pool, TLS session cache and connection warm-up of the
+ * OkHttpClients created by the {@link de.fraunhofer.isst.ids.framework.util.ClientProvider}. Defaults are the OkHttp defaults.
+ * Properties should be added to the application.properties file
+ */
+@ConfigurationProperties(prefix = "configuration.client")
+@Data
+public class ClientProperties {
+
+    /**
+     * Maximum number of asynchronous requests executed concurrently, further requests are queued
+     */
+    private int maxRequests = 64;
+    /**
+     * Maximum number of asynchronous requests executed concurrently for every host, further requests to the host are queued
+     */
+    private int maxRequestsPerHost = 5;
+    /**
+     * Maximum number of idle connections kept in the connection pool
+     */
+    private int maxIdleConnections = 5;
+    /**
+     * Time an idle connection is kept in the connection pool
+     */
+    private Duration keepAlive = Duration.ofMinutes(5);
+    /**
+     * Maximum number of TLS sessions cached for resumption (0 = no limit)
+     */
+    private int sslSessionCacheSize = 1000;
+    /**
+     * Time a cached TLS session can be resumed
+     */
+    private Duration sslSessionTimeout = Duration.ofHours(24);
+    /**
+     * Time the calls of a replaced client (after the trust material or proxy settings changed) can keep running on
+     * their connections, before they are cancelled and the connections are closed
+     */
+    private Duration drainTimeout = Duration.ofMinutes(1);
+    /**
+     * Endpoints (e.g. brokers or frequent peers) connections are opened to when the application is ready,
+     * the DAPS urls are added automatically. At most max-idle-connections warm connections are kept.
+     */
+    private List<URI> warmupEndpoints = new ArrayList<>();
+}
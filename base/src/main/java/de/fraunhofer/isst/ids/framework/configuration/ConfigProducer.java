@@ -27,7 +27,7 @@ import java.security.NoSuchAlgorithmException;
  */
 @Configuration
 @ConditionalOnClass({ConfigurationModel.class, Connector.class, KeyStoreManager.class})
-@EnableConfigurationProperties(ConfigProperties.class)
+@EnableConfigurationProperties({ConfigProperties.class, ClientProperties.class})
 public class ConfigProducer {
     private static final Logger LOGGER = LoggerFactory.getLogger(ConfigProducer.class);
 
@@ -40,8 +40,9 @@ public class ConfigProducer {
      *
      * @param serializer an infomodel serializer for reading the jsonLD configuration
      * @param properties the {@link ConfigProperties} parsed from an application.properties file
+     * @param clientProperties the {@link ClientProperties} parsed from an application.properties file
      */
-    public ConfigProducer(final Serializer serializer, ConfigProperties properties) {
+    public ConfigProducer(final Serializer serializer, ConfigProperties properties, ClientProperties clientProperties) {
         try {
             LOGGER.debug(String.format("Loading configuration from %s", properties.getPath()));
             String config;
@@ -67,7 +68,7 @@ public class ConfigProducer {
             configurationContainer = new ConfigurationContainer(configModel, manager);
             LOGGER.info("Creating ClientProvider");
             //create a ClientProvider
-            clientProvider = new ClientProvider(configurationContainer);
+            clientProvider = new ClientProvider(configurationContainer, clientProperties);
             configurationContainer.setClientProvider(clientProvider);
         } catch (IOException e) {
             LOGGER.error("Configuration cannot be parsed!");
@@ -3,11 +3,15 @@ package de.fraunhofer.isst.ids.framework.configuration;
 import de.fraunhofer.iais.eis.ConfigurationModel;
 import de.fraunhofer.iais.eis.Connector;
 import de.fraunhofer.isst.ids.framework.util.ClientProvider;
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The ConfigurationContainer wraps the current configuration with the respective key- and truststore,
@@ -20,6 +24,9 @@ public class ConfigurationContainer {
     private ConfigurationModel configurationModel;
     private KeyStoreManager keyStoreManager;
     private ClientProvider clientProvider;
+    private final List<ConfigurationUpdateListener> updateListeners = new CopyOnWriteArrayList<>();
+    private long configurationVersion = 0;
+    private volatile SerializedSelfDescription selfDescription;
 
     /**
      * Create a ConfigurationContainer with a ConfigurationModel and KeyStoreManager
@@ -41,6 +48,24 @@ public class ConfigurationContainer {
         this.clientProvider = provider;
     }
 
+    /**
+     * Register a {@link ConfigurationUpdateListener}, which is notified every time a new configuration was applied
+     *
+     * @param listener the listener to be notified about configuration updates
+     */
+    public void addUpdateListener(ConfigurationUpdateListener listener){
+        this.updateListeners.add(listener);
+    }
+
+    /**
+     * Remove a previously registered {@link ConfigurationUpdateListener}
+     *
+     * @param listener the listener that should no longer be notified
+     */
+    public void removeUpdateListener(ConfigurationUpdateListener listener){
+        this.updateListeners.remove(listener);
+    }
+
     /**
      * Getter for the {@link ConfigurationModel}
      *
@@ -59,6 +84,28 @@ public class ConfigurationContainer {
         return this.configurationModel.getConnectorDescription();
     }
 
+    /**
+     * Get the JsonLD self-description of the {@link Connector}. The self-description is serialized once per
+     * configuration update and reused by all callers afterwards.
+     *
+     * @return the serialized self-description of the current connector description
+     * @throws IOException when the connector cannot be serialized
+     */
+    public SerializedSelfDescription getSelfDescription() throws IOException {
+        var current = this.selfDescription;
+        if(current != null){
+            return current;
+        }
+        synchronized (this) {
+            if(this.selfDescription == null){
+                LOGGER.debug("Serializing the self-description of the connector");
+                var connector = getConnector();
+                this.selfDescription = new SerializedSelfDescription(configurationVersion, connector, IDSUtils.buildSelfDeclaration(connector));
+            }
+            return this.selfDescription;
+        }
+    }
+
     /**
      * Getter for the {@link KeyStoreManager}
      *
@@ -70,7 +117,8 @@ public class ConfigurationContainer {
 
     /**
      * Update the ConfigurationContainer with a new {@link ConfigurationModel}, rebuild the KeyStoreManager with
-     * new Configuration in the process
+     * new Configuration in the process (the ClientProvider keeps its client and connections, if the trust material
+     * and proxy settings are unchanged)
      *
      * @param configurationModel the new configurationModel that replaces the current one
      * @throws ConfigurationUpdateException when the Key- and Truststore in the new Connector cannot be initialized
@@ -80,12 +128,19 @@ public class ConfigurationContainer {
             LOGGER.debug("Updating the current configuration");
             var manager = rebuildKeyStoreManager(configurationModel);
             LOGGER.debug("KeyStoreManager rebuilt");
-            this.configurationModel = configurationModel;
-            this.keyStoreManager = manager;
+            var oldModel = this.configurationModel;
+            synchronized (this) {
+                this.configurationModel = configurationModel;
+                this.keyStoreManager = manager;
+                this.configurationVersion++;
+                this.selfDescription = null;
+            }
+            rebuildSelfDescription();
             if(clientProvider != null){
                 clientProvider.updateConfig();
                 LOGGER.debug("ClientProvider updated!");
             }
+            notifyUpdateListeners(oldModel, configurationModel);
         } catch (KeyStoreManagerInitializationException e) {
             LOGGER.error("Configuration could not be updated! Keeping old configuration!");
             throw new ConfigurationUpdateException(e.getMessage(), e.getCause());
@@ -96,6 +151,37 @@ public class ConfigurationContainer {
         }
     }
 
+    /**
+     * Serialize the self-description of the new configuration, if this fails it is retried on the next access
+     */
+    private void rebuildSelfDescription(){
+        try {
+            getSelfDescription();
+            LOGGER.debug("Self-description rebuilt");
+        } catch (IOException e) {
+            LOGGER.warn("Self-description of the new configuration could not be serialized!");
+            LOGGER.warn(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Notify all registered {@link ConfigurationUpdateListener}s about an applied configuration,
+     * a failing listener does not prevent the others from being notified
+     *
+     * @param oldModel the replaced ConfigurationModel
+     * @param newModel the new ConfigurationModel
+     */
+    private void notifyUpdateListeners(ConfigurationModel oldModel, ConfigurationModel newModel){
+        for(var listener : updateListeners){
+            try {
+                listener.onConfigurationUpdate(oldModel, newModel);
+            } catch (RuntimeException e) {
+                LOGGER.warn("A ConfigurationUpdateListener failed!");
+                LOGGER.warn(e.getMessage(), e);
+            }
+        }
+    }
+
     /**
      * Rebuild the {@link KeyStoreManager} with a given configuration
      *
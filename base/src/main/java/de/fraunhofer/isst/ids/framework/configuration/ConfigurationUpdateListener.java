@@ -0,0 +1,19 @@
+package de.fraunhofer.isst.ids.framework.configuration;
+
+import de.fraunhofer.iais.eis.ConfigurationModel;
+
+/**
+ * Listener that can be registered at the {@link ConfigurationContainer}, to be notified when a new
+ * {@link ConfigurationModel} was applied successfully
+ */
+@FunctionalInterface
+public interface ConfigurationUpdateListener {
+
+    /**
+     * Called after the ConfigurationContainer switched to a new configuration
+     *
+     * @param oldModel the ConfigurationModel that was replaced
+     * @param newModel the ConfigurationModel that is used from now on
+     */
+    void onConfigurationUpdate(ConfigurationModel oldModel, ConfigurationModel newModel);
+}
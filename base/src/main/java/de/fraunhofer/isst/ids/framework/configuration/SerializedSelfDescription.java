@@ -0,0 +1,103 @@
+package de.fraunhofer.isst.ids.framework.configuration;
+
+import de.fraunhofer.iais.eis.Connector;
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable, pre-serialized JsonLD self-description of the connector, created by the {@link ConfigurationContainer}
+ * once per configuration update. The serialized form (String and UTF-8 bytes) and its content hash can be reused
+ * by callers without serializing the {@link de.fraunhofer.iais.eis.Connector} again.
+ */
+public final class SerializedSelfDescription {
+
+    private final long version;
+    private final Connector connector;
+    private final String json;
+    private final byte[] bytes;
+    private final String contentHash;
+
+    /**
+     * Create a SerializedSelfDescription from the JsonLD representation of the connector
+     *
+     * @param version the version of the configuration this self-description belongs to
+     * @param connector the connector the self-description was serialized from
+     * @param json the JsonLD representation of the connector
+     */
+    SerializedSelfDescription(long version, Connector connector, String json) {
+        this.version = version;
+        this.connector = connector;
+        this.json = json;
+        this.bytes = json.getBytes(StandardCharsets.UTF_8);
+        this.contentHash = IDSUtils.sha256(bytes);
+    }
+
+    /**
+     * Getter for the version, the version is incremented with every configuration update
+     *
+     * @return the version of the configuration this self-description was built from
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Getter for the connector, which is consistent with the serialized self-description even if the configuration
+     * was replaced in the meantime
+     *
+     * @return the {@link Connector} the self-description was serialized from
+     */
+    public Connector getConnector() {
+        return connector;
+    }
+
+    /**
+     * Getter for the JsonLD self-description
+     *
+     * @return the self-description as JsonLD String
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Get the UTF-8 encoded self-description, without copying it
+     *
+     * @return a new read-only ByteBuffer view on the encoded self-description
+     */
+    public ByteBuffer getBytes() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Getter for the length of the encoded self-description
+     *
+     * @return the number of bytes of the UTF-8 encoded self-description
+     */
+    public int getLength() {
+        return bytes.length;
+    }
+
+    /**
+     * Getter for the content hash, which can be used to detect changes of the self-description
+     *
+     * @return Base64 encoded SHA-256 hash of the encoded self-description
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Write the UTF-8 encoded self-description to the given stream
+     *
+     * @param out the stream the self-description is written to
+     * @throws IOException if the self-description cannot be written to the stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+}
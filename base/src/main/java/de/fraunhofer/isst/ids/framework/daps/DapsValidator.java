@@ -15,7 +15,15 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.security.Key;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * The DapsValidator checks the DAPS Token of a RequestMessage using a public signingKey
@@ -41,7 +49,18 @@ public class DapsValidator {
      * @throws ClaimsException if Token cannot be signed with the given key
      */
     public static Jws<Claims> getClaims(Message message, Key signingKey) throws ClaimsException {
-        String tokenValue = message.getSecurityToken().getTokenValue();
+        return getClaims(message.getSecurityToken().getTokenValue(), signingKey);
+    }
+
+    /**
+     * Extract the Claims from a Dat token, given the token value and a signingKey
+     *
+     * @param tokenValue the compact JWT representation of a DAT
+     * @param signingKey a public Key
+     * @return the Claims of the DAT Token, when it can be signed with the given key
+     * @throws ClaimsException if Token cannot be signed with the given key
+     */
+    public static Jws<Claims> getClaims(String tokenValue, Key signingKey) throws ClaimsException {
         try {
             return Jwts.parser()
                     .setSigningKey(signingKey)
@@ -52,6 +71,115 @@ public class DapsValidator {
         }
     }
 
+    /**
+     * Verify the DATs of many messages in parallel, using the common ForkJoinPool.
+     *
+     * @param messages the messages to verify
+     * @param signingKey the public Key of the DAPS
+     * @return one verification result per message, in the order of the given messages
+     */
+    public static List<DatVerificationResult> verifyAll(List<? extends Message> messages, Key signingKey) {
+        return verifyAll(messages, signingKey, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Verify the DATs of many messages in parallel. Messages often carry the same DAT (e.g. when sent by the same connector),
+     * so every distinct token is parsed and verified only once, the distinct tokens are spread across the given pool.
+     *
+     * @param messages the messages to verify
+     * @param signingKey the public Key of the DAPS
+     * @param pool the pool the tokens are verified with
+     * @return one verification result per message, in the order of the given messages
+     */
+    public static List<DatVerificationResult> verifyAll(List<? extends Message> messages, Key signingKey, ForkJoinPool pool) {
+        var tokens = new LinkedHashSet<String>();
+        for (var message : messages) {
+            var token = tokenValue(message);
+            if (token != null) {
+                tokens.add(token);
+            }
+        }
+        LOGGER.debug(String.format("Verifying %d distinct DATs of %d messages", tokens.size(), messages.size()));
+
+        var tasks = new ArrayList<Callable<DatVerificationResult>>(tokens.size());
+        for (var token : tokens) {
+            tasks.add(() -> verifyToken(token, signingKey));
+        }
+        var futures = tokens.size() == 1 ? List.of(pool.submit(tasks.get(0))) : pool.invokeAll(tasks);
+
+        var resultsByToken = new HashMap<String, DatVerificationResult>();
+        var tokenIterator = tokens.iterator();
+        for (Future<DatVerificationResult> future : futures) {
+            var token = tokenIterator.next();
+            try {
+                resultsByToken.put(token, future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                resultsByToken.put(token, new DatVerificationResult(false, null, "Verification was interrupted!"));
+            } catch (ExecutionException e) {
+                resultsByToken.put(token, new DatVerificationResult(false, null, e.getCause().getMessage()));
+            }
+        }
+
+        var results = new ArrayList<DatVerificationResult>(messages.size());
+        for (var message : messages) {
+            var token = tokenValue(message);
+            results.add(token == null ? new DatVerificationResult(false, null, "Message has no security token!") : resultsByToken.get(token));
+        }
+        return results;
+    }
+
+    /**
+     * Check the DATs of many Messages in parallel (see {@link #verifyAll(List, Key)})
+     *
+     * @param messages Messages from responses or requests
+     * @return one entry per message (in the order of the given messages), true if the DAT of the Message is valid
+     */
+    public List<Boolean> checkDats(List<? extends Message> messages) {
+        var verified = verifyAll(messages, keyProvider.providePublicKey());
+        var results = new ArrayList<Boolean>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            //Don't check DAT of RejectionMessages
+            results.add(messages.get(i) instanceof RejectionMessageImpl || verified.get(i).isValid());
+        }
+        return results;
+    }
+
+    /**
+     * Parse and verify a single DAT
+     *
+     * @param tokenValue the compact JWT representation of a DAT
+     * @param signingKey the public Key of the DAPS
+     * @return the result of the verification
+     */
+    private static DatVerificationResult verifyToken(String tokenValue, Key signingKey) {
+        Jws<Claims> claims;
+        try {
+            claims = getClaims(tokenValue, signingKey);
+        } catch (ClaimsException e) {
+            return new DatVerificationResult(false, null, String.format("Token could not be parsed: %s", e.getMessage()));
+        }
+        try {
+            var verified = DapsVerifier.verify(claims);
+            return new DatVerificationResult(verified, claims, verified ? null : "Token verification result is: false");
+        } catch (ClaimsException e) {
+            return new DatVerificationResult(false, claims, e.getMessage());
+        }
+    }
+
+    /**
+     * Get the token value of a message
+     *
+     * @param message an infomodel Message
+     * @return the DAT of the message, null if the message has no security token
+     */
+    private static String tokenValue(Message message) {
+        if (message.getSecurityToken() == null) {
+            return null;
+        }
+        return message.getSecurityToken().getTokenValue();
+    }
+
     /**
      * Check the DAT of a Message
      *
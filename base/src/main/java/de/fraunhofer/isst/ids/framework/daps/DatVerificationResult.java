@@ -0,0 +1,46 @@
+package de.fraunhofer.isst.ids.framework.daps;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+
+/**
+ * Result of verifying the DAT of a single message, as returned by the batch verification of the {@link DapsValidator}
+ */
+public class DatVerificationResult {
+
+    private final boolean valid;
+    private final Jws<Claims> claims;
+    private final String error;
+
+    /**
+     * @param valid true if the DAT could be parsed and its claims were verified
+     * @param claims the parsed claims of the DAT (null if it could not be parsed)
+     * @param error description of the problem if the DAT is not valid (null otherwise)
+     */
+    DatVerificationResult(boolean valid, Jws<Claims> claims, String error) {
+        this.valid = valid;
+        this.claims = claims;
+        this.error = error;
+    }
+
+    /**
+     * @return true if the DAT could be parsed and its claims were verified
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return the parsed claims of the DAT, null if the DAT could not be parsed
+     */
+    public Jws<Claims> getClaims() {
+        return claims;
+    }
+
+    /**
+     * @return description of the problem if the DAT is not valid, null otherwise
+     */
+    public String getError() {
+        return error;
+    }
+}
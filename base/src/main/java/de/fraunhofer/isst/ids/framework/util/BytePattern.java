@@ -0,0 +1,98 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte sequence with a precomputed Boyer-Moore-Horspool shift table, for fast searches of multipart
+ * delimiters in byte arrays and ByteBuffers without decoding them to Strings.
+ */
+final class BytePattern {
+
+    private final byte[] pattern;
+    private final int[] shift = new int[256];
+
+    /**
+     * @param pattern the bytes to search for (must not be empty)
+     */
+    BytePattern(byte[] pattern) {
+        if (pattern.length == 0) {
+            throw new IllegalArgumentException("Pattern must not be empty");
+        }
+        this.pattern = pattern.clone();
+        var last = pattern.length - 1;
+        Arrays.fill(shift, pattern.length);
+        for (int i = 0; i < last; i++) {
+            shift[pattern[i] & 0xff] = last - i;
+        }
+    }
+
+    /**
+     * @param pattern the characters to search for, encoded as US-ASCII
+     * @return the BytePattern of the given characters
+     */
+    static BytePattern of(String pattern) {
+        return new BytePattern(pattern.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @return the number of bytes of the pattern
+     */
+    int length() {
+        return pattern.length;
+    }
+
+    /**
+     * Find the first occurrence of the pattern in the given range of the buffer (absolute indices, the position of the buffer is not changed)
+     *
+     * @param buffer the buffer to search in
+     * @param from first index of the range (inclusive)
+     * @param to last index of the range (exclusive)
+     * @return absolute index of the first occurrence, -1 if the range does not contain the pattern
+     */
+    int indexIn(ByteBuffer buffer, int from, int to) {
+        if (buffer.hasArray()) {
+            var offset = buffer.arrayOffset();
+            var index = indexIn(buffer.array(), offset + from, offset + to);
+            return index < 0 ? -1 : index - offset;
+        }
+        var last = pattern.length - 1;
+        var i = from;
+        while (i + last < to) {
+            var j = last;
+            while (buffer.get(i + j) == pattern[j]) {
+                if (j == 0) {
+                    return i;
+                }
+                j--;
+            }
+            i += shift[buffer.get(i + last) & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first occurrence of the pattern in the given range of the array
+     *
+     * @param array the array to search in
+     * @param from first index of the range (inclusive)
+     * @param to last index of the range (exclusive)
+     * @return index of the first occurrence, -1 if the range does not contain the pattern
+     */
+    int indexIn(byte[] array, int from, int to) {
+        var last = pattern.length - 1;
+        var i = from;
+        while (i + last < to) {
+            var j = last;
+            while (array[i + j] == pattern[j]) {
+                if (j == 0) {
+                    return i;
+                }
+                j--;
+            }
+            i += shift[array[i + last] & 0xff];
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,248 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import de.fraunhofer.isst.ids.framework.communication.http.RetryPolicy;
+import okhttp3.ConnectionPool;
+import okhttp3.Protocol;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Immutable, named set of client settings (timeouts, connection pool, protocols) and the retry policy of the calls
+ * sent with the profile. The {@link ClientProvider} builds one OkHttpClient per profile and caches it, so profiles can
+ * be used for every single call without rebuilding clients. Settings that are not set (null) use the values of the default client.
+ */
+public final class ClientProfile {
+
+    private final String name;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final Duration writeTimeout;
+    private final Duration callTimeout;
+    private final ConnectionPool connectionPool;
+    private final List<Protocol> protocols;
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * Create a ClientProfile, use {@link #builder(String)} to build one
+     *
+     * @param builder the builder holding the settings of the profile
+     */
+    private ClientProfile(final Builder builder) {
+        this.name = builder.name;
+        this.connectTimeout = builder.connectTimeout;
+        this.readTimeout = builder.readTimeout;
+        this.writeTimeout = builder.writeTimeout;
+        this.callTimeout = builder.callTimeout;
+        this.connectionPool = builder.connectionPool;
+        this.protocols = builder.protocols == null ? null : List.copyOf(builder.protocols);
+        this.retryPolicy = builder.retryPolicy == null ? RetryPolicy.none() : builder.retryPolicy;
+    }
+
+    /**
+     * Static method returning a builder.
+     *
+     * @param name the name of the profile
+     * @return a builder instance for this class
+     */
+    public static Builder builder(final String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * Create a profile with the given timeouts
+     *
+     * @param name the name of the profile
+     * @param connectTimeout max timeout for connecting to target host (null = default values are used)
+     * @param readTimeout max timeout for waiting for the target response (null = default values are used)
+     * @param writeTimeout max timeout for sending the response to the target (null = default values are used)
+     * @param callTimeout max timeout for the whole http request (null = default values are used)
+     * @return a profile with the given timeouts
+     */
+    public static ClientProfile withTimeouts(final String name, final Duration connectTimeout, final Duration readTimeout,
+                                             final Duration writeTimeout, final Duration callTimeout) {
+        return builder(name)
+                .withConnectTimeout(connectTimeout)
+                .withReadTimeout(readTimeout)
+                .withWriteTimeout(writeTimeout)
+                .withCallTimeout(callTimeout)
+                .build();
+    }
+
+    /**
+     * @return the name of the profile
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return max timeout for connecting to target host (null = default value)
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @return max timeout for waiting for the target response (null = default value)
+     */
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * @return max timeout for sending the request to the target (null = default value)
+     */
+    public Duration getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    /**
+     * @return max timeout for the whole http request (null = default value)
+     */
+    public Duration getCallTimeout() {
+        return callTimeout;
+    }
+
+    /**
+     * @return a dedicated connection pool for the profile (null = the pool of the default client is shared)
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * @return the protocols used by the profile (null = default protocols)
+     */
+    public List<Protocol> getProtocols() {
+        return protocols;
+    }
+
+    /**
+     * @return the retry policy of the calls sent with the profile (no retries if none was set)
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        var that = (ClientProfile) o;
+        return name.equals(that.name)
+                && Objects.equals(connectTimeout, that.connectTimeout)
+                && Objects.equals(readTimeout, that.readTimeout)
+                && Objects.equals(writeTimeout, that.writeTimeout)
+                && Objects.equals(callTimeout, that.callTimeout)
+                && connectionPool == that.connectionPool
+                && Objects.equals(protocols, that.protocols)
+                && retryPolicy == that.retryPolicy;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, connectTimeout, readTimeout, writeTimeout, callTimeout, System.identityHashCode(connectionPool), protocols,
+                System.identityHashCode(retryPolicy));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ClientProfile{name=%s, connectTimeout=%s, readTimeout=%s, writeTimeout=%s, callTimeout=%s, protocols=%s}",
+                name, connectTimeout, readTimeout, writeTimeout, callTimeout, protocols);
+    }
+
+    /**
+     * Builder class for ClientProfiles
+     */
+    public static class Builder {
+        private final String name;
+        private Duration connectTimeout;
+        private Duration readTimeout;
+        private Duration writeTimeout;
+        private Duration callTimeout;
+        private ConnectionPool connectionPool;
+        private List<Protocol> protocols;
+        private RetryPolicy retryPolicy;
+
+        /**
+         * @param name the name of the profile
+         */
+        protected Builder(final String name) {
+            this.name = Objects.requireNonNull(name, "A ClientProfile needs a name");
+        }
+
+        /**
+         * @param connectTimeout max timeout for connecting to target host (null = default value)
+         * @return builder with set connect timeout
+         */
+        public Builder withConnectTimeout(final Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * @param readTimeout max timeout for waiting for the target response (null = default value)
+         * @return builder with set read timeout
+         */
+        public Builder withReadTimeout(final Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * @param writeTimeout max timeout for sending the request to the target (null = default value)
+         * @return builder with set write timeout
+         */
+        public Builder withWriteTimeout(final Duration writeTimeout) {
+            this.writeTimeout = writeTimeout;
+            return this;
+        }
+
+        /**
+         * @param callTimeout max timeout for the whole http request (null = default value)
+         * @return builder with set call timeout
+         */
+        public Builder withCallTimeout(final Duration callTimeout) {
+            this.callTimeout = callTimeout;
+            return this;
+        }
+
+        /**
+         * @param connectionPool a dedicated connection pool for the profile (null = share the pool of the default client)
+         * @return builder with set connection pool
+         */
+        public Builder withConnectionPool(final ConnectionPool connectionPool) {
+            this.connectionPool = connectionPool;
+            return this;
+        }
+
+        /**
+         * @param protocols the protocols used by the profile (null = default protocols)
+         * @return builder with set protocols
+         */
+        public Builder withProtocols(final List<Protocol> protocols) {
+            this.protocols = protocols;
+            return this;
+        }
+
+        /**
+         * Retries resend the request, so only set a policy on profiles used for requests that can be repeated safely.
+         *
+         * @param retryPolicy the retry policy of the calls sent with the profile (null = no retries)
+         * @return builder with set retry policy
+         */
+        public Builder withRetryPolicy(final RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * @return the built ClientProfile
+         */
+        public ClientProfile build() {
+            return new ClientProfile(this);
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package de.fraunhofer.isst.ids.framework.util;
 
 import de.fraunhofer.iais.eis.ConfigurationModel;
+import de.fraunhofer.isst.ids.framework.configuration.ClientProperties;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
 import de.fraunhofer.isst.ids.framework.configuration.KeyStoreManager;
 import okhttp3.Authenticator;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
 import okhttp3.Credentials;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,13 +22,29 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The ClientProvider uses the {@link ConfigurationContainer} to rebuild clients, when a new configurationContainer is created
@@ -28,8 +53,32 @@ public class ClientProvider {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(ClientProvider.class);
 
+    /**
+     * Max number of cached clients of profiles, the least recently used client is dropped (and rebuilt on its next use)
+     */
+    static final int MAX_PROFILE_CLIENTS = 64;
+
     private ConfigurationContainer configContainer;
-    private OkHttpClient client;
+    private final Dispatcher dispatcher;
+    private volatile ConnectionPool connectionPool;
+    private final int maxIdleConnections;
+    private final Duration keepAlive;
+    private final Duration drainTimeout;
+    private volatile String clientFingerprint;
+    private volatile OkHttpClient client;
+    private Set<Call> activeCalls = newCallSet();
+    private final Map<String, ClientProfile> profiles = new ConcurrentHashMap<>();
+    private final Map<ClientSettings, OkHttpClient> profileClients = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ClientSettings, OkHttpClient> eldest) {
+            return size() > MAX_PROFILE_CLIENTS;
+        }
+    };
+    private final int sslSessionCacheSize;
+    private final Duration sslSessionTimeout;
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    private final AtomicLong unknownHandshakes = new AtomicLong();
 
     /**
      * Constructor, creating a Client provider using the KeyStore part from the ConfigurationContainer
@@ -39,8 +88,33 @@ public class ClientProvider {
      * @throws KeyManagementException   if there is an error with any configured key when building an {@link OkHttpClient}
      */
     public ClientProvider(ConfigurationContainer configContainer) throws KeyManagementException, NoSuchAlgorithmException {
+        this(configContainer, new ClientProperties());
+    }
+
+    /**
+     * Constructor, creating a Client provider using the KeyStore part from the ConfigurationContainer,
+     * with dispatcher limits and connection pool configured by the given {@link ClientProperties}
+     *
+     * @param configContainer the {@link ConfigurationContainer} managing current configurations
+     * @param clientProperties the dispatcher and connection pool settings
+     * @throws NoSuchAlgorithmException if the cryptographic is unknown when building an {@link OkHttpClient}
+     * @throws KeyManagementException   if there is an error with any configured key when building an {@link OkHttpClient}
+     */
+    public ClientProvider(ConfigurationContainer configContainer, ClientProperties clientProperties) throws KeyManagementException, NoSuchAlgorithmException {
         this.configContainer = configContainer;
-        this.client = createClientBuilder(configContainer.getConfigModel(), configContainer.getKeyManager()).build();
+        this.dispatcher = new Dispatcher();
+        this.dispatcher.setMaxRequests(clientProperties.getMaxRequests());
+        this.dispatcher.setMaxRequestsPerHost(clientProperties.getMaxRequestsPerHost());
+        this.maxIdleConnections = clientProperties.getMaxIdleConnections();
+        this.keepAlive = clientProperties.getKeepAlive();
+        this.drainTimeout = clientProperties.getDrainTimeout();
+        this.connectionPool = new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+        this.sslSessionCacheSize = clientProperties.getSslSessionCacheSize();
+        this.sslSessionTimeout = clientProperties.getSslSessionTimeout();
+        LOGGER.debug(String.format("Client limits: %d requests, %d requests per host, %d idle connections kept for %s",
+                clientProperties.getMaxRequests(), clientProperties.getMaxRequestsPerHost(), clientProperties.getMaxIdleConnections(), clientProperties.getKeepAlive()));
+        this.client = createClientBuilder(configContainer.getConfigModel(), configContainer.getKeyManager(), activeCalls).build();
+        this.clientFingerprint = fingerprint(configContainer.getConfigModel(), configContainer.getKeyManager());
     }
 
     /**
@@ -53,13 +127,248 @@ public class ClientProvider {
     }
 
     /**
-     * recreate the client builder with a new config (can be called when the configurationmodel or truststore changes)
+     * recreate the client builder with a new config (can be called when the configurationmodel or truststore changes).
+     * If the trust material and proxy settings did not change, the current client and its connections are kept.
+     * Otherwise a client with a new connection pool is built, the connections of the old pool are closed when they are
+     * idle; calls of the old client (and the clients of profiles derived from it) still running after the drain
+     * timeout are cancelled, which closes their connections.
      *
      * @throws NoSuchAlgorithmException if the cryptographic is unknown when building an {@link OkHttpClient}
      * @throws KeyManagementException   if there is an error with any configured key when building an {@link OkHttpClient}
      */
-    public void updateConfig() throws KeyManagementException, NoSuchAlgorithmException {
-        this.client = createClientBuilder(configContainer.getConfigModel(), configContainer.getKeyManager()).build();
+    public synchronized void updateConfig() throws KeyManagementException, NoSuchAlgorithmException {
+        var configModel = configContainer.getConfigModel();
+        var keyManager = configContainer.getKeyManager();
+        var fingerprint = fingerprint(configModel, keyManager);
+        if (fingerprint != null && fingerprint.equals(clientFingerprint)) {
+            LOGGER.debug("Trust material and proxy settings are unchanged, keeping the current client and its connections");
+            return;
+        }
+        var oldPool = connectionPool;
+        var oldCalls = activeCalls;
+        //connections of the old pool were established with the old trust material or proxy, they must not be reused
+        connectionPool = new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+        activeCalls = newCallSet();
+        this.client = createClientBuilder(configModel, keyManager, activeCalls).build();
+        this.clientFingerprint = fingerprint;
+        //clients of the profiles are derived from the old client, they are rebuilt on next use
+        synchronized (profileClients) {
+            profileClients.clear();
+        }
+        drain(oldPool, oldCalls);
+    }
+
+    /**
+     * Close the connections of a replaced client: idle connections immediately, connections of running calls when
+     * they become idle (the old pool is not used for new calls); calls still running after the drain timeout are
+     * cancelled, which closes their connections (also connections of profiles with their own pool)
+     *
+     * @param oldPool the replaced connection pool
+     * @param oldCalls the running calls of the replaced client and its profile clients
+     */
+    private void drain(ConnectionPool oldPool, Set<Call> oldCalls) {
+        LOGGER.debug(String.format("Draining %d connections of the replaced client", oldPool.connectionCount()));
+        oldPool.evictAll();
+        CompletableFuture.delayedExecutor(drainTimeout.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+            List<Call> running;
+            synchronized (oldCalls) {
+                running = new ArrayList<>(oldCalls);
+            }
+            if (!running.isEmpty()) {
+                LOGGER.info(String.format("Cancelling %d calls of the replaced client still running after %s", running.size(), drainTimeout));
+                running.forEach(Call::cancel);
+            }
+            oldPool.evictAll();
+        });
+    }
+
+    /**
+     * @return a set for the running calls of a client, calls that were created but never executed are dropped when
+     * they are garbage collected
+     */
+    private static Set<Call> newCallSet() {
+        return Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    }
+
+    /**
+     * Create an EventListener factory keeping track of the calls of a client, from their creation until the response
+     * body is consumed or the call fails
+     *
+     * @param calls the set the calls are added to
+     * @return the EventListener factory
+     */
+    private static EventListener.Factory trackCalls(Set<Call> calls) {
+        return call -> {
+            calls.add(call);
+            return new EventListener() {
+                @Override
+                public void callEnd(Call call) {
+                    calls.remove(call);
+                }
+
+                @Override
+                public void callFailed(Call call, IOException ioe) {
+                    calls.remove(call);
+                }
+            };
+        };
+    }
+
+    /**
+     * Hash the settings a client is built from: the accepted issuers of the trust manager and the proxy settings
+     *
+     * @param connector the configuration model
+     * @param manager the KeyStoreManager
+     * @return fingerprint of the client settings, null if it cannot be calculated (the client is always rebuilt then)
+     */
+    private static String fingerprint(ConfigurationModel connector, KeyStoreManager manager) {
+        try {
+            var settings = new ByteArrayOutputStream();
+            for (var issuer : manager.getTrustManager().getAcceptedIssuers()) {
+                settings.writeBytes(issuer.getEncoded());
+            }
+            if (connector.getConnectorProxy() != null) {
+                for (var proxy : connector.getConnectorProxy()) {
+                    var proxySettings = new StringBuilder().append("proxy:").append(proxy.getProxyURI()).append('|').append(proxy.getNoProxy());
+                    var auth = proxy.getProxyAuthentication();
+                    if (auth != null) {
+                        proxySettings.append('|').append(auth.getAuthUsername()).append(':').append(auth.getAuthPassword());
+                    }
+                    settings.writeBytes(proxySettings.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return IDSUtils.sha256(settings.toByteArray());
+        } catch (CertificateEncodingException e) {
+            LOGGER.warn("Fingerprint of the client settings cannot be calculated: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get the current occupancy of the dispatcher queue and the shared connection pool
+     * (profiles with their own connection pool share the dispatcher, but not the pool)
+     *
+     * @return a snapshot of the client statistics
+     */
+    public ClientStatistics getStatistics() {
+        var queued = dispatcher.queuedCalls();
+        var running = dispatcher.runningCalls();
+        return new ClientStatistics(queued.size(), running.size(), countByHost(queued), countByHost(running),
+                dispatcher.getMaxRequests(), dispatcher.getMaxRequestsPerHost(),
+                connectionPool.idleConnectionCount(), connectionPool.connectionCount(),
+                fullHandshakes.get(), resumedHandshakes.get(), unknownHandshakes.get());
+    }
+
+    /**
+     * Open connections to the given endpoints (DNS lookup, TCP and TLS handshake), which are kept in the connection
+     * pool for the following requests. A HEAD request is sent to every endpoint, every response (independent of its
+     * code) validates the connection.
+     *
+     * @param endpoints the endpoints to connect to
+     * @return future of the number of endpoints connections were opened to (never completed exceptionally)
+     */
+    public CompletableFuture<Integer> preconnect(Collection<URI> endpoints) {
+        var currentClient = client;
+        var futures = new ArrayList<CompletableFuture<?>>(endpoints.size());
+        var connected = new AtomicInteger();
+        for (var endpoint : endpoints) {
+            var future = new CompletableFuture<Void>();
+            futures.add(future);
+            Request request;
+            try {
+                request = new Request.Builder().url(endpoint.toString()).head().build();
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn(String.format("Cannot preconnect to %s: %s", endpoint, e.getMessage()));
+                future.complete(null);
+                continue;
+            }
+            var start = System.nanoTime();
+            currentClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    LOGGER.warn(String.format("Preconnect to %s failed: %s", endpoint, e.getMessage()));
+                    future.complete(null);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                    LOGGER.debug(String.format("Preconnected to %s in %d ms", endpoint, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                    connected.incrementAndGet();
+                    future.complete(null);
+                }
+            });
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).thenApply(v -> connected.get());
+    }
+
+    /**
+     * Count the given calls by their target host
+     *
+     * @param calls calls of the dispatcher
+     * @return number of calls for every host
+     */
+    private static Map<String, Integer> countByHost(List<Call> calls) {
+        var counts = new HashMap<String, Integer>();
+        for (var call : calls) {
+            counts.merge(call.request().url().host(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Register a named {@link ClientProfile}, which can then be used with {@link #getClient(String)}
+     *
+     * @param profile the profile to register (replaces a registered profile with the same name)
+     */
+    public void registerProfile(ClientProfile profile) {
+        profiles.put(profile.getName(), profile);
+    }
+
+    /**
+     * Getter for the OkHttpClient of a registered profile
+     *
+     * @param profileName name of a profile registered with {@link #registerProfile(ClientProfile)}
+     * @return the OkHttpClient using the current configuration and the settings of the profile
+     * @throws IllegalArgumentException if no profile with the given name is registered
+     */
+    public OkHttpClient getClient(String profileName) {
+        var profile = profiles.get(profileName);
+        if(profile == null){
+            throw new IllegalArgumentException(String.format("No ClientProfile with name %s is registered!", profileName));
+        }
+        return getClient(profile);
+    }
+
+    /**
+     * Getter for the OkHttpClient of a profile. The client is built once per distinct settings (and configuration) and
+     * cached, profiles with equal settings share the client, independent of their name. At most
+     * {@link #MAX_PROFILE_CLIENTS} clients are cached, the least recently used one is dropped.
+     * The client shares the dispatcher (and the connection pool, if the profile does not define its own) with the default client.
+     *
+     * @param profile the settings for the client
+     * @return the OkHttpClient using the current configuration and the settings of the profile
+     */
+    public OkHttpClient getClient(ClientProfile profile) {
+        var settings = new ClientSettings(profile);
+        synchronized (profileClients) {
+            var cached = profileClients.get(settings);
+            if (cached == null) {
+                //a client built from a client replaced meanwhile is dropped by updateConfig, which clears the cache under this lock
+                cached = rebuildClientWithProfile(client, profile);
+                profileClients.put(settings, cached);
+            }
+            return cached;
+        }
+    }
+
+    /**
+     * @return the number of cached clients of profiles
+     */
+    int getProfileClientCount() {
+        synchronized (profileClients) {
+            return profileClients.size();
+        }
     }
 
     /**
@@ -72,24 +381,23 @@ public class ClientProvider {
      * @return an OkHttpClient configured using the current connector configuration and truststore certificates, with the given timeouts set
      */
     public OkHttpClient getClientWithTimeouts(Duration connectTimeout, Duration readTimeout, Duration writeTimeout, Duration callTimeout) {
-        LOGGER.debug("Creating OkHttp client");
-        var withTimeout = rebuildClientWithTimeouts(client, connectTimeout, readTimeout, writeTimeout, callTimeout);
-        LOGGER.info("Ok Http Client Protocols" + withTimeout.protocols());
-        return withTimeout;
+        return getClient(ClientProfile.withTimeouts("timeouts", connectTimeout, readTimeout, writeTimeout, callTimeout));
     }
 
     /**
-     * Set custom timeouts for the OkHttpClient and build one
+     * Set the custom settings of a profile for the OkHttpClient and build one
      *
-     * @param client the client which is rebuilt with
-     * @param connectTimeout max timeout for connecting to target host (null = default values are used)
-     * @param readTimeout max timeout for waiting for the target response (null = default values are used)
-     * @param writeTimeout max timeout for sending the response to the target (null = default values are used)
-     * @param callTimeout max timeout for the whole http request (null = default values are used)
-     * @return an OkHttpClient rebuilt with the given timeouts
+     * @param client the client which is rebuilt with the settings
+     * @param profile the settings for the client
+     * @return an OkHttpClient rebuilt with the settings of the profile
      */
-    private OkHttpClient rebuildClientWithTimeouts(OkHttpClient client, Duration connectTimeout, Duration readTimeout, Duration writeTimeout, Duration callTimeout){
+    private OkHttpClient rebuildClientWithProfile(OkHttpClient client, ClientProfile profile){
+        LOGGER.debug(String.format("Creating OkHttp client for %s", profile));
         var builder = client.newBuilder();
+        var connectTimeout = profile.getConnectTimeout();
+        var readTimeout = profile.getReadTimeout();
+        var writeTimeout = profile.getWriteTimeout();
+        var callTimeout = profile.getCallTimeout();
         if(connectTimeout != null){
             LOGGER.debug(String.format("Setting connect timeout: %s ", connectTimeout.toString()));
             builder.connectTimeout(connectTimeout);
@@ -106,30 +414,86 @@ public class ClientProvider {
             LOGGER.debug(String.format("Setting call timeout: %s ", callTimeout.toString()));
             builder.callTimeout(callTimeout);
         }
+        if(profile.getConnectionPool() != null){
+            builder.connectionPool(profile.getConnectionPool());
+        }
+        if(profile.getProtocols() != null){
+            builder.protocols(profile.getProtocols());
+        }
         LOGGER.debug("Building client!");
         OkHttpClient okHttpClient = builder.build();
-        LOGGER.info("Ok Http Client Protocols" + okHttpClient.protocols());
+        LOGGER.debug("Ok Http Client Protocols" + okHttpClient.protocols());
         return okHttpClient;
     }
 
 
+    /**
+     * The settings of a profile a client is built from (the name of the profile is not part of the settings)
+     */
+    private static final class ClientSettings {
+        private final Duration connectTimeout;
+        private final Duration readTimeout;
+        private final Duration writeTimeout;
+        private final Duration callTimeout;
+        private final ConnectionPool connectionPool;
+        private final List<Protocol> protocols;
+
+        ClientSettings(ClientProfile profile) {
+            this.connectTimeout = profile.getConnectTimeout();
+            this.readTimeout = profile.getReadTimeout();
+            this.writeTimeout = profile.getWriteTimeout();
+            this.callTimeout = profile.getCallTimeout();
+            this.connectionPool = profile.getConnectionPool();
+            this.protocols = profile.getProtocols();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            var that = (ClientSettings) o;
+            return Objects.equals(connectTimeout, that.connectTimeout)
+                    && Objects.equals(readTimeout, that.readTimeout)
+                    && Objects.equals(writeTimeout, that.writeTimeout)
+                    && Objects.equals(callTimeout, that.callTimeout)
+                    && connectionPool == that.connectionPool
+                    && Objects.equals(protocols, that.protocols);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connectTimeout, readTimeout, writeTimeout, callTimeout, System.identityHashCode(connectionPool), protocols);
+        }
+    }
+
     /**
      * Create the client builder, which can be used to build the OkHttpClient directly, or to customize timeouts for the client
      *
      * @param connector the current connector configuration
      * @param manager the current key- and truststore
+     * @param calls the set the running calls of the client are tracked in
      * @return an {@link okhttp3.OkHttpClient.Builder} using the current configuration of the connector
      * @throws NoSuchAlgorithmException if the cryptographic is unknown
      * @throws KeyManagementException   if there is an error with any configured key
      */
-    private static OkHttpClient.Builder createClientBuilder(ConfigurationModel connector, KeyStoreManager manager) throws NoSuchAlgorithmException, KeyManagementException {
+    private OkHttpClient.Builder createClientBuilder(ConfigurationModel connector, KeyStoreManager manager, Set<Call> calls) throws NoSuchAlgorithmException, KeyManagementException {
         LOGGER.debug("Creating OkHttp client");
         OkHttpClient.Builder builder = new OkHttpClient.Builder(); //TODO custom Timeouts?
+        //dispatcher and pool are kept when the configuration is updated
+        builder.dispatcher(dispatcher);
+        builder.connectionPool(connectionPool);
+        //per-request timeouts (e.g. adaptive timeouts of the HttpService)
+        builder.addInterceptor(RequestTimeouts.INTERCEPTOR);
+        //running calls are cancelled when the client is replaced and they outlive the drain timeout
+        builder.eventListenerFactory(trackCalls(calls));
 
         X509TrustManager trustManager = manager.getTrustManager();
         SSLContext sslContext = SSLContext.getInstance("TLS"); //TODO catch here, should never happen
         sslContext.init(null, new TrustManager[]{trustManager}, null);
-        SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
+        //cache sessions for resumption (abbreviated handshakes for peers connected to before)
+        sslContext.getClientSessionContext().setSessionCacheSize(sslSessionCacheSize);
+        sslContext.getClientSessionContext().setSessionTimeout((int) Math.min(Integer.MAX_VALUE, sslSessionTimeout.toSeconds()));
+        SSLSocketFactory sslSocketFactory = new HandshakeCountingSocketFactory(sslContext.getSocketFactory(), fullHandshakes, resumedHandshakes, unknownHandshakes);
         builder.sslSocketFactory(sslSocketFactory, trustManager);
         LOGGER.debug("Created SSLSocketFactory");
 
@@ -153,27 +517,26 @@ public class ClientProvider {
                     LOGGER.debug("No Proxy Authentication credentials are set!");
                 }
                 LOGGER.debug("Create a ProxySelector");
+                //compile the NoProxy list and create the proxy once per configuration, selecting a proxy is only a lookup
+                final var noProxy = NoProxyMatcher.compile(proxyconf.getNoProxy());
+                final var proxyAddress = proxyconf.getProxyURI();
+                LOGGER.info("Proxy Address: " + proxyAddress.getHost() + " ,Port: " + proxyAddress.getPort());
+                final List<Proxy> proxied = List.of(new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(proxyAddress.getHost(), proxyAddress.getPort())));
+                final List<Proxy> direct = List.of(Proxy.NO_PROXY);
                 //create a custom proxySelector (will select the proxy when request goes to host not in NO_PROXY list, and NO_PROXY otherwise)
                 final ProxySelector proxySelector = new ProxySelector() {
                     @Override
                     public List<Proxy> select(URI uri) {
-                        //create a List of size 1 containing the possible Proxy
-                        final List<Proxy> proxyList = new ArrayList<>(1);
-                        if (proxyconf.getNoProxy().contains(uri)) {
-                            LOGGER.debug(String.format("URI %s is in NoProxy List, no proxy is used", uri.toString()));
-                            //if the called uri is in the Exceptions of the Connectors ProxyConfiguration use no proxy
-                            proxyList.add(Proxy.NO_PROXY);
-                        } else {
-                            LOGGER.debug(String.format("URI %s is not in NoProxy List, use configured Proxy", uri.toString()));
-                            //else use proxy with ProxyConfig
-                            //TODO get Proxy from URI
-                            URI proxyAddress = proxyconf.getProxyURI();
-                            String proxyHost = proxyAddress.getHost();
-                            int proxyPort = proxyAddress.getPort();
-                            LOGGER.info("Address: " + proxyHost + " ,Port: " + proxyPort);
-                            proxyList.add(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort)));
+                        if (noProxy.matches(uri)) {
+                            if (LOGGER.isDebugEnabled()) {
+                                LOGGER.debug(String.format("URI %s is in NoProxy List, no proxy is used", uri));
+                            }
+                            return direct;
+                        }
+                        if (LOGGER.isDebugEnabled()) {
+                            LOGGER.debug(String.format("URI %s is not in NoProxy List, use configured Proxy", uri));
                         }
-                        return proxyList;
+                        return proxied;
                     }
 
                     @Override
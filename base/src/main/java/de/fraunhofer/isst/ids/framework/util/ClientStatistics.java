@@ -0,0 +1,147 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the dispatcher queue, connection pool occupancy and TLS handshakes of the clients created by the {@link ClientProvider},
+ * can be used to size the dispatcher limits and the connection pool (see {@link de.fraunhofer.isst.ids.framework.configuration.ClientProperties})
+ */
+public final class ClientStatistics {
+
+    private final int queuedCalls;
+    private final int runningCalls;
+    private final Map<String, Integer> queuedCallsPerHost;
+    private final Map<String, Integer> runningCallsPerHost;
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final int idleConnections;
+    private final int connections;
+    private final long fullHandshakes;
+    private final long resumedHandshakes;
+    private final long unknownHandshakes;
+
+    /**
+     * Create a snapshot of the client statistics
+     *
+     * @param queuedCalls number of async calls waiting for execution
+     * @param runningCalls number of running calls (sync and async)
+     * @param queuedCallsPerHost number of waiting async calls by host
+     * @param runningCallsPerHost number of running calls by host
+     * @param maxRequests the configured maximum of concurrent async requests
+     * @param maxRequestsPerHost the configured maximum of concurrent async requests per host
+     * @param idleConnections number of idle connections in the pool
+     * @param connections number of open connections in the pool
+     * @param fullHandshakes number of full TLS 1.2 (or older) handshakes
+     * @param resumedHandshakes number of TLS 1.2 (or older) session resumptions
+     * @param unknownHandshakes number of TLS 1.3 handshakes (full or resumed)
+     */
+    ClientStatistics(int queuedCalls, int runningCalls, Map<String, Integer> queuedCallsPerHost, Map<String, Integer> runningCallsPerHost,
+                     int maxRequests, int maxRequestsPerHost, int idleConnections, int connections,
+                     long fullHandshakes, long resumedHandshakes, long unknownHandshakes) {
+        this.queuedCalls = queuedCalls;
+        this.runningCalls = runningCalls;
+        this.queuedCallsPerHost = Map.copyOf(queuedCallsPerHost);
+        this.runningCallsPerHost = Map.copyOf(runningCallsPerHost);
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.idleConnections = idleConnections;
+        this.connections = connections;
+        this.fullHandshakes = fullHandshakes;
+        this.resumedHandshakes = resumedHandshakes;
+        this.unknownHandshakes = unknownHandshakes;
+    }
+
+    /**
+     * @return number of async calls waiting for execution (because maxRequests or maxRequestsPerHost is reached)
+     */
+    public int getQueuedCalls() {
+        return queuedCalls;
+    }
+
+    /**
+     * @return number of running calls (sync and async)
+     */
+    public int getRunningCalls() {
+        return runningCalls;
+    }
+
+    /**
+     * @return number of waiting async calls by target host
+     */
+    public Map<String, Integer> getQueuedCallsPerHost() {
+        return queuedCallsPerHost;
+    }
+
+    /**
+     * @return number of running calls by target host
+     */
+    public Map<String, Integer> getRunningCallsPerHost() {
+        return runningCallsPerHost;
+    }
+
+    /**
+     * @return the configured maximum of concurrent async requests
+     */
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * @return the configured maximum of concurrent async requests per host
+     */
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    /**
+     * @return number of idle connections in the connection pool
+     */
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    /**
+     * @return number of open (idle and active) connections in the connection pool
+     */
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * @return number of completed TLS handshakes (full, resumed and unknown) since the ClientProvider
+     * was created, i.e. the number of TLS connections opened
+     */
+    public long getHandshakes() {
+        return fullHandshakes + resumedHandshakes + unknownHandshakes;
+    }
+
+    /**
+     * @return number of full TLS 1.2 (or older) handshakes since the ClientProvider was created
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes;
+    }
+
+    /**
+     * @return number of TLS 1.2 (or older) session resumptions since the ClientProvider was created,
+     * i.e. handshakes which reused a session of the session cache
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes;
+    }
+
+    /**
+     * @return number of TLS 1.3 handshakes since the ClientProvider was created. JSSE does not expose whether a
+     * TLS 1.3 handshake resumed a session (resumed sessions are new session objects), so they are neither counted
+     * as full nor as resumed handshakes
+     */
+    public long getUnknownHandshakes() {
+        return unknownHandshakes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ClientStatistics{queuedCalls=%d, runningCalls=%d, maxRequests=%d, maxRequestsPerHost=%d, idleConnections=%d, connections=%d, fullHandshakes=%d, resumedHandshakes=%d, unknownHandshakes=%d, queuedCallsPerHost=%s}",
+                queuedCalls, runningCalls, maxRequests, maxRequestsPerHost, idleConnections, connections, fullHandshakes, resumedHandshakes, unknownHandshakes, queuedCallsPerHost);
+    }
+}
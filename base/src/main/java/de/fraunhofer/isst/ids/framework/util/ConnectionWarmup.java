@@ -0,0 +1,80 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import de.fraunhofer.isst.ids.framework.configuration.ClientProperties;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Opens connections to the configured warm-up endpoints and the DAPS when the application is ready and after
+ * configuration updates which replaced the client (and its connections), so the first messages to these endpoints do not pay for DNS lookup, TCP and TLS handshake.
+ */
+@Component
+public class ConnectionWarmup {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionWarmup.class);
+
+    private final ClientProvider clientProvider;
+    private final Set<URI> endpoints = new LinkedHashSet<>();
+    private volatile OkHttpClient warmedClient;
+
+    /**
+     * @param clientProvider the {@link ClientProvider} whose connection pool is warmed up
+     * @param clientProperties the {@link ClientProperties} with the warm-up endpoints
+     * @param configurationContainer the {@link ConfigurationContainer}, connections are opened again after configuration updates
+     * @param dapsTokenUrl the token url of the DAPS
+     * @param dapsKeyUrl the key url of the DAPS
+     */
+    public ConnectionWarmup(ClientProvider clientProvider, ClientProperties clientProperties, ConfigurationContainer configurationContainer,
+                            @Value("${daps.token.url:}") String dapsTokenUrl, @Value("${daps.key.url:}") String dapsKeyUrl) {
+        this.clientProvider = clientProvider;
+        this.endpoints.addAll(clientProperties.getWarmupEndpoints());
+        addUrl(dapsTokenUrl);
+        addUrl(dapsKeyUrl);
+        configurationContainer.addUpdateListener((oldModel, newModel) -> {
+            //the connections of an unchanged client are still open
+            if (clientProvider.getClient() != warmedClient) {
+                warmup();
+            }
+        });
+    }
+
+    /**
+     * Open connections to all warm-up endpoints
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmup() {
+        if (endpoints.isEmpty()) {
+            return;
+        }
+        warmedClient = clientProvider.getClient();
+        LOGGER.debug(String.format("Opening connections to %d endpoints", endpoints.size()));
+        clientProvider.preconnect(endpoints).thenAccept(connected ->
+                LOGGER.info(String.format("Opened connections to %d of %d endpoints", connected, endpoints.size())));
+    }
+
+    /**
+     * Add a configured url to the endpoints, invalid urls are ignored
+     *
+     * @param url the url
+     */
+    private void addUrl(String url) {
+        if (url == null || url.isBlank()) {
+            return;
+        }
+        try {
+            endpoints.add(URI.create(url));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn(String.format("Invalid warm-up endpoint %s is ignored", url));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SSLSocketFactory counting the completed TLS handshakes of its sockets, split into full handshakes and session
+ * resumptions. Up to TLS 1.2, a resumed session is the cached session object, so a handshake is counted as resumption
+ * if its session was created before the socket. With TLS 1.3, resumed sessions are new session objects (with a new
+ * creation time and session id) and the JSSE API exposes no resumption flag, so these handshakes are counted as unknown.
+ */
+class HandshakeCountingSocketFactory extends SSLSocketFactory {
+
+    /**
+     * Kind of a completed handshake
+     */
+    enum Kind {
+        FULL, RESUMED, UNKNOWN
+    }
+
+    private static final String TLS_1_3 = "TLSv1.3";
+
+    private final SSLSocketFactory delegate;
+    private final AtomicLong fullHandshakes;
+    private final AtomicLong resumedHandshakes;
+    private final AtomicLong unknownHandshakes;
+
+    /**
+     * @param delegate the factory creating the sockets
+     * @param fullHandshakes counter of full TLS 1.2 (or older) handshakes
+     * @param resumedHandshakes counter of TLS 1.2 (or older) session resumptions
+     * @param unknownHandshakes counter of TLS 1.3 handshakes (full or resumed)
+     */
+    HandshakeCountingSocketFactory(SSLSocketFactory delegate, AtomicLong fullHandshakes, AtomicLong resumedHandshakes, AtomicLong unknownHandshakes) {
+        this.delegate = delegate;
+        this.fullHandshakes = fullHandshakes;
+        this.resumedHandshakes = resumedHandshakes;
+        this.unknownHandshakes = unknownHandshakes;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        return track(delegate.createSocket(socket, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return track(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return track(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return track(delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return track(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return track(delegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    /**
+     * Count the handshake of the socket when it is completed
+     *
+     * @param socket a socket created by the delegate
+     * @return the same socket
+     */
+    private Socket track(Socket socket) {
+        if (socket instanceof SSLSocket) {
+            var created = System.currentTimeMillis();
+            ((SSLSocket) socket).addHandshakeCompletedListener((HandshakeCompletedEvent event) -> {
+                switch (classify(event.getSession(), created)) {
+                    case RESUMED:
+                        resumedHandshakes.incrementAndGet();
+                        break;
+                    case UNKNOWN:
+                        unknownHandshakes.incrementAndGet();
+                        break;
+                    default:
+                        fullHandshakes.incrementAndGet();
+                }
+            });
+        }
+        return socket;
+    }
+
+    /**
+     * @param session the session of a completed handshake
+     * @param socketCreated creation time of the socket (before the handshake started)
+     * @return RESUMED if the session was created before the socket, FULL if not, UNKNOWN for TLS 1.3
+     */
+    static Kind classify(SSLSession session, long socketCreated) {
+        if (TLS_1_3.equals(session.getProtocol())) {
+            return Kind.UNKNOWN;
+        }
+        return session.getCreationTime() < socketCreated ? Kind.RESUMED : Kind.FULL;
+    }
+}
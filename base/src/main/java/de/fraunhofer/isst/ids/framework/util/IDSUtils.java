@@ -35,6 +35,21 @@ public class IDSUtils {
         return encoder64.encodeToString(digest.digest());
     }
 
+    /**
+     * Hash bytes with SHA-256
+     *
+     * @param data bytes to hash
+     * @return Base64 encoded SHA-256 hash of the bytes
+     */
+    public static String sha256(byte[] data) {
+        try {
+            return encoder64.encodeToString(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            //every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Generate a signature over a given String value
      *
@@ -0,0 +1,18 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import org.apache.commons.fileupload.FileUploadException;
+
+/**
+ * Exception which is thrown, when a multipart body cannot be parsed by the {@link MultipartParser}
+ * (extends FileUploadException, so it is thrown where the commons-fileupload based parsing was used before)
+ */
+public class MultipartParseException extends FileUploadException {
+    /**
+     * For Throwing a MultipartParseException with a custom error message
+     *
+     * @param message the error message to be included with the exception
+     */
+    public MultipartParseException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,290 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Byte-level parser for multipart bodies (e.g. IDS multipart messages). Delimiters are found with a
+ * Boyer-Moore-Horspool search directly on the bytes, the content of the parsed parts are slices of the given body
+ * (no copies, no temp files), and the content of a part is only decoded on request, using the charset of the part.
+ */
+public final class MultipartParser {
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte DASH = '-';
+
+    private MultipartParser() {
+    }
+
+    /**
+     * Parse a multipart body, the boundary is read from the first delimiter line of the body
+     *
+     * @param body the multipart body
+     * @return the parts of the body, in the order they appear in the body
+     * @throws MultipartParseException if the body is not a valid multipart body
+     */
+    public static List<MultipartPart> parse(byte[] body) throws MultipartParseException {
+        return parse(ByteBuffer.wrap(body));
+    }
+
+    /**
+     * Parse a multipart body, the boundary is read from the first delimiter line of the body
+     *
+     * @param body the multipart body (from its position to its limit, the position of the buffer is not changed)
+     * @return the parts of the body, in the order they appear in the body
+     * @throws MultipartParseException if the body is not a valid multipart body
+     */
+    public static List<MultipartPart> parse(ByteBuffer body) throws MultipartParseException {
+        return parse(body, sniffBoundary(body));
+    }
+
+    /**
+     * Parse a multipart body with the given boundary (e.g. from the Content-Type header of the response)
+     *
+     * @param body the multipart body (from its position to its limit, the position of the buffer is not changed)
+     * @param boundary the boundary of the multipart body
+     * @return the parts of the body, in the order they appear in the body
+     * @throws MultipartParseException if the body is not a valid multipart body
+     */
+    public static List<MultipartPart> parse(ByteBuffer body, String boundary) throws MultipartParseException {
+        var delimiter = BytePattern.of("--" + boundary);
+        var start = body.position();
+        var end = body.limit();
+        var parts = new ArrayList<MultipartPart>();
+
+        //skip the preamble
+        var index = findDelimiter(body, delimiter, start, start, end);
+        if (index < 0) {
+            throw new MultipartParseException(String.format("Multipart body does not contain the boundary %s", boundary));
+        }
+        while (true) {
+            var afterDelimiter = index + delimiter.length();
+            //close delimiter: "--boundary--"
+            if (afterDelimiter + 1 < end && body.get(afterDelimiter) == DASH && body.get(afterDelimiter + 1) == DASH) {
+                return parts;
+            }
+            var partStart = lineEnd(body, afterDelimiter, end);
+            if (partStart < 0) {
+                throw new MultipartParseException("Multipart body ended unexpectedly after a delimiter");
+            }
+            index = findDelimiter(body, delimiter, start, partStart, end);
+            if (index < 0) {
+                throw new MultipartParseException("Multipart body is not terminated by a close delimiter");
+            }
+            parts.add(parsePart(body, partStart, contentEnd(body, partStart, index)));
+        }
+    }
+
+    /**
+     * Get the boundary of a multipart body from its first delimiter line ("--boundary")
+     *
+     * @param body the multipart body (the position of the buffer is not changed)
+     * @return the boundary of the body
+     * @throws MultipartParseException if the body does not start with a delimiter line
+     */
+    public static String sniffBoundary(ByteBuffer body) throws MultipartParseException {
+        var i = body.position();
+        var end = body.limit();
+        //skip leading whitespace and line breaks
+        while (i < end && Character.isWhitespace(body.get(i))) {
+            i++;
+        }
+        if (i + 2 >= end || body.get(i) != DASH || body.get(i + 1) != DASH) {
+            throw new MultipartParseException("Multipart body does not start with a boundary");
+        }
+        var boundaryStart = i + 2;
+        var boundaryEnd = boundaryStart;
+        while (boundaryEnd < end && body.get(boundaryEnd) != CR && body.get(boundaryEnd) != LF) {
+            boundaryEnd++;
+        }
+        var boundary = decode(body, boundaryStart, boundaryEnd).trim();
+        if (boundary.isEmpty()) {
+            throw new MultipartParseException("Boundary of multipart body is empty");
+        }
+        return boundary;
+    }
+
+    /**
+     * Parse the parameters of a header value like Content-Disposition or Content-Type
+     * (e.g. form-data; name="header" or application/json; charset=UTF-8)
+     *
+     * @param headerValue the value of the header
+     * @return the parameters of the header (lowercase names), without quotes
+     */
+    public static Map<String, String> parseParameters(String headerValue) {
+        var parameters = new HashMap<String, String>();
+        var i = headerValue.indexOf(';');
+        var length = headerValue.length();
+        while (i >= 0 && i < length) {
+            //skip ';' and whitespace
+            i++;
+            while (i < length && Character.isWhitespace(headerValue.charAt(i))) {
+                i++;
+            }
+            var nameStart = i;
+            while (i < length && headerValue.charAt(i) != '=' && headerValue.charAt(i) != ';') {
+                i++;
+            }
+            var name = headerValue.substring(nameStart, i).trim().toLowerCase(Locale.ROOT);
+            if (i >= length || headerValue.charAt(i) == ';') {
+                continue;
+            }
+            //skip '='
+            i++;
+            String value;
+            if (i < length && headerValue.charAt(i) == '"') {
+                var quoted = new StringBuilder();
+                i++;
+                while (i < length && headerValue.charAt(i) != '"') {
+                    if (headerValue.charAt(i) == '\\' && i + 1 < length) {
+                        i++;
+                    }
+                    quoted.append(headerValue.charAt(i));
+                    i++;
+                }
+                value = quoted.toString();
+                i = headerValue.indexOf(';', i);
+            } else {
+                var valueEnd = headerValue.indexOf(';', i);
+                value = headerValue.substring(i, valueEnd < 0 ? length : valueEnd).trim();
+                i = valueEnd;
+            }
+            if (!name.isEmpty()) {
+                parameters.put(name, value);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Find the next delimiter, which starts a line (or the body)
+     *
+     * @param body the multipart body
+     * @param delimiter the delimiter ("--boundary")
+     * @param bodyStart index of the start of the body
+     * @param from index to start the search from
+     * @param end index of the end of the body
+     * @return index of the delimiter, -1 if there is no further delimiter
+     */
+    private static int findDelimiter(ByteBuffer body, BytePattern delimiter, int bodyStart, int from, int end) {
+        var i = from;
+        while (true) {
+            var index = delimiter.indexIn(body, i, end);
+            if (index < 0 || index == bodyStart || body.get(index - 1) == LF) {
+                return index;
+            }
+            i = index + 1;
+        }
+    }
+
+    /**
+     * Get the end of the content of a part, the line break before the delimiter belongs to the delimiter
+     *
+     * @param body the multipart body
+     * @param partStart index of the start of the part
+     * @param delimiterIndex index of the delimiter following the part
+     * @return index of the end of the content of the part
+     */
+    private static int contentEnd(ByteBuffer body, int partStart, int delimiterIndex) {
+        var contentEnd = delimiterIndex - 1;
+        if (contentEnd > partStart && body.get(contentEnd - 1) == CR) {
+            contentEnd--;
+        }
+        return Math.max(contentEnd, partStart);
+    }
+
+    /**
+     * Get the index after the next line break
+     *
+     * @param body the multipart body
+     * @param from index to start the search from
+     * @param end index of the end of the body
+     * @return index after the next LF, -1 if there is no further line break
+     */
+    private static int lineEnd(ByteBuffer body, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (body.get(i) == LF) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse the headers of a part and slice its content
+     *
+     * @param body the multipart body
+     * @param start index of the start of the part (its header section)
+     * @param end index of the end of the content of the part
+     * @return the parsed part
+     * @throws MultipartParseException if the header section of the part is not terminated by an empty line
+     */
+    private static MultipartPart parsePart(ByteBuffer body, int start, int end) throws MultipartParseException {
+        var headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        var i = start;
+        while (true) {
+            var next = lineEnd(body, i, end);
+            if (next < 0) {
+                //the part only consists of headers without terminating empty line
+                if (i == end) {
+                    break;
+                }
+                throw new MultipartParseException("Header section of a multipart part is not terminated");
+            }
+            var lineEndIndex = next - 1;
+            if (lineEndIndex > i && body.get(lineEndIndex - 1) == CR) {
+                lineEndIndex--;
+            }
+            if (lineEndIndex == i) {
+                //empty line: content starts
+                i = next;
+                break;
+            }
+            var line = decode(body, i, lineEndIndex);
+            var colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+            i = next;
+        }
+
+        String name = null;
+        String filename = null;
+        var disposition = headers.get("Content-Disposition");
+        if (disposition != null) {
+            var parameters = parseParameters(disposition);
+            name = parameters.get("name");
+            filename = parameters.get("filename");
+        }
+
+        var content = body.duplicate();
+        content.limit(end);
+        content.position(Math.min(i, end));
+        return new MultipartPart(headers, name, filename, content.slice());
+    }
+
+    /**
+     * Decode a range of the body (used for boundary and header lines)
+     *
+     * @param body the multipart body
+     * @param from first index of the range (inclusive)
+     * @param to last index of the range (exclusive)
+     * @return the decoded range
+     */
+    private static String decode(ByteBuffer body, int from, int to) {
+        if (body.hasArray()) {
+            return new String(body.array(), body.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+        }
+        var range = body.duplicate();
+        range.limit(to);
+        range.position(from);
+        return StandardCharsets.UTF_8.decode(range).toString();
+    }
+}
@@ -0,0 +1,154 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A part of a multipart body parsed by the {@link MultipartParser}. The content of the part is a read-only
+ * slice of the parsed body, it is not copied until it is decoded (see {@link #getString()}).
+ */
+public final class MultipartPart {
+
+    private final Map<String, String> headers;
+    private final String name;
+    private final String filename;
+    private final ByteBuffer content;
+
+    /**
+     * @param headers the headers of the part (case insensitive names)
+     * @param name the name of the part from the Content-Disposition header
+     * @param filename the filename of the part from the Content-Disposition header (null for form fields)
+     * @param content slice of the parsed body with the content of the part (only exposed as read-only view)
+     */
+    MultipartPart(Map<String, String> headers, String name, String filename, ByteBuffer content) {
+        this.headers = Collections.unmodifiableMap(headers);
+        this.name = name;
+        this.filename = filename;
+        this.content = content;
+    }
+
+    /**
+     * @return the name of the part (from the Content-Disposition header)
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the filename of the part (from the Content-Disposition header), null if the part is a form field
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return true if the part has no filename
+     */
+    public boolean isFormField() {
+        return filename == null;
+    }
+
+    /**
+     * @return the Content-Type header of the part, null if not set
+     */
+    public String getContentType() {
+        return headers.get("Content-Type");
+    }
+
+    /**
+     * @param headerName name of a header (case insensitive)
+     * @return the value of the header, null if the part does not have the header
+     */
+    public String getHeader(String headerName) {
+        return headers.get(headerName);
+    }
+
+    /**
+     * @return all headers of the part
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Get the charset of the part, given by the charset parameter of its Content-Type
+     *
+     * @return the charset of the part, UTF-8 if no (supported) charset is set
+     */
+    public Charset getCharset() {
+        var contentType = getContentType();
+        if (contentType != null) {
+            var charset = MultipartParser.parseParameters(contentType).get("charset");
+            if (charset != null) {
+                try {
+                    return Charset.forName(charset);
+                } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                    return StandardCharsets.UTF_8;
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * @return a new read-only view on the content of the part (not copied)
+     */
+    public ByteBuffer getContent() {
+        return content.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the number of bytes of the content
+     */
+    public int getLength() {
+        return content.remaining();
+    }
+
+    /**
+     * @return the content of the part, decoded with the charset of the part (see {@link #getCharset()})
+     */
+    public String getString() {
+        return getString(getCharset());
+    }
+
+    /**
+     * @param charset the charset used to decode the content
+     * @return the content of the part, decoded with the given charset
+     */
+    public String getString(Charset charset) {
+        if (content.hasArray()) {
+            return new String(content.array(), content.arrayOffset() + content.position(), content.remaining(), charset);
+        }
+        return charset.decode(content.duplicate()).toString();
+    }
+
+    /**
+     * @return a copy of the content of the part
+     */
+    public byte[] toByteArray() {
+        var bytes = new byte[content.remaining()];
+        content.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Write the content of the part to the given stream
+     *
+     * @param out the stream the content is written to
+     * @throws IOException if the content cannot be written to the stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (content.hasArray()) {
+            out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+        } else {
+            out.write(toByteArray());
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Streaming reader for multipart bodies (e.g. the body of a large IDS response). In contrast to the {@link MultipartParser},
+ * the body is not held in memory: parts are read one after another, and the content of a part is read from the
+ * underlying source, only the part of the stream that could contain the next delimiter is buffered.
+ * Delimiters have to be preceded by CRLF (as required by RFC 2046).
+ */
+public class MultipartStreamReader implements Closeable {
+
+    /**
+     * Max length of a header line of a part
+     */
+    private static final long MAX_HEADER_LINE_LENGTH = 8192;
+    /**
+     * Max number of header lines of a part
+     */
+    private static final int MAX_HEADER_LINES = 64;
+
+    private final BufferedSource source;
+    private final ByteString dashDashBoundary;
+    private final ByteString crlfDashDashBoundary;
+    private PartSource currentPart;
+    private boolean started;
+    private boolean noMoreParts;
+    private boolean closed;
+
+    /**
+     * Create a reader for the given multipart body
+     *
+     * @param source the multipart body
+     * @param boundary the boundary of the body (e.g. from the Content-Type of the response)
+     */
+    public MultipartStreamReader(BufferedSource source, String boundary) {
+        this.source = source;
+        this.dashDashBoundary = ByteString.encodeUtf8("--" + boundary);
+        this.crlfDashDashBoundary = ByteString.encodeUtf8("\r\n--" + boundary);
+    }
+
+    /**
+     * Get the boundary of a multipart body from its first delimiter line ("--boundary"), without consuming the body
+     *
+     * @param source the multipart body
+     * @return the boundary of the body
+     * @throws IOException if the body cannot be read or does not start with a delimiter line
+     */
+    public static String sniffBoundary(BufferedSource source) throws IOException {
+        var line = source.peek().readUtf8LineStrict(MAX_HEADER_LINE_LENGTH).trim();
+        if (!line.startsWith("--") || line.length() == 2) {
+            throw new IOException("Multipart body does not start with a boundary");
+        }
+        return line.substring(2);
+    }
+
+    /**
+     * Read the headers of the next part, the content of the previous part is skipped if it was not read completely.
+     *
+     * @return the next part, null if there are no more parts
+     * @throws IOException if the body cannot be read or is not a valid multipart body
+     */
+    public Part nextPart() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("MultipartStreamReader is closed");
+        }
+        if (noMoreParts) {
+            return null;
+        }
+        if (!started && source.rangeEquals(0, dashDashBoundary)) {
+            //body starts with the first delimiter
+            source.skip(dashDashBoundary.size());
+        } else {
+            //skip the preamble or the rest of the previous part
+            var skipped = currentPart != null ? currentPart : new PartSource();
+            long remaining;
+            while ((remaining = skipped.bytesRemaining(8192)) > 0) {
+                source.skip(remaining);
+            }
+            source.skip(crlfDashDashBoundary.size());
+            if (currentPart != null) {
+                currentPart.detached = true;
+            }
+        }
+        started = true;
+
+        //close delimiter: "--boundary--"
+        if (source.rangeEquals(0, ByteString.encodeUtf8("--"))) {
+            noMoreParts = true;
+            currentPart = null;
+            return null;
+        }
+        //rest of the delimiter line (transport padding)
+        source.readUtf8LineStrict(MAX_HEADER_LINE_LENGTH);
+
+        var headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        var lines = 0;
+        while (true) {
+            var line = source.readUtf8LineStrict(MAX_HEADER_LINE_LENGTH);
+            if (line.isEmpty()) {
+                break;
+            }
+            if (++lines > MAX_HEADER_LINES) {
+                throw new IOException("Too many header lines in multipart part");
+            }
+            var colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+        }
+        currentPart = new PartSource();
+        return new Part(headers, Okio.buffer(currentPart));
+    }
+
+    /**
+     * Close the reader and the underlying source
+     *
+     * @throws IOException if the source cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        currentPart = null;
+        source.close();
+    }
+
+    /**
+     * Source of the content of the current part, reads from the body until the next delimiter
+     */
+    private final class PartSource implements Source {
+
+        private boolean detached;
+
+        /**
+         * Get the number of bytes that can be read without reading a delimiter, only the current window of the
+         * body (at least the length of the delimiter) is searched for the delimiter
+         *
+         * @param maxResult max number of bytes needed
+         * @return number of bytes of the part content that are available, 0 if the next delimiter is reached
+         * @throws IOException if the body ends without delimiter
+         */
+        long bytesRemaining(long maxResult) throws IOException {
+            if (!source.request(crlfDashDashBoundary.size())) {
+                throw new EOFException("Multipart body ended without close delimiter");
+            }
+            var buffer = source.getBuffer();
+            var delimiterIndex = buffer.indexOf(crlfDashDashBoundary);
+            if (delimiterIndex == -1) {
+                return Math.min(maxResult, buffer.size() - crlfDashDashBoundary.size() + 1);
+            }
+            return Math.min(maxResult, delimiterIndex);
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            if (detached || closed) {
+                throw new IllegalStateException("Part was already skipped");
+            }
+            var limit = bytesRemaining(byteCount);
+            if (limit == 0) {
+                return -1;
+            }
+            return source.read(sink, limit);
+        }
+
+        @Override
+        public Timeout timeout() {
+            return source.timeout();
+        }
+
+        @Override
+        public void close() {
+            //the rest of the part is skipped with the next call of nextPart
+        }
+    }
+
+    /**
+     * A part of a streamed multipart body: the headers of the part and its content, which has to be read
+     * before the next part is requested from the {@link MultipartStreamReader}
+     */
+    public static final class Part {
+
+        private final Map<String, String> headers;
+        private final BufferedSource body;
+        private final String name;
+        private final String filename;
+
+        /**
+         * @param headers the headers of the part
+         * @param body the content of the part
+         */
+        Part(Map<String, String> headers, BufferedSource body) {
+            this.headers = Collections.unmodifiableMap(headers);
+            this.body = body;
+            var disposition = headers.get("Content-Disposition");
+            var parameters = disposition == null ? Map.<String, String>of() : MultipartParser.parseParameters(disposition);
+            this.name = parameters.get("name");
+            this.filename = parameters.get("filename");
+        }
+
+        /**
+         * @return the name of the part (from the Content-Disposition header)
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the filename of the part (from the Content-Disposition header), null if the part is a form field
+         */
+        public String getFilename() {
+            return filename;
+        }
+
+        /**
+         * @return all headers of the part
+         */
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * Get the charset of the part, given by the charset parameter of its Content-Type
+         *
+         * @return the charset of the part, UTF-8 if no (supported) charset is set
+         */
+        public Charset getCharset() {
+            var contentType = headers.get("Content-Type");
+            var charset = contentType == null ? null : MultipartParser.parseParameters(contentType).get("charset");
+            if (charset != null) {
+                try {
+                    return Charset.forName(charset);
+                } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                    return StandardCharsets.UTF_8;
+                }
+            }
+            return StandardCharsets.UTF_8;
+        }
+
+        /**
+         * @return the content of the part, valid until the next part is requested
+         */
+        public BufferedSource getBody() {
+            return body;
+        }
+
+        /**
+         * Read the whole content of the part into memory, without a size limit (only for parts of trusted bodies,
+         * see {@link #readString(long)})
+         *
+         * @return the content of the part, decoded with the charset of the part
+         * @throws IOException if the content cannot be read
+         */
+        public String readString() throws IOException {
+            return body.readString(getCharset());
+        }
+
+        /**
+         * Read the whole content of the part into memory, if it is not larger than the given limit (for small parts
+         * like the header of a message); at most maxBytes + 1 bytes are buffered
+         *
+         * @param maxBytes the max size of the content in bytes
+         * @return the content of the part, decoded with the charset of the part
+         * @throws IOException if the content cannot be read or is larger than maxBytes
+         */
+        public String readString(long maxBytes) throws IOException {
+            if (body.request(maxBytes + 1)) {
+                throw new IOException(String.format("Part %s is larger than %d bytes", name, maxBytes));
+            }
+            return body.readString(getCharset());
+        }
+    }
+}
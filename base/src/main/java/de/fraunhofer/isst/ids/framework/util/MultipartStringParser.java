@@ -1,11 +1,9 @@
 package de.fraunhofer.isst.ids.framework.util;
 
-import org.apache.commons.fileupload.*;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.apache.commons.fileupload.FileUploadException;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,74 +11,57 @@ import java.util.Map;
 /**
  * Utility Class for parsing Multipart Maps from String responses
  */
-public class MultipartStringParser implements UploadContext {
+public class MultipartStringParser {
 
-    private String postBody;
-    private String boundary;
-    private Map<String, String> parameters = new HashMap<String, String>();
+    private MultipartStringParser() {
+    }
 
     /**
      * Convert a String from a multipart response to a Map with Partname/MessagePart
+     * (only form fields are contained, parts with a filename are skipped)
      *
      * @param postBody a multipart response body as string
      * @return a Map from partname on content
      * @throws FileUploadException if there are problems reading/parsing the postBody.
      */
     public static Map<String, String> stringToMultipart(String postBody) throws FileUploadException {
-        return new MultipartStringParser(postBody).getParameters();
-    }
-
-    /**
-     * Constructor for the MultipartStringParser used internally to parse a multipart response to a Map<Partname, MessagePart>
-     *
-     * @param postBody a multipart response body as string
-     * @throws FileUploadException if there are problems reading/parsing the postBody.
-     */
-    private MultipartStringParser(String postBody) throws FileUploadException {
-        this.postBody = postBody;
-        // Sniff out the multipart boundary.
-        this.boundary = postBody.substring(2, postBody.indexOf('\n')).trim();
-        // Parse out the parameters.
-        final FileItemFactory factory = new DiskFileItemFactory();
-        FileUpload upload = new FileUpload(factory);
-        List<FileItem> fileItems = upload.parseRequest(this);
-        for (FileItem fileItem: fileItems) {
-            if (fileItem.isFormField()){
+        var parameters = new HashMap<String, String>();
+        //the body was already decoded to a String, encode it lossless as UTF-8 and decode the parts the same way
+        for (var part : MultipartParser.parse(postBody.getBytes(StandardCharsets.UTF_8))) {
+            if (part.isFormField()) {
                 //put the parameters into the map as "name, content"
-                parameters.put(fileItem.getFieldName(), fileItem.getString());
+                parameters.put(part.getName(), part.getString(StandardCharsets.UTF_8));
             } // else it is an uploaded file
         }
+        return parameters;
     }
 
     /**
-     * Getter for the parsed Map
+     * Convert the raw bytes of a multipart response to a Map with Partname/MessagePart, without decoding the whole
+     * body to a String first (only form fields are contained, each decoded with the charset of its part)
      *
-     * @return the parsed multipart Map
+     * @param body the multipart response body
+     * @param boundary the boundary from the Content-Type of the response, null to read it from the body
+     * @return a Map from partname on content
+     * @throws FileUploadException if there are problems parsing the body.
      */
-    private Map<String,String> getParameters() {
-        return parameters;
+    public static Map<String, String> bytesToMultipart(byte[] body, String boundary) throws FileUploadException {
+        var buffer = ByteBuffer.wrap(body);
+        return toMap(boundary == null ? MultipartParser.parse(buffer) : MultipartParser.parse(buffer, boundary));
     }
 
-    //these methods must be implemented because of the UploadContext interface
-    @Override
-    public long contentLength() {
-        return postBody.length();
-    }
-
-    @Override
-    public String getCharacterEncoding() {
-        return "Cp1252";
-    }
-
-    @Override
-    public String getContentType() {
-        return "multipart/form-data, boundary=" + this.boundary;
+    /**
+     * @param parts parsed multipart parts
+     * @return a Map from partname on content of the form fields
+     */
+    private static Map<String, String> toMap(List<MultipartPart> parts) {
+        var parameters = new HashMap<String, String>();
+        for (var part : parts) {
+            if (part.isFormField()) {
+                parameters.put(part.getName(), part.getString());
+            }
+        }
+        return parameters;
     }
 
-    @Override
-    public int getContentLength() { return -1; }
-
-    @Override
-    public InputStream getInputStream() throws IOException { return new ByteArrayInputStream(postBody.getBytes()); }
-
 }
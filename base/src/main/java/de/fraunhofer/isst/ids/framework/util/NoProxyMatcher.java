@@ -0,0 +1,302 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Matcher for the NoProxy entries of a proxy configuration, compiled once per configuration. Supported entries:
+ * <ul>
+ *     <li>URIs or hosts (e.g. https://broker.example.com:8080 or broker.example.com), matching the host exactly</li>
+ *     <li>domain suffixes (*.example.com or .example.com), matching all subdomains of the domain</li>
+ *     <li>CIDR ranges (e.g. 10.0.0.0/8 or fd00::/8), matching IP literals in the range</li>
+ *     <li>*, matching every host</li>
+ * </ul>
+ * Hosts are never resolved, a lookup is a hash lookup plus a walk over the labels of the host.
+ */
+public final class NoProxyMatcher {
+
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+    private static final NoProxyMatcher EMPTY = new NoProxyMatcher(Set.of(), new SuffixNode(), List.of(), false);
+
+    private final Set<String> exactHosts;
+    private final SuffixNode suffixes;
+    private final List<CidrRange> ranges;
+    private final boolean matchAll;
+
+    /**
+     * Create a NoProxyMatcher, use {@link #compile(Collection)} to create one
+     *
+     * @param exactHosts hosts matched exactly
+     * @param suffixes trie of the domain suffixes (labels in reversed order)
+     * @param ranges CIDR ranges
+     * @param matchAll true if every host matches
+     */
+    private NoProxyMatcher(Set<String> exactHosts, SuffixNode suffixes, List<CidrRange> ranges, boolean matchAll) {
+        this.exactHosts = exactHosts;
+        this.suffixes = suffixes;
+        this.ranges = ranges;
+        this.matchAll = matchAll;
+    }
+
+    /**
+     * Compile the NoProxy entries of a proxy configuration, entries which cannot be parsed are ignored
+     *
+     * @param entries the NoProxy entries (URIs or Strings)
+     * @return the compiled matcher
+     */
+    public static NoProxyMatcher compile(Collection<?> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return EMPTY;
+        }
+        var exactHosts = new HashSet<String>();
+        var suffixes = new SuffixNode();
+        var ranges = new ArrayList<CidrRange>();
+        var matchAll = false;
+        for (var entry : entries) {
+            if (entry == null) {
+                continue;
+            }
+            var value = entry.toString().trim().toLowerCase(Locale.ROOT);
+            if (value.equals("*")) {
+                matchAll = true;
+            } else if (value.startsWith("*.") || value.startsWith(".")) {
+                suffixes.add(value.substring(value.indexOf('.') + 1));
+            } else if (value.indexOf('/') > 0 && !value.contains("://")) {
+                var range = CidrRange.parse(value);
+                if (range != null) {
+                    ranges.add(range);
+                }
+            } else {
+                var host = hostOf(value);
+                if (host != null) {
+                    exactHosts.add(host);
+                }
+            }
+        }
+        return new NoProxyMatcher(Set.copyOf(exactHosts), suffixes, List.copyOf(ranges), matchAll);
+    }
+
+    /**
+     * Check if requests to the given URI bypass the proxy
+     *
+     * @param uri the target URI of a request
+     * @return true if the host of the URI matches a NoProxy entry
+     */
+    public boolean matches(URI uri) {
+        return uri != null && matches(uri.getHost());
+    }
+
+    /**
+     * Check if requests to the given host bypass the proxy
+     *
+     * @param host the target host of a request
+     * @return true if the host matches a NoProxy entry
+     */
+    public boolean matches(String host) {
+        if (matchAll) {
+            return true;
+        }
+        if (host == null || host.isEmpty()) {
+            return false;
+        }
+        var normalized = normalizeHost(host);
+        return exactHosts.contains(normalized) || suffixes.matches(normalized) || inRange(normalized);
+    }
+
+    /**
+     * Get the host of an entry, which is a URI or a host (with optional port)
+     *
+     * @param value the lowercase entry
+     * @return the host of the entry, null if it cannot be parsed
+     */
+    private static String hostOf(String value) {
+        if (value.contains("://")) {
+            try {
+                var host = URI.create(value).getHost();
+                return host == null ? null : normalizeHost(host);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        var host = value;
+        //strip the port of host:port (but not the colons of IPv6 literals)
+        var colon = host.lastIndexOf(':');
+        if (colon > 0 && host.indexOf(':') == colon) {
+            host = host.substring(0, colon);
+        }
+        return normalizeHost(host);
+    }
+
+    /**
+     * @param host a host
+     * @return the host in lowercase, without brackets of IPv6 literals and without trailing dot
+     */
+    private static String normalizeHost(String host) {
+        var normalized = host.toLowerCase(Locale.ROOT);
+        if (normalized.startsWith("[") && normalized.endsWith("]")) {
+            normalized = normalized.substring(1, normalized.length() - 1);
+        }
+        if (normalized.endsWith(".")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    /**
+     * @param host a normalized host
+     * @return true if the host is an IP literal in one of the CIDR ranges
+     */
+    private boolean inRange(String host) {
+        if (ranges.isEmpty()) {
+            return false;
+        }
+        var address = parseLiteral(host);
+        if (address == null) {
+            return false;
+        }
+        for (var range : ranges) {
+            if (range.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse an IP literal without resolving hostnames
+     *
+     * @param host a normalized host
+     * @return the bytes of the address, null if the host is no IP literal
+     */
+    private static byte[] parseLiteral(String host) {
+        if (IPV4.matcher(host).matches()) {
+            var octets = host.split("\\.");
+            var address = new byte[4];
+            for (int i = 0; i < 4; i++) {
+                var octet = Integer.parseInt(octets[i]);
+                if (octet > 255) {
+                    return null;
+                }
+                address[i] = (byte) octet;
+            }
+            return address;
+        }
+        if (host.indexOf(':') < 0) {
+            return null;
+        }
+        try {
+            //IPv6 literals are parsed, not resolved
+            return InetAddress.getByName(host).getAddress();
+        } catch (UnknownHostException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Node of the trie of domain suffixes, labels are added from the top level domain downwards
+     */
+    private static final class SuffixNode {
+        private final Map<String, SuffixNode> children = new HashMap<>();
+        private boolean terminal;
+
+        /**
+         * @param domain a domain whose subdomains match
+         */
+        void add(String domain) {
+            var node = this;
+            var labels = normalizeHost(domain).split("\\.");
+            for (int i = labels.length - 1; i >= 0; i--) {
+                node = node.children.computeIfAbsent(labels[i], l -> new SuffixNode());
+            }
+            node.terminal = true;
+        }
+
+        /**
+         * @param host a normalized host
+         * @return true if the host is a subdomain of one of the domains
+         */
+        boolean matches(String host) {
+            var node = this;
+            var end = host.length();
+            while (end > 0) {
+                var start = host.lastIndexOf('.', end - 1) + 1;
+                node = node.children.get(host.substring(start, end));
+                if (node == null) {
+                    return false;
+                }
+                //the domain itself is no subdomain of the domain
+                if (node.terminal && start > 0) {
+                    return true;
+                }
+                end = start - 1;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A CIDR range of IPv4 or IPv6 addresses
+     */
+    private static final class CidrRange {
+        private final byte[] network;
+        private final int prefix;
+
+        private CidrRange(byte[] network, int prefix) {
+            this.network = network;
+            this.prefix = prefix;
+        }
+
+        /**
+         * @param value a CIDR range like 10.0.0.0/8
+         * @return the parsed range, null if the value cannot be parsed
+         */
+        static CidrRange parse(String value) {
+            var slash = value.indexOf('/');
+            var address = parseLiteral(normalizeHost(value.substring(0, slash)));
+            if (address == null) {
+                return null;
+            }
+            try {
+                var prefix = Integer.parseInt(value.substring(slash + 1));
+                if (prefix < 0 || prefix > address.length * 8) {
+                    return null;
+                }
+                return new CidrRange(address, prefix);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @param address bytes of an IP address
+         * @return true if the address is in the range
+         */
+        boolean contains(byte[] address) {
+            if (address.length != network.length) {
+                return false;
+            }
+            var fullBytes = prefix / 8;
+            for (int i = 0; i < fullBytes; i++) {
+                if (address[i] != network[i]) {
+                    return false;
+                }
+            }
+            var remainingBits = prefix % 8;
+            if (remainingBits == 0) {
+                return true;
+            }
+            var mask = (byte) (0xFF << (8 - remainingBits));
+            return (address[fullBytes] & mask) == (network[fullBytes] & mask);
+        }
+    }
+}
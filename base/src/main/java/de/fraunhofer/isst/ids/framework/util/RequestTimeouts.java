@@ -0,0 +1,106 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeouts of a single request, which override the timeouts of the client the request is sent with (without building
+ * a new client). The connect and read timeouts are attached to the request as tag and applied by the {@link #INTERCEPTOR}
+ * (which is installed on the clients of the {@link ClientProvider}), the optional call timeout is set on the {@link Call}.
+ */
+public final class RequestTimeouts {
+
+    /**
+     * Application interceptor applying the connect and read timeouts of requests tagged with RequestTimeouts
+     */
+    public static final Interceptor INTERCEPTOR = chain -> {
+        var timeouts = chain.request().tag(RequestTimeouts.class);
+        if (timeouts == null) {
+            return chain.proceed(chain.request());
+        }
+        return chain.withConnectTimeout(toMillis(timeouts.connectTimeout), TimeUnit.MILLISECONDS)
+                .withReadTimeout(toMillis(timeouts.readTimeout), TimeUnit.MILLISECONDS)
+                .proceed(chain.request());
+    };
+
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final Duration callTimeout;
+
+    /**
+     * Create RequestTimeouts without call timeout (the call timeout of the client is used)
+     *
+     * @param connectTimeout the connect timeout of the request
+     * @param readTimeout the read timeout of the request
+     */
+    public RequestTimeouts(Duration connectTimeout, Duration readTimeout) {
+        this(connectTimeout, readTimeout, null);
+    }
+
+    /**
+     * Create RequestTimeouts
+     *
+     * @param connectTimeout the connect timeout of the request
+     * @param readTimeout the read timeout of the request
+     * @param callTimeout the timeout of the complete call (null = the call timeout of the client is used)
+     */
+    public RequestTimeouts(Duration connectTimeout, Duration readTimeout, Duration callTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.callTimeout = callTimeout;
+    }
+
+    /**
+     * Create a call of the request with these timeouts
+     *
+     * @param client the client sending the request (must have the {@link #INTERCEPTOR} installed)
+     * @param request the request
+     * @return the call, with the request tagged with the connect and read timeouts (and set call timeout if there is one)
+     */
+    public Call newCall(OkHttpClient client, Request request) {
+        var call = client.newCall(request.newBuilder().tag(RequestTimeouts.class, this).build());
+        if (callTimeout != null) {
+            call.timeout().timeout(callTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        return call;
+    }
+
+    /**
+     * @return the connect timeout of the request
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @return the read timeout of the request
+     */
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * @return the timeout of the complete call, null if the call timeout of the client is used
+     */
+    public Duration getCallTimeout() {
+        return callTimeout;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RequestTimeouts[connect=%s, read=%s, call=%s]", connectTimeout, readTimeout, callTimeout);
+    }
+
+    /**
+     * @param duration a timeout
+     * @return the timeout in milliseconds (at least 1, 0 would disable the timeout)
+     */
+    private static int toMillis(Duration duration) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, duration.toMillis()));
+    }
+}
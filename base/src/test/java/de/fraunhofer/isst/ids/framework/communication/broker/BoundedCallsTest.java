@@ -0,0 +1,79 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test sending the requests of a sequence of items with bounded concurrency
+ */
+public class BoundedCallsTest {
+
+    /**
+     * The requests of all items are sent and every outcome is passed to the handler
+     */
+    @Test
+    public void testAllItemsAreSent() throws Exception {
+        try (var server = new MockWebServer()) {
+            for (int i = 0; i < 5; i++) {
+                server.enqueue(new MockResponse().setBody("ok"));
+            }
+            server.start();
+            var results = new AtomicInteger();
+            BoundedCalls.run(new OkHttpClient(), IntStream.range(0, 5).iterator(),
+                    item -> new Request.Builder().url(server.url("/" + item)).build(),
+                    2, null, (item, response, error, duration) -> results.incrementAndGet()
+            ).join();
+            assertEquals(5, results.get());
+            assertEquals(5, server.getRequestCount());
+        }
+    }
+
+    /**
+     * If the items cannot be iterated, no more items are taken and the future is completed exceptionally
+     */
+    @Test
+    public void testFailingItemsCompleteExceptionally() throws Exception {
+        try (var server = new MockWebServer()) {
+            for (int i = 0; i < 2; i++) {
+                server.enqueue(new MockResponse().setBody("ok"));
+            }
+            server.start();
+            var error = new IllegalStateException("source failed");
+            var items = new Iterator<Integer>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    if (next == 2) {
+                        throw error;
+                    }
+                    return true;
+                }
+
+                @Override
+                public Integer next() {
+                    return next++;
+                }
+            };
+            var results = new AtomicInteger();
+            var done = BoundedCalls.run(new OkHttpClient(), items,
+                    item -> new Request.Builder().url(server.url("/" + item)).build(),
+                    2, null, (item, response, callError, duration) -> results.incrementAndGet());
+            var thrown = assertThrows(CompletionException.class, done::join);
+            assertSame(error, thrown.getCause());
+            assertEquals(2, results.get());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import de.fraunhofer.iais.eis.Connector;
+import de.fraunhofer.iais.eis.Resource;
+import de.fraunhofer.iais.eis.ResourceBuilder;
+import de.fraunhofer.iais.eis.ResourceCatalog;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.configuration.SelfDescriptions;
+import de.fraunhofer.isst.ids.framework.configuration.SerializedSelfDescription;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test the incremental sync of the self-description to brokers
+ */
+public class BrokerSelfDescriptionSyncTest {
+
+    private static final String BROKER = "https://example.com/broker?tenant=a|b";
+
+    /**
+     * The first sync sends the complete self-description, an unchanged self-description is not sent again
+     */
+    @Test
+    public void testFullSyncAndUnchanged() throws Exception {
+        var brokerService = brokerService(new ArrayList<>(), new ArrayList<>());
+        var selfDescription = selfDescription(1, Map.of("1", "first", "2", "second"));
+        var container = Mockito.mock(ConfigurationContainer.class);
+        Mockito.when(container.getSelfDescription()).thenReturn(selfDescription);
+        var sync = new BrokerSelfDescriptionSync(brokerService, container, "");
+
+        assertEquals(BrokerSyncResult.Type.FULL, sync.sync(BROKER).getType());
+        assertEquals(BrokerSyncResult.Type.UNCHANGED, sync.sync(BROKER).getType());
+        Mockito.verify(brokerService, Mockito.times(1)).updateSelfDescriptionAtBroker(BROKER);
+    }
+
+    /**
+     * Changed and removed resources are sent, taken from the connector of the self-description and not from the
+     * (meanwhile replaced) connector of the container
+     */
+    @Test
+    public void testIncrementalSync() throws Exception {
+        var updated = new ArrayList<URI>();
+        var removed = new ArrayList<URI>();
+        var brokerService = brokerService(updated, removed);
+        var first = selfDescription(1, Map.of("1", "first", "2", "second"));
+        var second = selfDescription(2, Map.of("1", "changed", "3", "third"));
+        var replaced = connector(Map.of());
+        var container = Mockito.mock(ConfigurationContainer.class);
+        Mockito.when(container.getSelfDescription()).thenReturn(first, second);
+        Mockito.when(container.getConnector()).thenReturn(replaced);
+        var sync = new BrokerSelfDescriptionSync(brokerService, container, "");
+
+        sync.sync(BROKER);
+        var result = sync.sync(BROKER);
+
+        assertEquals(BrokerSyncResult.Type.INCREMENTAL, result.getType());
+        assertEquals(0, result.getFailed());
+        assertEquals(List.of(id("1"), id("3")), updated.stream().sorted().collect(Collectors.toList()));
+        assertEquals(List.of(id("2")), removed);
+    }
+
+    /**
+     * The persisted state is loaded by a new instance, also for broker URIs containing the separator of the state keys
+     */
+    @Test
+    public void testStateIsPersisted() throws Exception {
+        var stateFile = Files.createTempDirectory("broker-sync").resolve("state.json");
+        var first = selfDescription(1, Map.of("1", "first", "2", "second"));
+        var second = selfDescription(2, Map.of("1", "first", "2", "changed"));
+        var container = Mockito.mock(ConfigurationContainer.class);
+        Mockito.when(container.getSelfDescription()).thenReturn(first);
+        new BrokerSelfDescriptionSync(brokerService(new ArrayList<>(), new ArrayList<>()), container, stateFile.toString()).sync(BROKER);
+
+        var updated = new ArrayList<URI>();
+        var brokerService = brokerService(updated, new ArrayList<>());
+        var sync = new BrokerSelfDescriptionSync(brokerService, container, stateFile.toString());
+        assertEquals(BrokerSyncResult.Type.UNCHANGED, sync.sync(BROKER).getType());
+
+        Mockito.when(container.getSelfDescription()).thenReturn(second);
+        assertEquals(BrokerSyncResult.Type.INCREMENTAL, sync.sync(BROKER).getType());
+        assertEquals(List.of(id("2")), updated);
+        Mockito.verify(brokerService, Mockito.never()).updateSelfDescriptionAtBroker(ArgumentMatchers.anyString());
+    }
+
+    /**
+     * @param updated collects the ids of the resources sent in ResourceUpdateMessages
+     * @param removed collects the ids of the resources sent in ResourceUnavailableMessages
+     * @return a broker service accepting all messages
+     */
+    private static IDSBrokerService brokerService(List<URI> updated, List<URI> removed) throws Exception {
+        var brokerService = Mockito.mock(IDSBrokerService.class);
+        Mockito.when(brokerService.updateSelfDescriptionAtBroker(ArgumentMatchers.anyString())).thenAnswer(invocation ->
+                new Response.Builder()
+                        .request(new Request.Builder().url("https://example.com/broker").build())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create("", null))
+                        .build());
+        Mockito.when(brokerService.updateResourcesAtBroker(ArgumentMatchers.anyString(), ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.any()))
+                .thenAnswer(invocation -> collect(invocation.getArgument(1), updated));
+        Mockito.when(brokerService.removeResourcesFromBroker(ArgumentMatchers.anyString(), ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.any()))
+                .thenAnswer(invocation -> collect(invocation.getArgument(1), removed));
+        return brokerService;
+    }
+
+    /**
+     * @param resources the resources of a bulk operation
+     * @param ids collects the ids of the resources
+     * @return a successful result of the bulk operation
+     */
+    private static CompletableFuture<BulkResult> collect(Stream<? extends Resource> resources, List<URI> ids) {
+        var sent = resources.map(Resource::getId).collect(Collectors.toList());
+        ids.addAll(sent);
+        return CompletableFuture.completedFuture(new BulkResult(sent.size(), Map.of(), Duration.ZERO));
+    }
+
+    /**
+     * @param version the version of the configuration
+     * @param resources titles of the offered resources by resource number
+     * @return a self-description offering the given resources
+     */
+    private static SerializedSelfDescription selfDescription(long version, Map<String, String> resources) {
+        var offered = resources.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> String.format("{\"@id\":\"%s\",\"ids:title\":\"%s\"}", id(entry.getKey()), entry.getValue()))
+                .collect(Collectors.joining(","));
+        var json = "{\"@id\":\"https://example.com/connector\",\"ids:title\":\"Connector\","
+                + "\"ids:resourceCatalog\":[{\"@id\":\"https://example.com/catalog\",\"ids:offeredResource\":[" + offered + "]}]}";
+        return SelfDescriptions.of(version, connector(resources), json);
+    }
+
+    /**
+     * @param resources titles of the offered resources by resource number
+     * @return a connector offering the given resources
+     */
+    private static Connector connector(Map<String, String> resources) {
+        var offered = new ArrayList<Resource>();
+        resources.keySet().forEach(number -> offered.add(new ResourceBuilder(id(number)).build()));
+        var catalog = Mockito.mock(ResourceCatalog.class);
+        Mockito.when(catalog.getOfferedResource()).thenReturn(offered);
+        var connector = Mockito.mock(Connector.class);
+        Mockito.when(connector.getResourceCatalog()).thenReturn(new ArrayList<>(List.of(catalog)));
+        return connector;
+    }
+
+    /**
+     * @param number the number of a resource
+     * @return the id of the resource
+     */
+    private static URI id(String number) {
+        return URI.create("https://example.com/resource/" + number);
+    }
+}
@@ -0,0 +1,146 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test querying several brokers at once
+ */
+public class FederatedQueryTest {
+
+    private static final MediaType MULTIPART = MediaType.get("multipart/form-data; boundary=msgpart");
+    private static final RequestBody QUERY = RequestBody.create("query", MediaType.get("text/plain"));
+
+    /**
+     * Results of all brokers are merged and deduplicated, results of a broker which fails while its response is read
+     * were already passed to the listener and the broker is listed as failed
+     */
+    @Test
+    public void testMergeAndFailureWhileReading() throws Exception {
+        var client = new OkHttpClient.Builder().addInterceptor(chain -> {
+            var host = chain.request().url().host();
+            var body = "broken.example.com".equals(host)
+                    ? failingBody(results(2, 3))
+                    : ResponseBody.create(results(1, 2) + "--msgpart--\r\n", MULTIPART);
+            return new Response.Builder()
+                    .request(chain.request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .body(body)
+                    .build();
+        }).build();
+        var received = new CopyOnWriteArrayList<String>();
+
+        var result = new FederatedQuery(client, List.of("https://working.example.com/", "https://broken.example.com/"), QUERY,
+                Duration.ofSeconds(5), (broker, row) -> received.add(QueryResultReader.valueOf(row.get(0))))
+                .start().get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(id(1), id(2), id(3)), received.stream().sorted().collect(Collectors.toList()));
+        assertEquals(3, result.getResultCount());
+        assertEquals(1, result.getDuplicateCount());
+        assertEquals(2L, result.getResultsPerBroker().get("https://broken.example.com/"));
+        assertEquals(List.of("https://broken.example.com/"), List.copyOf(result.getFailures().keySet()));
+        assertTrue(result.getFailures().get("https://broken.example.com/").getCause() instanceof IllegalStateException);
+    }
+
+    /**
+     * The deadline counts from the start of the query, calls which are still queued or running then are cancelled
+     */
+    @Test
+    public void testDeadlineIsAbsolute() throws Exception {
+        try (var server = new MockWebServer()) {
+            for (int i = 0; i < 2; i++) {
+                server.enqueue(new MockResponse()
+                        .setHeader("Content-Type", MULTIPART.toString())
+                        .setBody(results(1, 2) + "--msgpart--\r\n")
+                        .throttleBody(16, 1, TimeUnit.SECONDS));
+            }
+            server.start();
+            //one call at a time: the second call is only dispatched after the first one ended
+            var dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(1);
+            var client = new OkHttpClient.Builder().dispatcher(dispatcher).build();
+            var brokers = List.of(server.url("/first").toString(), server.url("/second").toString());
+
+            var deadline = Duration.ofMillis(500);
+            var start = System.nanoTime();
+            var result = new FederatedQuery(client, brokers, QUERY, deadline, null).start().get(5, TimeUnit.SECONDS);
+            var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            assertTrue(elapsed.compareTo(deadline.multipliedBy(2)) < 0, "query took " + elapsed);
+            assertEquals(brokers.stream().sorted().collect(Collectors.toList()),
+                    result.getFailures().keySet().stream().sorted().collect(Collectors.toList()));
+            result.getFailures().values().forEach(error -> assertTrue(error instanceof InterruptedIOException));
+        }
+    }
+
+    /**
+     * @param first number of the first resource
+     * @param last number of the last resource
+     * @return the start of a multipart query response with the given resources, without closing delimiter
+     */
+    private static String results(int first, int last) {
+        var rows = Stream.iterate(first, i -> i + 1).limit(last - first + 1L)
+                .map(i -> "<" + id(i) + ">\r\n")
+                .collect(Collectors.joining());
+        return "--msgpart\r\n"
+                + "Content-Disposition: form-data; name=\"header\"\r\n"
+                + "\r\n"
+                + "{\"@type\" : \"ids:ResultMessage\"}\r\n"
+                + "--msgpart\r\n"
+                + "Content-Disposition: form-data; name=\"payload\"\r\n"
+                + "\r\n"
+                + "?resultUri\r\n"
+                + rows;
+    }
+
+    /**
+     * @param content the content of the body
+     * @return a body which throws an unchecked exception after its content was read
+     */
+    private static ResponseBody failingBody(String content) {
+        var source = new ForwardingSource(new Buffer().writeUtf8(content)) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                var read = super.read(sink, byteCount);
+                if (read == -1) {
+                    throw new IllegalStateException("Response body broken");
+                }
+                return read;
+            }
+        };
+        return ResponseBody.create(Okio.buffer(source), MULTIPART, -1);
+    }
+
+    /**
+     * @param number number of a resource
+     * @return the id of the resource
+     */
+    private static String id(int number) {
+        return "https://example.com/resource/" + number;
+    }
+}
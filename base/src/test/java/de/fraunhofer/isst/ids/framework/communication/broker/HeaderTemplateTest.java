@@ -0,0 +1,76 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import de.fraunhofer.iais.eis.DynamicAttributeToken;
+import de.fraunhofer.iais.eis.DynamicAttributeTokenBuilder;
+import de.fraunhofer.iais.eis.TokenFormat;
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test rendering message headers from templates and the expiry of templates
+ */
+public class HeaderTemplateTest {
+
+    /**
+     * Every rendered header gets a new message id and the given affected resource
+     */
+    @Test
+    public void testRender() {
+        var template = new HeaderTemplate(
+                "{\"@id\":\"" + HeaderTemplate.MESSAGE_ID_PLACEHOLDER + "\",\"affectedResource\":\"" + HeaderTemplate.RESOURCE_PLACEHOLDER + "\"}",
+                "https://example.com/message/", Instant.now().plusSeconds(60));
+        var first = template.render(URI.create("https://example.com/resource/1"));
+        var second = template.render(URI.create("https://example.com/resource/1"));
+        assertTrue(first.startsWith("{\"@id\":\"https://example.com/message/"));
+        assertTrue(first.endsWith("\",\"affectedResource\":\"https://example.com/resource/1\"}"));
+        assertNotEquals(first, second);
+    }
+
+    /**
+     * A template expires at the given time
+     */
+    @Test
+    public void testExpiry() {
+        var now = Instant.now();
+        var template = new HeaderTemplate("{}", "https://example.com/message/", now.plusSeconds(10));
+        assertFalse(template.isExpired(now));
+        assertTrue(template.isExpired(now.plusSeconds(10)));
+    }
+
+    /**
+     * Templates expire shortly before their DAT, at the latest after the max template age
+     */
+    @Test
+    public void testTemplateExpiryOfToken() {
+        var now = Instant.ofEpochSecond(1_600_000_000L);
+        assertEquals(now.plusSeconds(60).minus(BrokerIDSMessageUtils.TEMPLATE_EXPIRY_MARGIN),
+                BrokerIDSMessageUtils.templateExpiry(token("{\"exp\":" + now.plusSeconds(60).getEpochSecond() + "}"), now));
+        assertEquals(now.plus(BrokerIDSMessageUtils.MAX_TEMPLATE_AGE),
+                BrokerIDSMessageUtils.templateExpiry(token("{\"exp\":" + now.plusSeconds(3600).getEpochSecond() + "}"), now));
+        assertEquals(now.plus(BrokerIDSMessageUtils.MAX_TEMPLATE_AGE),
+                BrokerIDSMessageUtils.templateExpiry(token("{\"sub\":\"connector\"}"), now));
+        assertEquals(now.plus(BrokerIDSMessageUtils.MAX_TEMPLATE_AGE),
+                BrokerIDSMessageUtils.templateExpiry(new DynamicAttributeTokenBuilder()
+                        ._tokenFormat_(TokenFormat.JWT)._tokenValue_("INVALID_TOKEN").build(), now));
+    }
+
+    /**
+     * @param claims the claims of the token
+     * @return a DAT with an (unsigned) JWT with the given claims
+     */
+    static DynamicAttributeToken token(String claims) {
+        var encoder = Base64.getUrlEncoder().withoutPadding();
+        var jwt = encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + ".";
+        return new DynamicAttributeTokenBuilder()._tokenFormat_(TokenFormat.JWT)._tokenValue_(jwt).build();
+    }
+}
@@ -0,0 +1,150 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import de.fraunhofer.iais.eis.Connector;
+import de.fraunhofer.iais.eis.QueryLanguage;
+import de.fraunhofer.iais.eis.QueryScope;
+import de.fraunhofer.iais.eis.QueryTarget;
+import de.fraunhofer.iais.eis.Resource;
+import de.fraunhofer.iais.eis.ResourceBuilder;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.daps.DapsTokenProvider;
+import de.fraunhofer.isst.ids.framework.util.ClientProvider;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the bulk operations and the query cache of the IDSBrokerServiceImpl
+ */
+public class IDSBrokerServiceImplTest {
+
+    /**
+     * The header template of a bulk operation is built again with a new DAT when its DAT is about to expire
+     */
+    @Test
+    public void testBulkTemplateIsRenewedBeforeTheDatExpires() throws Exception {
+        var now = Instant.now();
+        var expiring = HeaderTemplateTest.token("{\"sub\":\"expiring\",\"exp\":" + now.plusSeconds(10).getEpochSecond() + "}");
+        var fresh = HeaderTemplateTest.token("{\"sub\":\"fresh\",\"exp\":" + now.plusSeconds(3600).getEpochSecond() + "}");
+        var tokenProvider = Mockito.mock(DapsTokenProvider.class);
+        Mockito.when(tokenProvider.getDAT()).thenReturn(expiring, fresh);
+
+        try (var server = new MockWebServer()) {
+            for (int i = 0; i < 3; i++) {
+                server.enqueue(new MockResponse().setBody("ok"));
+            }
+            server.start();
+            var service = new IDSBrokerServiceImpl(container(), clientProvider(), tokenProvider);
+            var result = service.updateResourcesAtBroker(server.url("/").toString(),
+                    IntStream.range(0, 3).mapToObj(i -> resource("https://example.com/resource/" + i)), 1, null).join();
+
+            assertEquals(3, result.getSucceeded());
+            Mockito.verify(tokenProvider, Mockito.times(2)).getDAT();
+            for (int i = 0; i < 3; i++) {
+                var body = server.takeRequest().getBody().readUtf8();
+                assertTrue(body.contains(fresh.getTokenValue()));
+                assertFalse(body.contains(expiring.getTokenValue()));
+            }
+        }
+    }
+
+    /**
+     * A query answered while an update is processed by the broker is not served from the cache after the update
+     */
+    @Test
+    public void testCacheIsInvalidatedAfterUpdate() throws Exception {
+        var tokenProvider = Mockito.mock(DapsTokenProvider.class);
+        Mockito.when(tokenProvider.getDAT()).thenReturn(HeaderTemplateTest.token("{\"sub\":\"connector\"}"));
+        var updateReceived = new CountDownLatch(1);
+        var queryCached = new CountDownLatch(1);
+        var queries = new AtomicInteger();
+
+        try (var server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                    if (request.getBody().readUtf8().contains("ResourceUpdateMessage")) {
+                        updateReceived.countDown();
+                        queryCached.await(5, TimeUnit.SECONDS);
+                        return new MockResponse().setBody("updated");
+                    }
+                    return new MockResponse().setBody("result " + queries.incrementAndGet());
+                }
+            });
+            server.start();
+            var broker = server.url("/").toString();
+            var service = new IDSBrokerServiceImpl(container(), clientProvider(), tokenProvider);
+            service.setQueryCache(new QueryCache(Duration.ofMinutes(1), 1024 * 1024));
+
+            var update = CompletableFuture.supplyAsync(() -> {
+                try (var response = service.updateResourceAtBroker(broker, resource("https://example.com/resource/1"))) {
+                    return response.isSuccessful();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertTrue(updateReceived.await(5, TimeUnit.SECONDS));
+            assertEquals("result 1", query(service, broker));
+            queryCached.countDown();
+            assertTrue(update.get(5, TimeUnit.SECONDS));
+            assertEquals("result 2", query(service, broker));
+        }
+    }
+
+    /**
+     * @param service the broker service
+     * @param broker URI of the broker
+     * @return the body of the response to a query
+     */
+    private static String query(IDSBrokerServiceImpl service, String broker) throws Exception {
+        try (var response = service.queryBroker(broker, "SELECT ?s WHERE { ?s ?p ?o }", QueryLanguage.SPARQL,
+                QueryScope.ALL, QueryTarget.BROKER)) {
+            return response.body().string();
+        }
+    }
+
+    /**
+     * @param id the id of the resource
+     * @return a resource with the given id
+     */
+    private static Resource resource(String id) {
+        return new ResourceBuilder(URI.create(id)).build();
+    }
+
+    /**
+     * @return a configuration container of a connector
+     */
+    private static ConfigurationContainer container() {
+        var connector = Mockito.mock(Connector.class);
+        Mockito.when(connector.getId()).thenReturn(URI.create("https://example.com/connector"));
+        var container = Mockito.mock(ConfigurationContainer.class);
+        Mockito.when(container.getConnector()).thenReturn(connector);
+        return container;
+    }
+
+    /**
+     * @return a client provider with a default client
+     */
+    private static ClientProvider clientProvider() {
+        var clientProvider = Mockito.mock(ClientProvider.class);
+        Mockito.when(clientProvider.getClient()).thenReturn(new OkHttpClient());
+        return clientProvider;
+    }
+}
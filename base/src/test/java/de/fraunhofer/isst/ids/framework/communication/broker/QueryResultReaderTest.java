@@ -0,0 +1,92 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test reading broker query results from multipart responses
+ */
+public class QueryResultReaderTest {
+
+    private static final String BODY = "--msgpart\r\n"
+            + "Content-Disposition: form-data; name=\"header\"\r\n"
+            + "Content-Type: application/json\r\n"
+            + "\r\n"
+            + "{\"@type\" : \"ids:ResultMessage\"}\r\n"
+            + "--msgpart\r\n"
+            + "Content-Disposition: form-data; name=\"payload\"\r\n"
+            + "\r\n"
+            + "?resultUri\t?title\r\n"
+            + "<https://example.com/resource/1>\t\"First\"@en\r\n"
+            + "<https://example.com/resource/2>\t\"Second \\\"one\\\"\"\r\n"
+            + "--msgpart--\r\n";
+
+    /**
+     * The header part is skipped, variables and results are read from the payload part
+     */
+    @Test
+    public void testReadPayload() throws IOException {
+        try (var reader = QueryResultReader.open(response(BODY, "multipart/form-data; boundary=msgpart"))) {
+            assertEquals(List.of("?resultUri", "?title"), reader.getVariables());
+
+            var first = reader.nextRow();
+            assertEquals("https://example.com/resource/1", QueryResultReader.valueOf(first.get(0)));
+            assertEquals("First", QueryResultReader.valueOf(first.get(1)));
+            assertEquals("Second \"one\"", QueryResultReader.valueOf(reader.nextRow().get(1)));
+            assertNull(reader.nextRow());
+        }
+    }
+
+    /**
+     * Escape sequences of literals are replaced in a single pass
+     */
+    @Test
+    public void testValueOfUnescapes() {
+        assertEquals("a\tb\nc", QueryResultReader.valueOf("\"a\\tb\\nc\"@en"));
+        assertEquals("C:\\new", QueryResultReader.valueOf("\"C:\\\\new\""));
+        assertEquals("quote \" and backslash \\", QueryResultReader.valueOf("\"quote \\\" and backslash \\\\\""));
+        assertEquals("unknown \\x", QueryResultReader.valueOf("\"unknown \\x\""));
+    }
+
+    /**
+     * The boundary is taken from the body if the Content-Type has none
+     */
+    @Test
+    public void testSniffBoundary() throws IOException {
+        try (var reader = QueryResultReader.open(response(BODY, null))) {
+            var ids = reader.rows().map(row -> QueryResultReader.valueOf(row.get(0))).collect(Collectors.toList());
+            assertEquals(List.of("https://example.com/resource/1", "https://example.com/resource/2"), ids);
+        }
+    }
+
+    /**
+     * Responses without payload part are rejected
+     */
+    @Test
+    public void testMissingPayload() {
+        var body = "--msgpart\r\nContent-Disposition: form-data; name=\"header\"\r\n\r\n{}\r\n--msgpart--\r\n";
+        assertThrows(IOException.class, () -> QueryResultReader.open(response(body, "multipart/form-data; boundary=msgpart")));
+    }
+
+    private static Response response(String body, String contentType) {
+        return new Response.Builder()
+                .request(new Request.Builder().url("https://broker.example.com/infrastructure").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(body, contentType == null ? null : MediaType.get(contentType)))
+                .build();
+    }
+}
@@ -0,0 +1,60 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the derivation of timeouts by the AdaptiveTimeoutPolicy
+ */
+public class AdaptiveTimeoutPolicyTest {
+
+    /**
+     * Connect and read timeouts are the percentile times the headroom, bounded by floor and ceiling; no call timeout is set
+     */
+    @Test
+    public void testTimeouts() {
+        var policy = AdaptiveTimeoutPolicy.builder()
+                .withMinSamples(10)
+                .withHeadroom(2)
+                .withFloor(Duration.ofMillis(100))
+                .withCeiling(Duration.ofSeconds(10))
+                .build();
+        var histogram = new LatencyHistogram(Duration.ofMinutes(5));
+        for (int i = 0; i < 9; i++) {
+            histogram.record(Duration.ofSeconds(1));
+        }
+        assertNull(policy.timeouts(histogram));
+
+        histogram.record(Duration.ofSeconds(1));
+        var timeouts = policy.timeouts(histogram);
+        assertNotNull(timeouts);
+        assertNull(timeouts.getCallTimeout());
+        assertEquals(timeouts.getConnectTimeout(), timeouts.getReadTimeout());
+        //2 seconds, within the resolution of the histogram
+        var millis = timeouts.getReadTimeout().toMillis();
+        assertTrue(millis >= 1700 && millis <= 2400, "Unexpected read timeout " + timeouts.getReadTimeout());
+
+        for (int i = 0; i < 100; i++) {
+            histogram.record(Duration.ofSeconds(20));
+        }
+        assertEquals(Duration.ofSeconds(10), policy.timeouts(histogram).getReadTimeout());
+    }
+
+    /**
+     * The disabled policy never sets timeouts
+     */
+    @Test
+    public void testDisabled() {
+        var histogram = new LatencyHistogram(Duration.ofMinutes(5));
+        for (int i = 0; i < 100; i++) {
+            histogram.record(Duration.ofSeconds(1));
+        }
+        assertNull(AdaptiveTimeoutPolicy.disabled().timeouts(histogram));
+    }
+}
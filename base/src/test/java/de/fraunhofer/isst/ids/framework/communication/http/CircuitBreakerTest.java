@@ -0,0 +1,121 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the state transitions of the CircuitBreaker
+ */
+public class CircuitBreakerTest {
+
+    private static final Duration OPEN_DURATION = Duration.ofMillis(50);
+
+    /**
+     * The breaker opens at the failure rate threshold, lets the probe calls through after the open duration
+     * and closes when the probes succeed
+     */
+    @Test
+    public void testOpenHalfOpenClose() throws Exception {
+        var breaker = new CircuitBreaker("broker:443", config().build());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquirePermission());
+            breaker.onResult(0, true);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+
+        Thread.sleep(OPEN_DURATION.toMillis() * 2);
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+        breaker.onResult(0, false);
+        breaker.onResult(0, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    /**
+     * Probe permits whose outcome is never reported expire after the open duration
+     */
+    @Test
+    public void testLostProbesExpire() throws Exception {
+        var breaker = new CircuitBreaker("broker:443", config().build());
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(0, true);
+        }
+        Thread.sleep(OPEN_DURATION.toMillis() * 2);
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+        //both probes are lost
+        assertFalse(breaker.tryAcquirePermission());
+
+        Thread.sleep(OPEN_DURATION.toMillis() * 2);
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    /**
+     * Slow calls only count if a slow-call duration is set
+     */
+    @Test
+    public void testSlowCallRuleIsOptIn() {
+        var slowCall = Duration.ofSeconds(30).toNanos();
+        var breaker = new CircuitBreaker("broker:443", config().build());
+        for (int i = 0; i < 10; i++) {
+            breaker.onResult(slowCall, false);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker = new CircuitBreaker("broker:443", config().withSlowCallDuration(Duration.ofSeconds(10)).build());
+        for (int i = 0; i < 10; i++) {
+            breaker.onResult(slowCall, false);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    /**
+     * Breakers are kept per host and port
+     */
+    @Test
+    public void testRegistryKeysByHostAndPort() {
+        var registry = new CircuitBreakerRegistry(config().build());
+        assertSame(registry.get("example.com", 443), registry.get("example.com", 443));
+        assertNotSame(registry.get("example.com", 443), registry.get("example.com", 8080));
+        assertEquals(2, registry.getSnapshots().size());
+        assertTrue(registry.getSnapshots().containsKey("example.com:8080"));
+    }
+
+    /**
+     * Disabled registries keep no breakers, enabled ones keep the breakers of at most MAX_TARGETS targets
+     */
+    @Test
+    public void testRegistryIsBounded() {
+        var registry = new CircuitBreakerRegistry(CircuitBreakerConfig.disabled());
+        registry.get("example.com", 443).onResult(0, true);
+        assertEquals(0, registry.getSnapshots().size());
+
+        registry.setConfig(config().build());
+        var first = registry.get("target-0", 443);
+        for (int i = 1; i <= CircuitBreakerRegistry.MAX_TARGETS; i++) {
+            registry.get("target-" + i, 443);
+        }
+        assertEquals(CircuitBreakerRegistry.MAX_TARGETS, registry.getSnapshots().size());
+        assertNotSame(first, registry.get("target-0", 443));
+    }
+
+    private static CircuitBreakerConfig.Builder config() {
+        return CircuitBreakerConfig.builder()
+                .withWindowSize(10)
+                .withMinimumCalls(4)
+                .withFailureRateThreshold(0.5)
+                .withOpenDuration(OPEN_DURATION)
+                .withHalfOpenProbes(2);
+    }
+}
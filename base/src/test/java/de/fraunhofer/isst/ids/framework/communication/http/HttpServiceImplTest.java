@@ -0,0 +1,241 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import de.fraunhofer.isst.ids.framework.util.ClientProfile;
+import de.fraunhofer.isst.ids.framework.util.ClientProvider;
+import de.fraunhofer.isst.ids.framework.util.ClientProviderTest;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the retries, circuit breakers and latency tracking of the HttpServiceImpl
+ */
+public class HttpServiceImplTest {
+
+    private MockWebServer server;
+    private HttpServiceImpl httpService;
+    private URI target;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        httpService = new HttpServiceImpl(new ClientProvider(ClientProviderTest.container()));
+        target = server.url("/api/ids/data").uri();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * Calls are retried with the retry policy of their profile, calls without profile are never retried
+     */
+    @Test
+    public void testRetryPolicyOfProfile() throws Exception {
+        var profile = ClientProfile.builder("retries").withRetryPolicy(retryPolicy()).build();
+
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("ok"));
+        try (var response = httpService.send(body(), target, profile)) {
+            assertEquals("ok", response.body().string());
+        }
+        assertEquals(2, server.getRequestCount());
+
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("ok"));
+        var e = assertThrows(UnexpectedResponseCodeException.class, () -> httpService.send(body(), target));
+        assertEquals(503, e.getCode());
+        assertEquals(3, server.getRequestCount());
+
+        try (var response = httpService.sendAsync(body(), target, profile).get(5, TimeUnit.SECONDS)) {
+            assertEquals("ok", response.body().string());
+        }
+        assertEquals(4, server.getRequestCount());
+    }
+
+    /**
+     * Async calls cancelled by the caller are not retried
+     */
+    @Test
+    public void testCancelledCallIsNotRetried() throws Exception {
+        var profile = ClientProfile.builder("retries").withRetryPolicy(retryPolicy()).build();
+        server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(2, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        var future = httpService.sendAsync(body(), target, profile);
+        //wait until the first attempt reached the server
+        server.takeRequest(5, TimeUnit.SECONDS);
+        future.cancel(true);
+        assertThrows(CancellationException.class, future::join);
+
+        Thread.sleep(500);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    /**
+     * Circuit breakers are disabled by default; once enabled, an open breaker rejects the calls to its port only
+     */
+    @Test
+    public void testCircuitBreakers() throws Exception {
+        assertFalse(httpService.getCircuitBreakers().getConfig().isEnabled());
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+            assertThrows(UnexpectedResponseCodeException.class, () -> httpService.send(body(), target));
+        }
+
+        httpService.getCircuitBreakers().setConfig(CircuitBreakerConfig.builder()
+                .withMinimumCalls(2)
+                .withFailureRateThreshold(0.5)
+                .build());
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+            assertThrows(UnexpectedResponseCodeException.class, () -> httpService.send(body(), target));
+        }
+        assertThrows(CircuitBreakerOpenException.class, () -> httpService.send(body(), target));
+        assertEquals(7, server.getRequestCount());
+
+        var other = new MockWebServer();
+        other.enqueue(new MockResponse().setBody("ok"));
+        other.start();
+        try (var response = httpService.send(body(), other.url("/").uri())) {
+            assertEquals("ok", response.body().string());
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    /**
+     * Adaptive timeouts are disabled by default; calls that time out are recorded as latency samples at their read timeout
+     */
+    @Test
+    public void testTimedOutCallsAreRecorded() throws Exception {
+        assertFalse(httpService.getAdaptiveTimeoutPolicy().isEnabled());
+        var profile = ClientProfile.builder("short").withReadTimeout(Duration.ofMillis(200)).build();
+        server.enqueue(new MockResponse().setBody("slow").setHeadersDelay(2, TimeUnit.SECONDS));
+        var histogram = httpService.getLatencyHistogram(target.getHost());
+
+        assertThrows(SocketTimeoutException.class, () -> httpService.send(body(), target, profile));
+        assertEquals(1, histogram.getCount());
+        var recorded = histogram.getPercentile(0.99).toMillis();
+        assertTrue(recorded >= 170 && recorded <= 240, "Unexpected latency sample " + recorded);
+        assertNull(httpService.getAdaptiveTimeouts(target.getHost()));
+    }
+
+    /**
+     * Latencies are only recorded for hosts whose histogram was requested while adaptive timeouts are disabled
+     */
+    @Test
+    public void testLatenciesAreRecordedOnDemand() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+        httpService.send(body(), target).close();
+        assertEquals(0, httpService.getLatencyHistogram(target.getHost()).getCount());
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        httpService.send(body(), target).close();
+        assertEquals(1, httpService.getLatencyHistogram(target.getHost()).getCount());
+
+        httpService.setAdaptiveTimeoutPolicy(AdaptiveTimeoutPolicy.builder().build());
+        httpService.setAdaptiveTimeoutPolicy(null);
+        assertEquals(0, httpService.getLatencyHistogram(target.getHost()).getCount());
+    }
+
+    /**
+     * Decorators implementing only the methods of earlier versions get working async variants and reject client profiles
+     */
+    @Test
+    public void testDefaultMethodsOfDecorators() throws Exception {
+        var decorator = new Decorator(httpService);
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        try (var response = decorator.sendAsync(body(), target).get(5, TimeUnit.SECONDS)) {
+            assertEquals("ok", response.body().string());
+        }
+        assertThrows(UnsupportedOperationException.class, () -> decorator.send(body(), target, ClientProfile.builder("profile").build()));
+        assertFalse(decorator.getCircuitBreakers().getConfig().isEnabled());
+        assertNull(decorator.getAdaptiveTimeouts(target.getHost()));
+    }
+
+    private static RetryPolicy retryPolicy() {
+        return RetryPolicy.builder()
+                .withMaxAttempts(3)
+                .withInitialBackoff(Duration.ofMillis(10))
+                .withBudget(new RetryBudget(1, 10))
+                .build();
+    }
+
+    private static RequestBody body() {
+        return RequestBody.create("{}", null);
+    }
+
+    /**
+     * HttpService implementing only the methods of earlier versions
+     */
+    private static final class Decorator implements HttpService {
+
+        private final HttpService delegate;
+
+        /**
+         * @param delegate the service the calls are passed to
+         */
+        private Decorator(HttpService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setTimeouts(Duration connectTimeout, Duration readTimeout, Duration writeTimeout, Duration callTimeout) {
+            delegate.setTimeouts(connectTimeout, readTimeout, writeTimeout, callTimeout);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void removeTimeouts() {
+            delegate.removeTimeouts();
+        }
+
+        @Override
+        public Response send(String message, URI target) throws IOException {
+            return delegate.send(message, target);
+        }
+
+        @Override
+        public Response send(RequestBody requestBody, URI target) throws IOException {
+            return delegate.send(requestBody, target);
+        }
+
+        @Override
+        public Response sendWithHeaders(RequestBody requestBody, URI target, Map<String, String> headers) throws IOException {
+            return delegate.sendWithHeaders(requestBody, target, headers);
+        }
+
+        @Override
+        public Response get(URI target) throws IOException {
+            return delegate.get(target);
+        }
+
+        @Override
+        public Response getWithHeaders(URI target, Map<String, String> headers) throws IOException {
+            return delegate.getWithHeaders(target, headers);
+        }
+    }
+}
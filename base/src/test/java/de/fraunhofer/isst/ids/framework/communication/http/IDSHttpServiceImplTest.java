@@ -0,0 +1,264 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import de.fraunhofer.iais.eis.ConfigurationModel;
+import de.fraunhofer.iais.eis.ConnectorDeployMode;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.daps.DapsValidator;
+import de.fraunhofer.isst.ids.framework.util.MultipartParseException;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test the parsing of responses by the IDSHttpServiceImpl
+ */
+public class IDSHttpServiceImplTest {
+
+    private static final URI TARGET = URI.create("https://connector.example.com/api/ids/batch");
+    private static final String BOUNDARY = "batch-boundary";
+
+    /**
+     * Implementations of earlier versions get the async and streaming variants based on sendAndCheckDat
+     */
+    @Test
+    public void testDefaultMethodsUseSendAndCheckDat() throws Exception {
+        var response = new MultipartResponse(Map.of(BatchPartNames.HEADER, "{}", BatchPartNames.PAYLOAD, "payload"), null);
+        var service = new IDSHttpService() {
+            @Override
+            public MultipartResponse sendAndCheckDat(RequestBody body, URI target) {
+                return response;
+            }
+
+            @Override
+            public MultipartResponse sendWithHeadersAndCheckDat(RequestBody body, URI target, Map<String, String> headers) {
+                return response;
+            }
+        };
+        var body = RequestBody.create(new byte[0], null);
+
+        assertEquals("payload", service.sendAndCheckDatAsync(body, TARGET).get(5, TimeUnit.SECONDS).getPayloadString());
+        var file = Files.createTempFile("payload", ".txt");
+        try {
+            service.sendAndStreamPayload(body, TARGET, file);
+            assertEquals("payload", Files.readString(file));
+        } finally {
+            Files.delete(file);
+        }
+        assertThrows(UnsupportedOperationException.class, () -> service.sendBatchAndCheckDat(body, TARGET));
+    }
+
+    /**
+     * A batch response with a payload part but no header part for an index is rejected as malformed
+     */
+    @Test
+    public void testBatchResponseWithoutHeaderIsRejected() throws Exception {
+        var body = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + BatchPartNames.header(0) + "\"\r\n\r\n"
+                + "{}\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + BatchPartNames.payload(1) + "\"\r\n\r\n"
+                + "orphaned payload\r\n"
+                + "--" + BOUNDARY + "--\r\n";
+        var httpService = Mockito.mock(HttpService.class);
+        Mockito.when(httpService.send(Mockito.any(RequestBody.class), Mockito.eq(TARGET))).thenReturn(response(body));
+
+        var service = new IDSHttpServiceImpl(httpService, Mockito.mock(DapsValidator.class), testDeployment());
+        assertThrows(MultipartParseException.class,
+                () -> service.sendBatchAndCheckDat(RequestBody.create(new byte[0], null), TARGET));
+    }
+
+    /**
+     * The response body is parsed from its bytes, each part is decoded with the charset of its Content-Type
+     */
+    @Test
+    public void testResponsePartsAreDecodedWithTheirCharset() throws Exception {
+        var body = new Buffer()
+                .writeUtf8("--" + BOUNDARY + "\r\n")
+                .writeUtf8("Content-Disposition: form-data; name=\"" + BatchPartNames.PAYLOAD + "\"\r\n")
+                .writeUtf8("Content-Type: text/plain; charset=ISO-8859-1\r\n\r\n")
+                .writeString("Gr\u00fc\u00dfe", StandardCharsets.ISO_8859_1)
+                .writeUtf8("\r\n--" + BOUNDARY + "--\r\n")
+                .readByteArray();
+        var httpService = Mockito.mock(HttpService.class);
+        Mockito.when(httpService.send(Mockito.any(RequestBody.class), Mockito.eq(TARGET)))
+                .thenReturn(response(ResponseBody.create(body, MediaType.get("multipart/form-data; boundary=" + BOUNDARY))));
+
+        var service = new IDSHttpServiceImpl(httpService, Mockito.mock(DapsValidator.class), testDeployment());
+        assertEquals("Gr\u00fc\u00dfe", service.sendAndCheckDat(RequestBody.create(new byte[0], null), TARGET).getPayloadString());
+    }
+
+    /**
+     * The header part of a streamed response is held in memory, header parts over the limit are rejected before
+     * anything is written to the sink
+     */
+    @Test
+    public void testStreamedResponseWithOversizedHeaderIsRejected() throws Exception {
+        var body = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + BatchPartNames.HEADER + "\"\r\n\r\n"
+                + "x".repeat((int) IDSHttpServiceImpl.MAX_HEADER_PART_SIZE + 1) + "\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + BatchPartNames.PAYLOAD + "\"\r\n\r\n"
+                + "payload\r\n"
+                + "--" + BOUNDARY + "--\r\n";
+        var httpService = Mockito.mock(HttpService.class);
+        Mockito.when(httpService.send(Mockito.any(RequestBody.class), Mockito.eq(TARGET))).thenReturn(response(body));
+
+        var service = new IDSHttpServiceImpl(httpService, Mockito.mock(DapsValidator.class), testDeployment());
+        var sink = new ByteArrayOutputStream();
+        assertThrows(IOException.class, () -> service.sendAndStreamPayload(RequestBody.create(new byte[0], null), TARGET, sink));
+        assertEquals(0, sink.size());
+    }
+
+    /**
+     * A payload which breaks off mid-stream leaves an existing target file unchanged and no temporary file behind
+     */
+    @Test
+    public void testStreamedPayloadFailingMidStreamKeepsFile() throws Exception {
+        var body = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + BatchPartNames.HEADER + "\"\r\n\r\n"
+                + "{}\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + BatchPartNames.PAYLOAD + "\"\r\n\r\n"
+                + "truncated payload without closing boundary";
+        var httpService = Mockito.mock(HttpService.class);
+        Mockito.when(httpService.send(Mockito.any(RequestBody.class), Mockito.eq(TARGET))).thenReturn(response(body));
+        var directory = Files.createTempDirectory("ids-stream");
+        var file = Files.writeString(directory.resolve("payload.bin"), "old payload");
+
+        var service = new IDSHttpServiceImpl(httpService, Mockito.mock(DapsValidator.class), testDeployment());
+        assertThrows(IOException.class, () -> service.sendAndStreamPayload(RequestBody.create(new byte[0], null), TARGET, file));
+
+        assertEquals("old payload", Files.readString(file));
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(file), files.collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * A completely received payload replaces the target file
+     */
+    @Test
+    public void testStreamedPayloadReplacesFile() throws Exception {
+        var body = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + BatchPartNames.HEADER + "\"\r\n\r\n"
+                + "{}\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + BatchPartNames.PAYLOAD + "\"\r\n\r\n"
+                + "new payload\r\n"
+                + "--" + BOUNDARY + "--\r\n";
+        var httpService = Mockito.mock(HttpService.class);
+        Mockito.when(httpService.send(Mockito.any(RequestBody.class), Mockito.eq(TARGET))).thenReturn(response(body));
+        var directory = Files.createTempDirectory("ids-stream");
+        var file = Files.writeString(directory.resolve("payload.bin"), "old payload");
+
+        var service = new IDSHttpServiceImpl(httpService, Mockito.mock(DapsValidator.class), testDeployment());
+        service.sendAndStreamPayload(RequestBody.create(new byte[0], null), TARGET, file);
+
+        assertEquals("new payload", Files.readString(file));
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(file), files.collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * The body of an async response is read on the thread completing the response future (the OkHttp callback
+     * thread), not on a shared pool
+     */
+    @Test
+    public void testAsyncResponseBodyIsReadOnCallbackThread() throws Exception {
+        var body = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + BatchPartNames.PAYLOAD + "\"\r\n\r\n"
+                + "payload\r\n"
+                + "--" + BOUNDARY + "--\r\n";
+        var readingThread = new AtomicReference<Thread>();
+        var responseBody = new ResponseBody() {
+            private final Buffer content = new Buffer().writeUtf8(body);
+
+            @Override
+            public MediaType contentType() {
+                return MediaType.get("multipart/form-data; boundary=" + BOUNDARY);
+            }
+
+            @Override
+            public long contentLength() {
+                return content.size();
+            }
+
+            @Override
+            public BufferedSource source() {
+                readingThread.set(Thread.currentThread());
+                return content;
+            }
+        };
+        var responseFuture = new CompletableFuture<Response>();
+        var httpService = Mockito.mock(HttpService.class);
+        Mockito.when(httpService.sendAsync(Mockito.any(RequestBody.class), Mockito.eq(TARGET))).thenReturn(responseFuture);
+
+        var service = new IDSHttpServiceImpl(httpService, Mockito.mock(DapsValidator.class), testDeployment());
+        var result = service.sendAndCheckDatAsync(RequestBody.create(new byte[0], null), TARGET);
+        var callbackThread = new Thread(() -> responseFuture.complete(response(responseBody)), "okhttp-callback");
+        callbackThread.start();
+        callbackThread.join();
+
+        assertEquals("payload", result.get(5, TimeUnit.SECONDS).getPayloadString());
+        assertNotNull(readingThread.get());
+        assertSame(callbackThread, readingThread.get());
+    }
+
+    /**
+     * @param body a multipart body
+     * @return a response with the given body
+     */
+    static Response response(String body) {
+        return response(ResponseBody.create(body, MediaType.get("multipart/form-data; boundary=" + BOUNDARY)));
+    }
+
+    /**
+     * @param body a response body
+     * @return a successful response with the given body
+     */
+    static Response response(ResponseBody body) {
+        return new Response.Builder()
+                .request(new Request.Builder().url(TARGET.toString()).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(body)
+                .build();
+    }
+
+    /**
+     * @return a configuration container of a connector in test deployment (DATs are not checked)
+     */
+    static ConfigurationContainer testDeployment() {
+        var container = Mockito.mock(ConfigurationContainer.class);
+        var configModel = Mockito.mock(ConfigurationModel.class);
+        Mockito.when(configModel.getConnectorDeployMode()).thenReturn(ConnectorDeployMode.TEST_DEPLOYMENT);
+        Mockito.when(container.getConfigModel()).thenReturn(configModel);
+        return container;
+    }
+}
@@ -0,0 +1,111 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the overflow policies and the concurrent use of the BoundedMessageQueue
+ */
+public class BoundedMessageQueueTest {
+
+    /**
+     * DROP_NEWEST rejects messages offered to a full queue, DROP_OLDEST replaces the oldest message
+     */
+    @Test
+    public void testDropPolicies() {
+        var dropNewest = new BoundedMessageQueue<Integer>(4, OverflowPolicy.DROP_NEWEST);
+        var dropOldest = new BoundedMessageQueue<Integer>(4, OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i < 4, dropNewest.offer(i));
+            assertTrue(dropOldest.offer(i));
+        }
+
+        var newest = new ArrayList<Integer>();
+        assertEquals(4, dropNewest.drainTo(newest, 10));
+        assertEquals(List.of(0, 1, 2, 3), newest);
+        var oldest = new ArrayList<Integer>();
+        assertEquals(4, dropOldest.drainTo(oldest, 10));
+        assertEquals(List.of(2, 3, 4, 5), oldest);
+
+        assertEquals(2, dropNewest.getDroppedCount());
+        assertEquals(2, dropOldest.getDroppedCount());
+        assertEquals(4, dropOldest.getHighWatermark());
+        assertTrue(dropOldest.isEmpty());
+        assertNull(dropOldest.poll());
+    }
+
+    /**
+     * BLOCK makes the producer wait until a consumer frees a slot
+     */
+    @Test
+    public void testBlock() throws InterruptedException {
+        var queue = new BoundedMessageQueue<Integer>(2, OverflowPolicy.BLOCK);
+        queue.offer(1);
+        queue.offer(2);
+        var offered = new CountDownLatch(1);
+        var producer = new Thread(() -> {
+            queue.offer(3);
+            offered.countDown();
+        });
+        producer.start();
+        assertFalse(offered.await(100, TimeUnit.MILLISECONDS));
+
+        assertEquals(1, queue.poll());
+        assertTrue(offered.await(5, TimeUnit.SECONDS));
+        assertEquals(2, queue.poll());
+        assertEquals(3, queue.poll());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    /**
+     * Messages of concurrent producers are received exactly once by concurrent consumers
+     */
+    @Test
+    public void testConcurrentProducersAndConsumers() throws InterruptedException {
+        var queue = new BoundedMessageQueue<Integer>(64, OverflowPolicy.BLOCK);
+        var producers = 4;
+        var perProducer = 50_000;
+        var received = ConcurrentHashMap.<Integer>newKeySet();
+        var remaining = new AtomicInteger(producers * perProducer);
+        ExecutorService executor = Executors.newFixedThreadPool(producers * 2);
+        for (int p = 0; p < producers; p++) {
+            var offset = p * perProducer;
+            executor.execute(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.offer(offset + i);
+                }
+            });
+            executor.execute(() -> {
+                var batch = new ArrayList<Integer>();
+                while (remaining.get() > 0) {
+                    batch.clear();
+                    var count = queue.drainTo(batch, 16);
+                    for (var message : batch) {
+                        assertTrue(received.add(message));
+                    }
+                    remaining.addAndGet(-count);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(producers * perProducer, received.size());
+        assertEquals(producers * perProducer, queue.getDequeuedCount());
+        assertTrue(queue.getHighWatermark() <= queue.getCapacity());
+        assertTrue(queue.isEmpty());
+    }
+}
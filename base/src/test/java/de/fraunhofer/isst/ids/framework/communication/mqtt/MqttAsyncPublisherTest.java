@@ -0,0 +1,77 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the in-flight window of the MqttAsyncPublisher
+ */
+public class MqttAsyncPublisherTest {
+
+    /**
+     * A publish waiting for a free slot of the full window fails after the publish timeout
+     */
+    @Test
+    public void testPublishTimesOutWhenWindowIsFull() throws Exception {
+        var publisher = new MqttAsyncPublisher(client(true), 1, Duration.ofMillis(200));
+        var first = publisher.publish("ids/test", new byte[1], 1, false);
+
+        var start = System.nanoTime();
+        var second = publisher.publish("ids/test", new byte[1], 1, false);
+        var waited = Duration.ofNanos(System.nanoTime() - start);
+
+        assertFalse(first.isDone());
+        assertTrue(waited.compareTo(Duration.ofMillis(200)) >= 0, "waited " + waited);
+        assertMaxInFlight(assertThrows(CompletionException.class, second::join));
+        assertEquals(1, publisher.getInFlight());
+        assertEquals(1, publisher.getFailedCount());
+    }
+
+    /**
+     * While the client is disconnected, a publish fails immediately if the window is full of buffered messages
+     */
+    @Test
+    public void testPublishFailsFastWhileDisconnected() throws Exception {
+        var publisher = new MqttAsyncPublisher(client(false), 1, Duration.ofSeconds(30));
+        var buffered = publisher.publish("ids/test", new byte[1], 1, false);
+
+        var start = System.nanoTime();
+        var second = publisher.publish("ids/test", new byte[1], 1, false);
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) < 0);
+        assertFalse(buffered.isDone());
+        assertMaxInFlight(assertThrows(CompletionException.class, second::join));
+    }
+
+    /**
+     * @param error the error of a publish
+     */
+    private static void assertMaxInFlight(CompletionException error) {
+        assertTrue(error != null && error.getCause() instanceof MqttException);
+        assertEquals(MqttException.REASON_CODE_MAX_INFLIGHT, ((MqttException) error.getCause()).getReasonCode());
+    }
+
+    /**
+     * @param connected true if the client is connected
+     * @return a client which accepts messages but never completes them
+     */
+    private static MqttAsyncClient client(boolean connected) throws MqttException {
+        var client = Mockito.mock(MqttAsyncClient.class);
+        Mockito.when(client.isConnected()).thenReturn(connected);
+        Mockito.when(client.publish(ArgumentMatchers.anyString(), ArgumentMatchers.any(byte[].class), ArgumentMatchers.anyInt(),
+                ArgumentMatchers.anyBoolean(), ArgumentMatchers.any(), ArgumentMatchers.any(IMqttActionListener.class))).thenReturn(null);
+        return client;
+    }
+}
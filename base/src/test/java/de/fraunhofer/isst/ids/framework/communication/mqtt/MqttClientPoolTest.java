@@ -0,0 +1,132 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import de.fraunhofer.iais.eis.BasicAuthentication;
+import io.moquette.BrokerConstants;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MqttClientPoolTest {
+
+    private static final String HOST = "127.0.0.1";
+    private static final int PORT = 18831;
+    private static final String EVICTOR_THREAD = "mqtt-client-pool-evictor";
+
+    private Server broker;
+
+    @Before
+    public void setUp() throws IOException {
+        var properties = new Properties();
+        properties.setProperty(BrokerConstants.HOST_PROPERTY_NAME, HOST);
+        properties.setProperty(BrokerConstants.PORT_PROPERTY_NAME, String.valueOf(PORT));
+        properties.setProperty(BrokerConstants.PERSISTENT_STORE_PROPERTY_NAME, "");
+        properties.setProperty(BrokerConstants.ALLOW_ANONYMOUS_PROPERTY_NAME, "true");
+        broker = new Server();
+        broker.startServer(new MemoryConfig(properties));
+    }
+
+    @After
+    public void tearDown() {
+        broker.stopServer();
+    }
+
+    @Test
+    public void testPoolsUseTheirOwnGeneratedClientIds() throws Exception {
+        try (var first = new MqttClientPool(); var second = new MqttClientPool()) {
+            var firstClient = first.acquire(config());
+            var secondClient = second.acquire(config());
+
+            assertNotEquals(firstClient.getClientId(), secondClient.getClientId());
+            assertSame(firstClient, first.acquire(config()));
+            //the broker would have disconnected the first client if both had connected with the same id
+            Thread.sleep(500);
+            assertTrue(firstClient.isConnected());
+            assertTrue(secondClient.isConnected());
+        }
+    }
+
+    @Test
+    public void testClientIdWithOtherCredentialsIsRejected() throws Exception {
+        try (var pool = new MqttClientPool()) {
+            var first = config();
+            first.setClientId("connector");
+            first.setBasicAuthentication(credentials("user-a", "secret-a"));
+            var second = config();
+            second.setClientId("connector");
+            second.setBasicAuthentication(credentials("user-b", "secret-b"));
+
+            var client = pool.acquire(first);
+            var e = assertThrows(MqttException.class, () -> pool.acquire(second));
+
+            assertEquals(MqttException.REASON_CODE_INVALID_CLIENT_ID, e.getReasonCode());
+            assertSame(client, pool.acquire(first));
+            assertTrue(client.isConnected());
+            assertEquals(1, pool.getSize());
+        }
+    }
+
+    @Test
+    public void testPoolsShareOneEvictorThread() throws Exception {
+        var pools = new ArrayList<MqttClientPool>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                pools.add(new MqttClientPool());
+            }
+            //creating a pool starts no thread, the shared one may run already for pools of other tests
+            assertTrue(evictorThreads() <= 1);
+            for (var pool : pools) {
+                pool.acquire(config());
+            }
+            assertEquals(1, evictorThreads());
+        } finally {
+            pools.forEach(MqttClientPool::close);
+        }
+    }
+
+    /**
+     * @return number of running evictor threads
+     */
+    private static long evictorThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals(EVICTOR_THREAD))
+                .count();
+    }
+
+    /**
+     * @param username the user name
+     * @param password the password
+     * @return basic authentication with the credentials
+     */
+    private static BasicAuthentication credentials(String username, String password) {
+        var auth = Mockito.mock(BasicAuthentication.class);
+        Mockito.when(auth.getAuthUsername()).thenReturn(username);
+        Mockito.when(auth.getAuthPassword()).thenReturn(password);
+        return auth;
+    }
+
+    /**
+     * @return configuration for the embedded broker without client id
+     */
+    private static ProtocolMqtt config() {
+        var mqtt = new ProtocolMqtt();
+        mqtt.setUri(URI.create(String.format("tcp://%s:%d", HOST, PORT)));
+        mqtt.setTopic("test");
+        mqtt.setQos(1);
+        return mqtt;
+    }
+}
@@ -0,0 +1,71 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test encoding and decoding of IDS messages carried over MQTT with the MqttEnvelopeCodec
+ */
+public class MqttEnvelopeCodecTest {
+
+    private static final String HEADER = "{\"@type\":\"ids:DescriptionRequestMessage\",\"ids:modelVersion\":\"4.0.0\",\"ids:title\":\"Überblick\"}";
+
+    /**
+     * Header, binary payload (longer than one varint byte) and reply topic survive the round trip, the framing only
+     * adds a few bytes
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        var payload = new byte[300];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        var encoded = MqttEnvelopeCodec.encode(new MqttEnvelope(HEADER, payload, "ids/replies/1"));
+        var headerLength = HEADER.getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(3 + 1 + 13 + 1 + headerLength + 2 + payload.length, encoded.length);
+
+        var decoded = MqttEnvelopeCodec.decode(encoded);
+        assertEquals(HEADER, decoded.getHeader());
+        assertEquals("ids/replies/1", decoded.getReplyTopic());
+        assertArrayEquals(payload, decoded.openPayload().readAllBytes());
+
+        var headerOnly = MqttEnvelopeCodec.decode(MqttEnvelopeCodec.encode(new MqttEnvelope(HEADER, null, null)));
+        assertEquals(HEADER, headerOnly.getHeader());
+        assertFalse(headerOnly.hasPayload());
+        assertNull(headerOnly.openPayload());
+        assertNull(headerOnly.getReplyTopic());
+
+        var emptyPayload = MqttEnvelopeCodec.decode(MqttEnvelopeCodec.encode(new MqttEnvelope(HEADER, new byte[0], null)));
+        assertEquals(0, emptyPayload.getPayload().remaining());
+    }
+
+    /**
+     * Truncated envelopes, foreign payloads, unknown versions and trailing bytes are rejected
+     */
+    @Test
+    public void testMalformedEnvelopes() {
+        var encoded = MqttEnvelopeCodec.encode(new MqttEnvelope(HEADER, "payload".getBytes(StandardCharsets.UTF_8), "reply"));
+        for (int length = 0; length < encoded.length; length++) {
+            var truncated = Arrays.copyOf(encoded, length);
+            assertThrows(MqttEnvelopeException.class, () -> MqttEnvelopeCodec.decode(truncated));
+        }
+        assertThrows(MqttEnvelopeException.class, () -> MqttEnvelopeCodec.decode(Arrays.copyOf(encoded, encoded.length + 1)));
+        assertThrows(MqttEnvelopeException.class, () -> MqttEnvelopeCodec.decode(HEADER.getBytes(StandardCharsets.UTF_8)));
+
+        var otherVersion = encoded.clone();
+        otherVersion[1] = 2;
+        assertThrows(MqttEnvelopeException.class, () -> MqttEnvelopeCodec.decode(otherVersion));
+
+        //a length exceeding the remaining bytes must not allocate or read beyond the array
+        var hugeLength = new byte[]{MqttEnvelopeCodec.MAGIC, MqttEnvelopeCodec.VERSION, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        assertThrows(MqttEnvelopeException.class, () -> MqttEnvelopeCodec.decode(hugeLength));
+    }
+}
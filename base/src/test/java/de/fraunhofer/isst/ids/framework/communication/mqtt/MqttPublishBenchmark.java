@@ -0,0 +1,146 @@
+package de.fraunhofer.isst.ids.framework.communication.mqtt;
+
+import io.moquette.BrokerConstants;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark comparing the synchronous publishing of {@link IDSMQTTCommunication} (one broker round trip per
+ * message) with the pipelined {@link MqttAsyncPublisher}, against an embedded Moquette broker. Every invocation
+ * publishes a batch of messages. Run with the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqttPublishBenchmark {
+
+    private static final String HOST = "127.0.0.1";
+    private static final int PORT = 18830;
+    private static final String TOPIC = "ids/benchmark/telemetry";
+    private static final int BATCH_SIZE = 1000;
+    /**
+     * Property of the broker to flush every write immediately (not part of the BrokerConstants of all versions)
+     */
+    private static final String IMMEDIATE_BUFFER_FLUSH = "immediate_buffer_flush";
+
+    @Param({"1", "2"})
+    private int qos;
+
+    @Param({"16", "64"})
+    private int maxInFlight;
+
+    private Server broker;
+    private MqttClient syncClient;
+    private MqttAsyncPublisher asyncPublisher;
+    private List<byte[]> payloads;
+
+    /**
+     * Start the embedded broker and connect the clients
+     *
+     * @throws IOException if the broker cannot be started
+     * @throws MqttException if the clients cannot connect
+     */
+    @Setup
+    public void setup() throws IOException, MqttException {
+        var properties = new Properties();
+        properties.setProperty(BrokerConstants.HOST_PROPERTY_NAME, HOST);
+        properties.setProperty(BrokerConstants.PORT_PROPERTY_NAME, String.valueOf(PORT));
+        properties.setProperty(BrokerConstants.PERSISTENT_STORE_PROPERTY_NAME, "");
+        properties.setProperty(BrokerConstants.ALLOW_ANONYMOUS_PROPERTY_NAME, "true");
+        //newer brokers buffer their writes and flush them periodically, which would make every window wait for the flush
+        properties.setProperty(IMMEDIATE_BUFFER_FLUSH, "true");
+        broker = new Server();
+        broker.startServer(new MemoryConfig(properties));
+
+        var serverUri = String.format("tcp://%s:%d", HOST, PORT);
+        syncClient = new MqttClient(serverUri, MqttClient.generateClientId(), new MemoryPersistence());
+        //the synchronous client waits for every acknowledgement anyway, but paho completes the token before it releases
+        //the in-flight slot, so the default window of 10 can be exceeded spuriously
+        var syncOptions = new MqttConnectOptions();
+        syncOptions.setMaxInflight(BATCH_SIZE);
+        syncClient.connect(syncOptions);
+
+        var options = new MqttConnectOptions();
+        options.setMaxInflight(maxInFlight);
+        var asyncClient = new MqttAsyncClient(serverUri, MqttAsyncClient.generateClientId(), new MemoryPersistence());
+        asyncClient.connect(options).waitForCompletion();
+        asyncPublisher = new MqttAsyncPublisher(asyncClient, maxInFlight);
+
+        payloads = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            payloads.add(String.format("{\"sensor\" : \"s-%d\", \"value\" : %d}", i % 16, i).getBytes());
+        }
+    }
+
+    /**
+     * Disconnect the clients and stop the broker
+     *
+     * @throws MqttException if the clients cannot be closed
+     */
+    @TearDown
+    public void tearDown() throws MqttException {
+        asyncPublisher.close();
+        syncClient.disconnect();
+        syncClient.close();
+        broker.stopServer();
+    }
+
+    /**
+     * Publish the batch with the synchronous client, waiting for the acknowledgement of every message
+     *
+     * @throws MqttException if a message cannot be published
+     */
+    @Benchmark
+    public void syncPublish() throws MqttException {
+        for (var payload : payloads) {
+            syncClient.publish(TOPIC, payload, qos, false);
+        }
+    }
+
+    /**
+     * Publish the batch pipelined through the in-flight window of the MqttAsyncPublisher
+     */
+    @Benchmark
+    public void asyncPublish() {
+        asyncPublisher.publishAll(TOPIC, payloads, qos).join();
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args not used
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MqttPublishBenchmark.class.getSimpleName()).build()).run();
+    }
+}
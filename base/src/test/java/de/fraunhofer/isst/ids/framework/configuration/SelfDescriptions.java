@@ -0,0 +1,22 @@
+package de.fraunhofer.isst.ids.framework.configuration;
+
+import de.fraunhofer.iais.eis.Connector;
+
+/**
+ * Creates {@link SerializedSelfDescription}s for tests outside of the configuration package
+ */
+public final class SelfDescriptions {
+
+    private SelfDescriptions() {
+    }
+
+    /**
+     * @param version the version of the configuration
+     * @param connector the connector of the self-description
+     * @param json the JsonLD self-description
+     * @return a self-description with the given connector and JsonLD
+     */
+    public static SerializedSelfDescription of(long version, Connector connector, String json) {
+        return new SerializedSelfDescription(version, connector, json);
+    }
+}
@@ -0,0 +1,123 @@
+package de.fraunhofer.isst.ids.framework.daps;
+
+import de.fraunhofer.iais.eis.DynamicAttributeTokenBuilder;
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.iais.eis.RejectionMessageBuilder;
+import de.fraunhofer.iais.eis.RejectionReason;
+import de.fraunhofer.iais.eis.RequestMessageBuilder;
+import de.fraunhofer.iais.eis.TokenFormat;
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.Test;
+
+import java.net.URI;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the verification of the DATs of message batches by the DapsValidator
+ */
+public class DapsValidatorTest {
+
+    private static final URI CONNECTOR = URI.create("https://connector.example.com");
+
+    /**
+     * Results are returned in the order of the messages, valid, expired, foreign and missing tokens are told apart
+     */
+    @Test
+    public void testVerifyAll() throws Exception {
+        var daps = keyPair();
+        var valid = token(daps.getPrivate(), Duration.ofHours(1));
+        var expired = token(daps.getPrivate(), Duration.ofDays(-3));
+        var foreign = token(keyPair().getPrivate(), Duration.ofHours(1));
+
+        var messages = List.of(message(valid), message(expired), message(valid), message(foreign), message(null));
+        var results = DapsValidator.verifyAll(messages, daps.getPublic(), new ForkJoinPool(2));
+
+        assertEquals(messages.size(), results.size());
+        assertTrue(results.get(0).isValid());
+        assertNotNull(results.get(0).getClaims());
+        assertNull(results.get(0).getError());
+        assertFalse(results.get(1).isValid());
+        assertTrue(results.get(2).isValid());
+        //the same token is verified only once
+        assertEquals(results.get(0), results.get(2));
+        assertFalse(results.get(3).isValid());
+        assertNull(results.get(3).getClaims());
+        assertTrue(results.get(3).getError().startsWith("Token could not be parsed: "), results.get(3).getError());
+        assertFalse(results.get(4).isValid());
+    }
+
+    /**
+     * checkDats skips the DAT check of RejectionMessages, like the check of a single message
+     */
+    @Test
+    public void testCheckDatsSkipsRejections() throws Exception {
+        var daps = keyPair();
+        DapsPublicKeyProvider keyProvider = daps::getPublic;
+        var rejection = new RejectionMessageBuilder()
+                ._issuerConnector_(CONNECTOR)
+                ._senderAgent_(CONNECTOR)
+                ._modelVersion_("4.0.0")
+                ._issued_(IDSUtils.getGregorianNow())
+                ._rejectionReason_(RejectionReason.NOT_AUTHENTICATED)
+                ._securityToken_(new DynamicAttributeTokenBuilder()._tokenFormat_(TokenFormat.JWT)._tokenValue_("rejected!").build())
+                .build();
+        var results = new DapsValidator(keyProvider).checkDats(List.of(
+                message(token(daps.getPrivate(), Duration.ofHours(1))), rejection, message("no jwt")));
+        assertEquals(List.of(true, true, false), results);
+    }
+
+    private static KeyPair keyPair() throws Exception {
+        var generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * @param signingKey key the token is signed with
+     * @param validFor time until the token expires (negative for expired tokens)
+     * @return a signed DAT
+     */
+    private static String token(Key signingKey, Duration validFor) {
+        var now = Instant.now();
+        var notBefore = validFor.isNegative() ? now.plus(validFor).minus(Duration.ofDays(1)) : now;
+        return Jwts.builder()
+                .setIssuer("https://daps.example.com")
+                .setSubject("connector")
+                .setNotBefore(Date.from(notBefore))
+                .setIssuedAt(Date.from(notBefore))
+                .setExpiration(Date.from(now.plus(validFor)))
+                .signWith(SignatureAlgorithm.RS256, signingKey)
+                .compact();
+    }
+
+    /**
+     * @param tokenValue DAT of the message (null for a message without security token)
+     * @return a message carrying the DAT
+     */
+    private static Message message(String tokenValue) {
+        var builder = new RequestMessageBuilder()
+                ._issuerConnector_(CONNECTOR)
+                ._senderAgent_(CONNECTOR)
+                ._modelVersion_("4.0.0")
+                ._issued_(IDSUtils.getGregorianNow());
+        if (tokenValue != null) {
+            builder._securityToken_(new DynamicAttributeTokenBuilder()._tokenFormat_(TokenFormat.JWT)._tokenValue_(tokenValue).build());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,97 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import de.fraunhofer.iais.eis.ConfigurationModel;
+import de.fraunhofer.isst.ids.framework.configuration.ClientProperties;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.configuration.KeyStoreManager;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the caching of the OkHttpClients of ClientProfiles and the replacement of the client by the ClientProvider
+ */
+public class ClientProviderTest {
+
+    /**
+     * Profiles with equal settings share one client, independent of their names; the number of cached clients is
+     * bounded for callers building profiles with ever changing timeouts
+     */
+    @Test
+    public void testProfileClientsAreSharedAndBounded() throws Exception {
+        var provider = new ClientProvider(container());
+
+        var first = provider.getClient(ClientProfile.withTimeouts("first", Duration.ofSeconds(5), null, null, null));
+        var second = provider.getClient(ClientProfile.withTimeouts("second", Duration.ofSeconds(5), null, null, null));
+        assertSame(first, second);
+        assertEquals(Duration.ofSeconds(5).toMillis(), first.connectTimeoutMillis());
+        assertNotSame(first, provider.getClient(ClientProfile.withTimeouts("first", Duration.ofSeconds(6), null, null, null)));
+        assertSame(provider.getClient().dispatcher(), first.dispatcher());
+
+        for (int i = 0; i < 10 * ClientProvider.MAX_PROFILE_CLIENTS; i++) {
+            provider.getClientWithTimeouts(Duration.ofMillis(1000 + i), null, null, null);
+        }
+        assertTrue(provider.getProfileClientCount() <= ClientProvider.MAX_PROFILE_CLIENTS);
+    }
+
+    /**
+     * When the trust material changes, calls of the replaced client still running after the drain timeout are cancelled
+     */
+    @Test
+    public void testRunningCallsAreCancelledAfterDrainTimeout() throws Exception {
+        var container = container();
+        var properties = new ClientProperties();
+        properties.setDrainTimeout(Duration.ofMillis(200));
+        var provider = new ClientProvider(container, properties);
+
+        try (var server = new MockWebServer()) {
+            //a large body delivered slowly, the call is still running when the drain timeout expires
+            server.enqueue(new MockResponse().setBody(new Buffer().write(new byte[64 * 1024])).throttleBody(1024, 100, TimeUnit.MILLISECONDS));
+            server.start();
+            var call = provider.getClient().newCall(new Request.Builder().url(server.url("/")).build());
+            var response = call.execute();
+
+            //new trust material: the client is replaced
+            var trustManager = Mockito.mock(X509TrustManager.class);
+            Mockito.when(trustManager.getAcceptedIssuers()).thenReturn(new X509Certificate[0]);
+            var keyStoreManager = Mockito.mock(KeyStoreManager.class);
+            Mockito.when(keyStoreManager.getTrustManager()).thenReturn(trustManager);
+            Mockito.when(container.getKeyManager()).thenReturn(keyStoreManager);
+            provider.updateConfig();
+
+            assertThrows(IOException.class, () -> response.body().bytes());
+            assertTrue(call.isCanceled());
+        }
+    }
+
+    /**
+     * @return a configuration container without proxy, trusting the default CAs of the JDK
+     */
+    public static ConfigurationContainer container() throws Exception {
+        var factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init((KeyStore) null);
+        var keyStoreManager = Mockito.mock(KeyStoreManager.class);
+        Mockito.when(keyStoreManager.getTrustManager()).thenReturn((X509TrustManager) factory.getTrustManagers()[0]);
+        var container = Mockito.mock(ConfigurationContainer.class);
+        Mockito.when(container.getConfigModel()).thenReturn(Mockito.mock(ConfigurationModel.class));
+        Mockito.when(container.getKeyManager()).thenReturn(keyStoreManager);
+        return container;
+    }
+}
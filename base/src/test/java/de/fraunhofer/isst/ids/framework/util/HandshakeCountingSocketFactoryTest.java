@@ -0,0 +1,52 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.net.ssl.SSLSession;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test the classification of completed TLS handshakes
+ */
+public class HandshakeCountingSocketFactoryTest {
+
+    private static final long SOCKET_CREATED = 1_000_000L;
+
+    /**
+     * A TLS 1.2 session created before the socket was taken from the session cache
+     */
+    @Test
+    public void testCachedTls12SessionIsResumption() {
+        assertEquals(HandshakeCountingSocketFactory.Kind.RESUMED,
+                HandshakeCountingSocketFactory.classify(session("TLSv1.2", SOCKET_CREATED - 5000), SOCKET_CREATED));
+    }
+
+    /**
+     * A TLS 1.2 session created during the handshake is a full handshake
+     */
+    @Test
+    public void testNewTls12SessionIsFullHandshake() {
+        assertEquals(HandshakeCountingSocketFactory.Kind.FULL,
+                HandshakeCountingSocketFactory.classify(session("TLSv1.2", SOCKET_CREATED + 20), SOCKET_CREATED));
+    }
+
+    /**
+     * TLS 1.3 sessions are always new objects, resumption cannot be detected
+     */
+    @Test
+    public void testTls13HandshakeIsUnknown() {
+        assertEquals(HandshakeCountingSocketFactory.Kind.UNKNOWN,
+                HandshakeCountingSocketFactory.classify(session("TLSv1.3", SOCKET_CREATED + 20), SOCKET_CREATED));
+        assertEquals(HandshakeCountingSocketFactory.Kind.UNKNOWN,
+                HandshakeCountingSocketFactory.classify(session("TLSv1.3", SOCKET_CREATED - 5000), SOCKET_CREATED));
+    }
+
+    private static SSLSession session(String protocol, long creationTime) {
+        var session = Mockito.mock(SSLSession.class);
+        Mockito.when(session.getProtocol()).thenReturn(protocol);
+        Mockito.when(session.getCreationTime()).thenReturn(creationTime);
+        return session;
+    }
+}
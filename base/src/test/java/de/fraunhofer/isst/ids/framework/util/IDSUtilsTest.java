@@ -10,11 +10,14 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 /**
  * Test generating an OkHttpClient from a KeyStoreManager
  */
@@ -50,4 +53,12 @@ public class IDSUtilsTest {
         var provider = new ClientProvider(container);
         var client = provider.getClient();
     }
-}
\ No newline at end of file
+
+    /**
+     * sha256 returns the Base64 encoded SHA-256 hash (test vector of FIPS 180-2)
+     */
+    @Test
+    public void testSha256() {
+        assertEquals("ungWv48Bz+pBQUDeXa4iI7ADYaOWF3qctBD/YfIAFa0=", IDSUtils.sha256("abc".getBytes(StandardCharsets.UTF_8)));
+    }
+}
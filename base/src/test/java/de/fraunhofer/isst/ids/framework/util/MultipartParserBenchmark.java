@@ -0,0 +1,173 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import okhttp3.MultipartBody;
+import okio.Buffer;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.UploadContext;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark comparing the byte-level {@link MultipartParser} with the previous commons-fileupload based
+ * implementation of the {@link MultipartStringParser}. Run with the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultipartParserBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    private int payloadSize;
+
+    private byte[] body;
+    private String bodyString;
+
+    /**
+     * Build an IDS multipart message with a JsonLD header and a payload of the configured size
+     *
+     * @throws IOException if the body cannot be written
+     */
+    @Setup
+    public void setup() throws IOException {
+        var payload = new char[payloadSize];
+        Arrays.fill(payload, 'x');
+        var multipart = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("header", "{\"@context\" : {\"ids\" : \"https://w3id.org/idsa/core/\"}, \"@type\" : \"ids:ArtifactResponseMessage\", \"@id\" : \"https://w3id.org/idsa/autogen/artifactResponseMessage/1\"}")
+                .addFormDataPart("payload", new String(payload))
+                .build();
+        var buffer = new Buffer();
+        multipart.writeTo(buffer);
+        body = buffer.readByteArray();
+        bodyString = new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return parts of the body parsed with the previous commons-fileupload based implementation
+     * @throws FileUploadException if the body cannot be parsed
+     */
+    @Benchmark
+    public Map<String, String> legacyStringParser() throws FileUploadException {
+        return LegacyMultipartStringParser.stringToMultipart(bodyString);
+    }
+
+    /**
+     * @return parts of the body parsed with the MultipartStringParser (encodes the String and uses the MultipartParser)
+     * @throws FileUploadException if the body cannot be parsed
+     */
+    @Benchmark
+    public Map<String, String> stringParser() throws FileUploadException {
+        return MultipartStringParser.stringToMultipart(bodyString);
+    }
+
+    /**
+     * @return parts of the body parsed with the MultipartParser directly on the bytes, with decoded payloads
+     * @throws FileUploadException if the body cannot be parsed
+     */
+    @Benchmark
+    public Map<String, String> byteParser() throws FileUploadException {
+        var parts = new HashMap<String, String>();
+        for (var part : MultipartParser.parse(body)) {
+            parts.put(part.getName(), part.getString());
+        }
+        return parts;
+    }
+
+    /**
+     * @return parts of the body parsed with the MultipartParser directly on the bytes, without decoding the payloads
+     * @throws FileUploadException if the body cannot be parsed
+     */
+    @Benchmark
+    public List<MultipartPart> byteParserSlices() throws FileUploadException {
+        return MultipartParser.parse(body);
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param args not used
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MultipartParserBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * The commons-fileupload based MultipartStringParser before it was replaced by the {@link MultipartParser}
+     */
+    private static final class LegacyMultipartStringParser implements UploadContext {
+
+        private final String postBody;
+        private final String boundary;
+        private final Map<String, String> parameters = new HashMap<>();
+
+        static Map<String, String> stringToMultipart(String postBody) throws FileUploadException {
+            return new LegacyMultipartStringParser(postBody).parameters;
+        }
+
+        private LegacyMultipartStringParser(String postBody) throws FileUploadException {
+            this.postBody = postBody;
+            this.boundary = postBody.substring(2, postBody.indexOf('\n')).trim();
+            var upload = new FileUpload(new DiskFileItemFactory());
+            List<FileItem> fileItems = upload.parseRequest(this);
+            for (FileItem fileItem : fileItems) {
+                if (fileItem.isFormField()) {
+                    parameters.put(fileItem.getFieldName(), fileItem.getString());
+                }
+            }
+        }
+
+        @Override
+        public long contentLength() {
+            return postBody.length();
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return "Cp1252";
+        }
+
+        @Override
+        public String getContentType() {
+            return "multipart/form-data, boundary=" + this.boundary;
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new ByteArrayInputStream(postBody.getBytes());
+        }
+    }
+}
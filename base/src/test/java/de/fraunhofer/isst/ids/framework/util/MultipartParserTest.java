@@ -0,0 +1,85 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import org.apache.commons.fileupload.FileUploadException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test parsing multipart bodies with the MultipartParser
+ */
+public class MultipartParserTest {
+
+    /**
+     * parse a multipart body built by OkHttp into its parts
+     * @throws IOException if the body cannot be written
+     * @throws FileUploadException if the body cannot be parsed
+     */
+    @Test
+    public void testParseParts() throws IOException, FileUploadException {
+        var body = new MultipartBody.Builder("boundary-1234")
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("header", "{\"@type\" : \"ids:RequestMessage\"}")
+                .addFormDataPart("payload", "file.txt", RequestBody.create("line1\r\n--boundary-123\r\nline3", MediaType.parse("text/plain; charset=ISO-8859-1")))
+                .build();
+        var parts = MultipartParser.parse(toBytes(body));
+
+        assertEquals(2, parts.size());
+        assertEquals("header", parts.get(0).getName());
+        assertTrue(parts.get(0).isFormField());
+        assertEquals("{\"@type\" : \"ids:RequestMessage\"}", parts.get(0).getString());
+        assertEquals("payload", parts.get(1).getName());
+        assertEquals("file.txt", parts.get(1).getFilename());
+        assertFalse(parts.get(1).isFormField());
+        assertEquals(StandardCharsets.ISO_8859_1, parts.get(1).getCharset());
+        assertEquals("line1\r\n--boundary-123\r\nline3", parts.get(1).getString());
+        assertTrue(parts.get(1).getContent().isReadOnly());
+    }
+
+    /**
+     * non ASCII content is decoded as UTF-8 by default and survives the String based parser
+     * @throws IOException if the body cannot be written
+     * @throws FileUploadException if the body cannot be parsed
+     */
+    @Test
+    public void testUtf8Content() throws IOException, FileUploadException {
+        var payload = "Grüße, 数据 😀";
+        var body = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("header", "{}")
+                .addFormDataPart("payload", payload)
+                .build();
+        var bytes = toBytes(body);
+
+        assertEquals(payload, MultipartParser.parse(ByteBuffer.wrap(bytes).asReadOnlyBuffer()).get(1).getString());
+        var map = MultipartStringParser.stringToMultipart(new String(bytes, StandardCharsets.UTF_8));
+        assertEquals("{}", map.get("header"));
+        assertEquals(payload, map.get("payload"));
+    }
+
+    /**
+     * bodies without (close) delimiter are rejected
+     */
+    @Test
+    public void testInvalidBody() {
+        assertThrows(MultipartParseException.class, () -> MultipartParser.parse("no multipart".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(MultipartParseException.class, () -> MultipartParser.parse("--b\r\nContent-Disposition: form-data; name=\"header\"\r\n\r\n{}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] toBytes(MultipartBody body) throws IOException {
+        var buffer = new Buffer();
+        body.writeTo(buffer);
+        return buffer.readByteArray();
+    }
+}
@@ -0,0 +1,63 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test matching hosts against compiled NoProxy entries
+ */
+public class NoProxyMatcherTest {
+
+    /**
+     * URIs and hosts in the NoProxy list match the host exactly, independent of scheme, port and path
+     */
+    @Test
+    public void testExactHosts() {
+        var matcher = NoProxyMatcher.compile(List.of(URI.create("https://broker.example.com:8080"), "Localhost", "[::1]"));
+
+        assertTrue(matcher.matches(URI.create("https://broker.example.com:8080")));
+        assertTrue(matcher.matches(URI.create("http://broker.example.com/infrastructure")));
+        assertTrue(matcher.matches(URI.create("http://localhost:8081/api/ids/data")));
+        assertTrue(matcher.matches(URI.create("http://[::1]:8080")));
+        assertFalse(matcher.matches(URI.create("https://sub.broker.example.com")));
+        assertFalse(matcher.matches(URI.create("https://example.com")));
+    }
+
+    /**
+     * wildcard entries match all subdomains, but not the domain itself
+     */
+    @Test
+    public void testDomainSuffixes() {
+        var matcher = NoProxyMatcher.compile(List.of("*.example.com", ".internal"));
+
+        assertTrue(matcher.matches("broker.example.com"));
+        assertTrue(matcher.matches("a.b.EXAMPLE.com"));
+        assertTrue(matcher.matches("daps.internal"));
+        assertFalse(matcher.matches("example.com"));
+        assertFalse(matcher.matches("notexample.com"));
+        assertFalse(matcher.matches("example.com.evil.org"));
+    }
+
+    /**
+     * CIDR entries match IP literals in the range, hostnames are not resolved
+     */
+    @Test
+    public void testCidrRanges() {
+        var matcher = NoProxyMatcher.compile(List.of("10.0.0.0/8", "192.168.1.128/25", "fd00::/8"));
+
+        assertTrue(matcher.matches("10.1.2.3"));
+        assertTrue(matcher.matches("192.168.1.200"));
+        assertTrue(matcher.matches("[fd12::1]"));
+        assertFalse(matcher.matches("192.168.1.100"));
+        assertFalse(matcher.matches("11.0.0.1"));
+        assertFalse(matcher.matches("300.0.0.1"));
+        assertFalse(matcher.matches("localhost"));
+        assertTrue(NoProxyMatcher.compile(List.of("*")).matches("anything.example.org"));
+        assertFalse(NoProxyMatcher.compile(List.of()).matches("localhost"));
+    }
+}
@@ -0,0 +1,91 @@
+package de.fraunhofer.isst.ids.framework.messaging.handling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Enforces the request size limit of the batch routes (see {@link IDSEndpointService#addBatchMapping(String)}) before
+ * the multipart body is parsed and buffered by the servlet container. The limit is <code>messaging.batch.max-size</code>
+ * times <code>messaging.batch.max-message-size</code> (default 1 MiB per message). Batches must be sent with a
+ * Content-Length, larger ones are rejected with 413, ones without Content-Length with 411.
+ */
+@Component
+public class BatchRequestSizeFilter extends OncePerRequestFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchRequestSizeFilter.class);
+
+    private final Set<String> batchPaths = ConcurrentHashMap.newKeySet();
+    private final long maxRequestSize;
+
+    /**
+     * Create a filter for the batch routes
+     *
+     * @param maxBatchSize max number of messages of a batch (property <code>messaging.batch.max-size</code>)
+     * @param maxMessageSize max size of one message of a batch in bytes (property <code>messaging.batch.max-message-size</code>)
+     */
+    public BatchRequestSizeFilter(@Value("${messaging.batch.max-size:100}") final int maxBatchSize,
+                                  @Value("${messaging.batch.max-message-size:1048576}") final long maxMessageSize) {
+        this.maxRequestSize = maxBatchSize * maxMessageSize;
+    }
+
+    /**
+     * Add a path whose requests are checked
+     *
+     * @param path the path of a batch route
+     */
+    public void addBatchPath(final String path) {
+        batchPaths.add(path);
+    }
+
+    /**
+     * Remove a path, its requests are no longer checked
+     *
+     * @param path the path of a (former) batch route
+     */
+    public void removeBatchPath(final String path) {
+        batchPaths.remove(path);
+    }
+
+    /**
+     * @return max size of a batch request in bytes
+     */
+    public long getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) {
+        return !batchPaths.contains(request.getRequestURI().substring(request.getContextPath().length()));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response,
+                                    final FilterChain filterChain) throws ServletException, IOException {
+        var length = request.getContentLengthLong();
+        if (length < 0) {
+            LOGGER.debug("incoming batch has no Content-Length!");
+            response.sendError(HttpStatus.LENGTH_REQUIRED.value(), "Batch must be sent with a Content-Length!");
+            return;
+        }
+        if (length > maxRequestSize) {
+            LOGGER.debug(String.format("incoming batch has %d bytes, more than %d!", length, maxRequestSize));
+            response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(), String.format("Batch must not be larger than %d bytes!", maxRequestSize));
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
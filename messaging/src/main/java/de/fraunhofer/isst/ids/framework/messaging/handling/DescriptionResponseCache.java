@@ -0,0 +1,333 @@
+package de.fraunhofer.isst.ids.framework.messaging.handling;
+
+import de.fraunhofer.iais.eis.DescriptionRequestMessage;
+import de.fraunhofer.iais.eis.DescriptionResponseMessage;
+import de.fraunhofer.iais.eis.DescriptionResponseMessageBuilder;
+import de.fraunhofer.iais.eis.DescriptionResponseMessageImpl;
+import de.fraunhofer.iais.eis.DynamicAttributeToken;
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.daps.DapsTokenProvider;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.BodyResponse;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.MessageResponse;
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for the responses to {@link DescriptionRequestMessage}s, keyed by message type and requested element.
+ * The encoded payload of the response is stored, so the {@link de.fraunhofer.isst.ids.framework.messaging.model.messages.MessageHandler}
+ * does not have to run again for the same request. The header returned by the handler is kept as well, only its
+ * per-request fields (id, DAT, correlation message, recipient connector and issued) are replaced for every request.
+ *
+ * The cache is bounded by the (estimated) memory of the stored payloads and evicts the least recently used entries,
+ * entries expire after a maximum age, and all entries are dropped on every configuration update of the
+ * {@link ConfigurationContainer} (the model may have been changed in place, so old and new model cannot be compared). Responses of handlers which were already running when the cache was
+ * invalidated are not stored (see {@link #getGeneration()}).
+ *
+ * Every requester of the same element gets the same response, so the cache must only be used if the responses of the
+ * DescriptionRequest handlers do not depend on the requesting connector.
+ */
+public class DescriptionResponseCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DescriptionResponseCache.class);
+
+    /**
+     * Estimated memory used by an entry besides its payload (header object, key, map node)
+     */
+    private static final long ENTRY_OVERHEAD_BYTES = 2048;
+
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final LinkedHashMap<CacheKey, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0;
+    private long generation = 0;
+    private final DapsTokenProvider tokenProvider;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a DescriptionResponseCache
+     *
+     * @param maxBytes the maximum (estimated) amount of memory used by the cached payloads
+     * @param maxAge the maximum age of a cached response
+     * @param tokenProvider provides the current DAT for the headers of cached responses
+     */
+    public DescriptionResponseCache(long maxBytes, Duration maxAge, DapsTokenProvider tokenProvider) {
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAge.toMillis();
+        this.tokenProvider = tokenProvider;
+    }
+
+    /**
+     * Create a DescriptionResponseCache, which is invalidated on every configuration update
+     * of the given {@link ConfigurationContainer}
+     *
+     * @param maxBytes the maximum (estimated) amount of memory used by the cached payloads
+     * @param maxAge the maximum age of a cached response
+     * @param tokenProvider provides the current DAT for the headers of cached responses
+     * @param configurationContainer the container managing the connector configuration
+     */
+    public DescriptionResponseCache(long maxBytes, Duration maxAge, DapsTokenProvider tokenProvider, ConfigurationContainer configurationContainer) {
+        this(maxBytes, maxAge, tokenProvider);
+        configurationContainer.addUpdateListener((oldModel, newModel) -> {
+            LOGGER.debug("Configuration updated, invalidating cached description responses");
+            invalidate();
+        });
+    }
+
+    /**
+     * Check if a response for the given message could be cached
+     *
+     * @param header header of an incoming message
+     * @return true if the message is a DescriptionRequestMessage
+     */
+    public boolean isCacheable(Message header) {
+        return header instanceof DescriptionRequestMessage;
+    }
+
+    /**
+     * Get the cached response for the given message, with a response header correlating to it
+     *
+     * @param header header of an incoming DescriptionRequestMessage
+     * @return the cached response or Optional.Empty if no (valid) response is cached
+     */
+    public Optional<MessageResponse> lookup(Message header) {
+        if(!isCacheable(header)){
+            return Optional.empty();
+        }
+        var key = CacheKey.of((DescriptionRequestMessage) header);
+        CacheEntry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if(entry != null && entry.isExpired(maxAgeMillis)){
+                LOGGER.debug("Cached description response expired");
+                remove(key);
+                entry = null;
+            }
+        }
+        if(entry == null){
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        LOGGER.debug(String.format("Answering %s from the description response cache", header.getId()));
+        return Optional.of(BodyResponse.create(entry.correlatedHeader(header, tokenProvider.getDAT()), entry.payload));
+    }
+
+    /**
+     * Get the current generation of the cache, which is incremented by every {@link #invalidate()}. Take the
+     * generation before calling the MessageHandler and pass it to {@link #store(Message, MessageResponse, long)},
+     * so a response built from a description that changed in the meantime is not stored.
+     *
+     * @return the current generation
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Store the response of a {@link de.fraunhofer.isst.ids.framework.messaging.model.messages.MessageHandler}
+     * for the given request, if it can be cached (a BodyResponse with DescriptionResponseMessage header and
+     * String or byte[] payload) and the cache was not invalidated since the handler was called
+     *
+     * @param header header of the incoming DescriptionRequestMessage
+     * @param response the response returned by the MessageHandler
+     * @param generation the generation of the cache before the MessageHandler was called (see {@link #getGeneration()})
+     */
+    public void store(Message header, MessageResponse response, long generation) {
+        if(!isCacheable(header) || !(response instanceof BodyResponse)){
+            return;
+        }
+        var bodyResponse = (BodyResponse<?>) response;
+        if(!(bodyResponse.getHeader() instanceof DescriptionResponseMessage)){
+            return;
+        }
+        var payload = bodyResponse.getPayload();
+        long size;
+        if(payload instanceof String){
+            size = 2L * ((String) payload).length();
+        } else if(payload instanceof byte[]){
+            size = ((byte[]) payload).length;
+        } else {
+            return;
+        }
+        size += ENTRY_OVERHEAD_BYTES;
+        if(size > maxBytes){
+            LOGGER.debug("Description response is too large to be cached");
+            return;
+        }
+        var entry = new CacheEntry((DescriptionResponseMessage) bodyResponse.getHeader(), payload, size, System.currentTimeMillis());
+        synchronized (this) {
+            if(generation != this.generation){
+                LOGGER.debug("Cache was invalidated while the description response was built, response is not cached");
+                return;
+            }
+            var key = CacheKey.of((DescriptionRequestMessage) header);
+            remove(key);
+            entries.put(key, entry);
+            usedBytes += size;
+            evict();
+        }
+    }
+
+    /**
+     * Drop all cached responses
+     */
+    public synchronized void invalidate() {
+        generation++;
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * @return the number of cached responses
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated memory used by the cached responses
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of cacheable requests that were not found in the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Remove the entry with the given key (caller must hold the lock)
+     *
+     * @param key key of the entry
+     */
+    private void remove(CacheKey key) {
+        var old = entries.remove(key);
+        if(old != null){
+            usedBytes -= old.size;
+        }
+    }
+
+    /**
+     * Evict least recently used entries until the memory bound is met (caller must hold the lock)
+     */
+    private void evict() {
+        var iterator = entries.values().iterator();
+        while(usedBytes > maxBytes && iterator.hasNext()){
+            usedBytes -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Key of a cached response: type of the request and the requested element (null for the self-description)
+     */
+    private static final class CacheKey {
+        private final Class<?> messageType;
+        private final URI requestedElement;
+
+        private CacheKey(Class<?> messageType, URI requestedElement) {
+            this.messageType = messageType;
+            this.requestedElement = requestedElement;
+        }
+
+        static CacheKey of(DescriptionRequestMessage header) {
+            return new CacheKey(header.getClass(), header.getRequestedElement());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            var that = (CacheKey) o;
+            return messageType.equals(that.messageType) && Objects.equals(requestedElement, that.requestedElement);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(messageType, requestedElement);
+        }
+    }
+
+    /**
+     * A cached response: the header returned by the handler (used as template, except for its per-request fields) and the encoded payload
+     */
+    private static final class CacheEntry {
+        private final DescriptionResponseMessage header;
+        private final Object payload;
+        private final long size;
+        private final long createdAt;
+
+        private CacheEntry(DescriptionResponseMessage header, Object payload, long size, long createdAt) {
+            this.header = header;
+            this.payload = payload;
+            this.size = size;
+            this.createdAt = createdAt;
+        }
+
+        boolean isExpired(long maxAgeMillis) {
+            return System.currentTimeMillis() - createdAt > maxAgeMillis;
+        }
+
+        /**
+         * Build a copy of the cached header with a new id, which correlates to the given request. All other fields
+         * (including custom properties) are taken from the header returned by the handler.
+         *
+         * @param request the incoming request
+         * @param securityToken the current DAT of the connector (the DAT of the cached header may have expired)
+         * @return a DescriptionResponseMessage for the request
+         */
+        DescriptionResponseMessage correlatedHeader(Message request, DynamicAttributeToken securityToken) {
+            var recipients = new ArrayList<URI>();
+            if(request.getIssuerConnector() != null){
+                recipients.add(request.getIssuerConnector());
+            }
+            var builder = new DescriptionResponseMessageBuilder()
+                    ._securityToken_(securityToken)
+                    ._recipientConnector_(recipients)
+                    ._correlationMessage_(request.getId())
+                    ._issued_(IDSUtils.getGregorianNow())
+                    ._issuerConnector_(header.getIssuerConnector())
+                    ._senderAgent_(header.getSenderAgent())
+                    ._modelVersion_(header.getModelVersion())
+                    ._transferContract_(header.getTransferContract())
+                    ._contentVersion_(header.getContentVersion())
+                    ._authorizationToken_(header.getAuthorizationToken());
+            if(header.getRecipientAgent() != null){
+                builder._recipientAgent_(new ArrayList<>(header.getRecipientAgent()));
+            }
+            if(header.getComment() != null){
+                builder._comment_(new ArrayList<>(header.getComment()));
+            }
+            if(header.getLabel() != null){
+                builder._label_(new ArrayList<>(header.getLabel()));
+            }
+            var copy = builder.build();
+            if(header.getProperties() != null && copy instanceof DescriptionResponseMessageImpl){
+                header.getProperties().forEach(((DescriptionResponseMessageImpl) copy)::setProperty);
+            }
+            return copy;
+        }
+    }
+}
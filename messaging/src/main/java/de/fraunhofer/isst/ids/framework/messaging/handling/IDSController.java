@@ -2,11 +2,15 @@ package de.fraunhofer.isst.ids.framework.messaging.handling;
 
 import de.fraunhofer.iais.eis.*;
 import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+import de.fraunhofer.isst.ids.framework.communication.http.BatchPartNames;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
 import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreProcessingException;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.ErrorResponse;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.MessageResponse;
 import de.fraunhofer.isst.ids.framework.util.IDSUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -17,13 +21,17 @@ import org.springframework.util.MultiValueMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.Part;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.TreeMap;
 
 /**
  * REST controller for handling all incoming IDS multipart Messages
@@ -39,6 +47,9 @@ public class IDSController {
     private final ConfigurationContainer configurationContainer;
     private final Serializer serializer;
 
+    @Value("${messaging.batch.max-size:100}")
+    private int maxBatchSize = 100;
+
     @Autowired
     public IDSController(final MessageDispatcher messageDispatcher,
                          final Serializer serializer,
@@ -103,6 +114,99 @@ public class IDSController {
         }
     }
 
+    /**
+     * Handle a batch of incoming ids messages, carried as <code>header-n</code> and <code>payload-n</code> parts
+     * (see {@link BatchPartNames}). The messages are processed in parallel by the MessageDispatcher, the responses are
+     * returned as one multipart response, where the response to message n is found in the parts with index n.
+     * Batches with more than <code>messaging.batch.max-size</code> messages are rejected, the size of the whole request
+     * is limited by the {@link BatchRequestSizeFilter} before its parts are parsed.
+     * Unlike single messages, batches are not handled in a transaction, the MessageHandlers run on the batch executor
+     * of the MessageDispatcher (see {@link MessageDispatcher#processBatch(List, List)}).
+     *
+     * @param request incoming http request
+     * @return multipart MultivalueMap containing the ResponseMessage headers and payloads of all messages of the batch
+     */
+    public ResponseEntity<MultiValueMap<String, Object>> handleIDSBatch(final HttpServletRequest request) {
+        try {
+            var headerParts = new TreeMap<Integer, Part>();
+            var payloadParts = new TreeMap<Integer, Part>();
+            for (var part : request.getParts()) {
+                var index = BatchPartNames.indexOf(part.getName());
+                if (index < 0) {
+                    continue;
+                }
+                if (BatchPartNames.isHeader(part.getName())) {
+                    headerParts.put(index, part);
+                    if (headerParts.size() > maxBatchSize) {
+                        log.debug(String.format("incoming batch contains more than %d messages!", maxBatchSize));
+                        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(createDefaultErrorMessage(RejectionReason.BAD_PARAMETERS, String.format("Batch must not contain more than %d messages!", maxBatchSize)));
+                    }
+                } else {
+                    payloadParts.put(index, part);
+                }
+            }
+            if (headerParts.isEmpty()) {
+                log.debug("incoming batch did not contain any header!");
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(createDefaultErrorMessage(RejectionReason.MALFORMED_MESSAGE, "Batch did not contain any header!"));
+            }
+
+            //responses for messages which cannot be parsed are created directly, all others are processed by the dispatcher
+            var responses = new TreeMap<Integer, MessageResponse>();
+            var indices = new ArrayList<Integer>();
+            var headers = new ArrayList<Message>();
+            var payloads = new ArrayList<InputStream>();
+            for (var entry : headerParts.entrySet()) {
+                try {
+                    String input;
+                    try (Scanner scanner = new Scanner(entry.getValue().getInputStream(), StandardCharsets.UTF_8.name())) {
+                        input = scanner.useDelimiter("\\A").next();
+                    }
+                    var header = serializer.deserialize(input, Message.class);
+                    var payloadPart = payloadParts.get(entry.getKey());
+                    indices.add(entry.getKey());
+                    headers.add(header);
+                    payloads.add(payloadPart == null ? null : payloadPart.getInputStream());
+                } catch (IOException e) {
+                    log.warn(String.format("message %d of incoming batch could not be parsed!", entry.getKey()));
+                    responses.put(entry.getKey(), ErrorResponse.withDefaultHeader(RejectionReason.MALFORMED_MESSAGE, "Could not parse incoming message!",
+                            configurationContainer.getConnector().getId(), configurationContainer.getConnector().getOutboundModelVersion()));
+                }
+            }
+
+            log.debug(String.format("hand %d messages of incoming batch to the message dispatcher!", headers.size()));
+            var processed = this.messageDispatcher.processBatch(headers, payloads);
+            for (int i = 0; i < processed.size(); i++) {
+                responses.put(indices.get(i), processed.get(i));
+            }
+
+            var responseAsMap = new LinkedMultiValueMap<String, Object>();
+            for (var entry : responses.entrySet()) {
+                var parts = entry.getValue().createMultipartMap(serializer);
+                if (parts.get(HEADER_MULTIPART_NAME) != null) {
+                    responseAsMap.put(BatchPartNames.header(entry.getKey()), List.of(parts.get(HEADER_MULTIPART_NAME)));
+                }
+                if (parts.get(PAYLOAD_MULTIPART_NAME) != null) {
+                    responseAsMap.put(BatchPartNames.payload(entry.getKey()), List.of(parts.get(PAYLOAD_MULTIPART_NAME)));
+                }
+            }
+
+            log.debug("sending batch response with status OK (200)");
+            return ResponseEntity
+                    .status(HttpStatus.OK)
+                    .contentType(MediaType.MULTIPART_FORM_DATA)
+                    .body(responseAsMap);
+
+        } catch (IOException e){
+            log.warn("incoming batch could not be parsed!");
+            log.warn(e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(createDefaultErrorMessage(RejectionReason.MALFORMED_MESSAGE, "Could not parse incoming batch!"));
+        } catch (ServletException e){
+            log.warn("incoming request was not multipart!");
+            log.warn(e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(createDefaultErrorMessage(RejectionReason.INTERNAL_RECIPIENT_ERROR, String.format("Could not read incoming request! Error: %s", e.getMessage())));
+        }
+    }
+
     /**
      * Create a Spring {@link MultiValueMap} from a {@link java.util.Map}
      *
@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -22,20 +23,30 @@ public class IDSEndpointService {
 
     private IDSController idsController;
     private RequestMappingHandlerMapping requestMappingHandlerMapping;
+    private BatchRequestSizeFilter batchRequestSizeFilter;
 
     /**
-     * Use <code>/api/ids/data</code> and <code>/api/ids/infrastructure</code> routes as default mappings
+     * Use <code>/api/ids/data</code> and <code>/api/ids/infrastructure</code> routes as default mappings,
+     * and <code>/api/ids/batch</code> as mapping for batched messages if batches are enabled
      *
      * @param idsController the {@link IDSController} which will be mapped
      * @param requestMappingHandlerMapping for managing Springs http route mappings
+     * @param batchRequestSizeFilter enforcing the request size limit of the batch routes
+     * @param batchEnabled true to map <code>/api/ids/batch</code> (property <code>messaging.batch.enabled</code>)
      */
     @Autowired
-    public IDSEndpointService(IDSController idsController, RequestMappingHandlerMapping requestMappingHandlerMapping) {
+    public IDSEndpointService(IDSController idsController, RequestMappingHandlerMapping requestMappingHandlerMapping,
+                              BatchRequestSizeFilter batchRequestSizeFilter,
+                              @Value("${messaging.batch.enabled:false}") boolean batchEnabled) {
         this.idsController = idsController;
         this.requestMappingHandlerMapping = requestMappingHandlerMapping;
+        this.batchRequestSizeFilter = batchRequestSizeFilter;
         LOGGER.debug("Adding default mappings");
         addMapping("/api/ids/data");
         addMapping("/api/ids/infrastructure");
+        if (batchEnabled) {
+            addBatchMapping("/api/ids/batch");
+        }
     }
 
     /**
@@ -55,7 +66,25 @@ public class IDSEndpointService {
     }
 
     /**
-     * Remove an endpoint from the IDSController.
+     * Add another endpoint for batched messages to the IDSController, the size of its requests is limited by the
+     * {@link BatchRequestSizeFilter}.
+     *
+     * @param url the url for which a route to the batch handling of {@link IDSController} should be added
+     */
+    public void addBatchMapping(String url){
+        LOGGER.debug(String.format("Adding a batch mapping for url %s", url));
+        RequestMappingInfo requestMappingInfo = getRequestMappingInfo(url);
+        batchRequestSizeFilter.addBatchPath(url);
+        try {
+            requestMappingHandlerMapping.registerMapping(requestMappingInfo, idsController, IDSController.class.getDeclaredMethod("handleIDSBatch", HttpServletRequest.class));
+        } catch (NoSuchMethodException e) {
+            //cannot happen, method exists
+            LOGGER.error("IDSController could not be found for mapping route!");
+        }
+    }
+
+    /**
+     * Remove an endpoint (single or batch) from the IDSController.
      *
      * @param url the url for which the {@link IDSController} should be unmapped for (RequestMappingInfo is deleted)
      */
@@ -63,6 +92,7 @@ public class IDSEndpointService {
         LOGGER.debug(String.format("Remove mapping for url %s", url));
         RequestMappingInfo requestMappingInfo = getRequestMappingInfo(url);
         requestMappingHandlerMapping.unregisterMapping(requestMappingInfo);
+        batchRequestSizeFilter.removeBatchPath(url);
     }
 
     @NotNull
@@ -0,0 +1,358 @@
+package de.fraunhofer.isst.ids.framework.messaging.handling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.iais.eis.RejectionReason;
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+import de.fraunhofer.isst.ids.framework.communication.mqtt.IDSMQTTCommunication;
+import de.fraunhofer.isst.ids.framework.communication.mqtt.MqttEnvelope;
+import de.fraunhofer.isst.ids.framework.communication.mqtt.MqttEnvelopeCodec;
+import de.fraunhofer.isst.ids.framework.communication.mqtt.MqttEnvelopeException;
+import de.fraunhofer.isst.ids.framework.communication.mqtt.ProtocolMqtt;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreDispatchingFilterResult;
+import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreProcessingException;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.ErrorResponse;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.MessageResponse;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MQTT transport for incoming IDS messages: subscribes to a request topic with the {@link IDSMQTTCommunication},
+ * decodes the received {@link MqttEnvelope}s (see {@link MqttEnvelopeCodec}) and hands them to the
+ * {@link MessageDispatcher}, so they pass the same PreDispatchingFilters, DAT verification and MessageHandlers as
+ * messages received by the {@link IDSController}. The response is published as envelope with the QoS and client of
+ * the request topic:
+ * <ul>
+ *     <li>to the reply topic of the request, if its DAT is valid and the reply topic starts with the reply topic prefix
+ *     of the binding (see {@link #setReplyTopicPrefix(String)}), the envelope itself is not authenticated</li>
+ *     <li>else to the default reply topic of the binding, if there is one</li>
+ * </ul>
+ * Messages are processed on the executor of the binding (default: {@link #createExecutor(int, int)} with
+ * {@link #DEFAULT_THREADS} threads and a queue of {@link #DEFAULT_QUEUE_CAPACITY} messages, further messages are
+ * dropped), never on the thread of the MQTT client, which must be free to receive the acknowledgements of the
+ * published responses.
+ */
+public class IDSMqttBinding {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IDSMqttBinding.class);
+
+    /**
+     * Default max number of threads processing the received messages
+     */
+    public static final int DEFAULT_THREADS = 8;
+    /**
+     * Default max number of received messages waiting for a thread
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final MessageDispatcher messageDispatcher;
+    private final Serializer serializer;
+    private final ObjectMapper objectMapper;
+    private final ConfigurationContainer configurationContainer;
+    private final IDSMQTTCommunication communication;
+    private Executor executor = createExecutor(DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+    private volatile String replyTopicPrefix;
+
+    /**
+     * Create an IDSMqttBinding
+     *
+     * @param messageDispatcher the dispatcher processing the incoming messages
+     * @param serializer infomodel serializer for the message headers
+     * @param objectMapper used to serialize response payloads which are neither Strings nor byte arrays
+     * @param configurationContainer the connector configuration (for the headers of rejection messages)
+     * @param communication MQTT communication used for subscribing and publishing the responses
+     */
+    public IDSMqttBinding(final MessageDispatcher messageDispatcher,
+                          final Serializer serializer,
+                          final ObjectMapper objectMapper,
+                          final ConfigurationContainer configurationContainer,
+                          final IDSMQTTCommunication communication) {
+        this.messageDispatcher = messageDispatcher;
+        this.serializer = serializer;
+        this.objectMapper = objectMapper;
+        this.configurationContainer = configurationContainer;
+        this.communication = communication;
+    }
+
+    /**
+     * Set the Executor the incoming messages are processed with (default: {@link #createExecutor(int, int)} with
+     * {@link #DEFAULT_THREADS} threads and a queue of {@link #DEFAULT_QUEUE_CAPACITY} messages). Messages rejected
+     * by the executor are dropped, it must not run them on the calling thread of the MQTT client.
+     *
+     * @param executor the executor the messages are handled with
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Set the prefix the reply topics of requests must start with (default: null, reply topics of requests are not used).
+     *
+     * @param replyTopicPrefix prefix of the allowed reply topics, e.g. "ids/replies/"
+     * @throws IllegalArgumentException if the prefix is empty or contains wildcards
+     */
+    public void setReplyTopicPrefix(final String replyTopicPrefix) {
+        if (replyTopicPrefix != null && (replyTopicPrefix.isEmpty() || hasWildcard(replyTopicPrefix))) {
+            throw new IllegalArgumentException(String.format("Invalid reply topic prefix: %s", replyTopicPrefix));
+        }
+        this.replyTopicPrefix = replyTopicPrefix;
+    }
+
+    /**
+     * Create a bounded executor for processing the received messages: at most the given number of threads (which are
+     * stopped when idle) and a bounded queue of waiting messages. Messages which do not fit into the queue are rejected.
+     *
+     * @param threads max number of threads processing messages
+     * @param queueCapacity max number of messages waiting for a thread
+     * @return the executor
+     */
+    public static Executor createExecutor(final int threads, final int queueCapacity) {
+        var threadCount = new AtomicInteger();
+        var executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueCapacity), runnable -> {
+            var thread = new Thread(runnable, "ids-mqtt-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Subscribe to the topic of the configuration, responses are only published for authenticated requests with a
+     * reply topic starting with the reply topic prefix.
+     *
+     * @param mqtt configuration of the request topic
+     * @return true if the subscription was successful, else false
+     */
+    public boolean bind(final ProtocolMqtt mqtt) {
+        return bind(mqtt, null);
+    }
+
+    /**
+     * Subscribe to the topic of the configuration.
+     *
+     * @param mqtt configuration of the request topic
+     * @param defaultReplyTopic topic the responses are published to if the request is not authenticated or has no
+     *                          allowed reply topic (null: no response)
+     * @return true if the subscription was successful, else false
+     */
+    public boolean bind(final ProtocolMqtt mqtt, final String defaultReplyTopic) {
+        LOGGER.info(String.format("Binding IDS message handling to MQTT topic %s at %s", mqtt.getTopic(), mqtt.getUri()));
+        return communication.subscribe(mqtt, (topic, message) -> {
+            var bytes = message.getPayload();
+            try {
+                executor.execute(() -> handle(mqtt, defaultReplyTopic, bytes));
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn(String.format("Executor rejected IDS message received on topic %s, message is dropped", topic));
+            }
+        });
+    }
+
+    /**
+     * Unsubscribe from the topic of the configuration.
+     *
+     * @param mqtt configuration of the request topic, as passed to {@link #bind(ProtocolMqtt, String)}
+     * @return true if the unsubscription was successful, else false
+     */
+    public boolean unbind(final ProtocolMqtt mqtt) {
+        try {
+            communication.getClientPool().unsubscribe(mqtt);
+            return true;
+        } catch (MqttException e) {
+            LOGGER.error(String.format("Could not unsubscribe from MQTT topic %s: %s", mqtt.getTopic(), e.getMessage()), e);
+            return false;
+        }
+    }
+
+    /**
+     * Process a received message and publish the response.
+     *
+     * @param mqtt configuration of the request topic
+     * @param defaultReplyTopic topic for responses to unauthenticated requests and requests without allowed reply topic (null: no response)
+     * @param bytes the payload of the received MQTT message
+     */
+    private void handle(final ProtocolMqtt mqtt, final String defaultReplyTopic, final byte[] bytes) {
+        MqttEnvelope request;
+        try {
+            request = MqttEnvelopeCodec.decode(bytes);
+        } catch (MqttEnvelopeException e) {
+            LOGGER.warn(String.format("incoming MQTT message on topic %s could not be decoded: %s", mqtt.getTopic(), e.getMessage()));
+            reply(mqtt, defaultReplyTopic, createErrorResponse(RejectionReason.MALFORMED_MESSAGE, "Could not decode incoming message!"));
+            return;
+        }
+
+        Message header;
+        try {
+            header = serializer.deserialize(request.getHeader(), Message.class);
+        } catch (IOException e) {
+            LOGGER.warn("incoming message could not be parsed!");
+            LOGGER.warn(e.getMessage(), e);
+            reply(mqtt, defaultReplyTopic, createErrorResponse(RejectionReason.MALFORMED_MESSAGE, "Could not parse incoming message!"));
+            return;
+        }
+
+        PreDispatchingFilterResult datResult;
+        try {
+            datResult = messageDispatcher.verifyDat(header);
+        } catch (PreProcessingException e) {
+            LOGGER.error("Error during DAT verification!", e);
+            reply(mqtt, defaultReplyTopic, ErrorResponse.withDefaultHeader(RejectionReason.BAD_PARAMETERS, String.format("Error during preprocessing: %s", e.getMessage()),
+                    configurationContainer.getConnector().getId(), configurationContainer.getConnector().getOutboundModelVersion(), header.getId()));
+            return;
+        }
+        if (!datResult.isSuccess()) {
+            LOGGER.warn(String.format("DAT of message on topic %s is not valid: %s", mqtt.getTopic(), datResult.getMessage()));
+            reply(mqtt, defaultReplyTopic, ErrorResponse.withDefaultHeader(RejectionReason.NOT_AUTHENTICATED, datResult.getMessage(),
+                    configurationContainer.getConnector().getId(), configurationContainer.getConnector().getOutboundModelVersion(), header.getId()));
+            return;
+        }
+
+        reply(mqtt, replyTopic(mqtt, request, defaultReplyTopic), process(header, request));
+    }
+
+    /**
+     * Publish the response to a received message
+     *
+     * @param mqtt configuration of the request topic
+     * @param replyTopic topic the response is published to (null: the response is discarded)
+     * @param response the response
+     */
+    private void reply(final ProtocolMqtt mqtt, final String replyTopic, final MessageResponse response) {
+        if (replyTopic == null || replyTopic.isEmpty()) {
+            LOGGER.debug(String.format("No reply topic for message on topic %s, response is discarded", mqtt.getTopic()));
+            return;
+        }
+        try {
+            var envelope = toEnvelope(response);
+            if (!communication.send(MqttEnvelopeCodec.encode(envelope), replyConfiguration(mqtt, replyTopic))) {
+                LOGGER.warn(String.format("Response could not be published to MQTT topic %s", replyTopic));
+            }
+        } catch (IOException e) {
+            LOGGER.error(String.format("Response to message on topic %s could not be serialized!", mqtt.getTopic()), e);
+        } catch (IllegalArgumentException e) {
+            //thrown by the MQTT client for invalid topics
+            LOGGER.warn(String.format("Response could not be published to MQTT topic %s: %s", replyTopic, e.getMessage()));
+        }
+    }
+
+    /**
+     * Choose the topic of the response to an authenticated request: its reply topic if it starts with the reply topic
+     * prefix of the binding, else the default reply topic
+     *
+     * @param mqtt configuration of the request topic
+     * @param request the decoded request
+     * @param defaultReplyTopic topic for responses to requests without allowed reply topic (null: no response)
+     * @return the reply topic, null if there is none
+     */
+    String replyTopic(final ProtocolMqtt mqtt, final MqttEnvelope request, final String defaultReplyTopic) {
+        var requested = request.getReplyTopic();
+        if (requested == null) {
+            return defaultReplyTopic;
+        }
+        var prefix = replyTopicPrefix;
+        if (prefix == null || !requested.startsWith(prefix) || hasWildcard(requested)) {
+            LOGGER.warn(String.format("Reply topic %s of message on topic %s is not allowed (prefix: %s)", requested, mqtt.getTopic(), prefix));
+            return defaultReplyTopic;
+        }
+        return requested;
+    }
+
+    /**
+     * Let the MessageDispatcher process an authenticated request
+     *
+     * @param header the deserialized header of the request
+     * @param request the decoded request
+     * @return the response of the MessageHandler, or a rejection if the message could not be processed
+     */
+    MessageResponse process(final Message header, final MqttEnvelope request) {
+        try {
+            LOGGER.debug("hand the incoming MQTT message to the message dispatcher!");
+            return messageDispatcher.processVerified(header, request.openPayload());
+        } catch (PreProcessingException e) {
+            LOGGER.error("Error during pre-processing with a PreDispatchingFilter!", e);
+            return ErrorResponse.withDefaultHeader(RejectionReason.BAD_PARAMETERS, String.format("Error during preprocessing: %s", e.getMessage()),
+                    configurationContainer.getConnector().getId(), configurationContainer.getConnector().getOutboundModelVersion(), header.getId());
+        } catch (RuntimeException e) {
+            LOGGER.error("Incoming MQTT message could not be processed!", e);
+            return ErrorResponse.withDefaultHeader(RejectionReason.INTERNAL_RECIPIENT_ERROR, "Message could not be processed!",
+                    configurationContainer.getConnector().getId(), configurationContainer.getConnector().getOutboundModelVersion(), header.getId());
+        }
+    }
+
+    /**
+     * Create the envelope of a response, the payload is carried as raw bytes (Strings as UTF-8, byte arrays as they are,
+     * other objects as JSON)
+     *
+     * @param response the MessageResponse
+     * @return the envelope of the response (without reply topic)
+     * @throws IOException if header or payload cannot be serialized
+     */
+    MqttEnvelope toEnvelope(final MessageResponse response) throws IOException {
+        var parts = response.createMultipartMap(serializer);
+        var header = parts.get("header");
+        if (header == null) {
+            throw new IOException("Response has no header");
+        }
+        var payload = parts.get("payload");
+        byte[] payloadBytes;
+        if (payload == null) {
+            payloadBytes = null;
+        } else if (payload instanceof byte[]) {
+            payloadBytes = (byte[]) payload;
+        } else if (payload instanceof String) {
+            payloadBytes = ((String) payload).getBytes(StandardCharsets.UTF_8);
+        } else {
+            payloadBytes = objectMapper.writeValueAsBytes(payload);
+        }
+        return new MqttEnvelope(header.toString(), payloadBytes, null);
+    }
+
+    /**
+     * @param rejectionReason reason why the message was rejected
+     * @param errorMessage a specific error message for the payload
+     * @return an ErrorResponse with default rejection header
+     */
+    private ErrorResponse createErrorResponse(final RejectionReason rejectionReason, final String errorMessage) {
+        return ErrorResponse.withDefaultHeader(rejectionReason, errorMessage,
+                configurationContainer.getConnector().getId(), configurationContainer.getConnector().getOutboundModelVersion());
+    }
+
+    /**
+     * @param topic an MQTT topic
+     * @return true if the topic contains wildcards (which cannot be published to) or null characters
+     */
+    private static boolean hasWildcard(final String topic) {
+        return topic.indexOf('+') >= 0 || topic.indexOf('#') >= 0 || topic.indexOf('\u0000') >= 0;
+    }
+
+    /**
+     * Copy of the request configuration publishing to the reply topic (using the same pooled client)
+     *
+     * @param mqtt configuration of the request topic
+     * @param replyTopic topic the response is published to
+     * @return configuration for publishing the response
+     */
+    private static ProtocolMqtt replyConfiguration(final ProtocolMqtt mqtt, final String replyTopic) {
+        var reply = new ProtocolMqtt();
+        reply.setBasicAuthentication(mqtt.getBasicAuthentication());
+        reply.setQos(mqtt.getQos());
+        reply.setUri(mqtt.getUri());
+        reply.setClientId(mqtt.getClientId());
+        reply.setLastWillTopic(mqtt.getLastWillTopic());
+        reply.setLastWillMessage(mqtt.getLastWillMessage());
+        reply.setSslProperties(mqtt.getSslProperties());
+        reply.setTopic(replyTopic);
+        return reply;
+    }
+}
@@ -9,6 +9,7 @@ import de.fraunhofer.isst.ids.framework.daps.ClaimsException;
 import de.fraunhofer.isst.ids.framework.daps.DapsPublicKeyProvider;
 import de.fraunhofer.isst.ids.framework.daps.DapsValidator;
 import de.fraunhofer.isst.ids.framework.daps.DapsVerifier;
+import de.fraunhofer.isst.ids.framework.daps.DatVerificationResult;
 import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreDispatchingFilter;
 import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreDispatchingFilterResult;
 import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreProcessingException;
@@ -19,10 +20,18 @@ import de.fraunhofer.isst.ids.framework.messaging.model.responses.ErrorResponse;
 import de.fraunhofer.isst.ids.framework.messaging.model.responses.MessageResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The MessageDispatcher takes all incoming Messages, applies all defined PreDispatchingFilters onto them,
@@ -33,10 +42,19 @@ public class MessageDispatcher {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageDispatcher.class);
 
+    /**
+     * Default max number of threads processing the messages of batches
+     */
+    public static final int DEFAULT_BATCH_THREADS = 16;
+
     private final ObjectMapper objectMapper;
     private final List<PreDispatchingFilter> preDispatchingFilters;
     private final RequestHandlerResolver requestHandlerResolver;
     private final ConfigurationContainer configurationContainer;
+    private final DescriptionResponseCache responseCache;
+    private final DapsPublicKeyProvider provider;
+    private final PreDispatchingFilter datFilter;
+    private Executor batchExecutor = createBatchExecutor(DEFAULT_BATCH_THREADS);
 
     /**
      * Create a MessageDispatcher
@@ -50,13 +68,32 @@ public class MessageDispatcher {
                              final RequestHandlerResolver requestHandlerResolver,
                              final DapsPublicKeyProvider provider,
                              final ConfigurationContainer configurationContainer) {
+        this(objectMapper, requestHandlerResolver, provider, configurationContainer, null);
+    }
+
+    /**
+     * Create a MessageDispatcher, which answers repeated DescriptionRequestMessages from a {@link DescriptionResponseCache}
+     *
+     * @param objectMapper a jackson objectmapper for (de)serializing objects
+     * @param requestHandlerResolver resolver for finding the fitting {@link MessageHandler} for the incoming Message
+     * @param provider a provider that can access the public key of the DAPS
+     * @param configurationContainer the connector configuration
+     * @param responseCache cache for responses to DescriptionRequestMessages (null to disable caching)
+     */
+    public MessageDispatcher(final ObjectMapper objectMapper,
+                             final RequestHandlerResolver requestHandlerResolver,
+                             final DapsPublicKeyProvider provider,
+                             final ConfigurationContainer configurationContainer,
+                             final DescriptionResponseCache responseCache) {
         this.objectMapper = objectMapper;
         this.requestHandlerResolver = requestHandlerResolver;
         this.configurationContainer = configurationContainer;
+        this.responseCache = responseCache;
+        this.provider = provider;
         preDispatchingFilters = new LinkedList<>();
 
         //add DAT verification as PreDispatchingFilter
-        registerPreDispatchingAction(in -> {
+        datFilter = in -> {
             if(configurationContainer.getConfigModel().getConnectorDeployMode() == ConnectorDeployMode.TEST_DEPLOYMENT)
                 return PreDispatchingFilterResult.successResult("ConnectorDeployMode is Test. Skipping Token verification!");
             try {
@@ -71,7 +108,8 @@ public class MessageDispatcher {
                         .withMessage("Token could not be parsed!" + e.getMessage())
                         .build();
             }
-        });
+        };
+        registerPreDispatchingAction(datFilter);
     }
 
     /**
@@ -83,6 +121,129 @@ public class MessageDispatcher {
         this.preDispatchingFilters.add(preDispatchingFilter);
     }
 
+    /**
+     * Set the Executor used for processing the messages of a batch in parallel
+     * (default: {@link #createBatchExecutor(int)} with {@link #DEFAULT_BATCH_THREADS} threads)
+     *
+     * @param batchExecutor the executor the messages of a batch are handled with
+     */
+    public void setBatchExecutor(final Executor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * Create a bounded executor for processing the messages of batches: at most the given number of threads (which are
+     * stopped when idle) and a bounded queue of waiting messages. Messages which do not fit into the queue are
+     * processed by the thread calling {@link #processBatch(List, List)}, which throttles incoming batches.
+     *
+     * @param threads max number of threads processing messages
+     * @return the executor
+     */
+    public static Executor createBatchExecutor(final int threads) {
+        var threadCount = new AtomicInteger();
+        var executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(threads * 8), runnable -> {
+            var thread = new Thread(runnable, "ids-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Process a batch of messages in parallel. Every message is processed like a single message (see {@link #process(Message, InputStream)}),
+     * the MessageHandlers are called concurrently on the batch executor, just like for concurrent single requests.
+     * The request attributes of the calling thread (see {@link RequestContextHolder}) are passed to the handlers, but
+     * the handlers do not run in a transaction of the calling thread.
+     * The DATs of all messages are verified up front (see {@link DapsValidator#verifyAll(List, java.security.Key)}),
+     * so every distinct DAT of the batch is only verified once, messages with an invalid DAT are rejected without being dispatched.
+     *
+     * @param headers headers of the incoming Messages
+     * @param payloads payloads of the incoming Messages, in the same order as the headers (a payload can be null)
+     * @return the {@link MessageResponse}s for the messages, in the order of the given headers
+     */
+    public List<MessageResponse> processBatch(final List<? extends Message> headers, final List<InputStream> payloads) {
+        var connectorId = configurationContainer.getConnector().getId();
+        var modelVersion = configurationContainer.getConnector().getOutboundModelVersion();
+        var datResults = verifyDats(headers);
+        var requestAttributes = RequestContextHolder.getRequestAttributes();
+        var futures = new ArrayList<CompletableFuture<MessageResponse>>(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            final Message header = headers.get(i);
+            final InputStream payload = payloads.get(i);
+            if (datResults != null && !datResults.get(i).isValid()) {
+                logger.error(datResults.get(i).getError());
+                futures.add(CompletableFuture.completedFuture(ErrorResponse.withDefaultHeader(RejectionReason.MALFORMED_MESSAGE, datResults.get(i).getError(), connectorId, modelVersion, header.getId())));
+                continue;
+            }
+            final boolean datVerified = datResults != null;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                var previousAttributes = RequestContextHolder.getRequestAttributes();
+                RequestContextHolder.setRequestAttributes(requestAttributes);
+                try {
+                    return process(header, payload, datVerified);
+                } catch (PreProcessingException e) {
+                    logger.error("Error during pre-processing with a PreDispatchingFilter!", e);
+                    return ErrorResponse.withDefaultHeader(RejectionReason.BAD_PARAMETERS, String.format("Error during preprocessing: %s", e.getMessage()), connectorId, modelVersion, header.getId());
+                } finally {
+                    RequestContextHolder.setRequestAttributes(previousAttributes);
+                }
+            }, batchExecutor));
+        }
+        var responses = new ArrayList<MessageResponse>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                responses.add(futures.get(i).join());
+            } catch (RuntimeException e) {
+                logger.error("Message of the batch could not be processed!", e);
+                responses.add(ErrorResponse.withDefaultHeader(RejectionReason.INTERNAL_RECIPIENT_ERROR, "Error while handling the request!", connectorId, modelVersion, headers.get(i).getId()));
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Verify the DATs of all messages of a batch in parallel
+     *
+     * @param headers headers of the incoming Messages
+     * @return the verification results in the order of the headers, null if DATs are not checked (TEST_DEPLOYMENT)
+     */
+    private List<DatVerificationResult> verifyDats(final List<? extends Message> headers) {
+        if (configurationContainer.getConfigModel().getConnectorDeployMode() == ConnectorDeployMode.TEST_DEPLOYMENT) {
+            return null;
+        }
+        return DapsValidator.verifyAll(headers, provider.providePublicKey());
+    }
+
+    /**
+     * Verify the DAT of a message with the DAT verification filter (always successful in TEST_DEPLOYMENT), for
+     * transports which must know if the sender is authenticated before processing the message
+     *
+     * @param header header of the incoming Message
+     * @return the result of the DAT verification
+     * @throws PreProcessingException if the DAT verification throws an exception
+     */
+    PreDispatchingFilterResult verifyDat(final Message header) throws PreProcessingException {
+        try {
+            return datFilter.process(header);
+        } catch (RuntimeException e) {
+            throw new PreProcessingException(e);
+        }
+    }
+
+    /**
+     * Process a message whose DAT was already verified with {@link #verifyDat(Message)}
+     *
+     * @param header header of the incoming Message (RequestMessage implementation)
+     * @param payload payload of the incoming Message
+     * @param <R> a subtype of RequestMessage
+     * @return the {@link MessageResponse} that is returned by the specified {@link MessageHandler} for the type of the incoming Message
+     * @throws PreProcessingException if an error occurs in a PreDispatchingFilter
+     */
+    <R extends Message> MessageResponse processVerified(final R header, final InputStream payload) throws PreProcessingException {
+        return process(header, payload, true);
+    }
+
     /**
      * Apply the preDispatchingFilters to the message. If it wasn't filtered: find the {@link MessageHandler} for its type.
      * Let the handler handle the Message and return the {@link MessageResponse}.
@@ -93,12 +254,29 @@ public class MessageDispatcher {
      * @return the {@link MessageResponse} that is returned by the specified {@link MessageHandler} for the type of the incoming Message
      * @throws PreProcessingException if an error occurs in a PreDispatchingFilter
      */
-    @SuppressWarnings("unchecked")
     public <R extends Message> MessageResponse process(final R header, final InputStream payload) throws PreProcessingException {
+        return process(header, payload, false);
+    }
+
+    /**
+     * Process a message, skipping the DAT verification filter if the DAT was already verified
+     *
+     * @param header header of the incoming Message (RequestMessage implementation)
+     * @param payload payload of the incoming Message
+     * @param datVerified true if the DAT of the message was already verified
+     * @param <R> a subtype of RequestMessage
+     * @return the {@link MessageResponse} that is returned by the specified {@link MessageHandler} for the type of the incoming Message
+     * @throws PreProcessingException if an error occurs in a PreDispatchingFilter
+     */
+    @SuppressWarnings("unchecked")
+    private <R extends Message> MessageResponse process(final R header, final InputStream payload, final boolean datVerified) throws PreProcessingException {
         var connectorId = configurationContainer.getConnector().getId();
         var modelVersion = configurationContainer.getConnector().getOutboundModelVersion();
         //apply all preDispatchingFilters to the message
         for (PreDispatchingFilter preDispatchingFilter : this.preDispatchingFilters) {
+            if (datVerified && preDispatchingFilter == datFilter) {
+                continue;
+            }
             logger.debug("Applying a preDispatchingFilter");
             try {
                 final var result = preDispatchingFilter.process(header);
@@ -115,6 +293,14 @@ public class MessageDispatcher {
             }
         }
 
+        //answer repeated DescriptionRequests from the cache (filters, including the DAT check, did already run)
+        if (responseCache != null) {
+            var cached = responseCache.lookup(header);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+
         // Returns the MessageHandler of a given MessageType of the header-part.
         // The MessageType is a subtype of RequestMessage.class from Infomodel.
         var resolvedHandler = requestHandlerResolver.resolveHandler(header.getClass());
@@ -124,7 +310,13 @@ public class MessageDispatcher {
             //if an handler exists, let the handle handle the message and return its response
             try {
                 MessageHandler<R> handler = (MessageHandler<R>) resolvedHandler.get();
-                return handler.handleMessage(header, new MessagePayloadImpl(payload, objectMapper));
+                //taken before the handler runs, so a response built before an invalidation of the cache is not stored
+                var cacheGeneration = responseCache != null ? responseCache.getGeneration() : 0;
+                var response = handler.handleMessage(header, new MessagePayloadImpl(payload, objectMapper));
+                if (responseCache != null) {
+                    responseCache.store(header, response, cacheGeneration);
+                }
+                return response;
             } catch (MessageHandlingException e) {
                 logger.debug("The message handler threw an exception!");
 
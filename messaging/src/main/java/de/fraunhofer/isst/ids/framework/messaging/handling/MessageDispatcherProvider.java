@@ -3,10 +3,14 @@ package de.fraunhofer.isst.ids.framework.messaging.handling;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
 import de.fraunhofer.isst.ids.framework.daps.DapsPublicKeyProvider;
+import de.fraunhofer.isst.ids.framework.daps.DapsTokenProvider;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 /**
  * Providing a MessageDispatcher as a bean, for autowiring
  */
@@ -14,6 +18,18 @@ import org.springframework.stereotype.Component;
 @Slf4j
 public class MessageDispatcherProvider {
 
+    @Value("${messaging.description-cache.enabled:false}")
+    private boolean descriptionCacheEnabled;
+
+    @Value("${messaging.description-cache.max-bytes:16777216}")
+    private long descriptionCacheMaxBytes;
+
+    @Value("${messaging.description-cache.max-age-seconds:300}")
+    private long descriptionCacheMaxAge;
+
+    @Value("${messaging.batch.threads:" + MessageDispatcher.DEFAULT_BATCH_THREADS + "}")
+    private int batchThreads;
+
     /**
      * Make use of autowiring to get the parameters for the MessageDispatchers constructor and
      * create an Instance of MessageDispatcher with them.
@@ -21,6 +37,7 @@ public class MessageDispatcherProvider {
      * @param objectMapper for parsing objects from json
      * @param provider providing DAPS public key for checking DAT Tokens
      * @param configurationContainer container for current configuration
+     * @param tokenProvider providing the current DAT for cached description responses
      * @param resolver resolver for finding the right handler for infomodel {@link de.fraunhofer.iais.eis.Message}
      * @return MessageDispatcher as Spring Bean
      */
@@ -28,8 +45,18 @@ public class MessageDispatcherProvider {
     public MessageDispatcher provideMessageDispatcher(final ObjectMapper objectMapper,
                                                       final RequestHandlerResolver resolver,
                                                       final DapsPublicKeyProvider provider,
-                                                      final ConfigurationContainer configurationContainer) {
+                                                      final ConfigurationContainer configurationContainer,
+                                                      final DapsTokenProvider tokenProvider) {
 
-        return new MessageDispatcher(objectMapper, resolver, provider, configurationContainer);
+        DescriptionResponseCache cache = null;
+        if (descriptionCacheEnabled) {
+            log.debug("Creating a DescriptionResponseCache for the MessageDispatcher");
+            cache = new DescriptionResponseCache(descriptionCacheMaxBytes, Duration.ofSeconds(descriptionCacheMaxAge), tokenProvider, configurationContainer);
+        }
+        var dispatcher = new MessageDispatcher(objectMapper, resolver, provider, configurationContainer, cache);
+        if (batchThreads != MessageDispatcher.DEFAULT_BATCH_THREADS) {
+            dispatcher.setBatchExecutor(MessageDispatcher.createBatchExecutor(batchThreads));
+        }
+        return dispatcher;
     }
 }
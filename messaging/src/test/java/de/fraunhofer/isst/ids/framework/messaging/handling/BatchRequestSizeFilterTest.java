@@ -0,0 +1,76 @@
+package de.fraunhofer.isst.ids.framework.messaging.handling;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test the request size limit of the batch routes
+ */
+public class BatchRequestSizeFilterTest {
+
+    private static final String BATCH_PATH = "/api/ids/batch";
+
+    /**
+     * Batch requests larger than max-size times max-message-size are rejected before they reach the DispatcherServlet
+     */
+    @Test
+    public void testLargeBatchIsRejected() throws Exception {
+        var filter = new BatchRequestSizeFilter(2, 100);
+        filter.addBatchPath(BATCH_PATH);
+
+        var chain = filter(filter, request(BATCH_PATH, 201), HttpStatus.PAYLOAD_TOO_LARGE);
+        assertNull(chain.getRequest());
+
+        chain = filter(filter, request(BATCH_PATH, 200), HttpStatus.OK);
+        assertNotNull(chain.getRequest());
+    }
+
+    /**
+     * Batch requests without Content-Length are rejected, requests to other routes are not checked
+     */
+    @Test
+    public void testOnlyBatchRoutesNeedContentLength() throws Exception {
+        var filter = new BatchRequestSizeFilter(2, 100);
+        filter.addBatchPath(BATCH_PATH);
+
+        filter(filter, request(BATCH_PATH, -1), HttpStatus.LENGTH_REQUIRED);
+        filter(filter, request("/api/ids/data", -1), HttpStatus.OK);
+
+        filter.removeBatchPath(BATCH_PATH);
+        filter(filter, request(BATCH_PATH, 1000), HttpStatus.OK);
+    }
+
+    /**
+     * @param filter the filter
+     * @param request the request
+     * @param expected the expected status of the response
+     * @return the chain the request was filtered with
+     */
+    private static MockFilterChain filter(BatchRequestSizeFilter filter, MockHttpServletRequest request, HttpStatus expected) throws Exception {
+        var response = new MockHttpServletResponse();
+        var chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        assertEquals(expected.value(), response.getStatus());
+        return chain;
+    }
+
+    /**
+     * @param path the path of the request
+     * @param length the Content-Length of the request, negative for none
+     * @return a POST request
+     */
+    private static MockHttpServletRequest request(String path, int length) {
+        var request = new MockHttpServletRequest("POST", path);
+        if (length >= 0) {
+            request.setContent(new byte[length]);
+        }
+        return request;
+    }
+}
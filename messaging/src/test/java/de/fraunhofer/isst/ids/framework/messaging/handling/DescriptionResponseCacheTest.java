@@ -0,0 +1,200 @@
+package de.fraunhofer.isst.ids.framework.messaging.handling;
+
+import de.fraunhofer.iais.eis.DescriptionRequestMessage;
+import de.fraunhofer.iais.eis.DescriptionRequestMessageBuilder;
+import de.fraunhofer.iais.eis.DescriptionResponseMessage;
+import de.fraunhofer.iais.eis.ConfigurationModel;
+import de.fraunhofer.iais.eis.DescriptionResponseMessageBuilder;
+import de.fraunhofer.iais.eis.DescriptionResponseMessageImpl;
+import de.fraunhofer.iais.eis.DynamicAttributeToken;
+import de.fraunhofer.iais.eis.DynamicAttributeTokenBuilder;
+import de.fraunhofer.iais.eis.Token;
+import de.fraunhofer.iais.eis.TokenFormat;
+import de.fraunhofer.iais.eis.util.TypedLiteral;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationUpdateListener;
+import de.fraunhofer.isst.ids.framework.daps.DapsTokenProvider;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.BodyResponse;
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the DescriptionResponseCache: headers of cached responses carry the current DAT, responses built before an
+ * invalidation are not stored
+ */
+public class DescriptionResponseCacheTest {
+
+    private static final URI CONNECTOR = URI.create("https://connector.example.com");
+    private static final Token AUTHORIZATION_TOKEN = Mockito.mock(Token.class);
+
+    /**
+     * Token provider returning a new DAT on every call
+     */
+    private static class CountingTokenProvider implements DapsTokenProvider {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public String provideDapsToken() {
+            return "token-" + counter.incrementAndGet();
+        }
+
+        @Override
+        public DynamicAttributeToken getDAT() {
+            return token(provideDapsToken());
+        }
+    }
+
+    /**
+     * A cached response is answered with the current DAT of the connector, not with the DAT cached with the response
+     */
+    @Test
+    public void testCachedResponseCarriesCurrentDat() {
+        var cache = new DescriptionResponseCache(1 << 20, Duration.ofMinutes(5), new CountingTokenProvider());
+        var first = request();
+        cache.store(first, response(first, "handler-token"), cache.getGeneration());
+        assertEquals(1, cache.size());
+
+        var second = request();
+        var cached = cache.lookup(second);
+        assertTrue(cached.isPresent());
+        var header = ((BodyResponse<?>) cached.get()).getHeader();
+        assertEquals("token-1", header.getSecurityToken().getTokenValue());
+        assertEquals(second.getId(), header.getCorrelationMessage());
+        assertEquals("self-description", ((BodyResponse<?>) cached.get()).getPayload());
+
+        var third = cache.lookup(request());
+        assertEquals("token-2", ((BodyResponse<?>) third.get()).getHeader().getSecurityToken().getTokenValue());
+    }
+
+    /**
+     * A response whose handler was called before the cache was invalidated is not stored
+     */
+    @Test
+    public void testStaleStoreIsDropped() {
+        var cache = new DescriptionResponseCache(1 << 20, Duration.ofMinutes(5), new CountingTokenProvider());
+        var request = request();
+        var generation = cache.getGeneration();
+        //the description changes while the handler is running
+        cache.invalidate();
+        cache.store(request, response(request, "handler-token"), generation);
+        assertEquals(0, cache.size());
+        assertTrue(cache.lookup(request()).isEmpty());
+
+        cache.store(request, response(request, "handler-token"), cache.getGeneration());
+        assertEquals(1, cache.size());
+        assertTrue(cache.lookup(request()).isPresent());
+    }
+
+    /**
+     * A cached response has the same header as the response of the handler, except for the per-request fields
+     */
+    @Test
+    public void testCachedHeaderEqualsHandlerHeader() {
+        var cache = new DescriptionResponseCache(1 << 20, Duration.ofMinutes(5), new CountingTokenProvider());
+        var first = request();
+        cache.store(first, fullResponse(first), cache.getGeneration());
+
+        var second = request();
+        var uncached = fullResponse(second).getHeader();
+        var cached = (DescriptionResponseMessage) ((BodyResponse<?>) cache.lookup(second).get()).getHeader();
+
+        assertNotEquals(uncached.getId(), cached.getId());
+        assertEquals("token-1", cached.getSecurityToken().getTokenValue());
+        assertEquals(uncached.getCorrelationMessage(), cached.getCorrelationMessage());
+        assertEquals(uncached.getRecipientConnector(), cached.getRecipientConnector());
+        assertNotNull(cached.getIssued());
+        assertEquals(uncached.getIssuerConnector(), cached.getIssuerConnector());
+        assertEquals(uncached.getSenderAgent(), cached.getSenderAgent());
+        assertEquals(uncached.getModelVersion(), cached.getModelVersion());
+        assertEquals(uncached.getRecipientAgent(), cached.getRecipientAgent());
+        assertEquals(uncached.getTransferContract(), cached.getTransferContract());
+        assertEquals(uncached.getContentVersion(), cached.getContentVersion());
+        assertSame(uncached.getAuthorizationToken(), cached.getAuthorizationToken());
+        assertEquals(uncached.getComment(), cached.getComment());
+        assertEquals(uncached.getLabel(), cached.getLabel());
+        assertEquals(uncached.getProperties(), cached.getProperties());
+    }
+
+    /**
+     * The cache is invalidated by every configuration update, also if the model was changed in place and passed again
+     */
+    @Test
+    public void testInPlaceConfigurationUpdateInvalidates() {
+        var container = Mockito.mock(ConfigurationContainer.class);
+        var listener = ArgumentCaptor.forClass(ConfigurationUpdateListener.class);
+        var cache = new DescriptionResponseCache(1 << 20, Duration.ofMinutes(5), new CountingTokenProvider(), container);
+        Mockito.verify(container).addUpdateListener(listener.capture());
+        var request = request();
+        cache.store(request, response(request, "handler-token"), cache.getGeneration());
+        assertEquals(1, cache.size());
+
+        var model = Mockito.mock(ConfigurationModel.class);
+        listener.getValue().onConfigurationUpdate(model, model);
+
+        assertEquals(0, cache.size());
+    }
+
+    private static DescriptionRequestMessage request() {
+        return new DescriptionRequestMessageBuilder()
+                ._issuerConnector_(URI.create("https://requester.example.com"))
+                ._senderAgent_(URI.create("https://requester.example.com"))
+                ._securityToken_(token("requester-token"))
+                ._issued_(IDSUtils.getGregorianNow())
+                ._modelVersion_("4.0.0")
+                .build();
+    }
+
+    private static BodyResponse<DescriptionResponseMessage> response(DescriptionRequestMessage request, String tokenValue) {
+        var header = new DescriptionResponseMessageBuilder()
+                ._securityToken_(token(tokenValue))
+                ._issuerConnector_(CONNECTOR)
+                ._senderAgent_(CONNECTOR)
+                ._modelVersion_("4.0.0")
+                ._correlationMessage_(request.getId())
+                ._issued_(IDSUtils.getGregorianNow())
+                .build();
+        return BodyResponse.create(header, "self-description");
+    }
+
+    /**
+     * @param request the request
+     * @return a response of the handler with all optional header fields set
+     */
+    private static BodyResponse<DescriptionResponseMessage> fullResponse(DescriptionRequestMessage request) {
+        var header = new DescriptionResponseMessageBuilder()
+                ._securityToken_(token("handler-token"))
+                ._issuerConnector_(CONNECTOR)
+                ._senderAgent_(URI.create("https://agent.example.com"))
+                ._modelVersion_("4.0.0")
+                ._correlationMessage_(request.getId())
+                ._recipientConnector_(new ArrayList<>(List.of(request.getIssuerConnector())))
+                ._recipientAgent_(new ArrayList<>(List.of(request.getSenderAgent())))
+                ._transferContract_(URI.create("https://connector.example.com/contracts/1"))
+                ._contentVersion_("2")
+                ._authorizationToken_(AUTHORIZATION_TOKEN)
+                ._comment_(new ArrayList<>(List.of(new TypedLiteral("cached description"))))
+                ._label_(new ArrayList<>(List.of(new TypedLiteral("description"))))
+                ._issued_(IDSUtils.getGregorianNow())
+                .build();
+        ((DescriptionResponseMessageImpl) header).setProperty("https://example.com/custom", "value");
+        return BodyResponse.create(header, "self-description");
+    }
+
+    private static DynamicAttributeToken token(String value) {
+        return new DynamicAttributeTokenBuilder()._tokenFormat_(TokenFormat.JWT)._tokenValue_(value).build();
+    }
+}
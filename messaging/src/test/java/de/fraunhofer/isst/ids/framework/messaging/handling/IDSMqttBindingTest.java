@@ -0,0 +1,209 @@
+package de.fraunhofer.isst.ids.framework.messaging.handling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iais.eis.ConfigurationModel;
+import de.fraunhofer.iais.eis.Connector;
+import de.fraunhofer.iais.eis.ConnectorDeployMode;
+import de.fraunhofer.iais.eis.DynamicAttributeTokenBuilder;
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.iais.eis.RequestMessage;
+import de.fraunhofer.iais.eis.RequestMessageBuilder;
+import de.fraunhofer.iais.eis.TokenFormat;
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+import de.fraunhofer.isst.ids.framework.communication.mqtt.IDSMQTTCommunication;
+import de.fraunhofer.isst.ids.framework.communication.mqtt.MqttEnvelope;
+import de.fraunhofer.isst.ids.framework.communication.mqtt.MqttEnvelopeCodec;
+import de.fraunhofer.isst.ids.framework.communication.mqtt.ProtocolMqtt;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.daps.DapsPublicKeyProvider;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessageHandler;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.BodyResponse;
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.net.URI;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test the reply topics and the executor of the IDSMqttBinding
+ */
+public class IDSMqttBindingTest {
+
+    private static final URI CONNECTOR = URI.create("https://connector.example.com");
+    private static final String DEFAULT_REPLY_TOPIC = "ids/default-replies";
+
+    /**
+     * Authenticated requests are answered on their reply topic if it starts with the reply topic prefix
+     */
+    @Test
+    public void testAuthenticatedRequestIsAnsweredOnItsReplyTopic() throws Exception {
+        var communication = Mockito.mock(IDSMQTTCommunication.class);
+        var binding = binding(ConnectorDeployMode.TEST_DEPLOYMENT, communication);
+        binding.setReplyTopicPrefix("ids/replies/");
+
+        receive(binding, communication, "ids/replies/consumer-1");
+
+        assertEquals("ids/replies/consumer-1", publishedTopic(communication));
+    }
+
+    /**
+     * Reply topics outside of the prefix, with wildcards or without a configured prefix are replaced by the default reply topic
+     */
+    @Test
+    public void testReplyTopicMustStartWithPrefix() throws Exception {
+        var communication = Mockito.mock(IDSMQTTCommunication.class);
+        var binding = binding(ConnectorDeployMode.TEST_DEPLOYMENT, communication);
+        var mqtt = config();
+
+        assertEquals(DEFAULT_REPLY_TOPIC, binding.replyTopic(mqtt, envelope("ids/replies/consumer-1"), DEFAULT_REPLY_TOPIC));
+        binding.setReplyTopicPrefix("ids/replies/");
+        assertEquals("ids/replies/consumer-1", binding.replyTopic(mqtt, envelope("ids/replies/consumer-1"), DEFAULT_REPLY_TOPIC));
+        assertEquals(DEFAULT_REPLY_TOPIC, binding.replyTopic(mqtt, envelope("ids/commands/actuator"), DEFAULT_REPLY_TOPIC));
+        assertEquals(DEFAULT_REPLY_TOPIC, binding.replyTopic(mqtt, envelope("ids/replies/#"), DEFAULT_REPLY_TOPIC));
+        assertEquals(DEFAULT_REPLY_TOPIC, binding.replyTopic(mqtt, envelope(null), DEFAULT_REPLY_TOPIC));
+        assertThrows(IllegalArgumentException.class, () -> binding.setReplyTopicPrefix("ids/+/"));
+    }
+
+    /**
+     * Requests with an invalid DAT are only answered on the default reply topic
+     */
+    @Test
+    public void testUnauthenticatedRequestIsAnsweredOnDefaultReplyTopic() throws Exception {
+        var communication = Mockito.mock(IDSMQTTCommunication.class);
+        var binding = binding(ConnectorDeployMode.PRODUCTIVE_DEPLOYMENT, communication);
+        binding.setReplyTopicPrefix("ids/replies/");
+
+        receive(binding, communication, "ids/replies/consumer-1");
+
+        assertEquals(DEFAULT_REPLY_TOPIC, publishedTopic(communication));
+    }
+
+    /**
+     * Topics the MQTT client refuses to publish to do not escape from the processing thread
+     */
+    @Test
+    public void testInvalidTopicIsLogged() throws Exception {
+        var communication = Mockito.mock(IDSMQTTCommunication.class);
+        Mockito.when(communication.send(ArgumentMatchers.any(byte[].class), ArgumentMatchers.any(ProtocolMqtt.class)))
+                .thenThrow(new IllegalArgumentException("The topic name MUST NOT contain any wildcard characters (#+)"));
+        var binding = binding(ConnectorDeployMode.TEST_DEPLOYMENT, communication);
+
+        receive(binding, communication, null);
+
+        assertEquals(DEFAULT_REPLY_TOPIC, publishedTopic(communication));
+    }
+
+    /**
+     * The default executor rejects messages if all threads are busy and the queue is full
+     */
+    @Test
+    public void testExecutorIsBounded() {
+        var executor = IDSMqttBinding.createExecutor(1, 1);
+        var release = new CountDownLatch(1);
+        Runnable blocked = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try {
+            executor.execute(blocked);
+            executor.execute(blocked);
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(blocked));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * Bind to the request topic and deliver one request to the listener of the subscription
+     *
+     * @param binding the binding (processing on the calling thread)
+     * @param communication the mocked communication
+     * @param replyTopic reply topic of the request
+     */
+    private static void receive(IDSMqttBinding binding, IDSMQTTCommunication communication, String replyTopic) throws Exception {
+        var listener = ArgumentCaptor.forClass(IMqttMessageListener.class);
+        Mockito.when(communication.subscribe(ArgumentMatchers.any(ProtocolMqtt.class), listener.capture())).thenReturn(true);
+        binding.bind(config(), DEFAULT_REPLY_TOPIC);
+        listener.getValue().messageArrived("ids/requests", new MqttMessage(MqttEnvelopeCodec.encode(envelope(replyTopic))));
+    }
+
+    /**
+     * @param communication the mocked communication
+     * @return the topic the response was published to
+     */
+    private static String publishedTopic(IDSMQTTCommunication communication) {
+        var reply = ArgumentCaptor.forClass(ProtocolMqtt.class);
+        Mockito.verify(communication).send(ArgumentMatchers.any(byte[].class), reply.capture());
+        return reply.getValue().getTopic();
+    }
+
+    private static IDSMqttBinding binding(ConnectorDeployMode deployMode, IDSMQTTCommunication communication) throws Exception {
+        var container = container(deployMode);
+        var header = request();
+        MessageHandler<RequestMessage> handler = (message, payload) -> BodyResponse.create(message, "response");
+        var dispatcher = new MessageDispatcher(new ObjectMapper(), resolver(handler), Mockito.mock(DapsPublicKeyProvider.class), container);
+        var serializer = Mockito.mock(Serializer.class);
+        Mockito.when(serializer.deserialize(ArgumentMatchers.anyString(), ArgumentMatchers.eq(Message.class))).thenReturn(header);
+        Mockito.when(serializer.serialize(ArgumentMatchers.any())).thenReturn("{}");
+        var binding = new IDSMqttBinding(dispatcher, serializer, new ObjectMapper(), container, communication);
+        binding.setExecutor(Runnable::run);
+        return binding;
+    }
+
+    private static MqttEnvelope envelope(String replyTopic) {
+        return new MqttEnvelope("{}", null, replyTopic);
+    }
+
+    private static ProtocolMqtt config() {
+        var mqtt = new ProtocolMqtt();
+        mqtt.setUri(URI.create("tcp://localhost:1883"));
+        mqtt.setTopic("ids/requests");
+        mqtt.setQos(1);
+        return mqtt;
+    }
+
+    private static RequestMessage request() {
+        return new RequestMessageBuilder()
+                ._issuerConnector_(CONNECTOR)
+                ._senderAgent_(CONNECTOR)
+                ._modelVersion_("4.0.0")
+                ._issued_(IDSUtils.getGregorianNow())
+                ._securityToken_(new DynamicAttributeTokenBuilder()._tokenFormat_(TokenFormat.JWT)._tokenValue_("token").build())
+                .build();
+    }
+
+    private static ConfigurationContainer container(ConnectorDeployMode deployMode) {
+        var container = Mockito.mock(ConfigurationContainer.class);
+        var configModel = Mockito.mock(ConfigurationModel.class);
+        var connector = Mockito.mock(Connector.class);
+        Mockito.when(configModel.getConnectorDeployMode()).thenReturn(deployMode);
+        Mockito.when(connector.getId()).thenReturn(CONNECTOR);
+        Mockito.when(connector.getOutboundModelVersion()).thenReturn("4.0.0");
+        Mockito.when(container.getConfigModel()).thenReturn(configModel);
+        Mockito.when(container.getConnector()).thenReturn(connector);
+        return container;
+    }
+
+    private static RequestHandlerResolver resolver(MessageHandler<RequestMessage> handler) {
+        return new RequestHandlerResolver() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <R extends Message> Optional<MessageHandler<R>> resolveHandler(Class<R> messageType) {
+                return Optional.of((MessageHandler<R>) (MessageHandler<?>) handler);
+            }
+        };
+    }
+}
@@ -0,0 +1,129 @@
+package de.fraunhofer.isst.ids.framework.messaging.handling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iais.eis.ConfigurationModel;
+import de.fraunhofer.iais.eis.Connector;
+import de.fraunhofer.iais.eis.ConnectorDeployMode;
+import de.fraunhofer.iais.eis.DynamicAttributeTokenBuilder;
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.iais.eis.RequestMessage;
+import de.fraunhofer.iais.eis.RequestMessageBuilder;
+import de.fraunhofer.iais.eis.ResponseMessageBuilder;
+import de.fraunhofer.iais.eis.TokenFormat;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.daps.DapsPublicKeyProvider;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessageHandler;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.BodyResponse;
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the processing of message batches by the MessageDispatcher
+ */
+public class MessageDispatcherBatchTest {
+
+    private static final URI CONNECTOR = URI.create("https://connector.example.com");
+
+    @After
+    public void resetRequestAttributes() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    /**
+     * Responses are returned in the order of the messages, the handlers see the request attributes of the calling
+     * thread and the number of concurrently running handlers is bounded by the batch executor
+     */
+    @Test
+    public void testProcessBatch() {
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        var attributes = new ServletRequestAttributes(new MockHttpServletRequest());
+        var seenAttributes = Collections.synchronizedList(new ArrayList<Object>());
+        MessageHandler<RequestMessage> handler = (header, payload) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            seenAttributes.add(RequestContextHolder.getRequestAttributes());
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return BodyResponse.create(new ResponseMessageBuilder()
+                    ._correlationMessage_(header.getId())
+                    ._issuerConnector_(CONNECTOR)
+                    ._senderAgent_(CONNECTOR)
+                    ._modelVersion_("4.0.0")
+                    ._issued_(IDSUtils.getGregorianNow())
+                    ._securityToken_(new DynamicAttributeTokenBuilder()._tokenFormat_(TokenFormat.JWT)._tokenValue_("token").build())
+                    .build(), "response");
+        };
+        var dispatcher = new MessageDispatcher(new ObjectMapper(), resolver(handler), Mockito.mock(DapsPublicKeyProvider.class), container());
+        dispatcher.setBatchExecutor(MessageDispatcher.createBatchExecutor(2));
+
+        var headers = new ArrayList<RequestMessage>();
+        var payloads = new ArrayList<InputStream>();
+        for (int i = 0; i < 40; i++) {
+            headers.add(new RequestMessageBuilder()
+                    ._issuerConnector_(CONNECTOR)
+                    ._senderAgent_(CONNECTOR)
+                    ._modelVersion_("4.0.0")
+                    ._issued_(IDSUtils.getGregorianNow())
+                    ._securityToken_(new DynamicAttributeTokenBuilder()._tokenFormat_(TokenFormat.JWT)._tokenValue_("token").build())
+                    .build());
+            payloads.add(null);
+        }
+        RequestContextHolder.setRequestAttributes(attributes);
+        var responses = dispatcher.processBatch(headers, payloads);
+
+        assertEquals(headers.size(), responses.size());
+        for (int i = 0; i < headers.size(); i++) {
+            assertEquals(headers.get(i).getId(), ((BodyResponse<?>) responses.get(i)).getHeader().getCorrelationMessage());
+        }
+        assertEquals(headers.size(), seenAttributes.size());
+        for (var seen : seenAttributes) {
+            assertSame(attributes, seen);
+        }
+        //two executor threads, plus the calling thread when the queue is full
+        assertTrue(maxRunning.get() <= 3, "Too many concurrent handlers: " + maxRunning.get());
+        assertSame(attributes, RequestContextHolder.getRequestAttributes());
+    }
+
+    private static ConfigurationContainer container() {
+        var container = Mockito.mock(ConfigurationContainer.class);
+        var configModel = Mockito.mock(ConfigurationModel.class);
+        var connector = Mockito.mock(Connector.class);
+        Mockito.when(configModel.getConnectorDeployMode()).thenReturn(ConnectorDeployMode.TEST_DEPLOYMENT);
+        Mockito.when(connector.getId()).thenReturn(CONNECTOR);
+        Mockito.when(connector.getOutboundModelVersion()).thenReturn("4.0.0");
+        Mockito.when(container.getConfigModel()).thenReturn(configModel);
+        Mockito.when(container.getConnector()).thenReturn(connector);
+        return container;
+    }
+
+    private static RequestHandlerResolver resolver(MessageHandler<RequestMessage> handler) {
+        return new RequestHandlerResolver() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <R extends Message> Optional<MessageHandler<R>> resolveHandler(Class<R> messageType) {
+                return Optional.of((MessageHandler<R>) (MessageHandler<?>) handler);
+            }
+        };
+    }
+}